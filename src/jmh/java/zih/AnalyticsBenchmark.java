@@ -0,0 +1,92 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Management reports over a big hotel: OccupancyAnalytics against walking the
+ * capsules with null checks, the way a report over guestAt would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class AnalyticsBenchmark {
+
+  @Param({"1000000", "10000000"})
+  public int capsules;
+
+  @Param({"0.5", "0.99"})
+  public double occupancy;
+
+  BookingEngine engine;
+  OccupancyAnalytics analytics;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    engine = new BookingEngine(capsules);
+    analytics = OccupancyAnalytics.attach(engine);
+    BookingBenchmark.fill(engine, occupancy, 42);
+  }
+
+  @Benchmark
+  public int longestVacancyRun(){
+    return analytics.vacancyRuns().getLongest();
+  }
+
+  @Benchmark
+  public int longestVacancyRunByScan(){
+    int longest = 0;
+    int run = 0;
+    for (int n = 1; n <= capsules; n++){
+      run = engine.guestAt(n) == null ? run + 1 : 0;
+      longest = Math.max(longest, run);
+    }
+    return longest;
+  }
+
+  @Benchmark
+  public double[] occupancyByBlock(){
+    return analytics.occupancyByBlock(100);
+  }
+
+  @Benchmark
+  public double[] occupancyByBlockByScan(){
+    double[] ratios = new double[(capsules + 99) / 100];
+    for (int b = 0; b < ratios.length; b++){
+      int to = Math.min(capsules, (b + 1) * 100);
+      int occupied = 0;
+      for (int n = b * 100 + 1; n <= to; n++){
+        if (engine.guestAt(n) != null){
+          occupied++;
+        }
+      }
+      ratios[b] = occupied / (double) (to - b * 100);
+    }
+    return ratios;
+  }
+
+  @Benchmark
+  public long[] checkInsByBlock(){
+    return analytics.checkInsByBlock(100);
+  }
+
+  @Benchmark
+  public int[] turnoverHistogram(){
+    return analytics.turnoverHistogram();
+  }
+}
@@ -0,0 +1,142 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A group of `groupSize` guests arriving and leaving together: booked and checked
+ * out with one batch call each, against the same work done one call per guest.
+ * Each invocation leaves the hotel as half full as it found it. The journaled
+ * loops pay one fsync wait per guest, so expect them to take seconds per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+  @Param({"100000"})
+  public int groupSize;
+
+  // with a HotelStore attached every single call waits for its own journal flush
+  @Param({"false", "true"})
+  public boolean journaled;
+
+  Path directory;
+  HotelStore store;
+  BookingEngine engine;
+  Map<Integer, String> group;
+  List<String> guestNames;
+  int[] capsuleNumbers;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    // half the capsules already taken, every other one, so the group has to search
+    if (journaled){
+      directory = Files.createTempDirectory("batch-benchmark");
+      store = HotelStore.open(directory, groupSize * 2);
+      engine = store.engine();
+    } else {
+      engine = new BookingEngine(groupSize * 2);
+    }
+    for (int n = 2; n <= groupSize * 2; n += 2){
+      engine.checkIn(n, "Resident-" + n);
+    }
+    group = new LinkedHashMap<>();
+    guestNames = new ArrayList<>(groupSize);
+    capsuleNumbers = new int[groupSize];
+    for (int i = 0; i < groupSize; i++){
+      int capsuleNumber = 2 * i + 1;
+      group.put(capsuleNumber, "Guest-" + i);
+      guestNames.add("Guest-" + i);
+      capsuleNumbers[i] = capsuleNumber;
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    if (store != null){
+      store.close();
+      try (Stream<Path> files = Files.walk(directory)){
+        files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+      }
+    }
+  }
+
+  // a fresh journal generation per iteration keeps the file from growing without bound
+  @Setup(Level.Iteration)
+  public void compact() throws IOException {
+    if (store != null){
+      store.compact();
+    }
+  }
+
+  @Benchmark
+  public int checkInLoop(){
+    int booked = 0;
+    for (Map.Entry<Integer, String> booking : group.entrySet()){
+      if (engine.checkIn(booking.getKey(), booking.getValue()).isSuccess()){
+        booked++;
+      }
+    }
+    for (int capsuleNumber : capsuleNumbers){
+      engine.checkOut(capsuleNumber);
+    }
+    return booked;
+  }
+
+  @Benchmark
+  public int checkInBatch(){
+    int booked = engine.checkInAll(group, BatchMode.ALL_OR_NOTHING).getSuccessCount();
+    engine.checkOutAll(capsuleNumbers, BatchMode.ALL_OR_NOTHING);
+    return booked;
+  }
+
+  @Benchmark
+  public int checkInAnyLoop(){
+    int booked = 0;
+    for (String guestName : guestNames){
+      if (engine.checkInAny(guestName, AssignmentPolicy.LOWEST_NUMBERED).isSuccess()){
+        booked++;
+      }
+    }
+    for (int capsuleNumber : capsuleNumbers){
+      engine.checkOut(capsuleNumber);
+    }
+    return booked;
+  }
+
+  @Benchmark
+  public int checkInAnyBatch(){
+    int booked = engine.checkInAll(guestNames, AssignmentPolicy.LOWEST_NUMBERED, BatchMode.ALL_OR_NOTHING)
+            .getSuccessCount();
+    engine.checkOutAll(capsuleNumbers, BatchMode.ALL_OR_NOTHING);
+    return booked;
+  }
+}
@@ -0,0 +1,48 @@
+package zih;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks once per thread count and writes one JSON result file per run,
+ * e.g. target/jmh/BookingBenchmark-t4.json, so runs from different releases can be diffed.
+ *
+ * Usage: java -cp target/benchmarks.jar zih.BenchmarkRunner [include-regex] [thread counts...]
+ * e.g.   java -cp target/benchmarks.jar zih.BenchmarkRunner BookingBenchmark 1 2 4 8
+ *
+ * For a single ad-hoc run the plain JMH command line works too:
+ *        java -jar target/benchmarks.jar BookingBenchmark -t 4 -rf json -rff result.json
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws RunnerException {
+    String include = args.length > 0 ? args[0] : "zih\\..*Benchmark";
+    int[] threadCounts = {1, 2, 4, 8};
+    if (args.length > 1){
+      threadCounts = new int[args.length - 1];
+      for (int i = 1; i < args.length; i++){
+        threadCounts[i - 1] = Integer.parseInt(args[i]);
+      }
+    }
+
+    File outputDirectory = new File("target/jmh");
+    outputDirectory.mkdirs();
+    String name = include.replaceAll("[^A-Za-z0-9]+", "");
+
+    for (int threads : threadCounts){
+      File resultFile = new File(outputDirectory, name + "-t" + threads + ".json");
+      ChainedOptionsBuilder options = new OptionsBuilder()
+              .include(include)
+              .threads(threads)
+              .resultFormat(ResultFormatType.JSON)
+              .result(resultFile.getPath());
+      new Runner(options.build()).run();
+      System.out.println("Results written to " + resultFile);
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of the booking engine and the console views.
+ * Every benchmark leaves the hotel at the occupancy level it started with,
+ * so the numbers stay comparable across iterations and thread counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookingBenchmark {
+
+  @Param({"20", "1000", "100000", "10000000"})
+  public int capsules;
+
+  // fraction of capsules that already have a guest when the benchmark starts
+  @Param({"0.0", "0.5", "0.99"})
+  public double occupancy;
+
+  BookingEngine engine;
+  CapsuleHotel hotel;
+  // the plain String[] the hotel used before the occupancy index, filled the same way
+  String[] legacyCapsules;
+  PrintStream originalSystemOut;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    engine = new BookingEngine(capsules);
+    hotel = new CapsuleHotel(engine);
+    fill(engine, occupancy, 42);
+    legacyCapsules = new String[capsules];
+    for (int n = 1; n <= capsules; n++){
+      legacyCapsules[n - 1] = engine.guestAt(n);
+    }
+
+    // printGuestInRange writes to System.out, send it nowhere while measuring
+    originalSystemOut = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown(){
+    System.setOut(originalSystemOut);
+  }
+
+  // books a random capsule and frees it again; on an occupied capsule this is the "is occupied" path
+  @Benchmark
+  public CheckInResult checkIn(){
+    int capsuleNumber = ThreadLocalRandom.current().nextInt(capsules) + 1;
+    CheckInResult result = engine.checkIn(capsuleNumber, "Guest");
+    if (result.isSuccess()){
+      engine.checkOut(capsuleNumber);
+    }
+    return result;
+  }
+
+  // frees a random capsule and books it again; on a free capsule this is the "is unoccupied" path
+  @Benchmark
+  public CheckOutResult checkOut(){
+    int capsuleNumber = ThreadLocalRandom.current().nextInt(capsules) + 1;
+    CheckOutResult result = engine.checkOut(capsuleNumber);
+    if (result.isSuccess()){
+      engine.checkIn(capsuleNumber, result.getGuestName());
+    }
+    return result;
+  }
+
+  // books whatever capsule the policy picks and frees it again, the clerk's "next free" check-in
+  @Benchmark
+  public CheckInResult checkInAnyLowestNumbered(){
+    return checkInAnyAndRelease(AssignmentPolicy.LOWEST_NUMBERED);
+  }
+
+  @Benchmark
+  public CheckInResult checkInAnyRoundRobin(){
+    return checkInAnyAndRelease(AssignmentPolicy.ROUND_ROBIN);
+  }
+
+  @Benchmark
+  public CheckInResult checkInAnySpreadOut(){
+    return checkInAnyAndRelease(AssignmentPolicy.SPREAD_OUT);
+  }
+
+  private CheckInResult checkInAnyAndRelease(AssignmentPolicy policy){
+    CheckInResult result = engine.checkInAny("Guest", policy);
+    if (result.isSuccess()){
+      engine.checkOut(result.getCapsuleNumber());
+    }
+    return result;
+  }
+
+  // what the clerk did before: try random capsule numbers until one is free
+  @Benchmark
+  public int checkInByGuessing(){
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int tries = 1; tries <= capsules; tries++){
+      int capsuleNumber = random.nextInt(capsules) + 1;
+      if (engine.checkIn(capsuleNumber, "Guest").isSuccess()){
+        engine.checkOut(capsuleNumber);
+        return tries;
+      }
+    }
+    return -1;
+  }
+
+  // the guest-exists check handleCheckOut used before the occupancy index
+  @Benchmark
+  public boolean guestExistsLinearScan(){
+    for (String guest : legacyCapsules){
+      if (guest != null){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // the guest-exists check handleCheckOut uses now
+  @Benchmark
+  public boolean guestExistsIndexed(){
+    return !engine.isEmpty();
+  }
+
+  // one 11-capsule view window at a random position
+  @Benchmark
+  public void printGuestInRange(){
+    int start = ThreadLocalRandom.current().nextInt(Math.max(1, capsules - 11));
+    hotel.printGuestInRange(start, Math.min(start + 11, capsules));
+  }
+
+  // one reusable output buffer per benchmark thread
+  @State(Scope.Thread)
+  public static class RenderBuffer {
+    final StringBuilder buffer = new StringBuilder(1 << 20);
+  }
+
+  // a dashboard-sized page of up to 10,000 capsules rendered into a reused buffer
+  @Benchmark
+  public int renderLargeWindow(RenderBuffer renderBuffer){
+    int window = Math.min(10_000, capsules);
+    int start = ThreadLocalRandom.current().nextInt(capsules - window + 1);
+    StringBuilder buffer = renderBuffer.buffer;
+    buffer.setLength(0);
+    GuestRangeRenderer.render(engine, start, start + window, buffer);
+    return buffer.length();
+  }
+
+  // one 100-guest page of the occupied-only listing from a random capsule onwards
+  @Benchmark
+  public GuestListing.Page occupiedPage(){
+    int start = ThreadLocalRandom.current().nextInt(capsules);
+    return GuestListing.page(engine, start, capsules, true, 100);
+  }
+
+  // books a fixed random share of the capsules
+  static void fill(BookingEngine engine, double occupancy, long seed){
+    SplittableRandom random = new SplittableRandom(seed);
+    int capacity = engine.capacity();
+    for (int n = 1; n <= capacity; n++){
+      if (random.nextDouble() < occupancy){
+        engine.checkIn(n, "Guest-" + n);
+      }
+    }
+  }
+}
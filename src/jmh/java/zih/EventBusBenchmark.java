@@ -0,0 +1,87 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a BookingEventBus on the booking path: check-in / check-out pairs on
+ * a half-full hotel with no listener, with a listener that does nothing (the
+ * engine then takes its stripe locks) and with a bus that has a subscriber
+ * counting the events on its own thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventBusBenchmark {
+  static final int CAPSULES = 100_000;
+
+  @Param({"none", "noop", "bus"})
+  String listener;
+
+  BookingEngine engine;
+  BookingEventBus bus;
+  volatile long delivered;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    engine = new BookingEngine(CAPSULES);
+    BookingBenchmark.fill(engine, 0.5, 42);
+    if (listener.equals("noop")){
+      engine.addListener(new BookingListener(){
+        @Override
+        public void onCheckIn(int capsuleNumber, String guestName){
+        }
+
+        @Override
+        public void onCheckOut(int capsuleNumber, String guestName){
+        }
+      });
+    } else if (listener.equals("bus")){
+      bus = BookingEventBus.attach(engine, 1 << 16);
+      bus.subscribe((event, sequence, endOfBatch) -> {
+        if (endOfBatch){
+          delivered = sequence;
+        }
+      });
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown(){
+    if (bus != null){
+      bus.close();
+    }
+  }
+
+  // books or frees a random capsule and undoes it: two events per call
+  @Benchmark
+  public boolean churn(){
+    int capsuleNumber = ThreadLocalRandom.current().nextInt(CAPSULES) + 1;
+    if (engine.checkIn(capsuleNumber, "Guest").isSuccess()){
+      engine.checkOut(capsuleNumber);
+      return true;
+    }
+    CheckOutResult left = engine.checkOut(capsuleNumber);
+    if (left.isSuccess()){
+      engine.checkIn(capsuleNumber, left.getGuestName());
+    }
+    return false;
+  }
+}
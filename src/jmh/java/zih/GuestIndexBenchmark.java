@@ -0,0 +1,69 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding a guest's capsule in a full hotel: through GuestIndex against the
+ * capsule-by-capsule scan that paging through viewGuests amounts to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class GuestIndexBenchmark {
+
+  @Param({"1000000", "10000000"})
+  public int capsules;
+
+  BookingEngine engine;
+  GuestIndex index;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    engine = new BookingEngine(capsules);
+    index = GuestIndex.attach(engine);
+    for (int n = 1; n <= capsules; n++){
+      engine.checkIn(n, "Guest-" + n);
+    }
+  }
+
+  @Benchmark
+  public int findIndexed(){
+    return index.capsuleOf("Guest-" + (ThreadLocalRandom.current().nextInt(capsules) + 1));
+  }
+
+  // one view window of guests whose name starts with a random 9-character prefix
+  @Benchmark
+  public List<GuestLocation> findByPrefix(){
+    String name = "Guest-" + (ThreadLocalRandom.current().nextInt(capsules) + 1);
+    return index.findByPrefix(name.substring(0, Math.min(9, name.length())), 11);
+  }
+
+  @Benchmark
+  public int findByScan(){
+    String wanted = "Guest-" + (ThreadLocalRandom.current().nextInt(capsules) + 1);
+    for (int n = 1; n <= capsules; n++){
+      if (wanted.equalsIgnoreCase(engine.guestAt(n))){
+        return n;
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,130 @@
+package zih;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for HotelHttpServer on localhost: `clients` concurrent clients each
+ * send requests back to back for a fixed time, mixing check-ins, check-outs,
+ * range views and stats. Prints throughput and latency percentiles per client count.
+ * Not a JMH benchmark, the server and clients share the machine:
+ *
+ *   java -cp target/benchmarks.jar zih.HttpLoadTest [seconds] [clients...]
+ */
+public class HttpLoadTest {
+  public static void main(String[] args) throws Exception {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    int[] clientCounts = args.length > 1
+            ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+            : new int[]{100, 1000, 2000, 4000};
+    int capsules = 100_000;
+
+    BookingEngine engine = new BookingEngine(capsules);
+    BookingBenchmark.fill(engine, 0.5, 42);
+    try (HotelHttpServer server = HotelHttpServer.start(engine, new InetSocketAddress("localhost", 0))){
+      System.out.printf("%s capsules, %s s per run, server on %s%n", capsules, seconds,
+              server.usesVirtualThreads() ? "virtual threads" : "platform threads");
+      System.out.printf("%8s %12s %10s %10s %10s %8s%n", "clients", "requests/s", "p50 ms", "p99 ms", "max ms", "errors");
+      for (int clients : clientCounts){
+        run(server.port(), capsules, clients, seconds);
+      }
+    }
+  }
+
+  static void run(int port, int capsules, int clients, int seconds) throws Exception {
+    HttpClient client = HttpClient.newBuilder()
+            // plain keep-alive connections, no h2c upgrade attempt on every new one
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(HotelHttpServer.requestExecutor())
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+    String base = "http://localhost:" + port;
+    long[][] latencies = new long[clients][];
+    int[] counts = new int[clients];
+    AtomicLong errors = new AtomicLong();
+    CountDownLatch done = new CountDownLatch(clients);
+    ExecutorService threads = HotelHttpServer.requestExecutor();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+    for (int c = 0; c < clients; c++){
+      int clientId = c;
+      threads.execute(() -> {
+        long[] own = new long[1024];
+        int count = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+          while (System.nanoTime() < deadline){
+            String path;
+            String method = "POST";
+            int capsuleNumber = random.nextInt(capsules) + 1;
+            int pick = random.nextInt(10);
+            if (pick < 4){
+              path = "/checkin?capsule=" + capsuleNumber + "&guest=Client-" + clientId;
+            } else if (pick < 8){
+              path = "/checkout?capsule=" + capsuleNumber;
+            } else if (pick < 9){
+              method = "GET";
+              int start = Math.min(capsuleNumber, capsules - 11);
+              path = "/guests?start=" + start + "&end=" + (start + 11);
+            } else {
+              method = "GET";
+              path = "/stats";
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + path))
+                    .method(method, HttpRequest.BodyPublishers.noBody())
+                    .build();
+            long started = System.nanoTime();
+            try {
+              HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+              if (response.statusCode() >= 500){
+                errors.incrementAndGet();
+              }
+            } catch (Exception e){
+              errors.incrementAndGet();
+              continue;
+            }
+            if (count == own.length){
+              own = Arrays.copyOf(own, count * 2);
+            }
+            own[count++] = System.nanoTime() - started;
+          }
+        } finally {
+          latencies[clientId] = own;
+          counts[clientId] = count;
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+    threads.shutdown();
+
+    long total = 0;
+    for (int count : counts){
+      total += count;
+    }
+    long[] all = new long[(int) total];
+    int at = 0;
+    for (int c = 0; c < clients; c++){
+      System.arraycopy(latencies[c], 0, all, at, counts[c]);
+      at += counts[c];
+    }
+    Arrays.sort(all);
+    System.out.printf("%8d %12.0f %10.2f %10.2f %10.2f %8d%n", clients, (double) total / seconds,
+            percentile(all, 0.50), percentile(all, 0.99), all.length == 0 ? 0 : all[all.length - 1] / 1e6,
+            errors.get());
+  }
+
+  private static double percentile(long[] sorted, double p){
+    return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, sorted.length * p)] / 1e6;
+  }
+}
@@ -0,0 +1,67 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of InstrumentedHotelService on the booking path: the same check-in /
+ * check-out churn on a half-full hotel, straight on the engine and through the
+ * metrics decorator. Run with several thread counts (BenchmarkRunner) to see
+ * that the striped counters do not become a shared hot spot.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+  static final int CAPSULES = 100_000;
+
+  BookingEngine engine;
+  InstrumentedHotelService instrumented;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    engine = new BookingEngine(CAPSULES);
+    BookingBenchmark.fill(engine, 0.5, 42);
+    instrumented = new InstrumentedHotelService(engine);
+  }
+
+  @Benchmark
+  public boolean churnPlain(){
+    return churn(engine);
+  }
+
+  @Benchmark
+  public boolean churnInstrumented(){
+    return churn(instrumented);
+  }
+
+  // books or frees a random capsule and undoes it, so occupancy stays put
+  private static boolean churn(HotelService service){
+    int capsuleNumber = ThreadLocalRandom.current().nextInt(CAPSULES) + 1;
+    CheckInResult result = service.checkIn(capsuleNumber, "Guest");
+    if (result.isSuccess()){
+      service.checkOut(capsuleNumber);
+      return true;
+    }
+    CheckOutResult left = service.checkOut(capsuleNumber);
+    if (left.isSuccess()){
+      service.checkIn(capsuleNumber, left.getGuestName());
+    }
+    return false;
+  }
+}
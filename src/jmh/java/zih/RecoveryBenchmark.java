@@ -0,0 +1,86 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Startup cost of HotelStore.open: load the snapshot, then replay the journal on top.
+ * The saved state is a half-full snapshot of `capsules` capsules followed by `events`
+ * journal records. The 10^8 event case writes roughly 2 GB, so run it on a disk with room:
+ *
+ *   java -cp target/benchmarks.jar zih.BenchmarkRunner RecoveryBenchmark 1
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@Threads(1)
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+
+  @Param({"1000000", "10000000"})
+  public int capsules;
+
+  @Param({"0", "10000000", "100000000"})
+  public long events;
+
+  Path directory;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("hotel-recovery");
+    BookingEngine engine = new BookingEngine(capsules);
+    BookingBenchmark.fill(engine, 0.5, 7);
+    HotelStore.writeSnapshot(engine, directory, 0);
+
+    // append straight to the journal, nobody waits for the fsyncs while generating
+    SplittableRandom random = new SplittableRandom(11);
+    try (BookingJournal journal = BookingJournal.open(directory, capsules, 0)){
+      for (long i = 0; i < events; i++){
+        int capsuleNumber = random.nextInt(capsules) + 1;
+        if (engine.guestAt(capsuleNumber) == null){
+          engine.checkIn(capsuleNumber, "Guest-" + (i & 1023));
+          journal.onCheckIn(capsuleNumber, "Guest-" + (i & 1023));
+        } else {
+          engine.checkOut(capsuleNumber);
+          journal.onCheckOut(capsuleNumber, null);
+        }
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)){
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public int recover() throws IOException {
+    try (HotelStore store = HotelStore.open(directory, capsules)){
+      return store.engine().occupiedCount();
+    }
+  }
+}
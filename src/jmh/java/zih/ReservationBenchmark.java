@@ -0,0 +1,83 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Availability queries on a ReservationBook holding a year of stays: every
+ * capsule gets back-to-back stays of 1-7 nights with gaps of 0-7 nights, so
+ * about half the capsule-nights are taken. Queries are for a random week,
+ * and for the whole year (the worst case: every night's bitmap is ORed).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ReservationBenchmark {
+  static final LocalDate FIRST_DAY = LocalDate.of(2026, 1, 1);
+  static final int DAYS = 365;
+
+  @Param({"100000"})
+  public int capsules;
+
+  @Param({"10", "1000"})
+  public int limit;
+
+  ReservationBook book;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    book = new ReservationBook(capsules);
+    Random random = new Random(42);
+    for (int n = 1; n <= capsules; n++){
+      int day = random.nextInt(8);
+      while (day < DAYS){
+        int nights = 1 + random.nextInt(7);
+        book.reserve(n, "Guest-" + (n % 1000), FIRST_DAY.plusDays(day), FIRST_DAY.plusDays(day + nights));
+        day += nights + random.nextInt(8);
+      }
+    }
+  }
+
+  @Benchmark
+  public int[] freeForAWeek(){
+    LocalDate arrival = FIRST_DAY.plusDays(ThreadLocalRandom.current().nextInt(DAYS - 7));
+    return book.freeCapsules(arrival, arrival.plusDays(7), limit);
+  }
+
+  @Benchmark
+  public int[] freeForTheYear(){
+    return book.freeCapsules(FIRST_DAY, FIRST_DAY.plusDays(DAYS), limit);
+  }
+
+  @Benchmark
+  public int countFreeForAWeek(){
+    LocalDate arrival = FIRST_DAY.plusDays(ThreadLocalRandom.current().nextInt(DAYS - 7));
+    return book.countFree(arrival, arrival.plusDays(7));
+  }
+
+  // books the first capsule free for two nights and cancels it again
+  @Benchmark
+  public boolean reserveAnyAndCancel(){
+    LocalDate arrival = FIRST_DAY.plusDays(ThreadLocalRandom.current().nextInt(DAYS - 2));
+    ReservationResult result = book.reserveAny("Walk-in", arrival, arrival.plusDays(2));
+    return result.isSuccess() && book.cancel(result.getReservation());
+  }
+}
@@ -0,0 +1,60 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding a wing to a half-full hotel: resize in place (new segments, the
+ * existing slots untouched) against what it took before, a new engine of the
+ * larger size with every guest copied over. Each operation adds the wing and
+ * takes it away again so the hotel is the same size for the next one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResizeBenchmark {
+  @Param({"1000000", "10000000"})
+  public int capsules;
+
+  @Param({"1000", "100000"})
+  public int wing;
+
+  BookingEngine engine;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    engine = new BookingEngine(capsules);
+    BookingBenchmark.fill(engine, 0.5, 42);
+  }
+
+  @Benchmark
+  public int growAndShrinkInPlace(){
+    engine.resize(capsules + wing);
+    engine.resize(capsules);
+    return engine.capacity();
+  }
+
+  @Benchmark
+  public int rebuildWithWing(){
+    BookingEngine larger = new BookingEngine(capsules + wing);
+    for (int n = engine.nextOccupied(1); n > 0; n = engine.nextOccupied(n + 1)){
+      larger.checkIn(n, engine.guestAt(n));
+    }
+    return larger.capacity();
+  }
+}
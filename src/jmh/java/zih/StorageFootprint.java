@@ -0,0 +1,47 @@
+package zih;
+
+import java.util.function.IntFunction;
+
+/**
+ * Heap and off-heap bytes taken by each CapsuleStorage backend for a half-full hotel.
+ * Guest names repeat (one of `names` distinct names per booking), as they do in practice.
+ * Not a JMH benchmark, footprint is measured once per backend after a full GC:
+ *
+ *   java -Xmx8g -cp target/benchmarks.jar zih.StorageFootprint [capsules] [names]
+ */
+public class StorageFootprint {
+  public static void main(String[] args){
+    int capsules = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+    int names = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+    System.out.printf("%d capsules, half full, %d distinct names%n", capsules, names);
+    measure("array", capsules, names, CapsuleStorage::array);
+    measure("dictionary", capsules, names, CapsuleStorage::dictionary);
+    measure("offHeap", capsules, names, CapsuleStorage::offHeap);
+  }
+
+  static void measure(String backend, int capsules, int names, IntFunction<CapsuleStorage> factory){
+    long before = usedHeap();
+    BookingEngine engine = new BookingEngine(factory.apply(capsules));
+    // fresh String per booking, like names read from the console or the network
+    for (int n = 1; n <= capsules; n += 2){
+      engine.checkIn(n, new String("Guest-" + (n % names)));
+    }
+    long heap = usedHeap() - before;
+    long offHeap = engine.storage instanceof OffHeapCapsuleStorage
+            ? ((OffHeapCapsuleStorage) engine.storage).offHeapBytes() : 0;
+    System.out.printf("%-11s heap %,15d bytes (%5.1f per capsule)   off-heap %,15d bytes%n",
+            backend, heap, (double) heap / capsules, offHeap);
+    // keep the engine reachable until it has been measured
+    if (engine.occupiedCount() < 0){
+      System.out.println(engine);
+    }
+  }
+
+  private static long usedHeap(){
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++){
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,106 @@
+package zih;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Peak check-out waves against Housekeeping: a full hotel of 100 floors checks
+ * out `waveSize` guests at once from 4 threads, arrivals refill it through
+ * checkInAny (so they wait for clean capsules), `waves` times. Each cleaning
+ * takes `cleanMicros`, plus the same again when the worker changes floors; 0
+ * measures the scheduler alone. Prints cleanings per second and queue wait
+ * percentiles per worker count. Not a JMH benchmark, the waves are the load:
+ *
+ *   java -cp target/benchmarks.jar zih.TurnoverLoadTest [waves] [waveSize] [cleanMicros] [workers...]
+ */
+public class TurnoverLoadTest {
+  static final int CAPSULES = 100_000;
+  static final int CAPSULES_PER_FLOOR = 1_000;
+  static final int THREADS = 4;
+
+  public static void main(String[] args) throws Exception {
+    int waves = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    int waveSize = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+    long cleanNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 0);
+    int[] workerCounts = args.length > 3
+            ? Arrays.stream(args, 3, args.length).mapToInt(Integer::parseInt).toArray()
+            : new int[]{1, 4, 16};
+
+    System.out.printf("%s capsules, %s waves of %s check-outs, %s us per cleaning%n",
+            CAPSULES, waves, waveSize, TimeUnit.NANOSECONDS.toMicros(cleanNanos));
+    System.out.printf("%8s %14s %12s %12s %12s %14s%n",
+            "workers", "cleanings/s", "wait p50 ms", "wait p99 ms", "wait max ms", "floor changes");
+    for (int workers : workerCounts){
+      run(workers, waves, waveSize, cleanNanos);
+    }
+  }
+
+  static void run(int workers, int waves, int waveSize, long cleanNanos) throws Exception {
+    BookingEngine engine = new BookingEngine(CAPSULES);
+    for (int n = 1; n <= CAPSULES; n++){
+      engine.checkIn(n, "Guest-" + n);
+    }
+    ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+    Housekeeper housekeeper = (capsuleNumber, floor, previousFloor) -> {
+      long nanos = floor == previousFloor ? cleanNanos : 2 * cleanNanos;
+      if (nanos > 0){
+        LockSupport.parkNanos(nanos);
+      }
+    };
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 1 << 16);
+         Housekeeping housekeeping = Housekeeping.start(engine, bus, CAPSULES_PER_FLOOR, workers, housekeeper)){
+      long started = System.nanoTime();
+      for (int wave = 0; wave < waves; wave++){
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++){
+          tasks.add(threads.submit(() -> checkOutRandom(engine, waveSize / THREADS)));
+        }
+        for (Future<?> task : tasks){
+          task.get();
+        }
+        tasks.clear();
+        for (int t = 0; t < THREADS; t++){
+          tasks.add(threads.submit(() -> arrive(engine, waveSize / THREADS)));
+        }
+        for (Future<?> task : tasks){
+          task.get();
+        }
+      }
+      housekeeping.awaitIdle(10, TimeUnit.MINUTES);
+      long elapsed = System.nanoTime() - started;
+      LatencySnapshot wait = housekeeping.queueLatency();
+      System.out.printf("%8d %14.0f %12.2f %12.2f %12.2f %14d%n", workers,
+              housekeeping.cleanedCount() / (elapsed / 1e9),
+              wait.getP50() / 1e6, wait.getP99() / 1e6, wait.getMax() / 1e6, housekeeping.floorChangeCount());
+    } finally {
+      threads.shutdown();
+    }
+  }
+
+  // checks out count guests from random occupied capsules
+  static void checkOutRandom(BookingEngine engine, int count){
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int done = 0;
+    while (done < count){
+      if (engine.checkOut(random.nextInt(CAPSULES) + 1).isSuccess()){
+        done++;
+      }
+    }
+  }
+
+  // books count guests, waiting while every free capsule is still dirty
+  static void arrive(BookingEngine engine, int count){
+    for (int i = 0; i < count; i++){
+      while (!engine.checkInAny("Arrival-" + i, AssignmentPolicy.LOWEST_NUMBERED).isSuccess()){
+        Thread.onSpinWait();
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package zih;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Front-desk traffic: screens view the windows around a few dozen busy
+ * capsules over and over, and now and then a guest checks in or out of one of
+ * them. Every operation is a view of viewGuests' 11 capsules, through
+ * GuestViewCache or rendered from a HotelView the way printGuestInRange does
+ * without it, or, writeShare of the time, a booking on the same engine. The
+ * hit ratio of each cached trial is printed at the end.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ViewCacheBenchmark {
+  static final int VIEW_RANGE = 11;
+  // capsules the screens keep looking at
+  static final int NEIGHBOURHOODS = 64;
+
+  @Param({"100000"})
+  public int capsules;
+
+  // share of operations that book instead of view
+  @Param({"0.01", "0.1"})
+  public double writeShare;
+
+  BookingEngine cachedEngine;
+  GuestViewCache cache;
+  BookingEngine plainEngine;
+  int[] neighbourhoods;
+
+  @Setup(Level.Trial)
+  public void setUp(){
+    cachedEngine = new BookingEngine(capsules);
+    cache = GuestViewCache.attach(cachedEngine, 256);
+    plainEngine = new BookingEngine(capsules);
+    BookingBenchmark.fill(cachedEngine, 0.5, 42);
+    BookingBenchmark.fill(plainEngine, 0.5, 42);
+    neighbourhoods = new int[NEIGHBOURHOODS];
+    for (int i = 0; i < NEIGHBOURHOODS; i++){
+      neighbourhoods[i] = (int) ((long) capsules * (2 * i + 1) / (2 * NEIGHBOURHOODS));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown(){
+    if (cache.missCount() == 0){
+      return;                             // an uncached trial
+    }
+    System.out.printf("%nview cache hit ratio %.3f, %d invalidations%n",
+            cache.hitRatio(), cache.invalidationCount());
+  }
+
+  @Benchmark
+  public Object cached(){
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int capsuleNumber = neighbourhoods[random.nextInt(NEIGHBOURHOODS)];
+    if (random.nextDouble() < writeShare){
+      return book(cachedEngine, capsuleNumber + random.nextInt(VIEW_RANGE / 2));
+    }
+    int start = CapsuleHotel.viewStart(capsuleNumber, capsules, VIEW_RANGE);
+    return cache.render(start, start + VIEW_RANGE);
+  }
+
+  @Benchmark
+  public Object uncached(){
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int capsuleNumber = neighbourhoods[random.nextInt(NEIGHBOURHOODS)];
+    if (random.nextDouble() < writeShare){
+      return book(plainEngine, capsuleNumber + random.nextInt(VIEW_RANGE / 2));
+    }
+    int start = CapsuleHotel.viewStart(capsuleNumber, capsules, VIEW_RANGE);
+    StringBuilder out = new StringBuilder(32 + 24 * VIEW_RANGE);
+    try (HotelView view = plainEngine.openView()){
+      GuestRangeRenderer.render(view, start, start + VIEW_RANGE, out);
+    }
+    return out.toString();
+  }
+
+  // checks a guest in or out, so the occupancy stays where it was
+  static Object book(BookingEngine engine, int capsuleNumber){
+    CheckOutResult checkedOut = engine.checkOut(capsuleNumber);
+    return checkedOut.isSuccess() ? checkedOut : engine.checkIn(capsuleNumber, "Walk-in");
+  }
+}
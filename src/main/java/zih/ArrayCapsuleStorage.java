@@ -0,0 +1,39 @@
+package zih;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * One String reference per capsule, updated through a VarHandle on the array.
+ * Fastest to read, but every guest keeps its own String on the heap.
+ */
+public class ArrayCapsuleStorage implements CapsuleStorage {
+  private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(String[].class);
+
+  final String[] slots;
+
+  public ArrayCapsuleStorage(int capacity){
+    slots = new String[capacity];
+  }
+
+  @Override
+  public int capacity(){
+    return slots.length;
+  }
+
+  @Override
+  public String get(int index){
+    return (String) SLOTS.getAcquire(slots, index);
+  }
+
+  @Override
+  public void set(int index, String value){
+    SLOTS.setRelease(slots, index, value);
+  }
+
+  @Override
+  public boolean compareAndSet(int index, String expected, String update){
+    // values read from this array are the stored instances, identity is enough
+    return SLOTS.compareAndSet(slots, index, expected, update);
+  }
+}
@@ -0,0 +1,16 @@
+package zih;
+
+/**
+ * How HotelService.checkInAny picks a free capsule for a guest.
+ * Every policy finds its capsule through the occupancy summary tree, so the
+ * cost does not grow with the number of occupied capsules.
+ */
+public enum AssignmentPolicy {
+  // the free capsule with the smallest number, keeps guests packed at the front
+  LOWEST_NUMBERED,
+  // the next free capsule after the one handed out last, wears capsules evenly
+  ROUND_ROBIN,
+  // starts each search at a bit-reversed counter (1/2, 1/4, 3/4, 1/8, ... of the
+  // hotel), so guests land far apart while the hotel is quiet
+  SPREAD_OUT
+}
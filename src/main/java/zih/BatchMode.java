@@ -0,0 +1,11 @@
+package zih;
+
+/**
+ * What a batch check-in or check-out does when some of its items fail.
+ */
+public enum BatchMode {
+  // either every item is booked or none is; the rest are reported ROLLED_BACK
+  ALL_OR_NOTHING,
+  // items are booked independently, failures do not affect the others
+  BEST_EFFORT
+}
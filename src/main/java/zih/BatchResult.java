@@ -0,0 +1,48 @@
+package zih;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Per-item outcome of a batch check-in or check-out, in the order the items were given.
+ * R is CheckInResult or CheckOutResult.
+ */
+public final class BatchResult<R> {
+  private final List<R> results;
+  private final int successCount;
+
+  BatchResult(List<R> results, int successCount){
+    this.results = Collections.unmodifiableList(results);
+    this.successCount = successCount;
+  }
+
+  // true if every item succeeded
+  public boolean isSuccess(){
+    return successCount == results.size();
+  }
+
+  public int size(){
+    return results.size();
+  }
+
+  public R get(int item){
+    return results.get(item);
+  }
+
+  public List<R> getResults(){
+    return results;
+  }
+
+  public int getSuccessCount(){
+    return successCount;
+  }
+
+  public int getFailureCount(){
+    return results.size() - successCount;
+  }
+
+  @Override
+  public String toString(){
+    return "BatchResult[" + successCount + "/" + results.size() + " succeeded]";
+  }
+}
@@ -0,0 +1,886 @@
+package zih;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Booking core behind CapsuleHotel.
+ * Check-in and check-out take capsule numbers directly (no Scanner, no printing),
+ * return typed results and are safe to call from many threads at once.
+ *
+ * Each capsule slot is claimed with a compare-and-set, so two guests racing
+ * for the same capsule can never both win and a guest can only be checked out
+ * once. There is no global lock; threads working on different capsules never
+ * wait on each other.
+ *
+ * While a slot changes hands it briefly holds the BUSY marker, so the
+ * occupancy bit is always flipped by the one thread that owns the change.
+ * Readers treat a busy slot as unoccupied.
+ *
+ * Slots live in a pluggable CapsuleStorage (segmented arrays by default, or
+ * dictionary-encoded / off-heap to shrink the footprint of large hotels).
+ *
+ * With a resizable storage the hotel can grow and shrink while it takes
+ * bookings (see resize). Capsules past the end hold BUSY, so a booking that
+ * checked its capsule number just before a shrink fails instead of landing
+ * in a dropped capsule.
+ *
+ * An engine opened over a MappedSnapshot starts with every slot null, meaning
+ * "whatever the snapshot says". A slot is read from the snapshot the first time
+ * it is touched and from then on holds the guest or the VACANT marker, so large
+ * saved hotels are usable right away instead of after a full load.
+ *
+ * Listeners (journal, indexes, ...) are notified under a per-capsule lock stripe
+ * so they see each capsule's bookings in order. Without listeners that lock is
+ * skipped entirely. Register listeners before the engine takes traffic.
+ *
+ * Reports that need one consistent state read through a HotelView (openView),
+ * which bookings keep frozen by recording each capsule's guest before they
+ * change it.
+ *
+ * With turnover enabled (enableTurnover) a check-out leaves its capsule dirty
+ * rather than free: it keeps its occupancy bit, so searches for a free capsule
+ * pass it by, and a check-in naming it fails with CLEANING until
+ * finishCleaning. The dirty bit only changes while the slot is BUSY, so a
+ * booking that claimed the slot reads it without racing housekeeping. Dirty
+ * capsules are not journaled; after a restart they are simply free.
+ */
+public class BookingEngine implements HotelService {
+  // markers, compared by identity and never equal to a real guest name object
+  private static final String BUSY = CapsuleStorage.BUSY;
+  private static final String VACANT = CapsuleStorage.VACANT;
+  // power of two so the stripe is a mask away from the capsule index
+  private static final int STRIPES = 1024;
+
+  // guest name per capsule (0-based), null when the capsule is free
+  final CapsuleStorage storage;
+  // capsules in use; the storage and the occupancy index may briefly be larger during a resize
+  private volatile int capacity;
+  // saved state the slots are loaded from on first touch, null for a new hotel
+  private final MappedSnapshot snapshot;
+  // what a free slot holds once loaded: null, or VACANT when there is a snapshot
+  private final String free;
+  // occupied bits for the same capsules, flipped while the slot is busy
+  final OccupancyIndex occupancy;
+  // only used while listeners are registered
+  private final Object[] stripes = new Object[STRIPES];
+  private volatile BookingListener[] listeners = new BookingListener[0];
+  // open point-in-time views, told about every slot that goes BUSY
+  private volatile HotelView[] views = new HotelView[0];
+  // checked-out capsules waiting for housekeeping, null while turnover is off
+  private volatile OccupancyIndex dirty;
+  // where the next ROUND_ROBIN search starts
+  private final AtomicInteger roundRobinCursor = new AtomicInteger();
+  // bit-reversed to get the start of each SPREAD_OUT search
+  private final AtomicInteger spreadCounter = new AtomicInteger();
+
+  public BookingEngine(int numberOfCapsules){
+    this(CapsuleStorage.segmented(checkCapacity(numberOfCapsules)), null);
+  }
+
+  // runs on the given slot table, e.g. CapsuleStorage.dictionary(n) to save memory
+  public BookingEngine(CapsuleStorage storage){
+    this(storage, null);
+  }
+
+  // opens a saved hotel; guests are read from the mapped snapshot as capsules are touched
+  public BookingEngine(MappedSnapshot snapshot){
+    this(CapsuleStorage.segmented(checkCapacity(snapshot.capacity())), snapshot);
+  }
+
+  /**
+   * Opens a saved hotel on the given slot table, which must be empty and
+   * have the snapshot's capacity.
+   */
+  public BookingEngine(CapsuleStorage storage, MappedSnapshot snapshot){
+    int numberOfCapsules = checkCapacity(storage.capacity());
+    if (snapshot != null && snapshot.capacity() != numberOfCapsules){
+      throw new IllegalArgumentException("Storage has " + numberOfCapsules
+              + " capsules but the snapshot has " + snapshot.capacity());
+    }
+    this.storage = storage;
+    this.capacity = numberOfCapsules;
+    occupancy = new OccupancyIndex(numberOfCapsules);
+    this.snapshot = snapshot;
+    if (snapshot != null){
+      occupancy.load(snapshot);
+    }
+    free = snapshot == null ? null : VACANT;
+    for (int i = 0; i < STRIPES; i++){
+      stripes[i] = new Object();
+    }
+  }
+
+  public synchronized void addListener(BookingListener listener){
+    BookingListener[] current = listeners;
+    BookingListener[] updated = Arrays.copyOf(current, current.length + 1);
+    updated[current.length] = listener;
+    listeners = updated;
+  }
+
+  public synchronized void removeListener(BookingListener listener){
+    BookingListener[] current = listeners;
+    for (int i = 0; i < current.length; i++){
+      if (current[i] == listener){
+        BookingListener[] updated = new BookingListener[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, i);
+        System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+        listeners = updated;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Opens a view of the hotel as it is now. Bookings continue and never wait
+   * for it; close it when done, since it records every capsule that changes
+   * while it is open.
+   */
+  public synchronized HotelView openView(){
+    HotelView view = new HotelView(this, capacity);
+    HotelView[] current = views;
+    HotelView[] updated = Arrays.copyOf(current, current.length + 1);
+    updated[current.length] = view;
+    views = updated;
+    return view;
+  }
+
+  synchronized void closeView(HotelView view){
+    HotelView[] current = views;
+    for (int i = 0; i < current.length; i++){
+      if (current[i] == view){
+        HotelView[] updated = new HotelView[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, i);
+        System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+        views = updated;
+        return;
+      }
+    }
+  }
+
+  // tells the open views what the slot held before it went BUSY
+  private void recordChange(int index, String previousGuest){
+    for (HotelView view : views){
+      view.recordChange(index, previousGuest);
+    }
+  }
+
+  // raw slot content for a HotelView, BUSY past the end of the storage
+  String viewSlot(int index){
+    return slot(index);
+  }
+
+  /**
+   * From now on a check-out leaves its capsule dirty until finishCleaning.
+   */
+  public synchronized void enableTurnover(){
+    if (dirty == null){
+      dirty = new OccupancyIndex(capacity);
+    }
+  }
+
+  public boolean isTurnoverEnabled(){
+    return dirty != null;
+  }
+
+  /**
+   * @return true if the capsule was checked out and is not cleaned yet
+   */
+  public boolean isDirty(int capsuleNumber){
+    OccupancyIndex dirty = this.dirty;
+    return dirty != null && exists(capsuleNumber) && dirty.isOccupied(capsuleNumber - 1);
+  }
+
+  public int dirtyCount(){
+    OccupancyIndex dirty = this.dirty;
+    return dirty == null ? 0 : dirty.occupiedCount();
+  }
+
+  // 0-based indexes of the dirty capsules from fromIndex on, -1 past the last
+  int nextDirty(int fromIndex){
+    OccupancyIndex dirty = this.dirty;
+    return dirty == null ? -1 : dirty.nextOccupied(fromIndex);
+  }
+
+  /**
+   * Puts a dirty capsule back into service and tells the listeners through
+   * onCleaningFinished.
+   * @return false if it was not dirty (already cleaned, or turnover is off)
+   */
+  public boolean finishCleaning(int capsuleNumber){
+    OccupancyIndex dirty = this.dirty;
+    if (dirty == null || !exists(capsuleNumber)){
+      return false;
+    }
+    int index = capsuleNumber - 1;
+    BookingListener[] listeners = this.listeners;
+    if (listeners.length == 0){
+      return clean(dirty, index);
+    }
+    // under the stripe, so listeners hear of it after the check-out that left the capsule dirty
+    synchronized (stripes[index & (STRIPES - 1)]){
+      if (!clean(dirty, index)){
+        return false;
+      }
+      for (BookingListener listener : listeners){
+        listener.onCleaningFinished(capsuleNumber);
+      }
+    }
+    return true;
+  }
+
+  private boolean clean(OccupancyIndex dirty, int index){
+    // own the slot, so no booking reads the dirty bit half-way
+    if (!dirty.isOccupied(index) || !storage.compareAndSet(index, free, BUSY)){
+      return false;
+    }
+    boolean cleaned = dirty.release(index);
+    if (cleaned){
+      occupancy.release(index);
+    }
+    storage.set(index, free);
+    return cleaned;
+  }
+
+  private static int checkCapacity(int numberOfCapsules){
+    if (numberOfCapsules <= 0){
+      throw new IllegalArgumentException("Number of capsules must be greater than 0.");
+    }
+    return numberOfCapsules;
+  }
+
+  @Override
+  public int capacity(){
+    return capacity;
+  }
+
+  @Override
+  public boolean exists(int capsuleNumber){
+    return capsuleNumber >= 1 && capsuleNumber <= capacity;
+  }
+
+  /**
+   * Books guestName into the capsule if it is free.
+   * Fails with DOES_NOT_EXIST, OCCUPIED or, with turnover, CLEANING.
+   */
+  @Override
+  public CheckInResult checkIn(int capsuleNumber, String guestName){
+    if (guestName == null){
+      throw new IllegalArgumentException("guestName must not be null");
+    }
+    if (!exists(capsuleNumber)){
+      return CheckInResult.failed(BookingError.DOES_NOT_EXIST, capsuleNumber, guestName);
+    }
+    return book(capsuleNumber - 1, guestName)
+            ? CheckInResult.booked(capsuleNumber, guestName)
+            : CheckInResult.failed(refusal(capsuleNumber), capsuleNumber, guestName);
+  }
+
+  // why a capsule that exists could not be claimed
+  private BookingError refusal(int capsuleNumber){
+    return isDirty(capsuleNumber) ? BookingError.CLEANING : BookingError.OCCUPIED;
+  }
+
+  /**
+   * Books guestName into a free capsule picked by policy.
+   * Fails with NO_VACANCY when every capsule is taken.
+   *
+   * The search only suggests a capsule; the booking itself is the same claim
+   * checkIn makes. A suggestion another thread claims first just moves the
+   * search on, so concurrent callers never share a capsule and a failed try
+   * always means someone else got booked.
+   */
+  @Override
+  public CheckInResult checkInAny(String guestName, AssignmentPolicy policy){
+    if (guestName == null){
+      throw new IllegalArgumentException("guestName must not be null");
+    }
+    int capacity = this.capacity;
+    int index = occupancy.nextFreeWrapping(searchStart(policy, capacity));
+    while (index >= 0){
+      if (book(index, guestName)){
+        if (policy == AssignmentPolicy.ROUND_ROBIN){
+          roundRobinCursor.lazySet(index + 1 == capacity ? 0 : index + 1);
+        }
+        return CheckInResult.booked(index + 1, guestName);
+      }
+      index = occupancy.nextFreeWrapping(index + 1 == capacity ? 0 : index + 1);
+    }
+    return CheckInResult.failed(BookingError.NO_VACANCY, 0, guestName);
+  }
+
+  // 0-based index the policy's search starts from
+  private int searchStart(AssignmentPolicy policy, int capacity){
+    switch (policy){
+      case ROUND_ROBIN:
+        return roundRobinCursor.get();
+      case SPREAD_OUT:
+        // reverse the counter's low bits; at most half the values overshoot the capacity
+        int bits = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        while (true){
+          int start = bits == 0 ? 0 : Integer.reverse(spreadCounter.getAndIncrement()) >>> (32 - bits);
+          if (start < capacity){
+            return start;
+          }
+        }
+      case LOWEST_NUMBERED:
+      default:
+        return 0;
+    }
+  }
+
+  // claims the slot and tells the listeners, false if it was not free
+  private boolean book(int index, String guestName){
+    BookingListener[] listeners = this.listeners;
+    if (listeners.length == 0){
+      return claim(index, guestName);
+    }
+    int capsuleNumber = index + 1;
+    boolean booked;
+    synchronized (stripes[index & (STRIPES - 1)]){
+      booked = claim(index, guestName);
+      if (booked){
+        for (BookingListener listener : listeners){
+          listener.onCheckIn(capsuleNumber, guestName);
+        }
+      }
+    }
+    if (booked){
+      for (BookingListener listener : listeners){
+        listener.afterCommit();
+      }
+    }
+    return booked;
+  }
+
+  /**
+   * Books each guest into its capsule.
+   *
+   * Works in two passes. The first validates every item and moves each wanted
+   * slot from free to BUSY; the second writes the guests and notifies listeners,
+   * which wait for the journal once for the whole batch instead of once per guest.
+   * Busy slots read as unoccupied and cannot be claimed by anyone else, so an
+   * ALL_OR_NOTHING batch that fails is undone by freeing its busy slots again and
+   * nobody ever sees a half-booked batch as booked.
+   */
+  @Override
+  public BatchResult<CheckInResult> checkInAll(Map<Integer, String> bookings, BatchMode mode){
+    int size = bookings.size();
+    int[] indexes = new int[size];
+    String[] guestNames = new String[size];
+    BookingError[] errors = new BookingError[size];
+    boolean failed = false;
+    int item = 0;
+    for (Map.Entry<Integer, String> booking : bookings.entrySet()){
+      if (booking.getKey() == null || booking.getValue() == null){
+        throw new IllegalArgumentException("capsule numbers and guest names must not be null");
+      }
+      indexes[item] = booking.getKey() - 1;
+      guestNames[item] = booking.getValue();
+      if (!exists(booking.getKey())){
+        errors[item] = BookingError.DOES_NOT_EXIST;
+        failed = true;
+      }
+      item++;
+    }
+
+    if (failed && mode == BatchMode.ALL_OR_NOTHING){
+      rollBackFrom(errors, 0);        // nothing reserved yet
+    } else {
+      for (item = 0; item < size; item++){
+        if (errors[item] == null && !reserve(indexes[item])){
+          errors[item] = refusal(indexes[item] + 1);
+          failed = true;
+          if (mode == BatchMode.ALL_OR_NOTHING){
+            rollBackFrom(errors, item + 1);
+            break;
+          }
+        }
+      }
+    }
+    return finishCheckIns(indexes, guestNames, errors, failed && mode == BatchMode.ALL_OR_NOTHING);
+  }
+
+  /**
+   * Books each guest into a free capsule picked by policy, two passes like
+   * checkInAll(Map, BatchMode). LOWEST_NUMBERED and ROUND_ROBIN continue one
+   * search from capsule to capsule instead of starting over for every guest.
+   */
+  @Override
+  public BatchResult<CheckInResult> checkInAll(List<String> guestNames, AssignmentPolicy policy, BatchMode mode){
+    int size = guestNames.size();
+    String[] names = guestNames.toArray(new String[0]);
+    for (String guestName : names){
+      if (guestName == null){
+        throw new IllegalArgumentException("guestName must not be null");
+      }
+    }
+    int[] indexes = new int[size];
+    BookingError[] errors = new BookingError[size];
+    boolean failed = false;
+    int capacity = this.capacity;
+    int from = searchStart(policy, capacity);
+    int last = -1;
+    for (int item = 0; item < size; item++){
+      int index = occupancy.nextFreeWrapping(from);
+      while (index >= 0 && !reserve(index)){
+        index = occupancy.nextFreeWrapping(index + 1 == capacity ? 0 : index + 1);
+      }
+      indexes[item] = index;
+      if (index < 0){
+        // the hotel is full, so is it for every guest after this one
+        failed = true;
+        for (int rest = item; rest < size; rest++){
+          indexes[rest] = -1;
+          errors[rest] = rest > item && mode == BatchMode.ALL_OR_NOTHING
+                  ? BookingError.ROLLED_BACK : BookingError.NO_VACANCY;
+        }
+        break;
+      }
+      last = index;
+      from = policy == AssignmentPolicy.SPREAD_OUT
+              ? searchStart(policy, capacity)
+              : (index + 1 == capacity ? 0 : index + 1);
+    }
+    boolean rollBack = failed && mode == BatchMode.ALL_OR_NOTHING;
+    if (policy == AssignmentPolicy.ROUND_ROBIN && last >= 0 && !rollBack){
+      roundRobinCursor.lazySet(last + 1 == capacity ? 0 : last + 1);
+    }
+    return finishCheckIns(indexes, names, errors, rollBack);
+  }
+
+  /**
+   * Checks out every capsule, two passes like checkInAll: the first swaps each
+   * guest for BUSY, the second frees the slots and notifies listeners. An
+   * ALL_OR_NOTHING batch that fails puts its guests back in their capsules.
+   */
+  @Override
+  public BatchResult<CheckOutResult> checkOutAll(int[] capsuleNumbers, BatchMode mode){
+    int size = capsuleNumbers.length;
+    String[] guestNames = new String[size];
+    BookingError[] errors = new BookingError[size];
+    boolean failed = false;
+    for (int item = 0; item < size; item++){
+      if (!exists(capsuleNumbers[item])){
+        errors[item] = BookingError.DOES_NOT_EXIST;
+        failed = true;
+      }
+    }
+
+    if (failed && mode == BatchMode.ALL_OR_NOTHING){
+      rollBackFrom(errors, 0);
+    } else {
+      for (int item = 0; item < size; item++){
+        if (errors[item] != null){
+          continue;
+        }
+        guestNames[item] = seize(capsuleNumbers[item] - 1);
+        if (guestNames[item] == null){
+          errors[item] = BookingError.UNOCCUPIED;
+          failed = true;
+          if (mode == BatchMode.ALL_OR_NOTHING){
+            rollBackFrom(errors, item + 1);
+            break;
+          }
+        }
+      }
+    }
+
+    boolean rollBack = failed && mode == BatchMode.ALL_OR_NOTHING;
+    BookingListener[] listeners = this.listeners;
+    List<CheckOutResult> results = new ArrayList<>(size);
+    int checkedOut = 0;
+    for (int item = 0; item < size; item++){
+      int capsuleNumber = capsuleNumbers[item];
+      int index = capsuleNumber - 1;
+      if (errors[item] != null){
+        results.add(CheckOutResult.failed(errors[item], capsuleNumber));
+      } else if (rollBack){
+        storage.set(index, guestNames[item]);
+        results.add(CheckOutResult.failed(BookingError.ROLLED_BACK, capsuleNumber));
+      } else {
+        if (listeners.length == 0){
+          empty(index);
+        } else {
+          synchronized (stripes[index & (STRIPES - 1)]){
+            empty(index);
+            for (BookingListener listener : listeners){
+              listener.onCheckOut(capsuleNumber, guestNames[item]);
+            }
+          }
+        }
+        results.add(CheckOutResult.checkedOut(capsuleNumber, guestNames[item]));
+        checkedOut++;
+      }
+    }
+    afterBatch(listeners, checkedOut);
+    return new BatchResult<>(results, checkedOut);
+  }
+
+  // second pass of a batch check-in: items without an error hold a reserved slot
+  private BatchResult<CheckInResult> finishCheckIns(int[] indexes, String[] guestNames,
+                                                    BookingError[] errors, boolean rollBack){
+    BookingListener[] listeners = this.listeners;
+    List<CheckInResult> results = new ArrayList<>(indexes.length);
+    int booked = 0;
+    for (int item = 0; item < indexes.length; item++){
+      int index = indexes[item];
+      String guestName = guestNames[item];
+      if (errors[item] != null){
+        results.add(CheckInResult.failed(errors[item], index + 1, guestName));
+      } else if (rollBack){
+        unreserve(index);
+        results.add(CheckInResult.failed(BookingError.ROLLED_BACK, index + 1, guestName));
+      } else {
+        if (listeners.length == 0){
+          storage.set(index, guestName);
+        } else {
+          synchronized (stripes[index & (STRIPES - 1)]){
+            storage.set(index, guestName);
+            for (BookingListener listener : listeners){
+              listener.onCheckIn(index + 1, guestName);
+            }
+          }
+        }
+        results.add(CheckInResult.booked(index + 1, guestName));
+        booked++;
+      }
+    }
+    afterBatch(listeners, booked);
+    return new BatchResult<>(results, booked);
+  }
+
+  // marks the items from first on that have no error yet as rolled back
+  private static void rollBackFrom(BookingError[] errors, int first){
+    for (int item = first; item < errors.length; item++){
+      if (errors[item] == null){
+        errors[item] = BookingError.ROLLED_BACK;
+      }
+    }
+  }
+
+  // one afterCommit per batch, e.g. one journal flush wait for all its bookings
+  private static void afterBatch(BookingListener[] listeners, int committed){
+    if (committed > 0){
+      for (BookingListener listener : listeners){
+        listener.afterCommit();
+      }
+    }
+  }
+
+  /**
+   * Frees the capsule and reports who was in it.
+   * Fails with DOES_NOT_EXIST or UNOCCUPIED.
+   */
+  @Override
+  public CheckOutResult checkOut(int capsuleNumber){
+    if (!exists(capsuleNumber)){
+      return CheckOutResult.failed(BookingError.DOES_NOT_EXIST, capsuleNumber);
+    }
+    int index = capsuleNumber - 1;
+    BookingListener[] listeners = this.listeners;
+    String guestName;
+    if (listeners.length == 0){
+      guestName = vacate(index);
+    } else {
+      synchronized (stripes[index & (STRIPES - 1)]){
+        guestName = vacate(index);
+        if (guestName != null){
+          for (BookingListener listener : listeners){
+            listener.onCheckOut(capsuleNumber, guestName);
+          }
+        }
+      }
+      if (guestName != null){
+        for (BookingListener listener : listeners){
+          listener.afterCommit();
+        }
+      }
+    }
+    return guestName != null
+            ? CheckOutResult.checkedOut(capsuleNumber, guestName)
+            : CheckOutResult.failed(BookingError.UNOCCUPIED, capsuleNumber);
+  }
+
+  // moves the slot from free to guestName, false if it was not free
+  private boolean claim(int index, String guestName){
+    if (!reserve(index)){
+      return false;
+    }
+    storage.set(index, guestName);
+    return true;
+  }
+
+  // moves the slot from free to BUSY and marks it occupied, false if it was not free
+  private boolean reserve(int index){
+    // only one thread can move the slot away from free
+    if (!storage.compareAndSet(index, free, BUSY)){
+      if (snapshot == null || slot(index) != free || !storage.compareAndSet(index, free, BUSY)){
+        return false;
+      }
+    }
+    if (index >= capacity){
+      // a capsule a growing hotel has freed but not opened yet
+      storage.set(index, free);
+      return false;
+    }
+    OccupancyIndex dirty = this.dirty;
+    if (dirty != null && dirty.isOccupied(index)){
+      // waiting for housekeeping; its occupancy bit stays set until finishCleaning
+      storage.set(index, free);
+      return false;
+    }
+    occupancy.occupy(index);
+    // after the bit: a view that opens before this read already sees the capsule occupied
+    if (views.length != 0){
+      recordChange(index, null);
+    }
+    return true;
+  }
+
+  // hands a reserved slot back
+  private void unreserve(int index){
+    occupancy.release(index);
+    storage.set(index, free);
+  }
+
+  // empties the slot and returns who was in it, null if it was already free
+  private String vacate(int index){
+    String guestName = seize(index);
+    if (guestName != null){
+      empty(index);
+    }
+    return guestName;
+  }
+
+  // frees a seized slot, or with turnover leaves it dirty and still marked occupied
+  private void empty(int index){
+    OccupancyIndex dirty = this.dirty;
+    if (dirty == null){
+      occupancy.release(index);
+    } else {
+      dirty.occupy(index);
+    }
+    storage.set(index, free);
+  }
+
+  // moves the slot from its guest to BUSY and returns the guest, null if it was free
+  private String seize(int index){
+    while (true){
+      String guestName = slot(index);
+      if (guestName == free || guestName == BUSY){
+        return null;
+      }
+      // whoever swaps the guest out owns the check-out
+      if (storage.compareAndSet(index, guestName, BUSY)){
+        if (views.length != 0){
+          recordChange(index, guestName);
+        }
+        return guestName;
+      }
+    }
+  }
+
+  // raw slot content, loading it from the snapshot on first touch
+  private String slot(int index){
+    String raw = storage.get(index);
+    if (raw == null && snapshot != null){
+      String saved = snapshot.guestAt(index + 1);
+      // a concurrent booking may have loaded it first, keep whatever won
+      storage.compareAndSet(index, null, saved == null ? VACANT : saved);
+      raw = storage.get(index);
+    }
+    return raw;
+  }
+
+  /**
+   * Guest in the capsule at index for a snapshot writer. A slot nobody has
+   * touched yet is read from the mapped snapshot without loading it, so writing
+   * a snapshot does not pull the whole saved hotel onto the heap.
+   *
+   * A BUSY slot is waited for like HotelView does: a batch that rolls back puts
+   * its guests back without journaling anything, so recording them as free
+   * would lose them from the snapshot for good.
+   */
+  String savedGuestAt(int index){
+    int spins = 0;
+    while (true){
+      String raw = storage.get(index);
+      if (raw == null && snapshot != null){
+        String saved = snapshot.guestAt(index + 1);
+        // still untouched after the read, so the mapped guest was current
+        if (storage.get(index) == null){
+          return saved;
+        }
+        continue;
+      }
+      if (raw != BUSY){
+        return raw == VACANT ? null : raw;
+      }
+      if (index >= capacity){
+        return null;                      // dropped by a shrink
+      }
+      if (++spins > 100){
+        Thread.yield();
+      } else {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  /**
+   * Sets a capsule straight to the given guest (null frees it) without notifying
+   * listeners. Used when replaying saved state before the engine takes traffic.
+   */
+  void restore(int capsuleNumber, String guestName){
+    int index = capsuleNumber - 1;
+    storage.set(index, guestName == null ? free : guestName);
+    if (guestName == null){
+      occupancy.release(index);
+    } else {
+      occupancy.occupy(index);
+    }
+  }
+
+  /**
+   * Changes the number of capsules while bookings continue.
+   *
+   * Growing adds free capsules after the current last one; the slot table gets
+   * new segments and nothing already there is copied. Shrinking drops the
+   * highest-numbered capsules and is refused with OCCUPIED, naming the first
+   * occupied one, if any of them has a guest; nobody is moved. Listeners hear
+   * about the change through onResize.
+   *
+   * @throws UnsupportedOperationException if the storage has a fixed capacity
+   */
+  @Override
+  public synchronized ResizeResult resize(int numberOfCapsules){
+    checkCapacity(numberOfCapsules);
+    int previous = capacity;
+    if (numberOfCapsules > previous){
+      grow(previous, numberOfCapsules);
+    } else if (numberOfCapsules < previous){
+      int occupied = shrink(previous, numberOfCapsules);
+      if (occupied > 0){
+        return ResizeResult.failed(BookingError.OCCUPIED, previous, occupied);
+      }
+    }
+    return ResizeResult.resized(previous, numberOfCapsules);
+  }
+
+  // opens capsules [from, to); the order keeps bookings out until everything is ready
+  private void grow(int from, int to){
+    storage.resize(to);
+    // a segment kept by an earlier shrink still holds BUSY past the old end
+    for (int index = from; index < to; index++){
+      if (storage.get(index) != free){
+        storage.set(index, free);
+      }
+    }
+    BookingListener[] listeners = this.listeners;
+    for (BookingListener listener : listeners){
+      listener.onResize(to);              // journaled before any booking of the new capsules
+    }
+    occupancy.resize(to);
+    if (dirty != null){
+      dirty.resize(to);
+    }
+    capacity = to;
+    afterBatch(listeners, 1);
+  }
+
+  /**
+   * Drops capsules [to, from). Each is reserved first, so nobody can book it
+   * meanwhile; an occupied one undoes the reservations and is returned
+   * (1-based). Returns 0 once the capsules are gone.
+   */
+  private int shrink(int from, int to){
+    int occupied = occupancy.nextOccupied(to);
+    if (occupied >= 0 && occupied < from){
+      return occupied + 1;
+    }
+    BookingListener[] listeners = this.listeners;
+    for (int index = to; index < from; index++){
+      boolean reserved;
+      if (listeners.length == 0){
+        reserved = reserve(index);
+      } else {
+        // under the stripe, so a check-out in progress is journaled before the resize
+        synchronized (stripes[index & (STRIPES - 1)]){
+          reserved = reserve(index);
+        }
+      }
+      if (!reserved){
+        for (int undo = to; undo < index; undo++){
+          unreserve(undo);
+        }
+        return index + 1;
+      }
+    }
+    capacity = to;
+    for (BookingListener listener : listeners){
+      listener.onResize(to);
+    }
+    occupancy.resize(to);
+    // dirty capsules keep their occupancy bit, so none of them was dropped;
+    // like the occupancy index, the dirty one wants the dropped capsules marked
+    OccupancyIndex dirty = this.dirty;
+    if (dirty != null){
+      for (int index = to; index < from; index++){
+        dirty.occupy(index);
+      }
+      dirty.resize(to);
+    }
+    // dropped slots in the last segment stay BUSY, the segments past it go
+    storage.resize(to);
+    afterBatch(listeners, 1);
+    return 0;
+  }
+
+  /**
+   * Sets the number of capsules while replaying saved state, emptying the
+   * capsules a shrink drops. Like restore, meant for before the engine takes
+   * traffic.
+   */
+  void restoreCapacity(int numberOfCapsules){
+    for (int capsuleNumber = numberOfCapsules + 1; capsuleNumber <= capacity; capsuleNumber++){
+      restore(capsuleNumber, null);
+    }
+    resize(numberOfCapsules);
+  }
+
+  @Override
+  public String guestAt(int capsuleNumber){
+    if (!exists(capsuleNumber)){
+      return null;
+    }
+    String guestName = slot(capsuleNumber - 1);
+    return guestName == BUSY || guestName == VACANT ? null : guestName;
+  }
+
+  // walks the occupancy bits a word at a time instead of reading slots
+  @Override
+  public int nextOccupied(int fromCapsuleNumber){
+    int index = occupancy.nextOccupied(Math.max(0, fromCapsuleNumber - 1));
+    OccupancyIndex dirty = this.dirty;
+    while (dirty != null && index >= 0 && dirty.isOccupied(index)){
+      index = occupancy.nextOccupied(index + 1);
+    }
+    return index + 1;
+  }
+
+  // dirty capsules are counted by the occupancy bits but have no guest
+  @Override
+  public int occupiedCount(){
+    OccupancyIndex dirty = this.dirty;
+    return dirty == null ? occupancy.occupiedCount() : occupancy.occupiedCount() - dirty.occupiedCount();
+  }
+
+  @Override
+  public boolean isEmpty(){
+    return dirty == null ? occupancy.isEmpty() : occupiedCount() == 0;
+  }
+}
@@ -0,0 +1,22 @@
+package zih;
+
+/**
+ * Why a booking operation was refused.
+ * Each value maps to one of the error messages the console prints.
+ */
+public enum BookingError {
+  // the capsule number could not be read (console and other text front ends only)
+  INVALID_INPUT,
+  // the capsule number is outside [1, capacity]
+  DOES_NOT_EXIST,
+  // check-in into a capsule that already has a guest
+  OCCUPIED,
+  // check-out of a capsule that has no guest
+  UNOCCUPIED,
+  // automatic check-in found no free capsule
+  NO_VACANCY,
+  // the item was fine but another item of its all-or-nothing batch failed
+  ROLLED_BACK,
+  // check-in into a capsule that was checked out and is not cleaned yet
+  CLEANING
+}
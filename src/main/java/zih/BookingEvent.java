@@ -0,0 +1,40 @@
+package zih;
+
+/**
+ * A check-in or check-out published on a BookingEventBus.
+ *
+ * Events live in the bus's ring buffer and are reused once every subscriber has
+ * passed them, so a handler must copy what it wants to keep instead of holding
+ * on to the event.
+ */
+public final class BookingEvent {
+  public enum Type {
+    CHECK_IN,
+    CHECK_OUT
+  }
+
+  Type type;
+  int capsuleNumber;
+  String guestName;
+
+  BookingEvent(){
+  }
+
+  public Type getType(){
+    return type;
+  }
+
+  public int getCapsuleNumber(){
+    return capsuleNumber;
+  }
+
+  // the guest who checked in or out
+  public String getGuestName(){
+    return guestName;
+  }
+
+  @Override
+  public String toString(){
+    return type + " " + guestName + " #" + capsuleNumber;
+  }
+}
@@ -0,0 +1,347 @@
+package zih;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ordered feed of a BookingEngine's check-ins and check-outs for downstream
+ * systems (housekeeping, billing, ...), built like a Disruptor.
+ *
+ * Events go into a ring buffer of preallocated BookingEvents. A booking claims
+ * the next sequence number with one atomic increment, fills the event and
+ * publishes it with a release store of the sequence into the slot's flag: no
+ * lock, no allocation and no signal to the subscribers. Since the engine calls
+ * listeners under the capsule's lock stripe, sequence order is booking order
+ * for every capsule.
+ *
+ * Each subscription runs on its own thread, spins briefly, then sleeps while
+ * there is nothing new, and hands over everything published since its last
+ * look as one batch (see BookingEventHandler.onEvent's endOfBatch). A slot is
+ * reused only after every subscription has passed it, so nothing is lost: a
+ * subscriber that falls a whole ring behind holds bookings up until it catches
+ * up. The ring keeps the last bufferSize events, so a new subscription can
+ * replay from any sequence number still in it.
+ *
+ * Handlers must not book. A booking publishes while it holds its capsule's
+ * lock stripe, and on a full ring it would wait for the subscription thread
+ * that is making it; publishing from a subscription thread of this bus throws
+ * IllegalStateException instead. A handler that throws is reported to the
+ * bus's ErrorHandler and delivery goes on with the next event.
+ */
+public class BookingEventBus implements BookingListener, Closeable {
+  private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+  // how long an idle subscription sleeps between looks once it stopped spinning
+  private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private final BookingEvent[] events;
+  // the sequence number last published in each slot, 0 before the first
+  private final long[] published;
+  private final int mask;
+  // the last sequence number claimed by a booking
+  private final AtomicLong cursor = new AtomicLong();
+  private volatile Subscription[] subscriptions = new Subscription[0];
+  private volatile ErrorHandler errorHandler = (error, event, sequence) ->
+          System.err.println("Booking event handler failed at sequence " + sequence + ": " + error);
+  private BookingEngine engine;
+
+  /**
+   * Told about every exception a handler throws, on the subscription's thread.
+   */
+  @FunctionalInterface
+  public interface ErrorHandler {
+    void onError(RuntimeException error, BookingEvent event, long sequence);
+  }
+
+  /**
+   * @param bufferSize events kept in the ring, a power of two
+   */
+  public BookingEventBus(int bufferSize){
+    if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1){
+      throw new IllegalArgumentException("bufferSize must be a power of two: " + bufferSize);
+    }
+    events = new BookingEvent[bufferSize];
+    for (int slot = 0; slot < bufferSize; slot++){
+      events[slot] = new BookingEvent();
+    }
+    published = new long[bufferSize];
+    mask = bufferSize - 1;
+  }
+
+  /**
+   * A bus that publishes every booking of engine from now on.
+   */
+  public static BookingEventBus attach(BookingEngine engine, int bufferSize){
+    BookingEventBus bus = new BookingEventBus(bufferSize);
+    bus.engine = engine;
+    engine.addListener(bus);
+    return bus;
+  }
+
+  @Override
+  public void onCheckIn(int capsuleNumber, String guestName){
+    publish(BookingEvent.Type.CHECK_IN, capsuleNumber, guestName);
+  }
+
+  @Override
+  public void onCheckOut(int capsuleNumber, String guestName){
+    publish(BookingEvent.Type.CHECK_OUT, capsuleNumber, guestName);
+  }
+
+  /**
+   * Replaces the default, which prints the failure to System.err.
+   */
+  public void setErrorHandler(ErrorHandler errorHandler){
+    if (errorHandler == null){
+      throw new IllegalArgumentException("errorHandler must not be null");
+    }
+    this.errorHandler = errorHandler;
+  }
+
+  /**
+   * Publishes one event and returns its sequence number. Bookings of an attached
+   * engine arrive here through onCheckIn / onCheckOut.
+   * @throws IllegalStateException if called from a handler of this bus
+   */
+  public long publish(BookingEvent.Type type, int capsuleNumber, String guestName){
+    checkNotSubscriber();
+    long sequence = cursor.incrementAndGet();
+    long wrapPoint = sequence - events.length;
+    if (wrapPoint > 0){
+      awaitSubscribersPast(wrapPoint);
+    }
+    int slot = (int) sequence & mask;
+    BookingEvent event = events[slot];
+    event.type = type;
+    event.capsuleNumber = capsuleNumber;
+    event.guestName = guestName;
+    PUBLISHED.setRelease(published, slot, sequence);
+    return sequence;
+  }
+
+  // before claiming a sequence, so a refused publish leaves no gap subscribers would wait on
+  private void checkNotSubscriber(){
+    Thread current = Thread.currentThread();
+    for (Subscription subscription : subscriptions){
+      if (subscription.thread == current){
+        throw new IllegalStateException("Booking event handlers must not book or publish on their own bus");
+      }
+    }
+  }
+
+  // the slot of wrapPoint is about to be reused, wait until no subscription still needs it
+  private void awaitSubscribersPast(long wrapPoint){
+    int idle = 0;
+    while (minimumSequence(Long.MAX_VALUE) < wrapPoint){
+      idle = idle(idle);
+    }
+  }
+
+  private long minimumSequence(long minimum){
+    for (Subscription subscription : subscriptions){
+      minimum = Math.min(minimum, subscription.sequence);
+    }
+    return minimum;
+  }
+
+  /**
+   * @return the sequence number of the last event claimed, 0 before the first
+   */
+  public long lastSequence(){
+    return cursor.get();
+  }
+
+  /**
+   * @return the oldest sequence number a new subscription can still replay from
+   */
+  public long oldestSequence(){
+    return Math.max(1, cursor.get() - events.length + 1);
+  }
+
+  public int bufferSize(){
+    return events.length;
+  }
+
+  /**
+   * Delivers every event published from now on to handler.
+   */
+  public Subscription subscribe(BookingEventHandler handler){
+    return subscribe(cursor.get() + 1, handler);
+  }
+
+  /**
+   * Delivers every event from sequence number fromSequence on to handler,
+   * replaying the ones already published.
+   * @throws IllegalArgumentException if fromSequence is no longer in the ring (see oldestSequence)
+   */
+  public Subscription subscribe(long fromSequence, BookingEventHandler handler){
+    if (fromSequence < 1){
+      throw new IllegalArgumentException("Sequence numbers start at 1: " + fromSequence);
+    }
+    Subscription subscription = new Subscription(handler, fromSequence - 1);
+    synchronized (this){
+      Subscription[] current = subscriptions;
+      Subscription[] added = Arrays.copyOf(current, current.length + 1);
+      added[current.length] = subscription;
+      subscriptions = added;
+    }
+    // a booking that claimed before the subscription was visible may have reused
+    // the slot of fromSequence; one that claims later waits for the subscription
+    if (fromSequence <= cursor.get() - events.length){
+      remove(subscription);
+      throw new IllegalArgumentException("Sequence " + fromSequence + " is no longer held, the oldest is "
+              + oldestSequence());
+    }
+    subscription.start();
+    return subscription;
+  }
+
+  private synchronized void remove(Subscription subscription){
+    Subscription[] current = subscriptions;
+    for (int i = 0; i < current.length; i++){
+      if (current[i] == subscription){
+        Subscription[] removed = new Subscription[current.length - 1];
+        System.arraycopy(current, 0, removed, 0, i);
+        System.arraycopy(current, i + 1, removed, i, current.length - i - 1);
+        subscriptions = removed;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Stops following the engine and ends every subscription.
+   */
+  @Override
+  public void close(){
+    if (engine != null){
+      engine.removeListener(this);
+    }
+    for (Subscription subscription : subscriptions){
+      subscription.close();
+    }
+  }
+
+  // spin, then yield, then sleep: cheap for the publishers, who never signal
+  private static int idle(int idle){
+    if (idle < 100){
+      Thread.onSpinWait();
+    } else if (idle < 200){
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(IDLE_PARK_NANOS);
+    }
+    return idle + 1;
+  }
+
+  /**
+   * One subscriber's position in the bus and the thread delivering to it.
+   */
+  public final class Subscription implements Closeable {
+    private final BookingEventHandler handler;
+    private final Thread thread;
+    // the last sequence delivered, read by publishers waiting for a slot
+    private volatile long sequence;
+    private volatile boolean running = true;
+
+    private Subscription(BookingEventHandler handler, long sequence){
+      this.handler = handler;
+      this.sequence = sequence;
+      this.thread = new Thread(this::run, "booking-events");
+      thread.setDaemon(true);
+    }
+
+    private void start(){
+      thread.start();
+    }
+
+    /**
+     * @return the sequence number of the last event delivered to the handler
+     */
+    public long sequence(){
+      return sequence;
+    }
+
+    /**
+     * Waits until the handler has seen sequence number target.
+     * @return false if the timeout passed first
+     */
+    public boolean awaitSequence(long target, long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (sequence < target){
+        if (System.nanoTime() - deadline > 0 || !running){
+          return sequence >= target;
+        }
+        if (Thread.interrupted()){
+          throw new InterruptedException();
+        }
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+      return true;
+    }
+
+    private void run(){
+      long next = sequence + 1;
+      int idle = 0;
+      while (running){
+        long available = highestPublished(next, cursor.get());
+        if (available < next){
+          idle = idle(idle);
+          continue;
+        }
+        idle = 0;
+        for (long delivering = next; delivering <= available; delivering++){
+          try {
+            handler.onEvent(events[(int) delivering & mask], delivering, delivering == available);
+          } catch (RuntimeException e){
+            reportError(e, delivering);
+          }
+        }
+        // one volatile write per batch frees the whole batch for the publishers
+        sequence = available;
+        next = available + 1;
+      }
+    }
+
+    // a failing error handler must not end the subscription either
+    private void reportError(RuntimeException error, long delivering){
+      try {
+        errorHandler.onError(error, events[(int) delivering & mask], delivering);
+      } catch (RuntimeException e){
+        e.addSuppressed(error);
+        e.printStackTrace();
+      }
+    }
+
+    // the last of next..claimed before the first one still being written
+    private long highestPublished(long next, long claimed){
+      for (long candidate = next; candidate <= claimed; candidate++){
+        if ((long) PUBLISHED.getAcquire(published, (int) candidate & mask) != candidate){
+          return candidate - 1;
+        }
+      }
+      return claimed;
+    }
+
+    /**
+     * Stops delivering; publishers no longer wait for this subscriber.
+     */
+    @Override
+    public void close(){
+      running = false;
+      remove(this);
+      if (Thread.currentThread() != thread){
+        LockSupport.unpark(thread);
+        try {
+          thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e){
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package zih;
+
+/**
+ * Receives the events of a BookingEventBus subscription, one at a time in
+ * sequence order, on the subscription's own thread.
+ */
+@FunctionalInterface
+public interface BookingEventHandler {
+
+  /**
+   * @param sequence the event's position in the bus, 1 for the first event ever published
+   * @param endOfBatch true for the last event currently available; handlers that
+   *                   buffer (e.g. write to a file) can flush here instead of per event
+   */
+  void onEvent(BookingEvent event, long sequence, boolean endOfBatch);
+}
@@ -0,0 +1,462 @@
+package zih;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead log of check-ins, check-outs and resizes.
+ *
+ * Booking threads only copy their record into a shared buffer; one flusher thread
+ * writes whatever has piled up and fsyncs it once for the whole batch (group commit).
+ * A booking thread then waits in afterCommit until the batch holding its record is
+ * on disk, so one fsync covers every booking that arrived while the previous one ran.
+ *
+ * The log is split into generations (journal-&lt;generation&gt;.log). rotate() starts
+ * a new file so that older files can be dropped once a snapshot covers them.
+ *
+ * Record layout: int payloadLength, int crc32c(payload), payload = byte type,
+ * int capsuleNumber (the new capacity for resizes), UTF-8 guest name (check-ins only). Replay stops at the first
+ * torn or corrupt record, which can only be the tail of an interrupted batch; a
+ * record is replayed however long its guest name is.
+ */
+public class BookingJournal implements BookingListener, Closeable {
+  static final int MAGIC = 0x43484a31;             // "CHJ1"
+  static final int HEADER_BYTES = 16;              // magic, capacity, generation
+  static final byte CHECK_IN = 1;
+  static final byte CHECK_OUT = 2;
+  static final byte RESIZE = 3;
+  private static final int RECORD_OVERHEAD = 4 + 4 + 1 + 4;
+  // booking threads wait for the flusher once this much is queued
+  private static final int MAX_PENDING_BYTES = 64 << 20;
+  private static final Pattern FILE_NAME = Pattern.compile("journal-([0-9a-f]{16})\\.log");
+
+  private final Path directory;
+  private final int capacity;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition hasWork = lock.newCondition();
+  private final Condition flushed = lock.newCondition();
+  private final ThreadLocal<long[]> lastAppended = ThreadLocal.withInitial(() -> new long[1]);
+  private final CRC32C crc = new CRC32C();
+  private final Thread flusher;
+
+  // guarded by lock
+  private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+  private ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+  private long appendedSequence;
+  private long durableSequence;
+  private long generation;
+  private long rotateToGeneration = -1;
+  private int rotateMark = -1;
+  private long batches;
+  private boolean closed;
+  private IOException failure;
+
+  // only touched by the flusher thread after start
+  private FileChannel channel;
+
+  private BookingJournal(Path directory, int capacity, long generation) throws IOException {
+    this.directory = directory;
+    this.capacity = capacity;
+    this.generation = generation;
+    this.channel = create(directory, capacity, generation);
+    this.flusher = new Thread(this::flushLoop, "booking-journal-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Starts a new journal file with the given generation in directory.
+   * Existing files are left alone; use replay to read them first.
+   */
+  public static BookingJournal open(Path directory, int capacity, long generation) throws IOException {
+    Files.createDirectories(directory);
+    return new BookingJournal(directory, capacity, generation);
+  }
+
+  @Override
+  public void onCheckIn(int capsuleNumber, String guestName){
+    append(CHECK_IN, capsuleNumber, guestName);
+  }
+
+  @Override
+  public void onCheckOut(int capsuleNumber, String guestName){
+    append(CHECK_OUT, capsuleNumber, null);
+  }
+
+  @Override
+  public void onResize(int capacity){
+    append(RESIZE, capacity, null);
+  }
+
+  // blocks until the record this thread appended last is fsynced
+  @Override
+  public void afterCommit(){
+    awaitDurable(lastAppended.get()[0]);
+  }
+
+  /**
+   * Closes the current file and continues in a new generation.
+   * Every record appended before the call is in an older file once this returns.
+   * @return the new generation
+   */
+  public long rotate() throws IOException {
+    lock.lock();
+    try {
+      checkOpen();
+      long target = generation + 1;
+      rotateToGeneration = target;
+      rotateMark = pending.position();
+      hasWork.signal();
+      while (generation < target && failure == null){
+        flushed.awaitUninterruptibly();
+      }
+      checkOpen();
+      return target;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long generation(){
+    lock.lock();
+    try {
+      return generation;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // number of fsynced batches so far, each covers one or more records
+  public long batchCount(){
+    lock.lock();
+    try {
+      return batches;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long appendedCount(){
+    lock.lock();
+    try {
+      return appendedSequence;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Flushes everything appended so far and stops the flusher thread.
+   */
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      if (closed){
+        return;
+      }
+      closed = true;
+      hasWork.signal();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException e){
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null){
+      throw failure;
+    }
+  }
+
+  private void append(byte type, int capsuleNumber, String guestName){
+    byte[] name = guestName == null ? null : guestName.getBytes(StandardCharsets.UTF_8);
+    int payloadLength = 1 + 4 + (name == null ? 0 : name.length);
+    lock.lock();
+    try {
+      checkOpenUnchecked();
+      while (pending.position() > MAX_PENDING_BYTES && failure == null){
+        flushed.awaitUninterruptibly();
+      }
+      checkOpenUnchecked();
+      ensureRoom(RECORD_OVERHEAD + payloadLength);
+      int start = pending.position();
+      pending.putInt(payloadLength);
+      pending.putInt(0);                  // crc, filled in below
+      pending.put(type);
+      pending.putInt(capsuleNumber);
+      if (name != null){
+        pending.put(name);
+      }
+      crc.reset();
+      crc.update(pending.array(), start + 8, payloadLength);
+      pending.putInt(start + 4, (int) crc.getValue());
+
+      lastAppended.get()[0] = ++appendedSequence;
+      hasWork.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void awaitDurable(long sequence){
+    lock.lock();
+    try {
+      while (durableSequence < sequence && failure == null){
+        flushed.awaitUninterruptibly();
+      }
+      if (durableSequence < sequence){
+        throw new UncheckedIOException("Booking journal write failed", failure);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void ensureRoom(int bytes){
+    if (pending.remaining() < bytes){
+      int size = Math.max(pending.capacity() * 2, pending.position() + bytes);
+      ByteBuffer larger = ByteBuffer.allocate(size);
+      pending.flip();
+      larger.put(pending);
+      pending = larger;
+    }
+  }
+
+  private void flushLoop(){
+    while (true){
+      ByteBuffer batch;
+      long batchSequence;
+      int mark;
+      long nextGeneration;
+      lock.lock();
+      try {
+        while (pending.position() == 0 && rotateMark < 0 && !closed){
+          hasWork.awaitUninterruptibly();
+        }
+        if (pending.position() == 0 && rotateMark < 0 && closed){
+          break;
+        }
+        // swap buffers so booking threads keep appending while this batch is written
+        batch = pending;
+        pending = writing;
+        pending.clear();
+        writing = batch;
+        batchSequence = appendedSequence;
+        mark = rotateMark;
+        nextGeneration = rotateToGeneration;
+        rotateMark = -1;
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        batch.flip();
+        if (mark >= 0){
+          ByteBuffer head = batch.duplicate();
+          head.limit(mark);
+          writeFully(head);
+          channel.force(false);
+          channel.close();
+          channel = create(directory, capacity, nextGeneration);
+          batch.position(mark);
+        }
+        writeFully(batch);
+        channel.force(false);
+      } catch (IOException e){
+        lock.lock();
+        try {
+          failure = e;
+          flushed.signalAll();
+        } finally {
+          lock.unlock();
+        }
+        return;
+      }
+
+      lock.lock();
+      try {
+        durableSequence = batchSequence;
+        batches++;
+        if (mark >= 0){
+          generation = nextGeneration;
+        }
+        flushed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+    try {
+      channel.close();
+    } catch (IOException e){
+      failure = e;
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()){
+      channel.write(buffer);
+    }
+  }
+
+  private void checkOpen() throws IOException {
+    if (failure != null){
+      throw failure;
+    }
+    if (closed){
+      throw new IOException("Booking journal is closed");
+    }
+  }
+
+  private void checkOpenUnchecked(){
+    try {
+      checkOpen();
+    } catch (IOException e){
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static FileChannel create(Path directory, int capacity, long generation) throws IOException {
+    FileChannel channel = FileChannel.open(fileFor(directory, generation),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    header.putInt(MAGIC).putInt(capacity).putLong(generation).flip();
+    while (header.hasRemaining()){
+      channel.write(header);
+    }
+    channel.force(true);
+    return channel;
+  }
+
+  static Path fileFor(Path directory, long generation){
+    return directory.resolve(String.format("journal-%016x.log", generation));
+  }
+
+  /**
+   * Journal generations present in directory, oldest first.
+   */
+  static List<Long> generations(Path directory) throws IOException {
+    List<Long> generations = new ArrayList<>();
+    if (!Files.isDirectory(directory)){
+      return generations;
+    }
+    try (var files = Files.list(directory)){
+      files.forEach(file -> {
+        Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        if (matcher.matches()){
+          generations.add(Long.parseUnsignedLong(matcher.group(1), 16));
+        }
+      });
+    }
+    generations.sort(null);
+    return generations;
+  }
+
+  // receives replayed records, guestName is null for check-outs and resizes
+  interface Replayer {
+    void apply(byte type, int capsuleNumber, String guestName);
+  }
+
+  /**
+   * Reads the capacity stored in a journal file header.
+   */
+  static int readCapacity(Path file) throws IOException {
+    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)){
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (header.hasRemaining() && in.read(header) >= 0){
+      }
+      header.flip();
+      if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC){
+        throw new IOException("Not a booking journal: " + file);
+      }
+      return header.getInt();
+    }
+  }
+
+  /**
+   * Feeds every intact record of one journal file to replayer, in file order.
+   * @return the number of records replayed
+   */
+  static long replay(Path file, Replayer replayer) throws IOException {
+    long records = 0;
+    CRC32C checksum = new CRC32C();
+    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)){
+      ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+      buffer.limit(0);                    // nothing read yet
+      byte[] name = new byte[256];
+      if (!fill(in, buffer, HEADER_BYTES) || buffer.getInt() != MAGIC){
+        return 0;
+      }
+      buffer.getInt();
+      buffer.getLong();
+      while (fill(in, buffer, 8)){
+        int payloadLength = buffer.getInt();
+        int expectedCrc = buffer.getInt();
+        if (payloadLength < 5 || payloadLength > buffer.remaining() + in.size() - in.position()){
+          break;                          // torn tail, or a length no record in the file can have
+        }
+        if (payloadLength > buffer.capacity()){
+          // a guest name longer than the buffer is still a record
+          ByteBuffer larger = ByteBuffer.allocate(payloadLength);
+          larger.put(buffer).flip();
+          buffer = larger;
+        }
+        if (!fill(in, buffer, payloadLength)){
+          break;
+        }
+        checksum.reset();
+        checksum.update(buffer.array(), buffer.position(), payloadLength);
+        if ((int) checksum.getValue() != expectedCrc){
+          break;                          // corrupt tail
+        }
+        byte type = buffer.get();
+        int capsuleNumber = buffer.getInt();
+        int nameLength = payloadLength - 5;
+        String guestName = null;
+        if (type == CHECK_IN){
+          if (name.length < nameLength){
+            name = new byte[nameLength];
+          }
+          buffer.get(name, 0, nameLength);
+          guestName = new String(name, 0, nameLength, StandardCharsets.UTF_8);
+        } else {
+          buffer.position(buffer.position() + nameLength);
+        }
+        replayer.apply(type, capsuleNumber, guestName);
+        records++;
+      }
+    }
+    return records;
+  }
+
+  // makes sure at least bytes are readable in buffer, false at end of file
+  private static boolean fill(FileChannel in, ByteBuffer buffer, int bytes) throws IOException {
+    if (buffer.remaining() >= bytes){
+      return true;
+    }
+    buffer.compact();
+    while (buffer.position() < bytes){
+      if (in.read(buffer) < 0){
+        buffer.flip();
+        return false;
+      }
+    }
+    buffer.flip();
+    return true;
+  }
+}
@@ -0,0 +1,42 @@
+package zih;
+
+/**
+ * Gets told about every successful check-in and check-out of a BookingEngine.
+ *
+ * onCheckIn/onCheckOut run while the engine holds the lock stripe of that capsule,
+ * so for any one capsule the calls arrive in the same order the bookings happened.
+ * They must be quick (enqueue, count, update an index) and must not call back into
+ * the engine. Anything slow, such as waiting for a disk flush, belongs in
+ * afterCommit, which runs on the same thread once the stripe is released.
+ */
+public interface BookingListener {
+
+  void onCheckIn(int capsuleNumber, String guestName);
+
+  void onCheckOut(int capsuleNumber, String guestName);
+
+  /**
+   * Called after each successful check-in or check-out, outside the stripe lock,
+   * before the result is returned to the caller. A batch calls it once, after
+   * the last of its bookings.
+   */
+  default void afterCommit(){
+  }
+
+  /**
+   * Called when the engine changes to capacity capsules: before any booking can
+   * reach capsules it adds, after every capsule it drops is empty for good.
+   * afterCommit follows, as for a booking.
+   */
+  default void onResize(int capacity){
+  }
+
+  /**
+   * Called when a capsule a check-out left dirty goes back into service (see
+   * BookingEngine.finishCleaning), under the capsule's lock stripe like a
+   * booking. Until then the capsule has no guest but cannot be booked. No
+   * afterCommit follows, cleanings are not journaled.
+   */
+  default void onCleaningFinished(int capsuleNumber){
+  }
+}
@@ -0,0 +1,171 @@
+package zih;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a trace of bookings against a HotelService without the console menu,
+ * e.g. a day of production operations for capacity planning.
+ *
+ * One operation per line, the command ignoring case:
+ * <pre>
+ * CHECKIN &lt;guest name&gt; &lt;capsule #&gt;
+ * CHECKOUT &lt;capsule #&gt;
+ * VIEW &lt;capsule #&gt;
+ * </pre>
+ * The guest name may contain spaces, the capsule number is the last word. Blank
+ * lines and lines starting with # are skipped. Successful check-ins and
+ * check-outs print nothing; VIEW prints the same window of capsules the menu's
+ * View Guests does, and every refused or unreadable line is reported with its
+ * line number. Both readers and writers are expected to be buffered, so a
+ * replay costs about what the bookings themselves cost.
+ */
+public final class BookingReplay {
+  private final HotelService service;
+  private final int viewRange;
+
+  private long lines;
+  private long checkIns;
+  private long checkOuts;
+  private long views;
+  private final long[] errors = new long[BookingError.values().length];
+  private long elapsedNanos;
+
+  /**
+   * @param viewRange number of capsules a VIEW prints, like CapsuleHotel.setViewRange
+   */
+  public BookingReplay(HotelService service, int viewRange){
+    if (viewRange < 1){
+      throw new IllegalArgumentException("View range must be at least 1.");
+    }
+    this.service = service;
+    this.viewRange = viewRange;
+  }
+
+  /**
+   * Replays every line of in, writing VIEW listings and refusals to out.
+   * Can be called again to append another trace; the counts add up.
+   */
+  public void replay(BufferedReader in, Appendable out) throws IOException {
+    long started = System.nanoTime();
+    try {
+      for (String line = in.readLine(); line != null; line = in.readLine()){
+        lines++;
+        String operation = line.trim();
+        if (operation.isEmpty() || operation.charAt(0) == '#'){
+          continue;
+        }
+        BookingError error = apply(operation, out);
+        if (error != null){
+          errors[error.ordinal()]++;
+          out.append("line ").append(Long.toString(lines)).append(": ").append(operation)
+                  .append(": ").append(error.name()).append('\n');
+        }
+      }
+    } finally {
+      elapsedNanos += System.nanoTime() - started;
+    }
+  }
+
+  // runs one operation, returns why it was refused or null
+  private BookingError apply(String operation, Appendable out) throws IOException {
+    int space = operation.indexOf(' ');
+    if (space < 0){
+      return BookingError.INVALID_INPUT;
+    }
+    String command = operation.substring(0, space);
+    if (command.equalsIgnoreCase("CHECKIN")){
+      int last = operation.lastIndexOf(' ');
+      if (last == space){
+        return BookingError.INVALID_INPUT;
+      }
+      String guestName = operation.substring(space + 1, last).trim();
+      int capsuleNumber = parseNumber(operation, last + 1);
+      if (guestName.isEmpty() || capsuleNumber < 0){
+        return BookingError.INVALID_INPUT;
+      }
+      CheckInResult result = service.checkIn(capsuleNumber, guestName);
+      if (!result.isSuccess()){
+        return result.getError();
+      }
+      checkIns++;
+      return null;
+    }
+    int capsuleNumber = parseNumber(operation, space + 1);
+    if (capsuleNumber < 0){
+      return BookingError.INVALID_INPUT;
+    }
+    if (command.equalsIgnoreCase("CHECKOUT")){
+      CheckOutResult result = service.checkOut(capsuleNumber);
+      if (!result.isSuccess()){
+        return result.getError();
+      }
+      checkOuts++;
+      return null;
+    }
+    if (command.equalsIgnoreCase("VIEW")){
+      if (!service.exists(capsuleNumber)){
+        return BookingError.DOES_NOT_EXIST;
+      }
+      int start = CapsuleHotel.viewStart(capsuleNumber, service.capacity(), viewRange);
+      GuestRangeRenderer.render(service, start, Math.min(service.capacity(), start + viewRange), out);
+      views++;
+      return null;
+    }
+    return BookingError.INVALID_INPUT;
+  }
+
+  // the number from index to the end of the line, -1 if there is none
+  private static int parseNumber(String operation, int index){
+    try {
+      return Integer.parseInt(operation.substring(index).trim());
+    } catch (NumberFormatException e){
+      return -1;
+    }
+  }
+
+  /**
+   * Lines read so far, including skipped and refused ones.
+   */
+  public long lineCount(){
+    return lines;
+  }
+
+  /**
+   * Operations that succeeded.
+   */
+  public long operationCount(){
+    return checkIns + checkOuts + views;
+  }
+
+  public long errorCount(BookingError error){
+    return errors[error.ordinal()];
+  }
+
+  public long elapsedNanos(){
+    return elapsedNanos;
+  }
+
+  /**
+   * Appends what was replayed, the refusals by reason and the throughput.
+   */
+  public void appendSummary(Appendable out) throws IOException {
+    long refused = 0;
+    for (long count : errors){
+      refused += count;
+    }
+    long operations = operationCount() + refused;
+    double seconds = elapsedNanos / 1e9;
+    out.append(String.format("Replayed %,d operations from %,d lines in %,d ms%n",
+            operations, lines, TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+    out.append(String.format("  check-ins: %,d  check-outs: %,d  views: %,d  refused: %,d%n",
+            checkIns, checkOuts, views, refused));
+    for (BookingError error : BookingError.values()){
+      if (errors[error.ordinal()] > 0){
+        out.append(String.format("    %s: %,d%n", error, errors[error.ordinal()]));
+      }
+    }
+    out.append(String.format("  throughput: %,.0f operations/s%n", seconds > 0 ? operations / seconds : 0.0));
+  }
+}
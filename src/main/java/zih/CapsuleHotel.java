@@ -1,17 +1,45 @@
 package zih;
 
+import javax.management.JMException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 public class CapsuleHotel {
-  // store the capsule in an array
-  String[] capsules;
+  // booking logic, the menu methods below only read input and print results
+  HotelService service;
+  // number of capsules shown by viewGuests, 11 unless changed with setViewRange
+  int viewRange = 11;
+  // how a capsule is picked when the clerk leaves the capsule number blank
+  AssignmentPolicy assignmentPolicy = AssignmentPolicy.LOWEST_NUMBERED;
+  // most capsule lines printGuestInRange buffers before printing
+  static final int PRINT_CHUNK = 4096;
+  // name -> capsule lookup for findGuest, built on first use
+  private GuestIndex guestIndex;
+  // reused by printGuestInRange so repeated views do not allocate a new buffer
+  private final StringBuilder viewBuffer = new StringBuilder(512);
+  // rendered view windows kept between calls, null unless enableViewCache was called
+  private GuestViewCache viewCache;
 
   // constructor
   // initializing the size of the capsules in the hotel
   public CapsuleHotel(int numberOfCapsules){
-    // new String(10)
-    // the capsule will store null values unless string is stored
-    capsules = new String[numberOfCapsules];
+    service = new BookingEngine(numberOfCapsules);
+  }
+
+  // run the console menu over an existing booking service
+  public CapsuleHotel(HotelService service){
+    this.service = service;
   }
 
   /**
@@ -30,7 +58,12 @@ public class CapsuleHotel {
     System.out.println("2. Check Out");
     System.out.println("3. View Guests");
     System.out.println("4. Exit");
-    System.out.print("Choose an option [1-4]: ");
+    System.out.println("5. Group Check In");
+    System.out.println("6. Group Check Out");
+    System.out.println("7. Find Guest");
+    System.out.println("8. Metrics");
+    System.out.println("9. Change Number of Capsules");
+    System.out.print("Choose an option [1-9]: ");
     String option = scanner.nextLine();
     return option;
   }
@@ -45,36 +78,30 @@ public class CapsuleHotel {
    * @return
    */
   public boolean handleCheckIn(Scanner scanner, String guestName){
-    System.out.printf("Capsule #[1-%s]: ", capsules.length);
+    System.out.printf("Capsule #[1-%s, Enter for next free]: ", service.capacity());
+    String input;
     int capsuleNumber;
 
     try {
-      capsuleNumber = Integer.parseInt(scanner.nextLine());
+      input = scanner.nextLine().trim();
+      // a blank line lets the service pick a free capsule
+      capsuleNumber = input.isEmpty() ? 0 : Integer.parseInt(input);
     } catch (Exception e){
-      System.out.println("ERROR");
-      System.out.println("Invalid input. Please enter a valid capsule number.");
+      printError(BookingError.INVALID_INPUT, 0);
       return false;
     }
 
-    // check for the range of the capsule number
-    // should not be 0 or greater than the length
-    if (capsuleNumber < 1 || capsuleNumber > capsules.length){
-      System.out.println("ERROR\n" +
-              "Capsule #" + capsuleNumber + " does not exist.");
+    // book the guest, the service checks the range (should not be 0 or greater than the length)
+    // and fails if someone already holds the capsule
+    CheckInResult result = input.isEmpty()
+            ? service.checkInAny(guestName, assignmentPolicy)
+            : service.checkIn(capsuleNumber, guestName);
+    if (!result.isSuccess()){
+      printError(result.getError(), capsuleNumber);
       return false;
     }
+    capsuleNumber = result.getCapsuleNumber();
 
-    // convert capsule number from (1-based) into valid array index (0-based)
-    int index = capsuleNumber - 1;
-    if (capsules[index] != null){
-      System.out.println("ERROR\n" +
-              "Capsule #" + capsuleNumber + " is occupied.");
-
-      return false;
-    }
-
-    // store the guest name inside the current index of the capsule array
-    capsules[index] = guestName;
     System.out.println("SUCCESS!\n" +
             guestName + " is booked in capsule #" + capsuleNumber + ".");
 //    System.out.printf("%s is booked in capsule #%s.", guestName, capsuleNumber);
@@ -90,18 +117,8 @@ public class CapsuleHotel {
    * @return boolean
    */
   public boolean handleCheckOut(Scanner scanner){
-    boolean checkForGuest = false;
-
-    // check if the capsule has guests
-    for (String guest : capsules){
-      if (guest != null){
-        checkForGuest = true;
-        break;
-      }
-    }
-
     // display error message if there are no guests to check out
-    if (!checkForGuest){
+    if (service.isEmpty()){
       System.out.println("Sorry, check out is only available if there is at least one guest.");
       return false;
     }
@@ -109,7 +126,7 @@ public class CapsuleHotel {
     // display the size of the capsule
     System.out.println("Guest Check Out");
     System.out.println("===============");
-    System.out.printf("Capsule #[1-%s]: ", capsules.length);
+    System.out.printf("Capsule #[1-%s]: ", service.capacity());
 
 
     // check for valid user input, if user input is valid
@@ -118,36 +135,202 @@ public class CapsuleHotel {
     try {
       capsuleNumber = Integer.parseInt(scanner.nextLine());
     } catch (Exception e){
-      System.out.println("ERROR");
-      System.out.println("Invalid input. Please enter a valid capsule number.");
+      printError(BookingError.INVALID_INPUT, 0);
       return false;
     }
 
-    // check if the capsule number greater than 0 and less than capsules' length
-    if (capsuleNumber < 1 || capsuleNumber > capsules.length){
-      System.out.println("ERROR\n" +
-              "Capsule #" + capsuleNumber + " does not exist.");
-
+    // remove the guest, the service hands back who was checked out
+    // display error message if the capsule does not exist or is unoccupied
+    CheckOutResult result = service.checkOut(capsuleNumber);
+    if (!result.isSuccess()){
+      printError(result.getError(), capsuleNumber);
       return false;
     }
 
-    // convert capsule number (1-based) into array index (0-based)
-    // display error message if capsule is unoccupied
-    int index = capsuleNumber - 1;
-    if (capsules[index] == null){
-      System.out.println("Error :(\n" +
-              "Capsule #" + capsuleNumber + " is unoccupied.");
+    System.out.println("SUCCESS\n" +
+            result.getGuestName() + " is checked out from capsule #" + capsuleNumber + ".");
 
-      return false;
+    return true;
+  }
+
+  /**
+   * Method Name: handleGroupCheckIn
+   * Checks in a group arriving together: reads guest names one per line until a
+   * blank line and books them all in one batch, each into a free capsule picked
+   * by the assignment policy. Guests that cannot be booked are reported and do
+   * not stop the others.
+   * @param Scanner scanner
+   * @return int number of guests booked
+   */
+  public int handleGroupCheckIn(Scanner scanner){
+    System.out.println("Group Check In");
+    System.out.println("==============");
+    System.out.println("Guest names, one per line (blank line to finish):");
+    List<String> guestNames = new ArrayList<>();
+    while (scanner.hasNextLine()){
+      String guestName = scanner.nextLine().trim();
+      if (guestName.isEmpty()){
+        break;
+      }
+      guestNames.add(guestName);
     }
 
-    // store guest name before removing to print to the user
-    // set capsule index to null to remove user
-    String guestName = capsules[index];
-    capsules[index] = null;
-    System.out.println("SUCCESS\n" +
-            guestName + " is checked out from capsule #" + capsuleNumber + ".");
+    BatchResult<CheckInResult> results = service.checkInAll(guestNames, assignmentPolicy, BatchMode.BEST_EFFORT);
+    StringBuilder report = new StringBuilder();
+    for (CheckInResult result : results.getResults()){
+      if (result.isSuccess()){
+        report.append(result.getGuestName()).append(" is booked in capsule #")
+                .append(result.getCapsuleNumber()).append(".\n");
+      }
+    }
+    System.out.print(report);
+    if (!results.isSuccess()){
+      printError(BookingError.NO_VACANCY, 0);
+    }
+    System.out.println(results.getSuccessCount() + " of " + results.size() + " guests booked.");
+    return results.getSuccessCount();
+  }
+
+  /**
+   * Method Name: handleGroupCheckOut
+   * Checks out several capsules at once, read as numbers separated by spaces or
+   * commas on one line. Capsules that cannot be checked out are reported and do
+   * not stop the others.
+   * @param Scanner scanner
+   * @return int number of guests checked out
+   */
+  public int handleGroupCheckOut(Scanner scanner){
+    if (service.isEmpty()){
+      System.out.println("Sorry, check out is only available if there is at least one guest.");
+      return 0;
+    }
+
+    System.out.println("Group Check Out");
+    System.out.println("===============");
+    System.out.printf("Capsule #s [1-%s], separated by spaces or commas: ", service.capacity());
+
+    int[] capsuleNumbers;
+    try {
+      capsuleNumbers = Arrays.stream(scanner.nextLine().trim().split("[\\s,]+"))
+              .mapToInt(Integer::parseInt)
+              .toArray();
+    } catch (Exception e){
+      printError(BookingError.INVALID_INPUT, 0);
+      return 0;
+    }
+
+    BatchResult<CheckOutResult> results = service.checkOutAll(capsuleNumbers, BatchMode.BEST_EFFORT);
+    for (CheckOutResult result : results.getResults()){
+      if (result.isSuccess()){
+        System.out.println(result.getGuestName() + " is checked out from capsule #" + result.getCapsuleNumber() + ".");
+      } else {
+        printError(result.getError(), result.getCapsuleNumber());
+      }
+    }
+    System.out.println(results.getSuccessCount() + " of " + results.size() + " capsules checked out.");
+    return results.getSuccessCount();
+  }
+
+  /**
+   * Method Name: findGuest
+   * Looks a guest up by name instead of paging through the capsules.
+   * Prints the capsules of every guest whose name starts with the input, ignoring case,
+   * at most one view range of them.
+   * @param Scanner scanner
+   * @return int number of guests found
+   */
+  public int findGuest(Scanner scanner){
+    System.out.println("Find Guest");
+    System.out.println("==========");
+    System.out.print("Guest name (or the start of it): ");
+    String prefix = scanner.nextLine().trim();
 
+    GuestIndex index = guestIndex();
+    if (index == null){
+      System.out.println("ERROR");
+      System.out.println("Guest search is not available for this hotel.");
+      return 0;
+    }
+    List<GuestLocation> found = index.findByPrefix(prefix, viewRange);
+    if (found.isEmpty()){
+      System.out.println("No guest found.");
+      return 0;
+    }
+    StringBuilder report = new StringBuilder();
+    for (GuestLocation location : found){
+      report.append(location.getCapsuleNumber()).append(": ").append(location.getGuestName()).append('\n');
+    }
+    System.out.print(report);
+    return found.size();
+  }
+
+  // the guest index, attached to the booking engine the first time it is needed
+  GuestIndex guestIndex(){
+    HotelService target = InstrumentedHotelService.unwrap(service);
+    if (guestIndex == null && target instanceof BookingEngine){
+      guestIndex = GuestIndex.attach((BookingEngine) target);
+    }
+    return guestIndex;
+  }
+
+  /**
+   * Method Name: printMetrics
+   * Prints the booking counters, error counts, occupancy and latency percentiles,
+   * when the service records them (see InstrumentedHotelService).
+   */
+  public void printMetrics() throws IOException {
+    System.out.println("Metrics");
+    System.out.println("=======");
+    if (!(service instanceof InstrumentedHotelService)){
+      System.out.println("Metrics are not recorded for this hotel.");
+      return;
+    }
+    StringBuilder dump = new StringBuilder();
+    ((InstrumentedHotelService) service).metrics().dump(dump);
+    if (viewCache != null){
+      viewCache.dump(dump);
+    }
+    System.out.print(dump);
+  }
+
+  /**
+   * Method Name: handleResize
+   * Asks for a new number of capsules and resizes the hotel while it stays open.
+   * New capsules are added after the last one; shrinking is refused while any
+   * capsule it would drop has a guest.
+   * @param Scanner scanner
+   * @return boolean
+   */
+  public boolean handleResize(Scanner scanner){
+    System.out.println("Change Number of Capsules");
+    System.out.println("=========================");
+    System.out.printf("Number of capsules [now %s]: ", service.capacity());
+    int numberOfCapsules;
+    try {
+      numberOfCapsules = Integer.parseInt(scanner.nextLine().trim());
+    } catch (Exception e){
+      printError(BookingError.INVALID_INPUT, 0);
+      return false;
+    }
+    if (numberOfCapsules < 1){
+      printError(BookingError.INVALID_INPUT, 0);
+      return false;
+    }
+
+    ResizeResult result;
+    try {
+      result = service.resize(numberOfCapsules);
+    } catch (UnsupportedOperationException e){
+      System.out.println("ERROR\n" +
+              "The number of capsules of this hotel cannot be changed.");
+      return false;
+    }
+    if (!result.isSuccess()){
+      printError(result.getError(), result.getCapsuleNumber());
+      return false;
+    }
+    System.out.println("SUCCESS!\n" +
+            "The hotel now has " + result.getCapacity() + " capsules.");
     return true;
   }
 
@@ -162,69 +345,288 @@ public class CapsuleHotel {
   public void viewGuests(Scanner scanner){
     System.out.println("View Guests");
     System.out.println("===========");
-    System.out.printf("Capsule #[1-%s]: ", capsules.length);
+    System.out.printf("Capsule #[1-%s]: ", service.capacity());
 
     int capsuleNumber = Integer.parseInt(scanner.nextLine());
 
     // handle non-existent capsule number error
-    if (capsuleNumber < 1 || capsuleNumber > capsules.length) {
-      System.out.println("ERROR\n" +
-              "Capsule #" + capsuleNumber + " does not exist.");
+    if (!service.exists(capsuleNumber)) {
+      printError(BookingError.DOES_NOT_EXIST, capsuleNumber);
       return;
     }
 
-    final int VIEW_RANGE = 11;
-    final int HALF_RANGE = (VIEW_RANGE / 2) + 1;
+    int capacity = service.capacity();
+    int start = viewStart(capsuleNumber, capacity, viewRange);
+    printGuestInRange(start, Math.min(start + viewRange, capacity));
+  }
 
-    if (capsuleNumber <= HALF_RANGE || capsules.length <= VIEW_RANGE){      // first 11
-      printGuestInRange(0, Math.min(VIEW_RANGE, capsules.length));
-    } else if ((capsuleNumber + HALF_RANGE) >= capsules.length) {          // last 11
-      printGuestInRange((capsules.length - VIEW_RANGE), capsules.length);
-    } else {     // middle 11
-      printGuestInRange((capsuleNumber - HALF_RANGE), (capsuleNumber + HALF_RANGE - 1));
-    }
+  // first capsule index of the window of viewRange capsules viewGuests shows around capsuleNumber
+  static int viewStart(int capsuleNumber, int capacity, int viewRange){
+    final int HALF_RANGE = (viewRange / 2) + 1;
 
+    if (capsuleNumber <= HALF_RANGE || capacity <= viewRange){      // first window
+      return 0;
+    } else if ((capsuleNumber + HALF_RANGE) >= capacity) {          // last window
+      return capacity - viewRange;
+    } else {     // window centred on the capsule
+      return capsuleNumber - HALF_RANGE;
+    }
   }
 
-  // displays list of guests from start to end, 11 at a time.
+  // displays list of guests from start to end, one view window at a time.
+  // large ranges are printed in chunks so the buffer never holds more than PRINT_CHUNK lines.
+  // the listing is read from a HotelView, so it shows one moment even while bookings go on
   public void printGuestInRange(int start, int end){
-    String message = "Capsule: Guest\n";
-
-    for (int i = start; i < end; i++){
-      int displayIndex = i + 1;
-      if (capsules[i] == null) {
-        message += displayIndex + ": [unoccupied]\n";
-      } else {
-        message += displayIndex + ": " + capsules[i] + "\n";
+    if (viewCache != null && end - start <= GuestViewCache.MAX_PAGE_CAPSULES){
+      System.out.println(viewCache.render(start, end));
+      return;
+    }
+    try (HotelView view = HotelView.open(service)){
+      HotelService source = view == null ? service : view;
+      if (end - start <= PRINT_CHUNK){
+        viewBuffer.setLength(0);
+        GuestRangeRenderer.render(source, start, end, viewBuffer);
+        System.out.println(viewBuffer);
+        return;
+      }
+      GuestRangeRenderer.checkRange(source, start, end);
+      viewBuffer.setLength(0);
+      viewBuffer.append(GuestRangeRenderer.HEADER);
+      for (int from = start; from < end; from += PRINT_CHUNK){
+        GuestRangeRenderer.appendLines(source, from, Math.min(end, from + PRINT_CHUNK), viewBuffer);
+        System.out.print(viewBuffer);
+        viewBuffer.setLength(0);
       }
+      System.out.println();
+    }
+  }
+
+  /**
+   * Keeps up to maxPages rendered windows of printGuestInRange, each dropped
+   * when a booking touches one of its capsules, see GuestViewCache.
+   * @return the cache, or null if the service is not a BookingEngine (through
+   *         any instrumentation), e.g. a remote or sharded hotel
+   */
+  public GuestViewCache enableViewCache(int maxPages){
+    HotelService target = InstrumentedHotelService.unwrap(service);
+    if (viewCache == null && target instanceof BookingEngine){
+      viewCache = GuestViewCache.attach((BookingEngine) target, maxPages);
+    }
+    return viewCache;
+  }
+
+  // writes the same listing to any Appendable, e.g. a BufferedWriter for large exports
+  public void writeGuestsInRange(int start, int end, Appendable out) throws IOException {
+    try (HotelView view = HotelView.open(service)){
+      GuestRangeRenderer.render(view == null ? service : view, start, end, out);
+    }
+  }
+
+  public AssignmentPolicy getAssignmentPolicy(){
+    return assignmentPolicy;
+  }
+
+  public void setAssignmentPolicy(AssignmentPolicy assignmentPolicy){
+    if (assignmentPolicy == null){
+      throw new IllegalArgumentException("Assignment policy must not be null.");
+    }
+    this.assignmentPolicy = assignmentPolicy;
+  }
+
+  public int getViewRange(){
+    return viewRange;
+  }
+
+  // sets how many capsules viewGuests shows around the chosen capsule
+  public void setViewRange(int viewRange){
+    if (viewRange < 1){
+      throw new IllegalArgumentException("View range must be at least 1.");
+    }
+    this.viewRange = viewRange;
+  }
+
+  // prints the console message for a refused booking
+  private void printError(BookingError error, int capsuleNumber){
+    // the service counts its own refusals, unreadable input never gets that far
+    if (error == BookingError.INVALID_INPUT && service instanceof InstrumentedHotelService){
+      ((InstrumentedHotelService) service).metrics().recordError(error);
+    }
+    switch (error){
+      case DOES_NOT_EXIST:
+        System.out.println("ERROR\n" +
+                "Capsule #" + capsuleNumber + " does not exist.");
+        break;
+      case OCCUPIED:
+        System.out.println("ERROR\n" +
+                "Capsule #" + capsuleNumber + " is occupied.");
+        break;
+      case UNOCCUPIED:
+        System.out.println("Error :(\n" +
+                "Capsule #" + capsuleNumber + " is unoccupied.");
+        break;
+      case NO_VACANCY:
+        System.out.println("ERROR\n" +
+                "Sorry, every capsule is occupied.");
+        break;
+      case CLEANING:
+        System.out.println("ERROR\n" +
+                "Capsule #" + capsuleNumber + " is waiting for housekeeping.");
+        break;
+      case ROLLED_BACK:
+        System.out.println("ERROR\n" +
+                "Capsule #" + capsuleNumber + " was not changed because another booking in the group failed.");
+        break;
+      case INVALID_INPUT:
+      default:
+        System.out.println("ERROR");
+        System.out.println("Invalid input. Please enter a valid capsule number.");
     }
-    System.out.println(message);
   }
 
   public static boolean confirmExit(Scanner scanner){
+    return confirmExit(scanner, false);
+  }
+
+  // saved is true when the bookings are kept in a data directory
+  public static boolean confirmExit(Scanner scanner, boolean saved){
     System.out.println("Exit");
     System.out.println("====");
     System.out.println("Are you sure you want to exit?");
-    System.out.println("All data will be lost");
+    if (saved){
+      System.out.println("Bookings are saved and will be restored on the next start");
+    } else {
+      System.out.println("All data will be lost");
+    }
     System.out.print("Exit [y/n]: ");
 
     // exits the program if the user input is "y"
     return scanner.nextLine().equalsIgnoreCase("y");
   }
 
-  public static void main(String[] args) {
+  // returns the directory given with --data <dir>, or null to keep everything in memory
+  static Path dataDirectory(String[] args){
+    for (int i = 0; i < args.length - 1; i++){
+      if (args[i].equals("--data")){
+        return Path.of(args[i + 1]);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Replays the operations in source (a file, or - for standard input) without
+   * the menu and prints a throughput summary, see BookingReplay. The hotel comes
+   * from --data when it holds one, otherwise it has --capsules capsules.
+   */
+  static void replay(String[] args, String source) throws IOException {
+    Path dataDirectory = dataDirectory(args);
+    HotelStore store = null;
+    BookingEngine engine;
+    if (dataDirectory != null && HotelStore.exists(dataDirectory)){
+      store = HotelStore.open(dataDirectory, 0);
+      engine = store.engine();
+    } else {
+      int numberOfCapsules = Integer.parseInt(HotelHttpServer.option(args, "--capsules", "0"));
+      if (numberOfCapsules <= 0){
+        System.err.println("Replaying needs --capsules <n> greater than 0, or a --data directory holding a hotel.");
+        return;
+      }
+      if (dataDirectory != null){
+        store = HotelStore.open(dataDirectory, numberOfCapsules);
+        engine = store.engine();
+      } else {
+        engine = new BookingEngine(numberOfCapsules);
+      }
+    }
+    InstrumentedHotelService instrumented = new InstrumentedHotelService(engine);
+    BookingReplay replay = new BookingReplay(instrumented,
+            Integer.parseInt(HotelHttpServer.option(args, "--view-range", "11")));
+    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+    try (BufferedReader in = source.equals("-")
+            ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+            : Files.newBufferedReader(Path.of(source), StandardCharsets.UTF_8)){
+      replay.replay(in, out);
+    } finally {
+      replay.appendSummary(out);
+      // latency percentiles of the replayed bookings
+      instrumented.metrics().dump(out);
+      out.flush();
+      if (store != null){
+        store.compact();
+        store.close();
+      }
+    }
+  }
+
+  /**
+   * Plays the steady, group-burst and check-out-wave scenarios of
+   * SimulationScenario for days virtual days against --capsules capsules
+   * (10,000 unless given), --replications times each (one per processor unless
+   * given), all side by side, and prints their reports.
+   */
+  static void simulate(String[] args, int days) throws IOException {
+    int numberOfCapsules = Integer.parseInt(HotelHttpServer.option(args, "--capsules", "10000"));
+    int replications = Integer.parseInt(HotelHttpServer.option(args, "--replications",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+    List<SimulationScenario> scenarios = new ArrayList<>();
+    scenarios.add(SimulationScenario.steady(numberOfCapsules));
+    scenarios.add(SimulationScenario.groupBursts(numberOfCapsules));
+    scenarios.add(SimulationScenario.checkoutWave(numberOfCapsules));
+    for (SimulationScenario scenario : scenarios){
+      scenario.days(days).replications(replications);
+    }
+    long started = System.nanoTime();
+    List<SimulationReport> reports = new LoadSimulator().runAll(scenarios);
+    long elapsed = System.nanoTime() - started;
+    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+    long operations = 0;
+    for (SimulationReport report : reports){
+      report.appendTo(out);
+      out.newLine();
+      operations += report.getOperations();
+    }
+    out.append(String.format("Simulated %,d operations in %,d ms (%,.0f operations/s)%n",
+            operations, TimeUnit.NANOSECONDS.toMillis(elapsed), operations / (elapsed / 1e9)));
+    out.flush();
+  }
+
+  public static void main(String[] args) throws IOException {
+    // with --replay <file|-> operations are read from a trace instead of the menu
+    String replaySource = HotelHttpServer.option(args, "--replay", null);
+    if (replaySource != null){
+      replay(args, replaySource);
+      return;
+    }
+    // with --simulate <days> synthetic guests are played in virtual time instead
+    String simulatedDays = HotelHttpServer.option(args, "--simulate", null);
+    if (simulatedDays != null){
+      simulate(args, Integer.parseInt(simulatedDays));
+      return;
+    }
     Scanner scanner = new Scanner(System.in);
     boolean exit = false;
 
     System.out.println("Welcome to the Capsule-Hotel");
     System.out.println("----------------------------");
 
+    // with --data <dir> bookings are journaled to disk and restored on start
+    Path dataDirectory = dataDirectory(args);
+    HotelStore store = null;
+    if (dataDirectory != null && HotelStore.exists(dataDirectory)){
+      long started = System.nanoTime();
+      store = HotelStore.open(dataDirectory, 0);
+      BookingEngine engine = store.engine();
+      System.out.printf("Restored %s guests in %s capsules from %s (%s ms).%n%n",
+              engine.occupiedCount(), engine.capacity(), dataDirectory,
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
     // store the length of the capsule array
-    int numberOfCapsules;
+    int numberOfCapsules = store == null ? 0 : store.engine().capacity();
 
     // prompt user to input a valid number and store it into numberOfCapsules
     // which will be used to create a capsule array
-    while (true){
+    while (store == null){
       System.out.print("Enter the number of capsules: ");
       int input = Integer.parseInt(scanner.nextLine());
 
@@ -244,10 +646,37 @@ public class CapsuleHotel {
       }
     }
 
-    System.out.printf("There are %s unoccupied capsules ready to be booked.%n%n", numberOfCapsules);
+    BookingEngine engine;
+    if (store != null){
+      engine = store.engine();
+    } else {
+      System.out.printf("There are %s unoccupied capsules ready to be booked.%n%n", numberOfCapsules);
 
-    // create a new CapsuleHotel object with a number of capsule length (Array)
-    CapsuleHotel hotelApp = new CapsuleHotel(numberOfCapsules);
+      if (dataDirectory != null){
+        store = HotelStore.open(dataDirectory, numberOfCapsules);
+        engine = store.engine();
+      } else {
+        // create a booking engine with a number of capsules
+        engine = new BookingEngine(numberOfCapsules);
+      }
+    }
+    // count bookings and time them, readable from the menu and over JMX
+    InstrumentedHotelService instrumented = new InstrumentedHotelService(engine);
+    try {
+      instrumented.metrics().register();
+    } catch (JMException e){
+      System.err.println("Metrics are not available over JMX: " + e.getMessage());
+    }
+    CapsuleHotel hotelApp = new CapsuleHotel(instrumented);
+    // front-desk screens ask for the same windows again and again; --view-cache 0 turns this off
+    int viewCachePages = Integer.parseInt(HotelHttpServer.option(args, "--view-cache", "256"));
+    if (viewCachePages > 0){
+      hotelApp.enableViewCache(viewCachePages);
+    }
+    if (store != null){
+      // keep the journal short so restarts stay fast
+      store.compactEvery(10, TimeUnit.MINUTES);
+    }
 
     // Switch Statement will invoke methods depending on user input
     // from the Menu Option
@@ -274,7 +703,22 @@ public class CapsuleHotel {
           break;
         case 4:
           // exit program if user input is "y" in confirmExit method
-          exit = confirmExit(scanner);
+          exit = confirmExit(scanner, store != null);
+          break;
+        case 5:
+          hotelApp.handleGroupCheckIn(scanner);
+          break;
+        case 6:
+          hotelApp.handleGroupCheckOut(scanner);
+          break;
+        case 7:
+          hotelApp.findGuest(scanner);
+          break;
+        case 8:
+          hotelApp.printMetrics();
+          break;
+        case 9:
+          hotelApp.handleResize(scanner);
           break;
         default:
           System.out.println("Invalid option. Please try again.");
@@ -282,6 +726,12 @@ public class CapsuleHotel {
       // run loop until user inputs exit
     } while (!exit);
 
+    if (store != null){
+      // leave a fresh snapshot behind so the next start only loads it
+      store.compact();
+      store.close();
+    }
+
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package zih;
+
+import java.util.function.IntFunction;
+
+/**
+ * Slot table behind a BookingEngine: one value per capsule (0-based index).
+ *
+ * A slot holds a guest name, null, or one of the engine's markers BUSY and VACANT.
+ * Markers are compared by identity, so implementations that encode slots must map
+ * exactly these instances back and forth. Callers pass compareAndSet the value
+ * they just read from the slot; the array backend compares it by identity, the
+ * encoded backends by name.
+ *
+ * Pick a backend with the factory methods:
+ *   array(n)       one String reference per capsule, the original layout
+ *   dictionary(n)  one int guest ID per capsule plus a shared, deduplicated name pool
+ *   offHeap(n)     like dictionary, but the int table lives outside the Java heap
+ *   segmented(n)   arrays in fixed-size segments, the only one that can be resized
+ *
+ * Any backend can be segmented by handing its constructor to segmented(n, factory),
+ * e.g. size -> new DictionaryCapsuleStorage(size, pool) to share one name pool.
+ */
+public interface CapsuleStorage {
+  // slot is changing hands, see BookingEngine
+  String BUSY = new String("<busy>");
+  // free slot in an engine with a snapshot, where null means "not loaded yet"
+  String VACANT = new String("<vacant>");
+
+  int capacity();
+
+  // volatile-acquire read of the slot
+  String get(int index);
+
+  // release write of the slot
+  void set(int index, String value);
+
+  boolean compareAndSet(int index, String expected, String update);
+
+  /**
+   * Changes the number of slots, keeping the values of those that stay.
+   * @throws UnsupportedOperationException if the backend has a fixed capacity
+   */
+  default void resize(int capacity){
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " has a fixed capacity");
+  }
+
+  static CapsuleStorage array(int capacity){
+    return new ArrayCapsuleStorage(capacity);
+  }
+
+  static CapsuleStorage dictionary(int capacity){
+    return new DictionaryCapsuleStorage(capacity, new GuestNamePool());
+  }
+
+  static CapsuleStorage offHeap(int capacity){
+    return new OffHeapCapsuleStorage(capacity, new GuestNamePool());
+  }
+
+  static CapsuleStorage segmented(int capacity){
+    return new SegmentedCapsuleStorage(capacity, CapsuleStorage::array);
+  }
+
+  static CapsuleStorage segmented(int capacity, IntFunction<CapsuleStorage> segmentFactory){
+    return new SegmentedCapsuleStorage(capacity, segmentFactory);
+  }
+}
@@ -0,0 +1,52 @@
+package zih;
+
+/**
+ * Outcome of a check-in: either the guest is booked into the capsule,
+ * or the error says why not.
+ */
+public final class CheckInResult {
+  private final BookingError error;
+  private final int capsuleNumber;
+  private final String guestName;
+
+  private CheckInResult(BookingError error, int capsuleNumber, String guestName){
+    this.error = error;
+    this.capsuleNumber = capsuleNumber;
+    this.guestName = guestName;
+  }
+
+  public static CheckInResult booked(int capsuleNumber, String guestName){
+    return new CheckInResult(null, capsuleNumber, guestName);
+  }
+
+  public static CheckInResult failed(BookingError error, int capsuleNumber, String guestName){
+    if (error == null){
+      throw new IllegalArgumentException("error must not be null");
+    }
+    return new CheckInResult(error, capsuleNumber, guestName);
+  }
+
+  public boolean isSuccess(){
+    return error == null;
+  }
+
+  // null when the check-in succeeded
+  public BookingError getError(){
+    return error;
+  }
+
+  public int getCapsuleNumber(){
+    return capsuleNumber;
+  }
+
+  public String getGuestName(){
+    return guestName;
+  }
+
+  @Override
+  public String toString(){
+    return isSuccess()
+            ? "CheckInResult[booked " + guestName + " in #" + capsuleNumber + "]"
+            : "CheckInResult[" + error + " #" + capsuleNumber + "]";
+  }
+}
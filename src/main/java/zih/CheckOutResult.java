@@ -0,0 +1,53 @@
+package zih;
+
+/**
+ * Outcome of a check-out: either the guest that left the capsule,
+ * or the error says why nobody was checked out.
+ */
+public final class CheckOutResult {
+  private final BookingError error;
+  private final int capsuleNumber;
+  private final String guestName;
+
+  private CheckOutResult(BookingError error, int capsuleNumber, String guestName){
+    this.error = error;
+    this.capsuleNumber = capsuleNumber;
+    this.guestName = guestName;
+  }
+
+  public static CheckOutResult checkedOut(int capsuleNumber, String guestName){
+    return new CheckOutResult(null, capsuleNumber, guestName);
+  }
+
+  public static CheckOutResult failed(BookingError error, int capsuleNumber){
+    if (error == null){
+      throw new IllegalArgumentException("error must not be null");
+    }
+    return new CheckOutResult(error, capsuleNumber, null);
+  }
+
+  public boolean isSuccess(){
+    return error == null;
+  }
+
+  // null when the check-out succeeded
+  public BookingError getError(){
+    return error;
+  }
+
+  public int getCapsuleNumber(){
+    return capsuleNumber;
+  }
+
+  // the guest that was checked out, null on failure
+  public String getGuestName(){
+    return guestName;
+  }
+
+  @Override
+  public String toString(){
+    return isSuccess()
+            ? "CheckOutResult[checked out " + guestName + " from #" + capsuleNumber + "]"
+            : "CheckOutResult[" + error + " #" + capsuleNumber + "]";
+  }
+}
@@ -0,0 +1,42 @@
+package zih;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * One int guest ID per capsule, names kept once each in a GuestNamePool.
+ * 4 bytes per capsule instead of a reference plus a String per guest.
+ */
+public class DictionaryCapsuleStorage implements CapsuleStorage {
+  private final AtomicIntegerArray ids;
+  private final GuestNamePool names;
+
+  public DictionaryCapsuleStorage(int capacity, GuestNamePool names){
+    this.ids = new AtomicIntegerArray(capacity);
+    this.names = names;
+  }
+
+  @Override
+  public int capacity(){
+    return ids.length();
+  }
+
+  @Override
+  public String get(int index){
+    return names.decode(ids.getAcquire(index));
+  }
+
+  @Override
+  public void set(int index, String value){
+    ids.setRelease(index, names.encode(value));
+  }
+
+  @Override
+  public boolean compareAndSet(int index, String expected, String update){
+    int expectedId = names.lookup(expected);
+    return expectedId >= 0 && ids.compareAndSet(index, expectedId, names.encode(update));
+  }
+
+  public GuestNamePool names(){
+    return names;
+  }
+}
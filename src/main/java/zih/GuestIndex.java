@@ -0,0 +1,185 @@
+package zih;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Guest name -> capsule numbers, so a guest can be found without paging
+ * through the capsules.
+ *
+ * Names are matched ignoring case. The index is a ConcurrentSkipListMap from the
+ * lower-cased name to the sorted capsule numbers booked under it, so an exact
+ * lookup is O(log n) and a prefix search is O(log n) plus the matches it returns.
+ *
+ * It listens to the engine, so every check-in and check-out (console, batch or
+ * anything else going through BookingEngine) keeps it current. The engine calls
+ * listeners under the capsule's lock stripe, so the updates for one capsule arrive
+ * in booking order; updates for one name from different capsules are merged with
+ * an atomic compute on that name. A lookup can still run between a booking and
+ * its index update, so results are checked against the capsule before they are
+ * returned: the index may briefly miss a guest that was just booked, but never
+ * reports a capsule the guest has already left.
+ */
+public class GuestIndex implements BookingListener {
+  private static final int[] NONE = new int[0];
+
+  private final BookingEngine engine;
+  private final ConcurrentSkipListMap<String, int[]> capsulesByName = new ConcurrentSkipListMap<>();
+
+  private GuestIndex(BookingEngine engine){
+    this.engine = engine;
+  }
+
+  /**
+   * Indexes the guests already in the engine and keeps following its bookings.
+   * Like any listener, attach it before the engine takes traffic: a booking
+   * already under way when it is attached may be missed. Loads every occupied
+   * capsule of a snapshot-backed engine, so attach on first use rather than at
+   * startup.
+   */
+  public static GuestIndex attach(BookingEngine engine){
+    GuestIndex index = new GuestIndex(engine);
+    // listen first: a check-out racing the scan can only leave a stale entry, which lookups skip
+    engine.addListener(index);
+    for (int i = engine.occupancy.firstOccupied(); i >= 0; i = engine.occupancy.nextOccupied(i + 1)){
+      String guestName = engine.guestAt(i + 1);
+      if (guestName != null){
+        index.onCheckIn(i + 1, guestName);
+      }
+    }
+    return index;
+  }
+
+  // stops following the engine
+  public void detach(){
+    engine.removeListener(this);
+  }
+
+  @Override
+  public void onCheckIn(int capsuleNumber, String guestName){
+    capsulesByName.compute(key(guestName), (name, capsules) -> with(capsules, capsuleNumber));
+  }
+
+  @Override
+  public void onCheckOut(int capsuleNumber, String guestName){
+    capsulesByName.computeIfPresent(key(guestName), (name, capsules) -> without(capsules, capsuleNumber));
+  }
+
+  /**
+   * @return the capsules booked under guestName (any case), lowest first; empty if none
+   */
+  public int[] find(String guestName){
+    String key = key(guestName);
+    int[] capsules = capsulesByName.getOrDefault(key, NONE);
+    int found = 0;
+    int[] verified = new int[capsules.length];
+    for (int capsuleNumber : capsules){
+      if (matches(capsuleNumber, key) != null){
+        verified[found++] = capsuleNumber;
+      }
+    }
+    return found == verified.length ? verified : Arrays.copyOf(verified, found);
+  }
+
+  /**
+   * @return the first capsule booked under guestName, or 0 if the guest is not booked
+   */
+  public int capsuleOf(String guestName){
+    int[] capsules = find(guestName);
+    return capsules.length == 0 ? 0 : capsules[0];
+  }
+
+  /**
+   * Guests whose name starts with prefix (any case), ordered by name, then capsule.
+   * @param limit the most results to return
+   */
+  public List<GuestLocation> findByPrefix(String prefix, int limit){
+    if (limit < 0){
+      throw new IllegalArgumentException("limit must not be negative: " + limit);
+    }
+    String from = key(prefix);
+    String to = successor(from);
+    NavigableMap<String, int[]> range = to == null
+            ? capsulesByName.tailMap(from, true)
+            : capsulesByName.subMap(from, true, to, false);
+    List<GuestLocation> locations = new ArrayList<>(Math.min(limit, 16));
+    for (Map.Entry<String, int[]> entry : range.entrySet()){
+      for (int capsuleNumber : entry.getValue()){
+        if (locations.size() == limit){
+          return locations;
+        }
+        String guestName = matches(capsuleNumber, entry.getKey());
+        if (guestName != null){
+          locations.add(new GuestLocation(guestName, capsuleNumber));
+        }
+      }
+    }
+    return locations;
+  }
+
+  // number of distinct names indexed
+  public int nameCount(){
+    return capsulesByName.size();
+  }
+
+  // the guest in the capsule if their name still has this key, else null
+  private String matches(int capsuleNumber, String key){
+    String guestName = engine.guestAt(capsuleNumber);
+    return guestName != null && key(guestName).equals(key) ? guestName : null;
+  }
+
+  private static String key(String guestName){
+    if (guestName == null){
+      throw new IllegalArgumentException("guestName must not be null");
+    }
+    return guestName.toLowerCase(Locale.ROOT);
+  }
+
+  // smallest string greater than every string starting with prefix, null if there is none
+  private static String successor(String prefix){
+    int end = prefix.length();
+    while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE){
+      end--;
+    }
+    if (end == 0){
+      return null;
+    }
+    return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+  }
+
+  // copies of the sorted capsule array with one number added or removed
+  private static int[] with(int[] capsules, int capsuleNumber){
+    if (capsules == null){
+      return new int[]{capsuleNumber};
+    }
+    int at = Arrays.binarySearch(capsules, capsuleNumber);
+    if (at >= 0){
+      return capsules;
+    }
+    at = -at - 1;
+    int[] updated = new int[capsules.length + 1];
+    System.arraycopy(capsules, 0, updated, 0, at);
+    updated[at] = capsuleNumber;
+    System.arraycopy(capsules, at, updated, at + 1, capsules.length - at);
+    return updated;
+  }
+
+  private static int[] without(int[] capsules, int capsuleNumber){
+    int at = Arrays.binarySearch(capsules, capsuleNumber);
+    if (at < 0){
+      return capsules;
+    }
+    if (capsules.length == 1){
+      return null;                        // removes the name
+    }
+    int[] updated = new int[capsules.length - 1];
+    System.arraycopy(capsules, 0, updated, 0, at);
+    System.arraycopy(capsules, at + 1, updated, at, capsules.length - at - 1);
+    return updated;
+  }
+}
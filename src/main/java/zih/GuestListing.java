@@ -0,0 +1,185 @@
+package zih;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy listings of any range of capsules, for exports and listings too large to
+ * build in memory.
+ *
+ * stream() reads one capsule at a time as the consumer pulls, so memory stays
+ * constant however large the range; with occupiedOnly it jumps from guest to
+ * guest through HotelService.nextOccupied. page() hands out fixed-size pages
+ * with an opaque token for the next one, for clients that come back later (HTTP).
+ *
+ * Neither takes a snapshot: bookings made while a listing is under way may or
+ * may not show up, but every capsule in range is visited exactly once.
+ * Ranges use array indexes [start, end) like GuestRangeRenderer.
+ */
+public final class GuestListing {
+  // smallest range a parallel stream splits off
+  private static final int MIN_SPLIT = 1 << 12;
+
+  private GuestListing(){
+  }
+
+  /**
+   * One GuestLocation per capsule in [start, end), in capsule order.
+   * Unoccupied capsules have a null guest name unless occupiedOnly skips them.
+   */
+  public static Stream<GuestLocation> stream(HotelService service, int start, int end, boolean occupiedOnly){
+    GuestRangeRenderer.checkRange(service, start, end);
+    return StreamSupport.stream(new RangeSpliterator(service, start, end, occupiedOnly), false);
+  }
+
+  /**
+   * First page of the listing of [start, end).
+   */
+  public static Page page(HotelService service, int start, int end, boolean occupiedOnly, int pageSize){
+    GuestRangeRenderer.checkRange(service, start, end);
+    if (pageSize < 1){
+      throw new IllegalArgumentException("pageSize must be at least 1: " + pageSize);
+    }
+    if (!occupiedOnly){
+      // one bulk read, which a remote or sharded service answers in a request per shard
+      int pageEnd = (int) Math.min(end, (long) start + pageSize);
+      String[] names = service.guestsInRange(start, pageEnd);
+      List<GuestLocation> guests = new ArrayList<>(names.length);
+      for (int i = 0; i < names.length; i++){
+        guests.add(new GuestLocation(names[i], start + i + 1));
+      }
+      return new Page(guests, pageEnd < end ? token(pageEnd, end, false) : null);
+    }
+    RangeSpliterator cursor = new RangeSpliterator(service, start, end, occupiedOnly);
+    List<GuestLocation> guests = new ArrayList<>(Math.min(pageSize, end - start));
+    while (guests.size() < pageSize && cursor.tryAdvance(guests::add)){
+    }
+    // a page that filled at the last guest in range is the last page
+    int following = cursor.next < cursor.end ? service.nextOccupied(cursor.next + 1) : 0;
+    String nextPageToken = following != 0 && following <= cursor.end ? cursor.token() : null;
+    return new Page(guests, nextPageToken);
+  }
+
+  /**
+   * The page after the one that returned pageToken.
+   * @throws IllegalArgumentException if the token is malformed or not for this hotel
+   */
+  public static Page page(HotelService service, String pageToken, int pageSize){
+    String[] parts = pageToken.split("\\.");
+    if (parts.length != 3 || !(parts[2].equals("o") || parts[2].equals("a"))){
+      throw new IllegalArgumentException("Invalid page token: " + pageToken);
+    }
+    int next;
+    int end;
+    try {
+      next = Integer.parseInt(parts[0], Character.MAX_RADIX);
+      end = Integer.parseInt(parts[1], Character.MAX_RADIX);
+    } catch (NumberFormatException e){
+      throw new IllegalArgumentException("Invalid page token: " + pageToken);
+    }
+    if (next < 0 || end > service.capacity() || next > end){
+      throw new IllegalArgumentException("Page token outside this hotel: " + pageToken);
+    }
+    return page(service, next, end, parts[2].equals("o"), pageSize);
+  }
+
+  /**
+   * A page of guests and the token for the next one.
+   */
+  public static final class Page {
+    private final List<GuestLocation> guests;
+    private final String nextPageToken;
+
+    Page(List<GuestLocation> guests, String nextPageToken){
+      this.guests = Collections.unmodifiableList(guests);
+      this.nextPageToken = nextPageToken;
+    }
+
+    public List<GuestLocation> getGuests(){
+      return guests;
+    }
+
+    // null on the last page
+    public String getNextPageToken(){
+      return nextPageToken;
+    }
+
+    public boolean hasNext(){
+      return nextPageToken != null;
+    }
+  }
+
+  // cursor over [next, end), split in halves for parallel streams
+  private static final class RangeSpliterator implements Spliterator<GuestLocation> {
+    private final HotelService service;
+    private final boolean occupiedOnly;
+    private int next;
+    private final int end;
+
+    RangeSpliterator(HotelService service, int next, int end, boolean occupiedOnly){
+      this.service = service;
+      this.next = next;
+      this.end = end;
+      this.occupiedOnly = occupiedOnly;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super GuestLocation> action){
+      while (next < end){
+        int index = next;
+        if (occupiedOnly){
+          int capsuleNumber = service.nextOccupied(index + 1);
+          if (capsuleNumber == 0 || capsuleNumber > end){
+            next = end;
+            return false;
+          }
+          index = capsuleNumber - 1;
+        }
+        next = index + 1;
+        String guestName = service.guestAt(index + 1);
+        // a guest found by nextOccupied may have left before guestAt
+        if (guestName != null || !occupiedOnly){
+          action.accept(new GuestLocation(guestName, index + 1));
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public Spliterator<GuestLocation> trySplit(){
+      if (end - next < 2 * MIN_SPLIT){
+        return null;
+      }
+      int middle = (next + end) >>> 1;
+      RangeSpliterator prefix = new RangeSpliterator(service, next, middle, occupiedOnly);
+      next = middle;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize(){
+      return end - next;
+    }
+
+    @Override
+    public int characteristics(){
+      return ORDERED | NONNULL | (occupiedOnly ? 0 : SIZED | SUBSIZED);
+    }
+
+    String token(){
+      return GuestListing.token(next, end, occupiedOnly);
+    }
+  }
+
+  // "<next>.<end>.<o|a>" in base 36
+  private static String token(int next, int end, boolean occupiedOnly){
+    return Integer.toString(next, Character.MAX_RADIX) + '.'
+            + Integer.toString(end, Character.MAX_RADIX) + '.' + (occupiedOnly ? 'o' : 'a');
+  }
+}
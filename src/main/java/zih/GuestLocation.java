@@ -0,0 +1,27 @@
+package zih;
+
+/**
+ * A guest found by GuestIndex and the capsule they are booked in.
+ */
+public final class GuestLocation {
+  private final String guestName;
+  private final int capsuleNumber;
+
+  GuestLocation(String guestName, int capsuleNumber){
+    this.guestName = guestName;
+    this.capsuleNumber = capsuleNumber;
+  }
+
+  public String getGuestName(){
+    return guestName;
+  }
+
+  public int getCapsuleNumber(){
+    return capsuleNumber;
+  }
+
+  @Override
+  public String toString(){
+    return guestName + " #" + capsuleNumber;
+  }
+}
@@ -0,0 +1,92 @@
+package zih;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Deduplicated guest names, each with a small int ID.
+ * IDs 0-2 are reserved for null, BUSY and VACANT so a slot table can be a plain int array.
+ *
+ * Names are never removed: the pool grows with the number of distinct names
+ * ever seen, not with the number of capsules, which is what makes it small for
+ * large hotels where names repeat.
+ */
+public class GuestNamePool {
+  static final int NULL_ID = 0;
+  static final int BUSY_ID = 1;
+  static final int VACANT_ID = 2;
+  private static final int FIRST_NAME_ID = 3;
+  private static final int CHUNK_SHIFT = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  // enough chunks for every non-negative int ID, so the directory never has to grow
+  private static final int MAX_CHUNKS = 1 << (31 - CHUNK_SHIFT);
+
+  private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+  private final AtomicInteger nextId = new AtomicInteger(FIRST_NAME_ID);
+  // id -> name, chunks are allocated as IDs reach them
+  private final AtomicReferenceArray<AtomicReferenceArray<String>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+  /**
+   * @return the ID for value, registering new names on first use
+   */
+  public int encode(String value){
+    if (value == null){
+      return NULL_ID;
+    }
+    if (value == CapsuleStorage.BUSY){
+      return BUSY_ID;
+    }
+    if (value == CapsuleStorage.VACANT){
+      return VACANT_ID;
+    }
+    Integer id = ids.get(value);
+    if (id != null){
+      return id;
+    }
+    return ids.computeIfAbsent(value, name -> {
+      int newId = nextId.getAndIncrement();
+      chunkFor(newId).set(newId & (CHUNK_SIZE - 1), name);
+      return newId;
+    });
+  }
+
+  /**
+   * @return the ID for value, or -1 if the name was never registered
+   */
+  public int lookup(String value){
+    if (value == null || value == CapsuleStorage.BUSY || value == CapsuleStorage.VACANT){
+      return encode(value);
+    }
+    Integer id = ids.get(value);
+    return id == null ? -1 : id;
+  }
+
+  public String decode(int id){
+    switch (id){
+      case NULL_ID:
+        return null;
+      case BUSY_ID:
+        return CapsuleStorage.BUSY;
+      case VACANT_ID:
+        return CapsuleStorage.VACANT;
+      default:
+        return chunks.get(id >>> CHUNK_SHIFT).get(id & (CHUNK_SIZE - 1));
+    }
+  }
+
+  // number of distinct names registered
+  public int size(){
+    return nextId.get() - FIRST_NAME_ID;
+  }
+
+  private AtomicReferenceArray<String> chunkFor(int id){
+    int chunkIndex = id >>> CHUNK_SHIFT;
+    AtomicReferenceArray<String> chunk = chunks.get(chunkIndex);
+    if (chunk == null){
+      chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+      chunk = chunks.get(chunkIndex);
+    }
+    return chunk;
+  }
+}
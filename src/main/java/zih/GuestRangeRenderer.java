@@ -0,0 +1,103 @@
+package zih;
+
+import java.io.IOException;
+
+/**
+ * Writes the "Capsule: Guest" listing for a range of capsules.
+ * Lines are appended piece by piece straight into the caller's buffer or writer,
+ * so rendering a window does not build any intermediate Strings. Callers that
+ * render repeatedly should reuse their StringBuilder (setLength(0)) or keep a
+ * BufferedWriter open.
+ */
+public final class GuestRangeRenderer {
+  public static final String HEADER = "Capsule: Guest\n";
+  public static final String UNOCCUPIED = "[unoccupied]";
+  // capsules read per HotelService.guestsInRange call, one request per shard for a sharded hotel
+  static final int READ_CHUNK = 1024;
+
+  private GuestRangeRenderer(){
+  }
+
+  /**
+   * Appends the header and one line per capsule for array indexes [start, end).
+   * Capsule numbers in the output are 1-based.
+   */
+  public static void render(HotelService service, int start, int end, StringBuilder out){
+    checkRange(service, start, end);
+    out.append(HEADER);
+    appendLines(service, start, end, out);
+  }
+
+  // the capsule lines of render without the header, for callers that flush in chunks
+  static void appendLines(HotelService service, int start, int end, StringBuilder out){
+    for (int from = start; from < end; from += READ_CHUNK){
+      String[] guests = service.guestsInRange(from, Math.min(end, from + READ_CHUNK));
+      for (int i = 0; i < guests.length; i++){
+        int displayIndex = from + i + 1;
+        String guest = guests[i];
+        out.append(displayIndex).append(": ").append(guest == null ? UNOCCUPIED : guest).append('\n');
+      }
+    }
+  }
+
+  /**
+   * Same listing as render(service, start, end, StringBuilder) but for any
+   * Appendable, e.g. a BufferedWriter paging through a large hotel.
+   */
+  public static void render(HotelService service, int start, int end, Appendable out) throws IOException {
+    if (out instanceof StringBuilder){
+      render(service, start, end, (StringBuilder) out);
+      return;
+    }
+    checkRange(service, start, end);
+    out.append(HEADER);
+    for (int from = start; from < end; from += READ_CHUNK){
+      String[] guests = service.guestsInRange(from, Math.min(end, from + READ_CHUNK));
+      for (int i = 0; i < guests.length; i++){
+        String guest = guests[i];
+        appendNumber(out, from + i + 1);
+        out.append(": ").append(guest == null ? UNOCCUPIED : guest).append('\n');
+      }
+    }
+  }
+
+  /**
+   * Header plus one line per occupied capsule in [start, end), skipping free
+   * capsules through HotelService.nextOccupied instead of reading each one.
+   * @return the number of guests written
+   */
+  public static int renderOccupied(HotelService service, int start, int end, Appendable out) throws IOException {
+    checkRange(service, start, end);
+    out.append(HEADER);
+    int written = 0;
+    for (int capsuleNumber = service.nextOccupied(start + 1);
+         capsuleNumber != 0 && capsuleNumber <= end;
+         capsuleNumber = service.nextOccupied(capsuleNumber + 1)){
+      String guest = service.guestAt(capsuleNumber);
+      if (guest != null){
+        appendNumber(out, capsuleNumber);
+        out.append(": ").append(guest).append('\n');
+        written++;
+      }
+    }
+    return written;
+  }
+
+  // writes a positive int digit by digit, Appendable has no append(int)
+  static void appendNumber(Appendable out, int number) throws IOException {
+    int divisor = 1;
+    while (number / divisor >= 10){
+      divisor *= 10;
+    }
+    while (divisor > 0){
+      out.append((char) ('0' + (number / divisor) % 10));
+      divisor /= 10;
+    }
+  }
+
+  static void checkRange(HotelService service, int start, int end){
+    if (start < 0 || end > service.capacity() || start > end){
+      throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") outside [0, " + service.capacity() + ")");
+    }
+  }
+}
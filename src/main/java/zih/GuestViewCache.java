@@ -0,0 +1,313 @@
+package zih;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rendered guest listings of small ranges, kept for the next time a front-desk
+ * screen asks for the same window of capsules.
+ *
+ * A page is the text GuestRangeRenderer.render writes for array indexes
+ * [start, end), keyed by that range. The cache follows the engine as a
+ * listener and drops exactly the pages holding a capsule that is checked in
+ * or out, in a batch or alone; bookings elsewhere leave them alone. Pages are
+ * kept in start order so a booking finds the ones it touches by looking at
+ * the starts of at most the longest page before it. At most maxPages pages are
+ * kept, the least recently used one going first.
+ *
+ * A page is rendered outside the cache's lock from a HotelView, so it shows
+ * one moment. Before reading, the render leaves a placeholder for its range; a
+ * booking inside the range while it reads marks the placeholder stale, and a
+ * stale render is returned to its caller but not kept. The engine tells its
+ * listeners after the booking is visible, so a kept page never misses one.
+ */
+public class GuestViewCache implements BookingListener {
+  // longest range worth keeping, as many lines as printGuestInRange buffers at once
+  static final int MAX_PAGE_CAPSULES = CapsuleHotel.PRINT_CHUNK;
+
+  // a cached range, or a placeholder while text is null; linked in LRU order
+  private static final class Page {
+    final int start;
+    final int end;
+    String text;
+    boolean stale;
+    Page newer;
+    Page older;
+
+    Page(int start, int end){
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  private final BookingEngine engine;
+  private final int maxPages;
+  // by key(start, end), so a booking can walk the pages starting just before it
+  private final TreeMap<Long, Page> pages = new TreeMap<>();
+  // most and least recently used page with text; placeholders are not linked
+  private Page newest;
+  private Page oldest;
+  private int cachedCount;
+  // the length of the longest page in pages, kept or in flight
+  private int longestPage;
+
+  private long hits;
+  private long misses;
+  private long invalidations;
+  private long evictions;
+  private final LatencyHistogram hitLatency = new LatencyHistogram();
+  private final LatencyHistogram missLatency = new LatencyHistogram();
+
+  private GuestViewCache(BookingEngine engine, int maxPages){
+    if (maxPages < 1){
+      throw new IllegalArgumentException("The cache must hold at least one page.");
+    }
+    this.engine = engine;
+    this.maxPages = maxPages;
+  }
+
+  /**
+   * Caches up to maxPages listings of engine and starts following its
+   * bookings.
+   */
+  public static GuestViewCache attach(BookingEngine engine, int maxPages){
+    GuestViewCache cache = new GuestViewCache(engine, maxPages);
+    engine.addListener(cache);
+    return cache;
+  }
+
+  // stops following the engine and forgets every page
+  public void detach(){
+    engine.removeListener(this);
+    synchronized (this){
+      pages.clear();
+      newest = null;
+      oldest = null;
+      cachedCount = 0;
+      longestPage = 0;
+    }
+  }
+
+  /**
+   * The listing GuestRangeRenderer.render writes for [start, end), header
+   * included, from the cache when it has the page. Ranges longer than
+   * MAX_PAGE_CAPSULES are rendered every time.
+   */
+  public String render(int start, int end){
+    long started = System.nanoTime();
+    GuestRangeRenderer.checkRange(engine, start, end);
+    Page placeholder = null;
+    boolean cacheable = end - start <= MAX_PAGE_CAPSULES;
+    if (cacheable){
+      synchronized (this){
+        Page page = pages.get(key(start, end));
+        if (page != null && page.text != null){
+          hits++;
+          touch(page);
+          hitLatency.record(System.nanoTime() - started);
+          return page.text;
+        }
+        misses++;
+        // a render already in flight for the range keeps its placeholder; this one is not kept
+        if (page == null){
+          placeholder = new Page(start, end);
+          pages.put(key(start, end), placeholder);
+          longestPage = Math.max(longestPage, end - start);
+        }
+      }
+    }
+    StringBuilder out = new StringBuilder(32 + 24 * (end - start));
+    try (HotelView view = engine.openView()){
+      GuestRangeRenderer.render(view, start, end, out);
+    } catch (RuntimeException | Error e){
+      if (placeholder != null){
+        synchronized (this){
+          pages.remove(key(start, end), placeholder);
+        }
+      }
+      throw e;
+    }
+    String text = out.toString();
+    if (placeholder != null){
+      synchronized (this){
+        if (placeholder.stale || pages.get(key(start, end)) != placeholder){
+          pages.remove(key(start, end), placeholder);
+        } else {
+          placeholder.text = text;
+          link(placeholder);
+          if (++cachedCount > maxPages){
+            evict();
+          }
+        }
+      }
+    }
+    missLatency.record(System.nanoTime() - started);
+    return text;
+  }
+
+  @Override
+  public void onCheckIn(int capsuleNumber, String guestName){
+    invalidate(capsuleNumber - 1);
+  }
+
+  @Override
+  public void onCheckOut(int capsuleNumber, String guestName){
+    invalidate(capsuleNumber - 1);
+  }
+
+  // pages past a shrunk end are out of range, pages a grown hotel keeps are unchanged
+  @Override
+  public synchronized void onResize(int capacity){
+    Iterator<Page> iterator = pages.values().iterator();
+    while (iterator.hasNext()){
+      Page page = iterator.next();
+      if (page.end > capacity){
+        page.stale = true;
+        iterator.remove();
+        if (page.text != null){
+          unlink(page);
+          cachedCount--;
+        }
+      }
+    }
+  }
+
+  // drops or marks stale every page holding the capsule at index
+  private synchronized void invalidate(int index){
+    if (pages.isEmpty()){
+      return;
+    }
+    Map<Long, Page> candidates = pages.subMap(key(Math.max(0, index - longestPage + 1), 0), true,
+            key(index, Integer.MAX_VALUE), true);
+    Iterator<Page> iterator = candidates.values().iterator();
+    while (iterator.hasNext()){
+      Page page = iterator.next();
+      if (page.end <= index){
+        continue;
+      }
+      invalidations++;
+      if (page.text == null){
+        // in flight: the render finds out when it comes back
+        page.stale = true;
+      } else {
+        iterator.remove();
+        unlink(page);
+        cachedCount--;
+      }
+    }
+  }
+
+  private void evict(){
+    Page victim = oldest;
+    pages.remove(key(victim.start, victim.end));
+    unlink(victim);
+    cachedCount--;
+    evictions++;
+  }
+
+  private void touch(Page page){
+    if (page != newest){
+      unlink(page);
+      link(page);
+    }
+  }
+
+  // makes page the newest
+  private void link(Page page){
+    page.older = newest;
+    page.newer = null;
+    if (newest != null){
+      newest.newer = page;
+    }
+    newest = page;
+    if (oldest == null){
+      oldest = page;
+    }
+  }
+
+  private void unlink(Page page){
+    if (page.newer != null){
+      page.newer.older = page.older;
+    } else {
+      newest = page.older;
+    }
+    if (page.older != null){
+      page.older.newer = page.newer;
+    } else {
+      oldest = page.newer;
+    }
+    page.newer = null;
+    page.older = null;
+  }
+
+  // ranges ordered by start, then end
+  private static long key(int start, int end){
+    return ((long) start << 32) | (end & 0xFFFFFFFFL);
+  }
+
+  /** Pages kept, placeholders of renders in flight not included. */
+  public synchronized int size(){
+    return cachedCount;
+  }
+
+  public synchronized long hitCount(){
+    return hits;
+  }
+
+  public synchronized long missCount(){
+    return misses;
+  }
+
+  /** Share of cacheable renders answered from the cache, 0 to 1. */
+  public synchronized double hitRatio(){
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : hits / (double) lookups;
+  }
+
+  /** Pages dropped or marked stale because a booking touched them. */
+  public synchronized long invalidationCount(){
+    return invalidations;
+  }
+
+  /** Pages dropped to stay within maxPages. */
+  public synchronized long evictionCount(){
+    return evictions;
+  }
+
+  /** Time render took when the page was kept. */
+  public LatencySnapshot hitLatency(){
+    return hitLatency.snapshot();
+  }
+
+  /** Time render took when it had to read the hotel. */
+  public LatencySnapshot missLatency(){
+    return missLatency.snapshot();
+  }
+
+  /**
+   * Appends the counts and latencies in the format of HotelMetrics.dump.
+   */
+  public void dump(Appendable out) throws IOException {
+    String counts;
+    synchronized (this){
+      counts = "view_cache_pages " + cachedCount + '\n'
+              + "view_cache_hits_total " + hits + '\n'
+              + "view_cache_misses_total " + misses + '\n'
+              + "view_cache_invalidations_total " + invalidations + '\n'
+              + "view_cache_evictions_total " + evictions + '\n'
+              + String.format("view_cache_hit_ratio %.3f%n", hitRatio());
+    }
+    out.append(counts);
+    appendLatency(out, "hit", hitLatency());
+    appendLatency(out, "miss", missLatency());
+  }
+
+  private static void appendLatency(Appendable out, String result, LatencySnapshot snapshot) throws IOException {
+    String labels = "view_cache_latency_us{result=\"" + result + "\",quantile=\"";
+    out.append(String.format("%s0.5\"} %.1f%n", labels, snapshot.getP50() / 1000.0));
+    out.append(String.format("%s0.99\"} %.1f%n", labels, snapshot.getP99() / 1000.0));
+    out.append(String.format("%s1\"} %.1f%n", labels, snapshot.getMax() / 1000.0));
+  }
+}
@@ -0,0 +1,509 @@
+package zih;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/JSON front end over a HotelService, so many clerks (or systems) can book
+ * at once instead of one console.
+ *
+ *   POST /checkin?capsule=N&guest=NAME     book a capsule, capsule omitted = next free
+ *   POST /checkout?capsule=N               check a capsule out
+ *   POST /batch/checkin?mode=M             book a group, one "capsule=N&guest=NAME" line
+ *        &policy=P                         per guest, or "guest=NAME" lines to pick capsules by P
+ *   POST /batch/checkout?mode=M            check out a group, one "capsule=N" line per capsule
+ *   GET  /guests?start=S&end=E             capsules S+1..E, like printGuestInRange
+ *        &occupied=true&pageSize=P         guests only, P per page (10,000 at most)
+ *        ?pageToken=T                      the page after the one that returned T
+ *   GET  /export?start=S&end=E&occupied=B  the whole listing as text, streamed, as of one moment
+ *   GET  /stats                            capacity, occupied and free counts
+ *   POST /resize?capsules=N                change the number of capsules
+ *   GET  /metrics                          HotelMetrics.dump, for an InstrumentedHotelService
+ *
+ * Replies are JSON. A refused booking answers with the BookingError name and
+ * 400 (INVALID_INPUT), 404 (DOES_NOT_EXIST) or 409 (the capsule state is wrong).
+ * Batches answer 200 with one result per line in order, failed items carrying
+ * their error; a batch check-in naming a capsule on two lines is refused whole
+ * with INVALID_INPUT. When the service is a ShardedHotelService, a shard that
+ * cannot be reached answers 503 (UNAVAILABLE) and one that refuses what the
+ * router asked 502 (BAD_GATEWAY). Any other failure is logged and answers 500
+ * (INTERNAL_ERROR). RemoteHotelService is the client for all of these.
+ *
+ * Each request runs on its own virtual thread when the JDK has them (21+), so
+ * thousands of clients waiting on the journal cost no platform threads. On older
+ * JDKs it falls back to a cached pool of platform threads.
+ */
+public class HotelHttpServer implements Closeable {
+  // most /guests capsules per page, a view window is 11
+  static final int MAX_PAGE = 10_000;
+
+  private final HotelService service;
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  private HotelHttpServer(HotelService service, HttpServer server, ExecutorService executor){
+    this.service = service;
+    this.server = server;
+    this.executor = executor;
+  }
+
+  /**
+   * Starts serving service on address (port 0 picks a free port).
+   */
+  public static HotelHttpServer start(HotelService service, InetSocketAddress address) throws IOException {
+    // a deep accept backlog so bursts of new connections are queued, not refused
+    HttpServer server = HttpServer.create(address, 4096);
+    ExecutorService executor = requestExecutor();
+    HotelHttpServer hotelServer = new HotelHttpServer(service, server, executor);
+    server.createContext("/checkin", exchange -> hotelServer.handle(exchange, "POST", hotelServer::checkIn));
+    server.createContext("/checkout", exchange -> hotelServer.handle(exchange, "POST", hotelServer::checkOut));
+    server.createContext("/batch/checkin", exchange -> hotelServer.handle(exchange, "POST",
+            query -> hotelServer.batchCheckIn(query, readBody(exchange))));
+    server.createContext("/batch/checkout", exchange -> hotelServer.handle(exchange, "POST",
+            query -> hotelServer.batchCheckOut(query, readBody(exchange))));
+    server.createContext("/guests", exchange -> hotelServer.handle(exchange, "GET", hotelServer::guests));
+    server.createContext("/export", hotelServer::export);
+    server.createContext("/metrics", hotelServer::metrics);
+    server.createContext("/stats", exchange -> hotelServer.handle(exchange, "GET", hotelServer::stats));
+    server.createContext("/resize", exchange -> hotelServer.handle(exchange, "POST", hotelServer::resize));
+    server.setExecutor(executor);
+    server.start();
+    return hotelServer;
+  }
+
+  public int port(){
+    return server.getAddress().getPort();
+  }
+
+  // true if requests run on virtual threads
+  public boolean usesVirtualThreads(){
+    return !(executor instanceof ThreadPoolExecutor);
+  }
+
+  @Override
+  public void close(){
+    server.stop(0);
+    executor.shutdown();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e){
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // a reply: HTTP status plus JSON body
+  private static final class Reply {
+    final int status;
+    final String json;
+
+    Reply(int status, String json){
+      this.status = status;
+      this.json = json;
+    }
+  }
+
+  private interface Handler {
+    Reply handle(Map<String, String> query) throws IOException;
+  }
+
+  private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+    Reply reply;
+    try {
+      if (!exchange.getRequestMethod().equals(method)){
+        exchange.getResponseHeaders().set("Allow", method);
+        reply = new Reply(405, "{\"error\":\"METHOD_NOT_ALLOWED\"}");
+      } else {
+        reply = handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()));
+      }
+    } catch (IllegalArgumentException e){
+      reply = error(BookingError.INVALID_INPUT, 0);
+    } catch (UncheckedIOException e){
+      // a shard that does not answer, or a journal that cannot be written
+      reply = new Reply(503, "{\"error\":\"UNAVAILABLE\"}");
+    } catch (UpstreamException e){
+      // a shard that refused what the router asked of it
+      System.err.println("Upstream hotel failed " + exchange.getRequestURI() + ": " + e.getMessage());
+      reply = new Reply(502, "{\"error\":\"BAD_GATEWAY\"}");
+    } catch (RuntimeException e){
+      System.err.println("Failed " + exchange.getRequestURI() + ":");
+      e.printStackTrace();
+      reply = new Reply(500, "{\"error\":\"INTERNAL_ERROR\"}");
+    }
+    if (reply.status == 400 && service instanceof InstrumentedHotelService){
+      // unreadable requests never reach the service, count them here
+      ((InstrumentedHotelService) service).metrics().recordError(BookingError.INVALID_INPUT);
+    }
+    byte[] body = reply.json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(reply.status, body.length);
+    try (OutputStream out = exchange.getResponseBody()){
+      out.write(body);
+    }
+  }
+
+  private Reply checkIn(Map<String, String> query){
+    String guestName = query.get("guest");
+    if (guestName == null || guestName.isBlank()){
+      return error(BookingError.INVALID_INPUT, 0);
+    }
+    String capsule = query.get("capsule");
+    CheckInResult result = capsule == null
+            ? service.checkInAny(guestName, AssignmentPolicy.valueOf(query.getOrDefault("policy", "LOWEST_NUMBERED")))
+            : service.checkIn(Integer.parseInt(capsule), guestName);
+    if (!result.isSuccess()){
+      return error(result.getError(), result.getCapsuleNumber());
+    }
+    StringBuilder json = new StringBuilder(64).append("{\"capsule\":").append(result.getCapsuleNumber())
+            .append(",\"guest\":");
+    return new Reply(200, appendString(json, guestName).append('}').toString());
+  }
+
+  private Reply checkOut(Map<String, String> query){
+    CheckOutResult result = service.checkOut(Integer.parseInt(require(query, "capsule")));
+    if (!result.isSuccess()){
+      return error(result.getError(), result.getCapsuleNumber());
+    }
+    StringBuilder json = new StringBuilder(64).append("{\"capsule\":").append(result.getCapsuleNumber())
+            .append(",\"guest\":");
+    return new Reply(200, appendString(json, result.getGuestName()).append('}').toString());
+  }
+
+  private Reply batchCheckIn(Map<String, String> query, List<Map<String, String>> items){
+    BatchMode mode = BatchMode.valueOf(query.getOrDefault("mode", "BEST_EFFORT"));
+    String policy = query.get("policy");
+    BatchResult<CheckInResult> results;
+    if (policy == null){
+      Map<Integer, String> bookings = new LinkedHashMap<>();
+      for (Map<String, String> item : items){
+        int capsuleNumber = Integer.parseInt(require(item, "capsule"));
+        // a second line for a capsule would replace the first guest without a result of its own
+        if (bookings.put(capsuleNumber, require(item, "guest")) != null){
+          return error(BookingError.INVALID_INPUT, capsuleNumber);
+        }
+      }
+      results = service.checkInAll(bookings, mode);
+    } else {
+      List<String> guestNames = new ArrayList<>(items.size());
+      for (Map<String, String> item : items){
+        guestNames.add(require(item, "guest"));
+      }
+      results = service.checkInAll(guestNames, AssignmentPolicy.valueOf(policy), mode);
+    }
+    StringBuilder json = new StringBuilder(32 + results.size() * 40)
+            .append("{\"succeeded\":").append(results.getSuccessCount()).append(",\"results\":[");
+    for (CheckInResult result : results.getResults()){
+      appendResult(json, result.getError(), result.getCapsuleNumber(), result.getGuestName());
+    }
+    return new Reply(200, json.append("]}").toString());
+  }
+
+  private Reply batchCheckOut(Map<String, String> query, List<Map<String, String>> items){
+    BatchMode mode = BatchMode.valueOf(query.getOrDefault("mode", "BEST_EFFORT"));
+    int[] capsuleNumbers = new int[items.size()];
+    for (int item = 0; item < capsuleNumbers.length; item++){
+      capsuleNumbers[item] = Integer.parseInt(require(items.get(item), "capsule"));
+    }
+    BatchResult<CheckOutResult> results = service.checkOutAll(capsuleNumbers, mode);
+    StringBuilder json = new StringBuilder(32 + results.size() * 40)
+            .append("{\"succeeded\":").append(results.getSuccessCount()).append(",\"results\":[");
+    for (CheckOutResult result : results.getResults()){
+      appendResult(json, result.getError(), result.getCapsuleNumber(), result.getGuestName());
+    }
+    return new Reply(200, json.append("]}").toString());
+  }
+
+  // one batch item: {"capsule":N,"guest":G} plus "error" when it failed
+  private static void appendResult(StringBuilder json, BookingError error, int capsuleNumber, String guestName){
+    if (json.charAt(json.length() - 1) != '['){
+      json.append(',');
+    }
+    json.append('{');
+    if (error != null){
+      json.append("\"error\":\"").append(error).append("\",");
+    }
+    json.append("\"capsule\":").append(capsuleNumber).append(",\"guest\":");
+    appendString(json, guestName).append('}');
+  }
+
+  // the request body of a batch, one query string per line
+  private static List<Map<String, String>> readBody(HttpExchange exchange) throws IOException {
+    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    List<Map<String, String>> items = new ArrayList<>();
+    for (String line : body.split("\n")){
+      if (!line.isBlank()){
+        items.add(parseQuery(line.strip()));
+      }
+    }
+    return items;
+  }
+
+  private Reply guests(Map<String, String> query){
+    int capacity = service.capacity();
+    String pageToken = query.get("pageToken");
+    int pageSize = Integer.parseInt(query.getOrDefault("pageSize", String.valueOf(MAX_PAGE)));
+    if (pageSize < 1 || pageSize > MAX_PAGE){
+      return error(BookingError.INVALID_INPUT, 0);
+    }
+    GuestListing.Page page;
+    if (pageToken != null){
+      page = GuestListing.page(service, pageToken, pageSize);
+    } else {
+      int start = Integer.parseInt(query.getOrDefault("start", "0"));
+      int end = Integer.parseInt(query.getOrDefault("end", String.valueOf(Math.min(capacity, start + 11))));
+      if (start < 0 || end > capacity){
+        return error(BookingError.DOES_NOT_EXIST, start < 0 ? start + 1 : end);
+      }
+      if (start > end){
+        return error(BookingError.INVALID_INPUT, start + 1);
+      }
+      page = GuestListing.page(service, start, end, Boolean.parseBoolean(query.get("occupied")), pageSize);
+    }
+    StringBuilder json = new StringBuilder(32 + page.getGuests().size() * 32).append("{\"guests\":[");
+    for (GuestLocation guest : page.getGuests()){
+      if (json.charAt(json.length() - 1) != '['){
+        json.append(',');
+      }
+      json.append("{\"capsule\":").append(guest.getCapsuleNumber()).append(",\"guest\":");
+      appendString(json, guest.getGuestName()).append('}');
+    }
+    json.append(']');
+    if (page.hasNext()){
+      appendString(json.append(",\"nextPageToken\":"), page.getNextPageToken());
+    }
+    return new Reply(200, json.append('}').toString());
+  }
+
+  // the whole listing as text, streamed with chunked encoding so memory does not grow with the hotel
+  private void export(HttpExchange exchange) throws IOException {
+    if (!exchange.getRequestMethod().equals("GET")){
+      handle(exchange, "GET", query -> null);
+      return;
+    }
+    Map<String, String> query;
+    int start;
+    int end;
+    try {
+      query = parseQuery(exchange.getRequestURI().getRawQuery());
+      start = Integer.parseInt(query.getOrDefault("start", "0"));
+      end = Integer.parseInt(query.getOrDefault("end", String.valueOf(service.capacity())));
+      GuestRangeRenderer.checkRange(service, start, end);
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e){
+      handle(exchange, "GET", ignored -> error(BookingError.INVALID_INPUT, 0));
+      return;
+    }
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(200, 0);
+    // one moment of the hotel however long the client takes to read it
+    try (HotelView view = HotelView.open(service);
+         Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 1 << 16)){
+      HotelService source = view == null ? service : view;
+      if (Boolean.parseBoolean(query.get("occupied"))){
+        GuestRangeRenderer.renderOccupied(source, start, end, out);
+      } else {
+        GuestRangeRenderer.render(source, start, end, out);
+      }
+    }
+  }
+
+  private Reply stats(Map<String, String> query){
+    int capacity = service.capacity();
+    int occupied = service.occupiedCount();
+    return new Reply(200, "{\"capacity\":" + capacity + ",\"occupied\":" + occupied
+            + ",\"free\":" + (capacity - occupied) + "}");
+  }
+
+  private Reply resize(Map<String, String> query){
+    int numberOfCapsules = Integer.parseInt(require(query, "capsules"));
+    if (numberOfCapsules < 1){
+      return error(BookingError.INVALID_INPUT, 0);
+    }
+    ResizeResult result;
+    try {
+      result = service.resize(numberOfCapsules);
+    } catch (UnsupportedOperationException e){
+      return new Reply(409, "{\"error\":\"FIXED_CAPACITY\"}");
+    }
+    if (!result.isSuccess()){
+      return error(result.getError(), result.getCapsuleNumber());
+    }
+    return new Reply(200, "{\"previousCapacity\":" + result.getPreviousCapacity()
+            + ",\"capacity\":" + result.getCapacity() + "}");
+  }
+
+  // HotelMetrics.dump as text, 404 when the service is not instrumented
+  private void metrics(HttpExchange exchange) throws IOException {
+    if (!(service instanceof InstrumentedHotelService)){
+      handle(exchange, "GET", query -> new Reply(404, "{\"error\":\"NO_METRICS\"}"));
+      return;
+    }
+    if (!exchange.getRequestMethod().equals("GET")){
+      handle(exchange, "GET", query -> null);
+      return;
+    }
+    StringBuilder dump = new StringBuilder(4096);
+    ((InstrumentedHotelService) service).metrics().dump(dump);
+    byte[] body = dump.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()){
+      out.write(body);
+    }
+  }
+
+  private static Reply error(BookingError error, int capsuleNumber){
+    int status;
+    switch (error){
+      case INVALID_INPUT:
+        status = 400;
+        break;
+      case DOES_NOT_EXIST:
+        status = 404;
+        break;
+      default:
+        status = 409;
+    }
+    return new Reply(status, "{\"error\":\"" + error + "\",\"capsule\":" + capsuleNumber + "}");
+  }
+
+  private static String require(Map<String, String> query, String name){
+    String value = query.get(name);
+    if (value == null){
+      throw new IllegalArgumentException("missing parameter " + name);
+    }
+    return value;
+  }
+
+  static Map<String, String> parseQuery(String rawQuery){
+    Map<String, String> query = new HashMap<>();
+    if (rawQuery == null || rawQuery.isEmpty()){
+      return query;
+    }
+    for (String pair : rawQuery.split("&")){
+      int equals = pair.indexOf('=');
+      String name = equals < 0 ? pair : pair.substring(0, equals);
+      String value = equals < 0 ? "" : pair.substring(equals + 1);
+      query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return query;
+  }
+
+  // appends value as a JSON string literal, or null
+  static StringBuilder appendString(StringBuilder json, String value){
+    if (value == null){
+      return json.append("null");
+    }
+    json.append('"');
+    for (int i = 0; i < value.length(); i++){
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\'){
+        json.append('\\').append(c);
+      } else if (c < 0x20){
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    return json.append('"');
+  }
+
+  // one virtual thread per request on JDK 21+, looked up reflectively so the code still builds on 17
+  static ExecutorService requestExecutor(){
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e){
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hotel-http");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Serves a hotel over HTTP.
+   *   --port P       port to listen on, 8080 by default
+   *   --capsules N   size of a new hotel, 100 by default
+   *   --data DIR     journal bookings to DIR and restore them on start
+   *   --shards URLS  host no capsules, route to the hotels served at these
+   *                  comma-separated base URLs instead (see ShardedHotelService)
+   */
+  public static void main(String[] args) throws IOException {
+    int port = Integer.parseInt(option(args, "--port", "8080"));
+    String shards = option(args, "--shards", null);
+    if (shards != null){
+      ShardedHotelService router = ShardedHotelService.connect(shards);
+      HotelHttpServer server = start(instrumented(router), new InetSocketAddress(port));
+      System.out.printf("Routing %s capsules on %s shards on http://localhost:%s/%n",
+              router.capacity(), router.shardCount(), server.port());
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        server.close();
+        router.close();
+      }));
+      return;
+    }
+    int capsules = Integer.parseInt(option(args, "--capsules", "100"));
+    Path dataDirectory = CapsuleHotel.dataDirectory(args);
+    HotelStore store = dataDirectory == null ? null : HotelStore.open(dataDirectory, capsules);
+    BookingEngine engine = store == null ? new BookingEngine(capsules) : store.engine();
+    if (store != null){
+      store.compactEvery(10, TimeUnit.MINUTES);
+    }
+    HotelHttpServer server = start(instrumented(engine), new InetSocketAddress(port));
+    System.out.printf("Serving %s capsules on http://localhost:%s/ (%s)%n", engine.capacity(), server.port(),
+            server.usesVirtualThreads() ? "virtual threads" : "platform threads");
+    HotelStore saved = store;
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      server.close();
+      if (saved != null){
+        try {
+          saved.compact();
+          saved.close();
+        } catch (IOException e){
+          System.err.println("Saving failed: " + e.getMessage());
+        }
+      }
+    }));
+  }
+
+  // counts and times bookings, readable at /metrics and over JMX
+  private static InstrumentedHotelService instrumented(HotelService service){
+    InstrumentedHotelService instrumented = new InstrumentedHotelService(service);
+    try {
+      instrumented.metrics().register();
+    } catch (JMException e){
+      System.err.println("Metrics are not available over JMX: " + e.getMessage());
+    }
+    return instrumented;
+  }
+
+  static String option(String[] args, String name, String defaultValue){
+    for (int i = 0; i < args.length - 1; i++){
+      if (args[i].equals(name)){
+        return args[i + 1];
+      }
+    }
+    return defaultValue;
+  }
+}
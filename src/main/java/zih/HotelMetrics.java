@@ -0,0 +1,173 @@
+package zih;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, error counts, an occupancy gauge and latency histograms for a hotel.
+ *
+ * Everything recorded on the booking path is a LongAdder increment or a striped
+ * histogram add, so threads booking at the same time do not contend on a shared
+ * counter. The occupancy gauge is read from the hotel when asked for.
+ * InstrumentedHotelService does the recording; read the numbers through JMX
+ * (register()) or as text (dump()).
+ */
+public class HotelMetrics implements HotelMetricsMXBean {
+  public static final String DEFAULT_NAME = "zih:type=HotelMetrics";
+
+  /**
+   * Operations with their own latency histogram.
+   */
+  public enum Operation {
+    CHECK_IN, CHECK_IN_ANY, CHECK_OUT, BATCH
+  }
+
+  private final HotelService hotel;
+  private final LongAdder checkIns = new LongAdder();
+  private final LongAdder checkOuts = new LongAdder();
+  private final LongAdder[] errors = new LongAdder[BookingError.values().length];
+  private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+
+  public HotelMetrics(HotelService hotel){
+    this.hotel = hotel;
+    for (int i = 0; i < errors.length; i++){
+      errors[i] = new LongAdder();
+    }
+    for (int i = 0; i < latencies.length; i++){
+      latencies[i] = new LatencyHistogram();
+    }
+  }
+
+  void checkedIn(long guests){
+    checkIns.add(guests);
+  }
+
+  void checkedOut(long guests){
+    checkOuts.add(guests);
+  }
+
+  // counts a refused booking; front ends call this for INVALID_INPUT, which never reaches the service
+  public void recordError(BookingError error){
+    errors[error.ordinal()].increment();
+  }
+
+  void recordLatency(Operation operation, long nanos){
+    latencies[operation.ordinal()].record(nanos);
+  }
+
+  public LatencyHistogram latency(Operation operation){
+    return latencies[operation.ordinal()];
+  }
+
+  public long errorCount(BookingError error){
+    return errors[error.ordinal()].sum();
+  }
+
+  @Override
+  public long getCheckIns(){
+    return checkIns.sum();
+  }
+
+  @Override
+  public long getCheckOuts(){
+    return checkOuts.sum();
+  }
+
+  @Override
+  public Map<String, Long> getErrors(){
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (BookingError error : BookingError.values()){
+      counts.put(error.name(), errorCount(error));
+    }
+    return counts;
+  }
+
+  @Override
+  public int getCapacity(){
+    return hotel.capacity();
+  }
+
+  @Override
+  public int getOccupied(){
+    return hotel.occupiedCount();
+  }
+
+  @Override
+  public double getOccupancyRatio(){
+    return (double) hotel.occupiedCount() / hotel.capacity();
+  }
+
+  @Override
+  public LatencySnapshot getCheckInLatency(){
+    return latency(Operation.CHECK_IN).snapshot();
+  }
+
+  @Override
+  public LatencySnapshot getCheckInAnyLatency(){
+    return latency(Operation.CHECK_IN_ANY).snapshot();
+  }
+
+  @Override
+  public LatencySnapshot getCheckOutLatency(){
+    return latency(Operation.CHECK_OUT).snapshot();
+  }
+
+  @Override
+  public LatencySnapshot getBatchLatency(){
+    return latency(Operation.BATCH).snapshot();
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server under DEFAULT_NAME.
+   * @return the name registered, for unregister
+   */
+  public ObjectName register() throws JMException {
+    ObjectName name = new ObjectName(DEFAULT_NAME);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(name)){
+      server.unregisterMBean(name);
+    }
+    server.registerMBean(this, name);
+    return name;
+  }
+
+  /**
+   * Writes every metric as one "name value" line, latencies in microseconds:
+   *
+   *   hotel_check_ins_total 1234
+   *   hotel_errors_total{error="OCCUPIED"} 5
+   *   hotel_latency_us{operation="CHECK_IN",quantile="0.99"} 3.2
+   */
+  public void dump(Appendable out) throws IOException {
+    out.append("hotel_capacity ").append(String.valueOf(getCapacity())).append('\n');
+    out.append("hotel_occupied ").append(String.valueOf(getOccupied())).append('\n');
+    out.append("hotel_check_ins_total ").append(String.valueOf(getCheckIns())).append('\n');
+    out.append("hotel_check_outs_total ").append(String.valueOf(getCheckOuts())).append('\n');
+    for (BookingError error : BookingError.values()){
+      out.append("hotel_errors_total{error=\"").append(error.name()).append("\"} ")
+              .append(String.valueOf(errorCount(error))).append('\n');
+    }
+    for (Operation operation : Operation.values()){
+      LatencySnapshot snapshot = latency(operation).snapshot();
+      String labels = "{operation=\"" + operation + "\"";
+      out.append("hotel_operations_total").append(labels).append("} ")
+              .append(String.valueOf(snapshot.getCount())).append('\n');
+      appendLatency(out, labels, "0.5", snapshot.getP50());
+      appendLatency(out, labels, "0.9", snapshot.getP90());
+      appendLatency(out, labels, "0.99", snapshot.getP99());
+      appendLatency(out, labels, "0.999", snapshot.getP999());
+      appendLatency(out, labels, "1", snapshot.getMax());
+    }
+  }
+
+  private static void appendLatency(Appendable out, String labels, String quantile, long nanos) throws IOException {
+    out.append("hotel_latency_us").append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+            .append(String.format("%.1f", nanos / 1000.0)).append('\n');
+  }
+}
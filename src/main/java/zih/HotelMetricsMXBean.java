@@ -0,0 +1,31 @@
+package zih;
+
+import java.util.Map;
+
+/**
+ * JMX view of HotelMetrics, registered as zih:type=HotelMetrics by default.
+ * Latencies are in nanoseconds.
+ */
+public interface HotelMetricsMXBean {
+
+  long getCheckIns();
+
+  long getCheckOuts();
+
+  // refused bookings by BookingError name
+  Map<String, Long> getErrors();
+
+  int getCapacity();
+
+  int getOccupied();
+
+  double getOccupancyRatio();
+
+  LatencySnapshot getCheckInLatency();
+
+  LatencySnapshot getCheckInAnyLatency();
+
+  LatencySnapshot getCheckOutLatency();
+
+  LatencySnapshot getBatchLatency();
+}
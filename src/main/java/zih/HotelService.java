@@ -0,0 +1,87 @@
+package zih;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Booking operations of a capsule hotel, free of any console I/O.
+ * Capsule numbers are 1-based like the numbers the clerk types in.
+ * Failures come back as a BookingError in the result instead of printed text.
+ */
+public interface HotelService {
+
+  CheckInResult checkIn(int capsuleNumber, String guestName);
+
+  /**
+   * Books guestName into a free capsule chosen by policy.
+   * The result carries the capsule number, or fails with NO_VACANCY.
+   */
+  CheckInResult checkInAny(String guestName, AssignmentPolicy policy);
+
+  CheckOutResult checkOut(int capsuleNumber);
+
+  /**
+   * Books each guest into the given capsule (capsule number -> guest name), in
+   * the map's iteration order. Results come back in the same order.
+   */
+  BatchResult<CheckInResult> checkInAll(Map<Integer, String> bookings, BatchMode mode);
+
+  /**
+   * Books each guest into a free capsule chosen by policy. Results come back in
+   * the order of guestNames.
+   */
+  BatchResult<CheckInResult> checkInAll(List<String> guestNames, AssignmentPolicy policy, BatchMode mode);
+
+  // checks out every capsule in capsuleNumbers, results in the same order
+  BatchResult<CheckOutResult> checkOutAll(int[] capsuleNumbers, BatchMode mode);
+
+  /**
+   * @return the guest in the capsule, or null if it is unoccupied or does not exist
+   */
+  String guestAt(int capsuleNumber);
+
+  /**
+   * Guests of capsules start+1 to end (array indexes [start, end) like
+   * GuestRangeRenderer), null for unoccupied ones. Remote and sharded services
+   * answer a whole range in a request per shard instead of one per capsule.
+   */
+  default String[] guestsInRange(int start, int end){
+    String[] guests = new String[end - start];
+    for (int i = 0; i < guests.length; i++){
+      guests[i] = guestAt(start + i + 1);
+    }
+    return guests;
+  }
+
+  int capacity();
+
+  /**
+   * Changes the number of capsules while bookings continue. Capsules are added
+   * or dropped at the high end; dropping is refused with OCCUPIED, naming the
+   * capsule, while any of them has a guest.
+   * @throws UnsupportedOperationException if the service has a fixed capacity
+   */
+  ResizeResult resize(int numberOfCapsules);
+
+  /**
+   * @return the first occupied capsule numbered fromCapsuleNumber or higher, or 0 if there is none
+   */
+  default int nextOccupied(int fromCapsuleNumber){
+    for (int capsuleNumber = Math.max(1, fromCapsuleNumber); capsuleNumber <= capacity(); capsuleNumber++){
+      if (guestAt(capsuleNumber) != null){
+        return capsuleNumber;
+      }
+    }
+    return 0;
+  }
+
+  int occupiedCount();
+
+  default boolean isEmpty(){
+    return occupiedCount() == 0;
+  }
+
+  default boolean exists(int capsuleNumber){
+    return capsuleNumber >= 1 && capsuleNumber <= capacity();
+  }
+}
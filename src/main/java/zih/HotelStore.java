@@ -0,0 +1,240 @@
+package zih;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps a BookingEngine's capsules on disk so they survive a restart.
+ *
+ * State is a compacted snapshot plus the journal generations written after it.
+ * On open the latest snapshot is memory-mapped (see MappedSnapshot), the newer
+ * journals are replayed on top, and a fresh journal generation is attached to the
+ * engine. compact() rotates the journal, writes a new snapshot and drops the files
+ * the snapshot replaces, except the snapshot the engine still reads from.
+ *
+ * The snapshot is taken while bookings continue. That is safe because journal
+ * records are per-capsule ordered "set this capsule" facts: replaying the newer
+ * generation over a snapshot that already saw some of those changes ends in
+ * the same state. Resizes are journaled too; replaying one sets the capacity
+ * and empties any capsule it drops, so it composes the same way.
+ */
+public class HotelStore implements Closeable {
+  private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-([0-9a-f]{16})\\.dat");
+
+  private final Path directory;
+  private final BookingEngine engine;
+  private final BookingJournal journal;
+  private final boolean restored;
+  private final long replayedRecords;
+  // generation of the snapshot the engine loads untouched capsules from, -1 if none
+  private final long mappedGeneration;
+  private ScheduledExecutorService compactor;
+
+  private HotelStore(Path directory, BookingEngine engine, BookingJournal journal,
+                     boolean restored, long replayedRecords, long mappedGeneration){
+    this.directory = directory;
+    this.engine = engine;
+    this.journal = journal;
+    this.restored = restored;
+    this.replayedRecords = replayedRecords;
+    this.mappedGeneration = mappedGeneration;
+  }
+
+  /**
+   * Opens the hotel saved in directory, or starts a new one with numberOfCapsules
+   * if nothing has been saved there yet.
+   */
+  public static HotelStore open(Path directory, int numberOfCapsules) throws IOException {
+    return open(directory, numberOfCapsules, CapsuleStorage::segmented);
+  }
+
+  /**
+   * Same as open(directory, numberOfCapsules), keeping the capsules in storage
+   * built by the given factory (see CapsuleStorage). A journal that resizes the
+   * hotel needs a resizable one.
+   */
+  public static HotelStore open(Path directory, int numberOfCapsules,
+                                IntFunction<CapsuleStorage> storage) throws IOException {
+    Files.createDirectories(directory);
+    long snapshotGeneration = latestSnapshot(directory);
+    List<Long> journals = BookingJournal.generations(directory);
+
+    BookingEngine engine;
+    boolean restored = true;
+    if (snapshotGeneration >= 0){
+      // mapped, not loaded: capsules are read from the file as they are touched
+      MappedSnapshot snapshot = MappedSnapshot.open(snapshotFor(directory, snapshotGeneration));
+      engine = new BookingEngine(storage.apply(snapshot.capacity()), snapshot);
+    } else if (!journals.isEmpty()){
+      engine = new BookingEngine(storage.apply(BookingJournal.readCapacity(BookingJournal.fileFor(directory, journals.get(0)))));
+    } else {
+      if (numberOfCapsules <= 0){
+        throw new IllegalArgumentException("Number of capsules must be greater than 0.");
+      }
+      engine = new BookingEngine(storage.apply(numberOfCapsules));
+      restored = false;
+    }
+
+    long replayed = 0;
+    long nextGeneration = Math.max(snapshotGeneration, 0);
+    for (long generation : journals){
+      nextGeneration = Math.max(nextGeneration, generation + 1);
+      if (generation < snapshotGeneration){
+        continue;                         // already covered by the snapshot
+      }
+      replayed += BookingJournal.replay(BookingJournal.fileFor(directory, generation),
+              (type, capsuleNumber, guestName) -> {
+                if (type == BookingJournal.RESIZE){
+                  engine.restoreCapacity(capsuleNumber);
+                } else if (engine.exists(capsuleNumber)){
+                  engine.restore(capsuleNumber, type == BookingJournal.CHECK_IN ? guestName : null);
+                }
+              });
+    }
+
+    BookingJournal journal = BookingJournal.open(directory, engine.capacity(), nextGeneration);
+    engine.addListener(journal);
+    return new HotelStore(directory, engine, journal, restored, replayed, snapshotGeneration);
+  }
+
+  // true if directory holds a saved hotel
+  public static boolean exists(Path directory) throws IOException {
+    return latestSnapshot(directory) >= 0 || !BookingJournal.generations(directory).isEmpty();
+  }
+
+  public BookingEngine engine(){
+    return engine;
+  }
+
+  public Path directory(){
+    return directory;
+  }
+
+  // true if open found saved state, false if it started an empty hotel
+  public boolean wasRestored(){
+    return restored;
+  }
+
+  public long replayedRecords(){
+    return replayedRecords;
+  }
+
+  public BookingJournal journal(){
+    return journal;
+  }
+
+  /**
+   * Writes a snapshot of the current capsules and deletes the journals and
+   * snapshots it makes obsolete. Bookings keep running meanwhile.
+   *
+   * The snapshot the engine was opened from is kept, however old: capsules
+   * nobody has touched since are still read from its mapping. The first
+   * compaction after the next open deletes it.
+   */
+  public synchronized void compact() throws IOException {
+    // everything before the rotation is in older journal files
+    long generation = journal.rotate();
+    writeSnapshot(engine, directory, generation);
+
+    for (long old : BookingJournal.generations(directory)){
+      if (old < generation){
+        Files.deleteIfExists(BookingJournal.fileFor(directory, old));
+      }
+    }
+    try (var files = Files.list(directory)){
+      for (Path file : (Iterable<Path>) files::iterator){
+        Matcher matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+        if (matcher.matches()){
+          long old = Long.parseUnsignedLong(matcher.group(1), 16);
+          if (old < generation && old != mappedGeneration){
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs compact() in the background every period.
+   */
+  public synchronized void compactEvery(long period, TimeUnit unit){
+    if (compactor == null){
+      compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hotel-store-compactor");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    compactor.scheduleWithFixedDelay(() -> {
+      try {
+        compact();
+      } catch (IOException e){
+        System.err.println("Snapshot failed: " + e.getMessage());
+      }
+    }, period, period, unit);
+  }
+
+  /**
+   * Stops background compaction, detaches the journal and flushes it.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this){
+      if (compactor != null){
+        compactor.shutdownNow();
+      }
+    }
+    engine.removeListener(journal);
+    journal.close();
+  }
+
+  static Path snapshotFor(Path directory, long generation){
+    return directory.resolve(String.format("snapshot-%016x.dat", generation));
+  }
+
+  static long latestSnapshot(Path directory) throws IOException {
+    long latest = -1;
+    if (!Files.isDirectory(directory)){
+      return latest;
+    }
+    try (var files = Files.list(directory)){
+      for (Path file : (Iterable<Path>) files::iterator){
+        Matcher matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+        if (matcher.matches()){
+          latest = Math.max(latest, Long.parseUnsignedLong(matcher.group(1), 16));
+        }
+      }
+    }
+    return latest;
+  }
+
+  // writes to a temporary file first so a crash never leaves a half-written snapshot
+  static void writeSnapshot(BookingEngine engine, Path directory, long generation) throws IOException {
+    Path target = snapshotFor(directory, generation);
+    Path temporary = directory.resolve(target.getFileName() + ".tmp");
+    MappedSnapshot.write(engine, temporary, generation);
+    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    syncDirectory(directory);
+  }
+
+  // makes the rename itself durable, not supported on every platform
+  private static void syncDirectory(Path directory){
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)){
+      channel.force(true);
+    } catch (IOException e){
+      // best effort
+    }
+  }
+}
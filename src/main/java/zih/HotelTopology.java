@@ -0,0 +1,337 @@
+package zih;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Floors and pods over a BookingEngine's flat capsule numbers, with free counts
+ * per floor, per pod or per any range of capsules in O(log n).
+ *
+ * Capsules are numbered floor by floor and, within a floor, pod by pod: with 4
+ * pods of 10 capsules per floor, capsules 1-10 are pod A of floor 1 and 41-50
+ * pod A of floor 2. Pods are named with letters, so a floor has at most 26.
+ *
+ * Occupancy is kept in a Fenwick tree (binary indexed tree) of occupied
+ * counts, one leaf per capsule. A check-in or check-out adds one to or takes
+ * one from the O(log n) nodes covering its capsule; counting a region reads
+ * two prefix sums, and finding the k-th free capsule, hence the first free
+ * one after a capsule or the nearest free one to it, descends the tree once.
+ * Capsules the layout has but the hotel does not (the engine is smaller or
+ * shrank) are counted as occupied, so they are never reported free; so are
+ * capsules waiting for housekeeping while the engine has turnover on.
+ *
+ * The tree follows the engine as a listener; a private bit per capsule keeps
+ * every count exact even if a booking is reported while the tree is being
+ * loaded. Nodes are updated with atomic adds and readers take no lock, so
+ * while bookings go on an answer may already be stale: a capsule found free
+ * can be taken before the caller books it (see checkInAt).
+ */
+public class HotelTopology implements BookingListener {
+  private static final VarHandle NODES = MethodHandles.arrayElementVarHandle(int[].class);
+  private static final VarHandle BITS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private final BookingEngine engine;
+  private final int floors;
+  private final int podsPerFloor;
+  private final int capsulesPerPod;
+  // capsules in the layout, floors * podsPerFloor * capsulesPerPod
+  private final int size;
+  // Fenwick tree, 1-based: node j counts the occupied capsule indexes in (j - lowbit(j), j]
+  private final int[] tree;
+  // which capsules the tree counts as having a guest
+  private final long[] guests;
+  // capsules of the layout the engine has, the rest are counted as occupied
+  private int capacity;
+
+  private HotelTopology(BookingEngine engine, int floors, int podsPerFloor, int capsulesPerPod){
+    if (floors < 1 || capsulesPerPod < 1 || podsPerFloor < 1 || podsPerFloor > 26){
+      throw new IllegalArgumentException("Need at least one floor and one capsule per pod, and 1 to 26 pods per floor");
+    }
+    long size = (long) floors * podsPerFloor * capsulesPerPod;
+    if (size >= Integer.MAX_VALUE){
+      throw new IllegalArgumentException("Too many capsules: " + size);
+    }
+    this.engine = engine;
+    this.floors = floors;
+    this.podsPerFloor = podsPerFloor;
+    this.capsulesPerPod = capsulesPerPod;
+    this.size = (int) size;
+    this.tree = new int[this.size + 1];
+    this.guests = new long[(this.size + 63) >>> 6];
+  }
+
+  /**
+   * Lays floors of podsPerFloor pods of capsulesPerPod capsules over engine,
+   * counts its guests and keeps following its bookings. Like any listener,
+   * attach it before the engine takes traffic: a check-out racing the load may
+   * leave its capsule counted as occupied.
+   */
+  public static HotelTopology attach(BookingEngine engine, int floors, int podsPerFloor, int capsulesPerPod){
+    HotelTopology topology = new HotelTopology(engine, floors, podsPerFloor, capsulesPerPod);
+    int size = topology.size;
+    // the engine's lock keeps resizes out until the tree is complete
+    synchronized (engine){
+      topology.capacity = Math.min(engine.capacity(), size);
+      // listen first: bookings during the load go into the tree through add, the
+      // load into its own leaves; the guest bits make sure each is counted once
+      engine.addListener(topology);
+      int[] loaded = new int[size + 1];
+      for (int i = topology.capacity; i < size; i++){
+        loaded[i + 1] = 1;
+      }
+      for (int i = engine.occupancy.firstOccupied(); i >= 0 && i < topology.capacity;
+           i = engine.occupancy.nextOccupied(i + 1)){
+        if (topology.mark(i)){
+          loaded[i + 1] = 1;
+        }
+      }
+      // turn the leaves into Fenwick nodes in O(n), then add them node by node
+      for (int j = 1; j <= size; j++){
+        int parent = j + (j & -j);
+        if (parent <= size){
+          loaded[parent] += loaded[j];
+        }
+        NODES.getAndAdd(topology.tree, j, loaded[j]);
+      }
+    }
+    return topology;
+  }
+
+  // stops following the engine
+  public void detach(){
+    engine.removeListener(this);
+  }
+
+  @Override
+  public void onCheckIn(int capsuleNumber, String guestName){
+    int index = capsuleNumber - 1;
+    if (index < size && mark(index)){
+      add(index, 1);
+    }
+  }
+
+  // a capsule left dirty stays counted as occupied until onCleaningFinished
+  @Override
+  public void onCheckOut(int capsuleNumber, String guestName){
+    if (!engine.isDirty(capsuleNumber)){
+      free(capsuleNumber - 1);
+    }
+  }
+
+  @Override
+  public void onCleaningFinished(int capsuleNumber){
+    free(capsuleNumber - 1);
+  }
+
+  private void free(int index){
+    if (index < size && unmark(index)){
+      add(index, -1);
+    }
+  }
+
+  // capsules the engine adds are empty, capsules it drops are empty for good;
+  // called under the engine's lock, like attach
+  @Override
+  public void onResize(int capacity){
+    int inLayout = Math.min(capacity, size);
+    for (int i = this.capacity; i < inLayout; i++){
+      add(i, -1);
+    }
+    for (int i = inLayout; i < this.capacity; i++){
+      add(i, 1);
+    }
+    this.capacity = inLayout;
+  }
+
+  public int floorCount(){
+    return floors;
+  }
+
+  public int podsPerFloor(){
+    return podsPerFloor;
+  }
+
+  public int capsulesPerPod(){
+    return capsulesPerPod;
+  }
+
+  /**
+   * @return the floor of capsuleNumber, from 1
+   */
+  public int floorOf(int capsuleNumber){
+    checkCapsule(capsuleNumber);
+    return (capsuleNumber - 1) / (podsPerFloor * capsulesPerPod) + 1;
+  }
+
+  /**
+   * @return the pod of capsuleNumber on its floor, 'A' for the first
+   */
+  public char podOf(int capsuleNumber){
+    checkCapsule(capsuleNumber);
+    return (char) ('A' + (capsuleNumber - 1) / capsulesPerPod % podsPerFloor);
+  }
+
+  /**
+   * @return the first capsule number of pod on floor
+   */
+  public int firstCapsule(int floor, char pod){
+    return podStart(floor, pod) + 1;
+  }
+
+  public int freeOnFloor(int floor){
+    int start = floorStart(floor);
+    return freeIn(start, start + podsPerFloor * capsulesPerPod);
+  }
+
+  public int freeInPod(int floor, char pod){
+    int start = podStart(floor, pod);
+    return freeIn(start, start + capsulesPerPod);
+  }
+
+  /**
+   * Free capsules from capsule number first to last, both included.
+   */
+  public int freeBetween(int first, int last){
+    checkCapsule(first);
+    checkCapsule(last);
+    return first > last ? 0 : freeIn(first - 1, last);
+  }
+
+  /**
+   * @return the floor with the most free capsules, the lowest one on a tie
+   */
+  public int floorWithMostFree(){
+    int best = 1;
+    int bestFree = -1;
+    for (int floor = 1; floor <= floors; floor++){
+      int free = freeOnFloor(floor);
+      if (free > bestFree){
+        best = floor;
+        bestFree = free;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return the lowest free capsule number in pod on floor, or 0 if the pod is full
+   */
+  public int freeCapsuleInPod(int floor, char pod){
+    int start = podStart(floor, pod);
+    int index = nextFree(start);
+    return index >= 0 && index < start + capsulesPerPod ? index + 1 : 0;
+  }
+
+  /**
+   * @return the free capsule number closest to capsuleNumber (itself if free),
+   *         the lower one of two equally close, or 0 if every capsule is occupied
+   */
+  public int nearestFree(int capsuleNumber){
+    checkCapsule(capsuleNumber);
+    int index = capsuleNumber - 1;
+    int freeBefore = index - occupiedBefore(index);
+    int after = kthFree(freeBefore + 1);
+    int before = freeBefore > 0 ? kthFree(freeBefore) : -1;
+    if (before < 0 && after < 0){
+      return 0;
+    }
+    if (after < 0 || (before >= 0 && index - before <= after - index)){
+      return before + 1;
+    }
+    return after + 1;
+  }
+
+  /**
+   * Books guestName into the free capsule nearest to capsuleNumber, moving on to
+   * the next nearest when a concurrent booking takes it first or checks out of
+   * it and leaves it for housekeeping.
+   */
+  public CheckInResult checkInAt(int capsuleNumber, String guestName){
+    while (true){
+      int free = nearestFree(capsuleNumber);
+      if (free == 0){
+        return CheckInResult.failed(BookingError.NO_VACANCY, 0, guestName);
+      }
+      CheckInResult result = engine.checkIn(free, guestName);
+      if (result.getError() != BookingError.OCCUPIED && result.getError() != BookingError.CLEANING){
+        return result;
+      }
+    }
+  }
+
+  // free capsules among the indexes [start, end)
+  private int freeIn(int start, int end){
+    return (end - start) - (occupiedBefore(end) - occupiedBefore(start));
+  }
+
+  // first free index at or after from, -1 if none
+  private int nextFree(int from){
+    return kthFree(from - occupiedBefore(from) + 1);
+  }
+
+  // occupied capsule indexes below index
+  private int occupiedBefore(int index){
+    int sum = 0;
+    for (int j = index; j > 0; j -= j & -j){
+      sum += (int) NODES.getOpaque(tree, j);
+    }
+    return sum;
+  }
+
+  // index of the k-th free capsule (k from 1), -1 if there are fewer: one descent of the tree
+  private int kthFree(int k){
+    int position = 0;
+    for (int step = Integer.highestOneBit(size); step > 0; step >>= 1){
+      int next = position + step;
+      if (next <= size){
+        int free = step - (int) NODES.getOpaque(tree, next);
+        if (free < k){
+          position = next;
+          k -= free;
+        }
+      }
+    }
+    // position is the longest prefix with fewer than k free capsules, the k-th is right after it
+    return position < size ? position : -1;
+  }
+
+  private void add(int index, int delta){
+    for (int j = index + 1; j <= size; j += j & -j){
+      NODES.getAndAdd(tree, j, delta);
+    }
+  }
+
+  // true if the capsule's bit was clear
+  private boolean mark(int index){
+    long bit = 1L << index;
+    return ((long) BITS.getAndBitwiseOr(guests, index >>> 6, bit) & bit) == 0;
+  }
+
+  // true if the capsule's bit was set
+  private boolean unmark(int index){
+    long bit = 1L << index;
+    return ((long) BITS.getAndBitwiseAnd(guests, index >>> 6, ~bit) & bit) != 0;
+  }
+
+  private int floorStart(int floor){
+    if (floor < 1 || floor > floors){
+      throw new IllegalArgumentException("Floor " + floor + " does not exist, there are " + floors);
+    }
+    return (floor - 1) * podsPerFloor * capsulesPerPod;
+  }
+
+  private int podStart(int floor, char pod){
+    int p = pod - 'A';
+    if (p < 0 || p >= podsPerFloor){
+      throw new IllegalArgumentException("Pod " + pod + " does not exist, floors have pods A-"
+              + (char) ('A' + podsPerFloor - 1));
+    }
+    return floorStart(floor) + p * capsulesPerPod;
+  }
+
+  private void checkCapsule(int capsuleNumber){
+    if (capsuleNumber < 1 || capsuleNumber > size){
+      throw new IllegalArgumentException("Capsule #" + capsuleNumber + " is not in the layout of " + size);
+    }
+  }
+}
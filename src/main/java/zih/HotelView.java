@@ -0,0 +1,192 @@
+package zih;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Read-only view of a BookingEngine frozen at the moment it was opened, for
+ * reports that must see one consistent hotel while bookings go on.
+ *
+ * Nothing is copied up front and bookings never wait for the view. Every
+ * check-in or check-out moves its slot through BUSY; while a view is open, the
+ * booking that does so records the capsule's previous guest in the view, once,
+ * before the new guest becomes visible. Reading a capsule means reading the
+ * live slot and then the record: a capsule that changed after the view opened
+ * answers with its recorded guest, any other one with the live slot. Only a
+ * capsule caught half-way through a booking that began before the view opened
+ * is waited for, and only for as long as that booking takes.
+ *
+ * The cost is one record per capsule that changes while the view is open, so
+ * close the view as soon as the report is done. Booking methods throw
+ * UnsupportedOperationException.
+ */
+public final class HotelView implements HotelService, Closeable {
+  // recorded for a capsule that was free when the view opened
+  private static final String FREE = new String("<free>");
+
+  private final BookingEngine engine;
+  private final int capacity;
+  // 0-based capsule index -> guest when the view opened (FREE for none), for capsules changed since
+  private final ConcurrentSkipListMap<Integer, String> before = new ConcurrentSkipListMap<>();
+  private volatile int occupiedCount = -1;
+
+  HotelView(BookingEngine engine, int capacity){
+    this.engine = engine;
+    this.capacity = capacity;
+  }
+
+  /**
+   * A view of the BookingEngine behind service (through any instrumentation),
+   * or null if service is not one, e.g. a remote or sharded hotel.
+   */
+  public static HotelView open(HotelService service){
+    HotelService target = InstrumentedHotelService.unwrap(service);
+    return target instanceof BookingEngine ? ((BookingEngine) target).openView() : null;
+  }
+
+  // called by the engine while the slot is BUSY, before its new content is visible
+  void recordChange(int index, String previousGuest){
+    if (index < capacity){
+      before.putIfAbsent(index, previousGuest == null ? FREE : previousGuest);
+    }
+  }
+
+  /**
+   * @return the guest in the capsule when the view was opened, or null
+   */
+  @Override
+  public String guestAt(int capsuleNumber){
+    if (capsuleNumber < 1 || capsuleNumber > capacity){
+      return null;
+    }
+    int index = capsuleNumber - 1;
+    int spins = 0;
+    while (true){
+      // live slot first: a change recorded after this read can only be newer than what it saw
+      String live = engine.viewSlot(index);
+      String recorded = before.get(index);
+      if (recorded != null){
+        return recorded == FREE ? null : recorded;
+      }
+      if (live != CapsuleStorage.BUSY){
+        return live == CapsuleStorage.VACANT ? null : live;
+      }
+      // a booking from before the view opened is still being written
+      if (++spins > 100){
+        Thread.yield();
+      } else {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  /**
+   * Skips free capsules through the engine's occupancy bits plus the capsules
+   * that changed since the view opened, so it costs about what the live
+   * nextOccupied does.
+   */
+  @Override
+  public int nextOccupied(int fromCapsuleNumber){
+    int index = Math.max(0, fromCapsuleNumber - 1);
+    while (index < capacity){
+      int live = engine.occupancy.nextOccupied(index);
+      if (live < 0 || live >= capacity){
+        live = capacity;
+      }
+      int changed = capacity;
+      for (Map.Entry<Integer, String> entry = before.ceilingEntry(index);
+           entry != null && entry.getKey() < live;
+           entry = before.higherEntry(entry.getKey())){
+        if (entry.getValue() != FREE){
+          changed = entry.getKey();
+          break;
+        }
+      }
+      int candidate = Math.min(live, changed);
+      if (candidate >= capacity){
+        return 0;
+      }
+      if (guestAt(candidate + 1) != null){
+        return candidate + 1;
+      }
+      index = candidate + 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Guests in the hotel when the view was opened. Counted on first use by
+   * walking the occupied capsules, then kept.
+   */
+  @Override
+  public int occupiedCount(){
+    int count = occupiedCount;
+    if (count < 0){
+      count = 0;
+      for (int capsuleNumber = nextOccupied(1); capsuleNumber != 0; capsuleNumber = nextOccupied(capsuleNumber + 1)){
+        count++;
+      }
+      occupiedCount = count;
+    }
+    return count;
+  }
+
+  @Override
+  public int capacity(){
+    return capacity;
+  }
+
+  // capsules changed since the view was opened, what keeping it open costs
+  public int changedCount(){
+    return before.size();
+  }
+
+  /**
+   * Stops recording bookings; the view must not be read afterwards.
+   */
+  @Override
+  public void close(){
+    engine.closeView(this);
+  }
+
+  @Override
+  public CheckInResult checkIn(int capsuleNumber, String guestName){
+    throw readOnly();
+  }
+
+  @Override
+  public CheckInResult checkInAny(String guestName, AssignmentPolicy policy){
+    throw readOnly();
+  }
+
+  @Override
+  public CheckOutResult checkOut(int capsuleNumber){
+    throw readOnly();
+  }
+
+  @Override
+  public BatchResult<CheckInResult> checkInAll(Map<Integer, String> bookings, BatchMode mode){
+    throw readOnly();
+  }
+
+  @Override
+  public BatchResult<CheckInResult> checkInAll(List<String> guestNames, AssignmentPolicy policy, BatchMode mode){
+    throw readOnly();
+  }
+
+  @Override
+  public BatchResult<CheckOutResult> checkOutAll(int[] capsuleNumbers, BatchMode mode){
+    throw readOnly();
+  }
+
+  @Override
+  public ResizeResult resize(int numberOfCapsules){
+    throw readOnly();
+  }
+
+  private static UnsupportedOperationException readOnly(){
+    return new UnsupportedOperationException("A HotelView is read-only");
+  }
+}
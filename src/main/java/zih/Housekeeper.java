@@ -0,0 +1,16 @@
+package zih;
+
+/**
+ * Does the cleaning Housekeeping assigns, e.g. sends the job to a housekeeper's
+ * handheld and waits for the confirmation.
+ */
+public interface Housekeeper {
+
+  /**
+   * Cleans the capsule and returns once it is ready for the next guest. Runs on
+   * one of Housekeeping's workers, so a slow cleaning only holds up that worker.
+   * @param floor         the capsule's floor, from 1
+   * @param previousFloor the floor of the worker's last cleaning, 0 before its first
+   */
+  void clean(int capsuleNumber, int floor, int previousFloor) throws InterruptedException;
+}
@@ -0,0 +1,524 @@
+package zih;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turnover of checked-out capsules: every check-out queues a cleaning, a
+ * bounded pool of workers works through them, and the capsule goes back into
+ * service once it is clean. The engine runs with turnover enabled meanwhile,
+ * so automatic check-ins only ever get clean capsules (see BookingEngine).
+ *
+ * Bookings reach housekeeping through a BookingEventBus subscription, so the
+ * booking path pays for one published event and never for the scheduler's
+ * lock, which only the subscription thread and the workers take.
+ *
+ * Cleanings are queued per floor, oldest first. The floors with cleanings
+ * waiting sit in a priority queue ordered by how badly each needs clean
+ * capsules: its share of the last 1024 check-ins (expected demand) over the
+ * clean free capsules it has left. A worker takes the neediest floor's oldest
+ * cleaning, but stays on its own floor as long as that floor needs it at least
+ * half as much, so workers do not run up and down the stairs for every job.
+ * Every change to a floor's score moves it in the queue in O(log floors).
+ *
+ * Queue wait (check-out seen to cleaning started) and cleaning time are kept
+ * in LatencyHistograms. A cleaning interrupted by close leaves its capsule
+ * dirty; the next Housekeeping started on the engine picks it up.
+ *
+ * A cleaning the Housekeeper fails is queued again after a pause that doubles
+ * with every failure, and given up after MAX_ATTEMPTS: its capsule stays dirty
+ * (see failedCount) until finishCleaning or the next Housekeeping. Scores
+ * count the capsules each floor has in the hotel, updated when the engine is
+ * resized.
+ */
+public class Housekeeping implements BookingEventHandler, Closeable {
+  // check-ins the demand of a floor is counted over, a power of two
+  private static final int RECENT_CHECK_INS = 1024;
+  // a worker leaves its floor only for one that needs it more than this many times as much
+  private static final double STAY_FACTOR = 2.0;
+  // attempts at one cleaning before its capsule is left dirty
+  static final int MAX_ATTEMPTS = 8;
+  // pause after the first failure of a cleaning, doubled after each further one
+  private static final long RETRY_MILLIS = 10;
+  private static final long MAX_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  private final BookingEngine engine;
+  private final BookingEventBus bus;
+  private final int capsulesPerFloor;
+  private final Housekeeper housekeeper;
+  private final Thread[] workers;
+  private final ResizeListener resizeListener = new ResizeListener();
+  private BookingEventBus.Subscription subscription;
+
+  private final LatencyHistogram queueWait = new LatencyHistogram();
+  private final LatencyHistogram cleaningTime = new LatencyHistogram();
+  private final LongAdder cleaned = new LongAdder();
+  private final LongAdder floorChanges = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  // everything below is guarded by this
+  private Floor[] floors = new Floor[0];
+  // the engine's capacity as of its last resize
+  private int capacity;
+  // floors with cleanings waiting, neediest first
+  private final FloorQueue queue = new FloorQueue();
+  // floors of the last check-ins, round robin; 0 while the slot is unused
+  private final int[] recentFloors = new int[RECENT_CHECK_INS];
+  private int recentNext;
+  private int pending;
+  private int inProgress;
+  private boolean queuedInBatch;
+  private boolean running = true;
+
+  private Housekeeping(BookingEngine engine, BookingEventBus bus, int capsulesPerFloor, int workers,
+                       Housekeeper housekeeper){
+    if (capsulesPerFloor < 1 || workers < 1){
+      throw new IllegalArgumentException("Need at least one capsule per floor and one worker");
+    }
+    this.engine = engine;
+    this.bus = bus;
+    this.capsulesPerFloor = capsulesPerFloor;
+    this.housekeeper = housekeeper;
+    this.workers = new Thread[workers];
+    for (int w = 0; w < workers; w++){
+      this.workers[w] = new Thread(this::work, "housekeeping-" + (w + 1));
+      this.workers[w].setDaemon(true);
+    }
+  }
+
+  /**
+   * Turns on turnover for engine and starts workers to clean what its bookings
+   * leave behind, told about them by bus (attached to engine). Capsules that
+   * are already dirty are queued right away. Like any listener, start it before
+   * the engine takes traffic: a booking under way meanwhile may be counted twice
+   * in the floor estimates, though never cleaned twice.
+   */
+  public static Housekeeping start(BookingEngine engine, BookingEventBus bus, int capsulesPerFloor, int workers,
+                                   Housekeeper housekeeper){
+    Housekeeping housekeeping = new Housekeeping(engine, bus, capsulesPerFloor, workers, housekeeper);
+    engine.enableTurnover();
+    // outside the lock: a resize calls the listener under the engine's lock
+    engine.addListener(housekeeping.resizeListener);
+    synchronized (housekeeping){
+      // a resize meanwhile waits for the lock and is applied after the capacity read here
+      housekeeping.capacity = engine.capacity();
+      // events wait for the lock, so none is applied before the counts below
+      housekeeping.subscription = bus.subscribe(housekeeping);
+      for (int i = engine.occupancy.firstOccupied(); i >= 0; i = engine.occupancy.nextOccupied(i + 1)){
+        housekeeping.floor(i / capsulesPerFloor + 1).unavailable++;
+      }
+      long now = System.nanoTime();
+      for (int i = engine.nextDirty(0); i >= 0; i = engine.nextDirty(i + 1)){
+        housekeeping.enqueue(i + 1, now);
+      }
+    }
+    for (Thread worker : housekeeping.workers){
+      worker.start();
+    }
+    return housekeeping;
+  }
+
+  @Override
+  public synchronized void onEvent(BookingEvent event, long sequence, boolean endOfBatch){
+    int capsuleNumber = event.getCapsuleNumber();
+    if (event.getType() == BookingEvent.Type.CHECK_OUT){
+      // the capsule stays unavailable until it is cleaned
+      enqueue(capsuleNumber, System.nanoTime());
+      queuedInBatch = true;
+    } else {
+      checkedIn(floor(floorOf(capsuleNumber)));
+    }
+    if (endOfBatch && queuedInBatch){
+      // one wake-up for the whole batch of check-outs
+      queuedInBatch = false;
+      notifyAll();
+    }
+  }
+
+  // the floor has one guest more and one more of the recent check-ins
+  private void checkedIn(Floor floor){
+    floor.unavailable++;
+    int evicted = recentFloors[recentNext];
+    recentFloors[recentNext] = floor.number;
+    recentNext = (recentNext + 1) & (RECENT_CHECK_INS - 1);
+    floor.recentCheckIns++;
+    queue.update(floor);
+    if (evicted != 0){
+      Floor old = floors[evicted - 1];
+      old.recentCheckIns--;
+      queue.update(old);
+    }
+  }
+
+  private void enqueue(int capsuleNumber, long now){
+    Floor floor = floor(floorOf(capsuleNumber));
+    floor.cleanings.add(new Cleaning(capsuleNumber, now));
+    pending++;
+    if (floor.heapIndex < 0){
+      queue.add(floor);
+    }
+  }
+
+  private void work(){
+    int floorNumber = 0;
+    try {
+      while (true){
+        Cleaning cleaning = next(floorNumber);
+        if (cleaning == null){
+          return;
+        }
+        long started = System.nanoTime();
+        queueWait.record(started - cleaning.queuedAt);
+        int previous = floorNumber;
+        floorNumber = floorOf(cleaning.capsuleNumber);
+        if (previous != 0 && previous != floorNumber){
+          floorChanges.increment();
+        }
+        try {
+          housekeeper.clean(cleaning.capsuleNumber, floorNumber, previous);
+        } catch (RuntimeException e){
+          retry(cleaning, e);
+          continue;
+        }
+        // outside this lock: the engine takes the capsule's stripe, which a booking
+        // may hold while it waits for our subscription
+        finish(cleaning, engine.finishCleaning(cleaning.capsuleNumber));
+        cleaningTime.record(System.nanoTime() - started);
+      }
+    } catch (InterruptedException e){
+      // closing
+    }
+  }
+
+  // the next cleaning for a worker on floorNumber, null once closed
+  private synchronized Cleaning next(int floorNumber) throws InterruptedException {
+    while (running && queue.isEmpty()){
+      wait();
+    }
+    if (!running){
+      return null;
+    }
+    Floor chosen = queue.peek();
+    if (floorNumber > 0 && floorNumber <= floors.length){
+      Floor own = floors[floorNumber - 1];
+      if (own != chosen && own.heapIndex >= 0 && score(own) * STAY_FACTOR >= score(chosen)){
+        chosen = own;
+      }
+    }
+    Cleaning cleaning = chosen.cleanings.poll();
+    pending--;
+    inProgress++;
+    if (chosen.cleanings.isEmpty()){
+      queue.remove(chosen);
+    }
+    return cleaning;
+  }
+
+  // a failed cleaning waits out its backoff on this worker, then is queued again or given up
+  private void retry(Cleaning cleaning, RuntimeException failure) throws InterruptedException {
+    int attempts = cleaning.attempts + 1;
+    if (attempts >= MAX_ATTEMPTS){
+      System.err.println("Cleaning capsule #" + cleaning.capsuleNumber + " failed " + attempts
+              + " times, left dirty: " + failure);
+      failed.increment();
+      giveUp();
+      return;
+    }
+    long pause = Math.min(MAX_RETRY_MILLIS, RETRY_MILLIS << (attempts - 1));
+    System.err.println("Cleaning capsule #" + cleaning.capsuleNumber + " failed, queued again in "
+            + pause + " ms: " + failure);
+    try {
+      Thread.sleep(pause);
+    } finally {
+      requeue(new Cleaning(cleaning.capsuleNumber, cleaning.queuedAt, attempts));
+    }
+  }
+
+  private synchronized void requeue(Cleaning cleaning){
+    inProgress--;
+    Floor floor = floor(floorOf(cleaning.capsuleNumber));
+    floor.cleanings.add(cleaning);
+    pending++;
+    if (floor.heapIndex < 0){
+      queue.add(floor);
+    }
+    notifyAll();
+  }
+
+  private synchronized void giveUp(){
+    inProgress--;
+    if (pending == 0 && inProgress == 0){
+      notifyAll();
+    }
+  }
+
+  private synchronized void finish(Cleaning cleaning, boolean cleanedNow){
+    inProgress--;
+    if (cleanedNow){
+      Floor floor = floors[floorOf(cleaning.capsuleNumber) - 1];
+      floor.unavailable--;
+      queue.update(floor);
+      cleaned.increment();
+    }
+    if (pending == 0 && inProgress == 0){
+      notifyAll();
+    }
+  }
+
+  // the floors between the old and the new end of the hotel have another number of capsules
+  private synchronized void resized(int capacity){
+    int previous = this.capacity;
+    this.capacity = capacity;
+    int first = Math.min(previous, capacity) / capsulesPerFloor + 1;
+    int last = Math.min(floors.length, (Math.max(previous, capacity) - 1) / capsulesPerFloor + 1);
+    for (int number = first; number <= last; number++){
+      Floor floor = floors[number - 1];
+      floor.capsules = capsulesOn(number);
+      queue.update(floor);
+    }
+  }
+
+  /**
+   * Waits until every check-out published so far is cleaned.
+   * @return false if the timeout passed first
+   */
+  public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    if (!subscription.awaitSequence(bus.lastSequence(), timeout, unit)){
+      return false;
+    }
+    synchronized (this){
+      while (pending > 0 || inProgress > 0){
+        long left = deadline - System.nanoTime();
+        if (left <= 0){
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, left);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Stops taking check-outs and stops the workers; cleanings under way are
+   * interrupted and their capsules stay dirty.
+   */
+  @Override
+  public void close(){
+    engine.removeListener(resizeListener);
+    subscription.close();
+    synchronized (this){
+      running = false;
+      notifyAll();
+    }
+    for (Thread worker : workers){
+      worker.interrupt();
+    }
+    for (Thread worker : workers){
+      try {
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException e){
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  public synchronized int pendingCount(){
+    return pending;
+  }
+
+  public long cleanedCount(){
+    return cleaned.sum();
+  }
+
+  // cleanings given up after MAX_ATTEMPTS failures, their capsules left dirty
+  public long failedCount(){
+    return failed.sum();
+  }
+
+  // times a worker went to another floor for its next cleaning
+  public long floorChangeCount(){
+    return floorChanges.sum();
+  }
+
+  // from the check-out reaching housekeeping to a worker starting on it
+  public LatencySnapshot queueLatency(){
+    return queueWait.snapshot();
+  }
+
+  public LatencySnapshot cleaningLatency(){
+    return cleaningTime.snapshot();
+  }
+
+  /**
+   * @return the floor of capsuleNumber, from 1
+   */
+  public int floorOf(int capsuleNumber){
+    return (capsuleNumber - 1) / capsulesPerFloor + 1;
+  }
+
+  // how badly the floor needs clean capsules: expected check-ins per clean free capsule
+  // only reads the floor, so the heap order holds until the floor changes and is updated
+  private double score(Floor floor){
+    int cleanFree = Math.max(0, floor.capsules - floor.unavailable);
+    return (1.0 + floor.recentCheckIns) / (1.0 + cleanFree);
+  }
+
+  // the floor's capsules in the hotel at its current capacity
+  private int capsulesOn(int number){
+    long inHotel = capacity - (long) (number - 1) * capsulesPerFloor;
+    return (int) Math.max(0, Math.min(capsulesPerFloor, inHotel));
+  }
+
+  // the floor, created on first use since the hotel may grow
+  private Floor floor(int number){
+    if (number > floors.length){
+      Floor[] grown = Arrays.copyOf(floors, Math.max(number, floors.length * 2));
+      for (int f = floors.length; f < grown.length; f++){
+        grown[f] = new Floor(f + 1);
+        grown[f].capsules = capsulesOn(f + 1);
+      }
+      floors = grown;
+    }
+    return floors[number - 1];
+  }
+
+  // tells the scheduler about resizes; bookings reach it through the bus
+  private final class ResizeListener implements BookingListener {
+    @Override
+    public void onCheckIn(int capsuleNumber, String guestName){
+    }
+
+    @Override
+    public void onCheckOut(int capsuleNumber, String guestName){
+    }
+
+    @Override
+    public void onResize(int capacity){
+      resized(capacity);
+    }
+  }
+
+  private static final class Cleaning {
+    final int capsuleNumber;
+    final long queuedAt;
+    // failed attempts so far
+    final int attempts;
+
+    Cleaning(int capsuleNumber, long queuedAt){
+      this(capsuleNumber, queuedAt, 0);
+    }
+
+    Cleaning(int capsuleNumber, long queuedAt, int attempts){
+      this.capsuleNumber = capsuleNumber;
+      this.queuedAt = queuedAt;
+      this.attempts = attempts;
+    }
+  }
+
+  private static final class Floor {
+    final int number;
+    final ArrayDeque<Cleaning> cleanings = new ArrayDeque<>();
+    // capsules of the floor the hotel has
+    int capsules;
+    // guests plus dirty capsules
+    int unavailable;
+    // check-ins among the recent ones
+    int recentCheckIns;
+    // position in the FloorQueue, -1 while no cleaning waits
+    int heapIndex = -1;
+
+    Floor(int number){
+      this.number = number;
+    }
+  }
+
+  // binary max-heap of floors by score; each floor knows its position, so one
+  // whose score changed is moved up or down in O(log floors)
+  private final class FloorQueue {
+    private Floor[] heap = new Floor[16];
+    private int size;
+
+    boolean isEmpty(){
+      return size == 0;
+    }
+
+    Floor peek(){
+      return heap[0];
+    }
+
+    void add(Floor floor){
+      if (size == heap.length){
+        heap = Arrays.copyOf(heap, size * 2);
+      }
+      heap[size] = floor;
+      floor.heapIndex = size;
+      size++;
+      siftUp(floor.heapIndex);
+    }
+
+    void remove(Floor floor){
+      int i = floor.heapIndex;
+      Floor last = heap[--size];
+      heap[size] = null;
+      floor.heapIndex = -1;
+      if (i < size){
+        heap[i] = last;
+        last.heapIndex = i;
+        siftUp(i);
+        siftDown(last.heapIndex);
+      }
+    }
+
+    // no-op for a floor that is not queued
+    void update(Floor floor){
+      if (floor.heapIndex >= 0){
+        siftUp(floor.heapIndex);
+        siftDown(floor.heapIndex);
+      }
+    }
+
+    private void siftUp(int i){
+      Floor floor = heap[i];
+      double score = score(floor);
+      while (i > 0){
+        int parent = (i - 1) >>> 1;
+        if (score(heap[parent]) >= score){
+          break;
+        }
+        place(heap[parent], i);
+        i = parent;
+      }
+      place(floor, i);
+    }
+
+    private void siftDown(int i){
+      Floor floor = heap[i];
+      double score = score(floor);
+      while (true){
+        int child = 2 * i + 1;
+        if (child >= size){
+          break;
+        }
+        if (child + 1 < size && score(heap[child + 1]) > score(heap[child])){
+          child++;
+        }
+        if (score(heap[child]) <= score){
+          break;
+        }
+        place(heap[child], i);
+        i = child;
+      }
+      place(floor, i);
+    }
+
+    private void place(Floor floor, int i){
+      heap[i] = floor;
+      floor.heapIndex = i;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package zih;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HotelService decorator that records every booking into HotelMetrics:
+ * successful check-ins and check-outs, refusals by BookingError, and the time
+ * each operation took. Reads (guestAt, counts) and resizes pass straight
+ * through untimed.
+ */
+public class InstrumentedHotelService implements HotelService {
+  private final HotelService delegate;
+  private final HotelMetrics metrics;
+
+  public InstrumentedHotelService(HotelService delegate){
+    this.delegate = delegate;
+    this.metrics = new HotelMetrics(delegate);
+  }
+
+  public HotelService delegate(){
+    return delegate;
+  }
+
+  public HotelMetrics metrics(){
+    return metrics;
+  }
+
+  // the service behind any number of instrumentation layers
+  static HotelService unwrap(HotelService service){
+    while (service instanceof InstrumentedHotelService){
+      service = ((InstrumentedHotelService) service).delegate;
+    }
+    return service;
+  }
+
+  @Override
+  public CheckInResult checkIn(int capsuleNumber, String guestName){
+    long started = System.nanoTime();
+    CheckInResult result = delegate.checkIn(capsuleNumber, guestName);
+    metrics.recordLatency(HotelMetrics.Operation.CHECK_IN, System.nanoTime() - started);
+    recordCheckIn(result);
+    return result;
+  }
+
+  @Override
+  public CheckInResult checkInAny(String guestName, AssignmentPolicy policy){
+    long started = System.nanoTime();
+    CheckInResult result = delegate.checkInAny(guestName, policy);
+    metrics.recordLatency(HotelMetrics.Operation.CHECK_IN_ANY, System.nanoTime() - started);
+    recordCheckIn(result);
+    return result;
+  }
+
+  @Override
+  public CheckOutResult checkOut(int capsuleNumber){
+    long started = System.nanoTime();
+    CheckOutResult result = delegate.checkOut(capsuleNumber);
+    metrics.recordLatency(HotelMetrics.Operation.CHECK_OUT, System.nanoTime() - started);
+    recordCheckOut(result);
+    return result;
+  }
+
+  @Override
+  public BatchResult<CheckInResult> checkInAll(Map<Integer, String> bookings, BatchMode mode){
+    long started = System.nanoTime();
+    BatchResult<CheckInResult> results = delegate.checkInAll(bookings, mode);
+    metrics.recordLatency(HotelMetrics.Operation.BATCH, System.nanoTime() - started);
+    for (CheckInResult result : results.getResults()){
+      recordCheckIn(result);
+    }
+    return results;
+  }
+
+  @Override
+  public BatchResult<CheckInResult> checkInAll(List<String> guestNames, AssignmentPolicy policy, BatchMode mode){
+    long started = System.nanoTime();
+    BatchResult<CheckInResult> results = delegate.checkInAll(guestNames, policy, mode);
+    metrics.recordLatency(HotelMetrics.Operation.BATCH, System.nanoTime() - started);
+    for (CheckInResult result : results.getResults()){
+      recordCheckIn(result);
+    }
+    return results;
+  }
+
+  @Override
+  public BatchResult<CheckOutResult> checkOutAll(int[] capsuleNumbers, BatchMode mode){
+    long started = System.nanoTime();
+    BatchResult<CheckOutResult> results = delegate.checkOutAll(capsuleNumbers, mode);
+    metrics.recordLatency(HotelMetrics.Operation.BATCH, System.nanoTime() - started);
+    for (CheckOutResult result : results.getResults()){
+      recordCheckOut(result);
+    }
+    return results;
+  }
+
+  @Override
+  public String guestAt(int capsuleNumber){
+    return delegate.guestAt(capsuleNumber);
+  }
+
+  @Override
+  public String[] guestsInRange(int start, int end){
+    return delegate.guestsInRange(start, end);
+  }
+
+  @Override
+  public int capacity(){
+    return delegate.capacity();
+  }
+
+  @Override
+  public ResizeResult resize(int numberOfCapsules){
+    return delegate.resize(numberOfCapsules);
+  }
+
+  @Override
+  public int occupiedCount(){
+    return delegate.occupiedCount();
+  }
+
+  @Override
+  public int nextOccupied(int fromCapsuleNumber){
+    return delegate.nextOccupied(fromCapsuleNumber);
+  }
+
+  @Override
+  public boolean isEmpty(){
+    return delegate.isEmpty();
+  }
+
+  @Override
+  public boolean exists(int capsuleNumber){
+    return delegate.exists(capsuleNumber);
+  }
+
+  private void recordCheckIn(CheckInResult result){
+    if (result.isSuccess()){
+      metrics.checkedIn(1);
+    } else {
+      metrics.recordError(result.getError());
+    }
+  }
+
+  private void recordCheckOut(CheckOutResult result){
+    if (result.isSuccess()){
+      metrics.checkedOut(1);
+    } else {
+      metrics.recordError(result.getError());
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package zih;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a JSON reader for the replies HotelHttpServer writes: objects
+ * become Map<String, Object>, arrays List<Object>, numbers Long, plus strings,
+ * booleans and null. Fractions and exponents are not supported.
+ */
+final class Json {
+  private final String text;
+  private int position;
+
+  private Json(String text){
+    this.text = text;
+  }
+
+  /**
+   * @throws IllegalArgumentException if text is not a single JSON value
+   */
+  static Object parse(String text){
+    Json json = new Json(text);
+    Object value = json.value();
+    json.skipWhitespace();
+    if (json.position != text.length()){
+      throw json.error("trailing characters");
+    }
+    return value;
+  }
+
+  // parse(text) for replies that must be an object
+  @SuppressWarnings("unchecked")
+  static Map<String, Object> parseObject(String text){
+    Object value = parse(text);
+    if (!(value instanceof Map)){
+      throw new IllegalArgumentException("Expected a JSON object: " + text);
+    }
+    return (Map<String, Object>) value;
+  }
+
+  private Object value(){
+    skipWhitespace();
+    if (position == text.length()){
+      throw error("unexpected end");
+    }
+    char c = text.charAt(position);
+    switch (c){
+      case '{':
+        return object();
+      case '[':
+        return array();
+      case '"':
+        return string();
+      case 't':
+        return literal("true", Boolean.TRUE);
+      case 'f':
+        return literal("false", Boolean.FALSE);
+      case 'n':
+        return literal("null", null);
+      default:
+        return number();
+    }
+  }
+
+  private Map<String, Object> object(){
+    Map<String, Object> object = new LinkedHashMap<>();
+    position++;
+    skipWhitespace();
+    if (peek() == '}'){
+      position++;
+      return object;
+    }
+    while (true){
+      skipWhitespace();
+      if (peek() != '"'){
+        throw error("expected a name");
+      }
+      String name = string();
+      skipWhitespace();
+      expect(':');
+      object.put(name, value());
+      skipWhitespace();
+      if (peek() == ','){
+        position++;
+      } else {
+        expect('}');
+        return object;
+      }
+    }
+  }
+
+  private List<Object> array(){
+    List<Object> array = new ArrayList<>();
+    position++;
+    skipWhitespace();
+    if (peek() == ']'){
+      position++;
+      return array;
+    }
+    while (true){
+      array.add(value());
+      skipWhitespace();
+      if (peek() == ','){
+        position++;
+      } else {
+        expect(']');
+        return array;
+      }
+    }
+  }
+
+  private String string(){
+    StringBuilder value = new StringBuilder();
+    position++;
+    while (true){
+      if (position >= text.length()){
+        throw error("unterminated string");
+      }
+      char c = text.charAt(position++);
+      if (c == '"'){
+        return value.toString();
+      }
+      if (c != '\\'){
+        value.append(c);
+        continue;
+      }
+      if (position >= text.length()){
+        throw error("unterminated string");
+      }
+      char escaped = text.charAt(position++);
+      switch (escaped){
+        case 'b':
+          value.append('\b');
+          break;
+        case 'f':
+          value.append('\f');
+          break;
+        case 'n':
+          value.append('\n');
+          break;
+        case 'r':
+          value.append('\r');
+          break;
+        case 't':
+          value.append('\t');
+          break;
+        case 'u':
+          if (position + 4 > text.length()){
+            throw error("bad unicode escape");
+          }
+          try {
+            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+          } catch (NumberFormatException e){
+            throw error("bad unicode escape");
+          }
+          position += 4;
+          break;
+        default:
+          value.append(escaped);
+      }
+    }
+  }
+
+  private Long number(){
+    int start = position;
+    if (peek() == '-'){
+      position++;
+    }
+    while (position < text.length() && Character.isDigit(text.charAt(position))){
+      position++;
+    }
+    try {
+      return Long.parseLong(text.substring(start, position));
+    } catch (NumberFormatException e){
+      throw error("expected a value");
+    }
+  }
+
+  private Object literal(String word, Object value){
+    if (!text.startsWith(word, position)){
+      throw error("expected " + word);
+    }
+    position += word.length();
+    return value;
+  }
+
+  private void expect(char c){
+    if (peek() != c){
+      throw error("expected '" + c + "'");
+    }
+    position++;
+  }
+
+  // the next character, or 0 at the end
+  private char peek(){
+    return position < text.length() ? text.charAt(position) : 0;
+  }
+
+  private void skipWhitespace(){
+    while (position < text.length() && Character.isWhitespace(text.charAt(position))){
+      position++;
+    }
+  }
+
+  private IllegalArgumentException error(String problem){
+    return new IllegalArgumentException("Malformed JSON (" + problem + ") at " + position + ": " + text);
+  }
+}
@@ -0,0 +1,126 @@
+package zih;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Latency histogram in the style of HdrHistogram: buckets grow with the value,
+ * 16 per power of two, so every recorded value is kept within about 6% across
+ * nanoseconds to minutes in a fixed 5 KB (STRIDE longs) per stripe.
+ *
+ * Recording is an atomic add on a bucket plus the stripe's running sum and
+ * maximum. Everything is striped by thread, with padding between stripes, so
+ * threads recording at the same time rarely touch the same cache line. Reading
+ * merges the stripes and is meant for dashboards and dumps, not the hot path.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // values from 2^41 ns (about 37 minutes) up share the last bucket
+  private static final int MAX_EXPONENT = 40;
+  static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+  // per stripe: the buckets, then sum and max, then padding up to two cache lines
+  private static final int SUM = BUCKETS;
+  private static final int MAX = BUCKETS + 1;
+  private static final int STRIDE = BUCKETS + 16;
+  private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private final long[] counts;
+  private final int stripeMask;
+
+  public LatencyHistogram(){
+    // about two stripes per CPU, a power of two so picking one is a mask
+    int stripes = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2));
+    this.stripeMask = stripes - 1;
+    this.counts = new long[stripes * STRIDE];
+  }
+
+  /**
+   * Records one value in nanoseconds; negative values count as 0.
+   */
+  public void record(long nanos){
+    long value = Math.max(0, nanos);
+    int base = (spread(System.identityHashCode(Thread.currentThread())) & stripeMask) * STRIDE;
+    COUNTS.getAndAdd(counts, base + bucketOf(value), 1L);
+    COUNTS.getAndAdd(counts, base + SUM, value);
+    long max = (long) COUNTS.getOpaque(counts, base + MAX);
+    while (value > max && !COUNTS.weakCompareAndSet(counts, base + MAX, max, value)){
+      max = (long) COUNTS.getOpaque(counts, base + MAX);
+    }
+  }
+
+  public long count(){
+    long total = 0;
+    for (int stripe = 0; stripe <= stripeMask; stripe++){
+      for (int bucket = 0; bucket < BUCKETS; bucket++){
+        total += (long) COUNTS.getOpaque(counts, stripe * STRIDE + bucket);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Merges the stripes into one summary.
+   */
+  public LatencySnapshot snapshot(){
+    long[] merged = new long[BUCKETS];
+    long total = 0;
+    long sum = 0;
+    long maximum = 0;
+    for (int stripe = 0; stripe <= stripeMask; stripe++){
+      int base = stripe * STRIDE;
+      for (int bucket = 0; bucket < BUCKETS; bucket++){
+        long bucketCount = (long) COUNTS.getOpaque(counts, base + bucket);
+        merged[bucket] += bucketCount;
+        total += bucketCount;
+      }
+      sum += (long) COUNTS.getOpaque(counts, base + SUM);
+      maximum = Math.max(maximum, (long) COUNTS.getOpaque(counts, base + MAX));
+    }
+    return new LatencySnapshot(total, total == 0 ? 0 : (double) sum / total,
+            valueAt(merged, total, 0.50, maximum), valueAt(merged, total, 0.90, maximum),
+            valueAt(merged, total, 0.99, maximum), valueAt(merged, total, 0.999, maximum), maximum);
+  }
+
+  // highest value of the bucket holding the given quantile, capped at the recorded maximum
+  private static long valueAt(long[] buckets, long total, double quantile, long maximum){
+    if (total == 0){
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int bucket = 0; bucket < buckets.length; bucket++){
+      seen += buckets[bucket];
+      if (seen >= rank){
+        return Math.min(maximum, highestValueIn(bucket));
+      }
+    }
+    return maximum;
+  }
+
+  static int bucketOf(long value){
+    if (value < SUB_BUCKETS){
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT){
+      return BUCKETS - 1;
+    }
+    int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  static long highestValueIn(int bucket){
+    if (bucket < SUB_BUCKETS){
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS - 1 + SUB_BUCKET_BITS;
+    int sub = bucket % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return ((long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+  }
+
+  private static int spread(int hash){
+    return (hash ^ (hash >>> 16)) * 0x45d9f3b;
+  }
+}
@@ -0,0 +1,253 @@
+package zih;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Discrete-event load simulator for capacity planning: plays a
+ * SimulationScenario's arrivals and departures against a real hotel in virtual
+ * time and reports what the hotel made of them, see SimulationReport.
+ *
+ * Each replication is one thread working through a queue of timed events
+ * (walk-in, group, departure, occupancy sample) as fast as the hotel takes
+ * them, so a week of bookings runs in well under a second and the wall-clock
+ * time measures the hotel, not the clock. Replications get their own hotel and
+ * seed and are forked on a ForkJoinPool, halving the range until one is left;
+ * runAll forks several scenarios side by side the same way. A replication
+ * replays the same bookings for the same seed, whatever ran next to it.
+ */
+public final class LoadSimulator {
+  private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+  private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+  private static final long DAY = TimeUnit.DAYS.toNanos(1);
+  // share of the hotel's size past its end that requested capsule numbers reach
+  private static final double PAST_END = 0.05;
+
+  private static final int WALK_IN = 0;
+  private static final int GROUP = 1;
+  private static final int DEPARTURE = 2;
+  private static final int SAMPLE = 3;
+
+  private final ForkJoinPool pool;
+  private final IntFunction<? extends HotelService> hotels;
+
+  /**
+   * Simulates BookingEngines on the common pool.
+   */
+  public LoadSimulator(){
+    this(ForkJoinPool.commonPool(), BookingEngine::new);
+  }
+
+  /**
+   * @param hotels opens an empty hotel of the given capacity for each replication,
+   *               e.g. an InstrumentedHotelService or a ShardedHotelService
+   */
+  public LoadSimulator(ForkJoinPool pool, IntFunction<? extends HotelService> hotels){
+    this.pool = pool;
+    this.hotels = hotels;
+  }
+
+  public SimulationReport run(SimulationScenario scenario){
+    return pool.invoke(new ScenarioTask(scenario, 0, scenario.getReplications()));
+  }
+
+  /**
+   * Runs the scenarios side by side, the reports in the same order.
+   */
+  public List<SimulationReport> runAll(List<SimulationScenario> scenarios){
+    return pool.invoke(new RecursiveTask<List<SimulationReport>>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected List<SimulationReport> compute(){
+        List<ScenarioTask> tasks = new ArrayList<>();
+        for (SimulationScenario scenario : scenarios){
+          tasks.add(new ScenarioTask(scenario, 0, scenario.getReplications()));
+        }
+        List<SimulationReport> reports = new ArrayList<>();
+        for (ScenarioTask task : ForkJoinTask.invokeAll(tasks)){
+          reports.add(task.join());
+        }
+        return reports;
+      }
+    });
+  }
+
+  // replications [from, to) of a scenario, merged
+  private final class ScenarioTask extends RecursiveTask<SimulationReport> {
+    private static final long serialVersionUID = 1L;
+    private final SimulationScenario scenario;
+    private final int from;
+    private final int to;
+
+    ScenarioTask(SimulationScenario scenario, int from, int to){
+      this.scenario = scenario;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected SimulationReport compute(){
+      if (to - from == 1){
+        return new Replication(scenario, hotels.apply(scenario.getCapacity()), scenario.getSeed() + from).run();
+      }
+      int middle = (from + to) >>> 1;
+      ScenarioTask left = new ScenarioTask(scenario, from, middle);
+      left.fork();
+      SimulationReport right = new ScenarioTask(scenario, middle, to).compute();
+      return left.join().merge(right);
+    }
+  }
+
+  private static final class Event implements Comparable<Event> {
+    final long time;
+    // ties run in the order they were scheduled, so a seed always plays the same way
+    final long sequence;
+    final int kind;
+    final int capsuleNumber;
+
+    Event(long time, long sequence, int kind, int capsuleNumber){
+      this.time = time;
+      this.sequence = sequence;
+      this.kind = kind;
+      this.capsuleNumber = capsuleNumber;
+    }
+
+    @Override
+    public int compareTo(Event other){
+      int byTime = Long.compare(time, other.time);
+      return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+    }
+  }
+
+  // one run of a scenario against one hotel, virtual time in nanoseconds so rounding the
+  // exponential gaps down does not make arrivals come faster than the scenario says
+  static final class Replication {
+    private final SimulationScenario scenario;
+    private final HotelService hotel;
+    private final SplittableRandom random;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final List<String> group = new ArrayList<>();
+    private long sequence;
+    private long guests;
+
+    private long checkInAttempts;
+    private long checkIns;
+    private long checkOuts;
+    private final long[] errors = new long[BookingError.values().length];
+    private final long[] occupancy;
+    private int samples;
+    private int peakOccupancy;
+
+    Replication(SimulationScenario scenario, HotelService hotel, long seed){
+      this.scenario = scenario;
+      this.hotel = hotel;
+      this.random = new SplittableRandom(seed);
+      long sampleNanos = scenario.getSampleMinutes() * MINUTE;
+      long end = TimeUnit.SECONDS.toNanos(scenario.durationSeconds());
+      this.occupancy = new long[(int) ((end + sampleNanos - 1) / sampleNanos)];
+    }
+
+    SimulationReport run(){
+      long end = TimeUnit.SECONDS.toNanos(scenario.durationSeconds());
+      if (scenario.getWalkInsPerHour() > 0){
+        schedule(interval(HOUR / scenario.getWalkInsPerHour()), WALK_IN, 0);
+      }
+      if (scenario.getGroupsPerDay() > 0){
+        schedule(interval(DAY / scenario.getGroupsPerDay()), GROUP, 0);
+      }
+      schedule(0, SAMPLE, 0);
+      long started = System.nanoTime();
+      for (Event event = events.poll(); event != null && event.time < end; event = events.poll()){
+        switch (event.kind){
+          case WALK_IN:
+            walkIn(event.time);
+            schedule(event.time + interval(HOUR / scenario.getWalkInsPerHour()), WALK_IN, 0);
+            break;
+          case GROUP:
+            arriveInGroup(event.time);
+            schedule(event.time + interval(DAY / scenario.getGroupsPerDay()), GROUP, 0);
+            break;
+          case DEPARTURE:
+            CheckOutResult checkOut = hotel.checkOut(event.capsuleNumber);
+            if (checkOut.isSuccess()){
+              checkOuts++;
+            } else {
+              errors[checkOut.getError().ordinal()]++;
+            }
+            break;
+          default:
+            int occupied = hotel.occupiedCount();
+            occupancy[samples++] = occupied;
+            peakOccupancy = Math.max(peakOccupancy, occupied);
+            schedule(event.time + scenario.getSampleMinutes() * MINUTE, SAMPLE, 0);
+        }
+      }
+      long busyNanos = System.nanoTime() - started;
+      return new SimulationReport(scenario.getName(), scenario.getCapacity(), 1, scenario.getSampleMinutes(),
+              checkInAttempts, checkIns, checkOuts, errors, busyNanos, occupancy, peakOccupancy);
+    }
+
+    private void walkIn(long now){
+      String guestName = "Guest-" + ++guests;
+      CheckInResult result;
+      if (random.nextDouble() < scenario.getRequestedShare()){
+        int reach = scenario.getCapacity() + (int) Math.ceil(scenario.getCapacity() * PAST_END);
+        result = hotel.checkIn(random.nextInt(reach) + 1, guestName);
+      } else {
+        result = hotel.checkInAny(guestName, scenario.getPolicy());
+      }
+      booked(result, departure(now));
+    }
+
+    // the whole group leaves together; whoever found no capsule goes elsewhere
+    private void arriveInGroup(long now){
+      group.clear();
+      for (int i = 0; i < scenario.getGroupSize(); i++){
+        group.add("Guest-" + ++guests);
+      }
+      BatchResult<CheckInResult> results = hotel.checkInAll(group, scenario.getPolicy(), BatchMode.BEST_EFFORT);
+      long departure = departure(now);
+      for (CheckInResult result : results.getResults()){
+        booked(result, departure);
+      }
+    }
+
+    private void booked(CheckInResult result, long departure){
+      checkInAttempts++;
+      if (result.isSuccess()){
+        checkIns++;
+        schedule(departure, DEPARTURE, result.getCapsuleNumber());
+      } else {
+        errors[result.getError().ordinal()]++;
+      }
+    }
+
+    // a geometric number of nights, then out in the morning wave
+    private long departure(long arrival){
+      double stay = 1 / scenario.getMeanNights();
+      long nights = 1;
+      if (stay < 1){
+        nights += (long) (Math.log(1 - random.nextDouble()) / Math.log(1 - stay));
+      }
+      return (arrival / DAY + nights) * DAY + scenario.getCheckoutHour() * HOUR
+              + interval(scenario.getCheckoutSpreadMinutes() * MINUTE);
+    }
+
+    // exponentially distributed, the gaps of a Poisson process with that mean
+    private long interval(double mean){
+      return (long) (-Math.log(1 - random.nextDouble()) * mean);
+    }
+
+    private void schedule(long time, int kind, int capsuleNumber){
+      events.add(new Event(time, sequence++, kind, capsuleNumber));
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package zih;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a hotel that is read through a memory mapping.
+ *
+ * Layout (little endian):
+ *   header      64 bytes: magic, version, capacity, guest count, generation,
+ *               offsets of the three sections below, pool length
+ *   occupancy   one bit per capsule, packed in longs like OccupancyIndex
+ *   slot table  one int per capsule: offset of the guest name in the pool, -1 if free
+ *   name pool   int length + UTF-8 bytes per distinct name
+ *
+ * Opening maps the file and reads nothing else, so startup does not depend on the
+ * number of capsules; pages fault in the first time a capsule is looked at.
+ */
+public final class MappedSnapshot {
+  static final int MAGIC = 0x43484d31;             // "CHM1"
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 64;
+  private static final int NO_GUEST = -1;
+  // repeated names are stored once; the lookup table is capped to bound memory while writing
+  private static final int MAX_DEDUPLICATED_NAMES = 1 << 16;
+
+  private final int capacity;
+  private final int guestCount;
+  private final long generation;
+  private final MappedByteBuffer occupancy;
+  private final MappedByteBuffer slots;
+  private final MappedByteBuffer pool;
+
+  private MappedSnapshot(int capacity, int guestCount, long generation,
+                         MappedByteBuffer occupancy, MappedByteBuffer slots, MappedByteBuffer pool){
+    this.capacity = capacity;
+    this.guestCount = guestCount;
+    this.generation = generation;
+    this.occupancy = occupancy;
+    this.slots = slots;
+    this.pool = pool;
+  }
+
+  /**
+   * Maps an existing snapshot file. The mapping stays valid after the file is
+   * closed or deleted.
+   */
+  public static MappedSnapshot open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining() && channel.read(header) >= 0){
+      }
+      header.flip();
+      if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC){
+        throw new IOException("Not a hotel snapshot: " + file);
+      }
+      if (header.getInt() != VERSION){
+        throw new IOException("Unsupported hotel snapshot version: " + file);
+      }
+      int capacity = header.getInt();
+      int guestCount = header.getInt();
+      long generation = header.getLong();
+      long occupancyOffset = header.getLong();
+      long slotsOffset = header.getLong();
+      long poolOffset = header.getLong();
+      long poolLength = header.getLong();
+      if (poolOffset + poolLength > channel.size()){
+        throw new IOException("Truncated hotel snapshot: " + file);
+      }
+      return new MappedSnapshot(capacity, guestCount, generation,
+              map(channel, occupancyOffset, words(capacity) * 8L),
+              map(channel, slotsOffset, capacity * 4L),
+              map(channel, poolOffset, poolLength));
+    }
+  }
+
+  public int capacity(){
+    return capacity;
+  }
+
+  public int guestCount(){
+    return guestCount;
+  }
+
+  public long generation(){
+    return generation;
+  }
+
+  public boolean isOccupied(int capsuleNumber){
+    int index = capsuleNumber - 1;
+    return (occupancy.getLong((index >>> 6) * 8) & (1L << index)) != 0;
+  }
+
+  /**
+   * @return the guest in the capsule at the time of the snapshot, or null if it was free
+   */
+  public String guestAt(int capsuleNumber){
+    if (capsuleNumber < 1 || capsuleNumber > capacity){
+      return null;
+    }
+    int offset = slots.getInt((capsuleNumber - 1) * 4);
+    if (offset == NO_GUEST){
+      return null;
+    }
+    int length = pool.getInt(offset);
+    byte[] name = new byte[length];
+    pool.get(offset + 4, name);
+    return new String(name, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Copies the occupancy bits, starting at word fromWord, into words, as many
+   * as fit or are left.
+   */
+  void readOccupancy(int fromWord, long[] words){
+    int length = Math.min(words.length, words(capacity) - fromWord);
+    if (length > 0){
+      occupancy.asLongBuffer().get(fromWord, words, 0, length);
+    }
+  }
+
+  /**
+   * Writes the engine's capsules to file. Bookings may continue meanwhile; each
+   * capsule is recorded as it was when the writer reached it. A capsule dropped
+   * by a resize while the writer runs is recorded as free. Capsules the engine
+   * has not loaded from its own snapshot yet are copied from that mapping and
+   * stay unloaded.
+   */
+  public static void write(BookingEngine engine, Path file, long generation) throws IOException {
+    int capacity = engine.capacity();
+    long occupancyOffset = HEADER_BYTES;
+    long slotsOffset = occupancyOffset + words(capacity) * 8L;
+    long poolOffset = slotsOffset + capacity * 4L;
+
+    long[] words = new long[words(capacity)];
+    Map<String, Integer> written = new HashMap<>();
+    ByteBuffer slotBuffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer poolBuffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    long slotPosition = slotsOffset;
+    long poolLength = 0;
+    long poolFlushed = 0;
+    int guestCount = 0;
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+      // next occupied capsule at or after index, found a word at a time
+      int nextOccupied = engine.occupancy.nextOccupied(0);
+      for (int index = 0; index < capacity; index++){
+        if (nextOccupied >= 0 && nextOccupied < index){
+          nextOccupied = engine.occupancy.nextOccupied(index);
+        }
+        String guestName = nextOccupied == index ? engine.savedGuestAt(index) : null;
+        int offset = NO_GUEST;
+        if (guestName != null){
+          Integer existing = written.get(guestName);
+          if (existing != null){
+            offset = existing;
+          } else {
+            byte[] name = guestName.getBytes(StandardCharsets.UTF_8);
+            if (poolLength + 4 + name.length > Integer.MAX_VALUE){
+              throw new IOException("Guest names do not fit in one snapshot");
+            }
+            offset = (int) poolLength;
+            if (poolBuffer.remaining() < 4 + name.length){
+              poolFlushed += writeAt(channel, poolBuffer, poolOffset + poolFlushed);
+              if (poolBuffer.capacity() < 4 + name.length){
+                poolBuffer = ByteBuffer.allocate(4 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+              }
+            }
+            poolBuffer.putInt(name.length).put(name);
+            poolLength += 4 + name.length;
+            if (written.size() == MAX_DEDUPLICATED_NAMES){
+              written.clear();
+            }
+            written.put(guestName, offset);
+          }
+          words[index >>> 6] |= 1L << index;
+          guestCount++;
+        }
+        if (!slotBuffer.hasRemaining()){
+          slotPosition += writeAt(channel, slotBuffer, slotPosition);
+        }
+        slotBuffer.putInt(offset);
+      }
+      writeAt(channel, slotBuffer, slotPosition);
+      writeAt(channel, poolBuffer, poolOffset + poolFlushed);
+
+      ByteBuffer occupancyBuffer = ByteBuffer.allocate(words.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+      occupancyBuffer.asLongBuffer().put(words);
+      writeAt(channel, occupancyBuffer.position(occupancyBuffer.capacity()), occupancyOffset);
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(guestCount).putLong(generation)
+              .putLong(occupancyOffset).putLong(slotsOffset).putLong(poolOffset).putLong(poolLength);
+      header.position(HEADER_BYTES);
+      writeAt(channel, header, 0);
+      channel.force(true);
+    }
+  }
+
+  // writes the filled part of buffer at position and clears it, returns bytes written
+  private static int writeAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    buffer.flip();
+    int length = buffer.remaining();
+    while (buffer.hasRemaining()){
+      channel.write(buffer, position + (length - buffer.remaining()));
+    }
+    buffer.clear();
+    return length;
+  }
+
+  private static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+    if (length > Integer.MAX_VALUE){
+      throw new IOException("Snapshot section too large to map: " + length + " bytes");
+    }
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  private static int words(int capacity){
+    return (capacity + 63) >>> 6;
+  }
+}
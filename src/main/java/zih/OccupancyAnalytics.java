@@ -0,0 +1,323 @@
+package zih;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Occupancy statistics for management over a BookingEngine: per-capsule
+ * check-in counts and occupied time, and the aggregates built from them
+ * (vacancy runs, heatmaps per block of capsules, turnover histograms).
+ *
+ * The per-capsule numbers live in primitive arrays, in chunks of 65536
+ * capsules like OccupancyIndex, so a growing hotel adds chunks instead of
+ * copying them and bookings running meanwhile are never lost. The listener
+ * writes a capsule's numbers under the engine's lock stripe for that capsule;
+ * aggregates read without a lock and are exact once bookings are quiet.
+ * Vacancy runs come from the engine's occupancy bits a word at a time; block
+ * aggregates are plain loops over the arrays, run as a parallel stream once
+ * the hotel has PARALLEL_THRESHOLD capsules. Every result is a primitive or a
+ * primitive array.
+ *
+ * Capsules waiting for housekeeping count as occupied, they cannot be booked.
+ * Times are measured from attach; a guest already in when it attaches counts
+ * from then, without a check-in.
+ */
+public class OccupancyAnalytics implements BookingListener {
+  private static final int CHUNK_SHIFT = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  // hotels at least this big have their block aggregates computed in parallel
+  static final int PARALLEL_THRESHOLD = 1 << 20;
+  // histograms have a bucket for 0 and one per power of two up to 2^31
+  private static final int BUCKETS = 33;
+
+  private static final class Chunk {
+    final int[] checkIns = new int[CHUNK_SIZE];
+    // nanoseconds occupied by stays that ended
+    final long[] occupiedNanos = new long[CHUNK_SIZE];
+    // clock at the current stay's check-in, 0 while the capsule is free
+    final long[] since = new long[CHUNK_SIZE];
+  }
+
+  private final BookingEngine engine;
+  private final LongSupplier clock;
+  private final long origin;
+  private volatile Chunk[] chunks;
+
+  private OccupancyAnalytics(BookingEngine engine, LongSupplier clock){
+    this.engine = engine;
+    this.clock = clock;
+    this.origin = clock.getAsLong();
+    this.chunks = new Chunk[0];
+  }
+
+  /**
+   * Starts keeping statistics of engine's bookings. Like any listener, attach
+   * it before the engine takes traffic.
+   */
+  public static OccupancyAnalytics attach(BookingEngine engine){
+    return attach(engine, System::nanoTime);
+  }
+
+  // clock in nanoseconds, for tests
+  static OccupancyAnalytics attach(BookingEngine engine, LongSupplier clock){
+    OccupancyAnalytics analytics = new OccupancyAnalytics(engine, clock);
+    // the engine's lock keeps resizes out while the guests are loaded
+    synchronized (engine){
+      analytics.grow(engine.capacity());
+      engine.addListener(analytics);
+      long now = analytics.now();
+      OccupancyIndex occupancy = engine.occupancy;
+      for (int i = occupancy.firstOccupied(); i >= 0; i = occupancy.nextOccupied(i + 1)){
+        Chunk chunk = analytics.chunks[i >>> CHUNK_SHIFT];
+        if (chunk.since[i & CHUNK_MASK] == 0 && !engine.isDirty(i + 1)){
+          chunk.since[i & CHUNK_MASK] = now;
+        }
+      }
+    }
+    return analytics;
+  }
+
+  // stops following the engine
+  public void detach(){
+    engine.removeListener(this);
+  }
+
+  @Override
+  public void onCheckIn(int capsuleNumber, String guestName){
+    int index = capsuleNumber - 1;
+    Chunk chunk = chunks[index >>> CHUNK_SHIFT];
+    chunk.checkIns[index & CHUNK_MASK]++;
+    chunk.since[index & CHUNK_MASK] = now();
+  }
+
+  @Override
+  public void onCheckOut(int capsuleNumber, String guestName){
+    int index = capsuleNumber - 1;
+    Chunk chunk = chunks[index >>> CHUNK_SHIFT];
+    long since = chunk.since[index & CHUNK_MASK];
+    if (since != 0){
+      chunk.occupiedNanos[index & CHUNK_MASK] += now() - since;
+      chunk.since[index & CHUNK_MASK] = 0;
+    }
+  }
+
+  // called under the engine's lock before any booking reaches capsules it adds;
+  // capsules it drops keep their numbers in case they come back
+  @Override
+  public void onResize(int capacity){
+    grow(capacity);
+  }
+
+  private void grow(int capacity){
+    int needed = (int) (((long) capacity + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+    Chunk[] chunks = this.chunks;
+    if (needed > chunks.length){
+      Chunk[] grown = Arrays.copyOf(chunks, needed);
+      for (int c = chunks.length; c < needed; c++){
+        grown[c] = new Chunk();
+      }
+      this.chunks = grown;
+    }
+  }
+
+  // nanoseconds since attach, never 0 so 0 can mean free
+  private long now(){
+    return clock.getAsLong() - origin + 1;
+  }
+
+  /** Nanoseconds since attach. */
+  public long elapsedNanos(){
+    return now() - 1;
+  }
+
+  public int checkIns(int capsuleNumber){
+    checkCapsule(capsuleNumber);
+    int index = capsuleNumber - 1;
+    return chunks[index >>> CHUNK_SHIFT].checkIns[index & CHUNK_MASK];
+  }
+
+  /**
+   * Nanoseconds capsuleNumber has had a guest since attach, the current stay
+   * included.
+   */
+  public long occupiedNanos(int capsuleNumber){
+    checkCapsule(capsuleNumber);
+    int index = capsuleNumber - 1;
+    return occupiedNanos(chunks[index >>> CHUNK_SHIFT], index & CHUNK_MASK, now());
+  }
+
+  private static long occupiedNanos(Chunk chunk, int i, long now){
+    long since = chunk.since[i];
+    return chunk.occupiedNanos[i] + (since == 0 ? 0 : now - since);
+  }
+
+  /** Check-ins since attach, all capsules. */
+  public long totalCheckIns(){
+    int capacity = engine.capacity();
+    Chunk[] chunks = this.chunks;
+    return stream(capacity).mapToLong(c -> {
+      int[] checkIns = chunks[c].checkIns;
+      long sum = 0;
+      for (int i = 0, n = chunkLength(c, capacity); i < n; i++){
+        sum += checkIns[i];
+      }
+      return sum;
+    }).sum();
+  }
+
+  /** Longest run of consecutive free capsules, and how the runs are spread. */
+  public static final class VacancyRuns {
+    private int firstCapsule;
+    private int longest;
+    private int count;
+    private final int[] histogram = new int[BUCKETS];
+
+    /** First capsule number of the longest run, the lowest one on a tie; 0 when the hotel is full. */
+    public int getFirstCapsule(){
+      return firstCapsule;
+    }
+
+    public int getLongest(){
+      return longest;
+    }
+
+    /** Number of runs, one free capsule between two occupied ones being a run of 1. */
+    public int getCount(){
+      return count;
+    }
+
+    /**
+     * Runs by length: bucket k (from 1) counts the runs of 2^(k-1) to 2^k - 1
+     * capsules; bucket 0 is always 0.
+     */
+    public int[] getHistogram(){
+      return histogram.clone();
+    }
+  }
+
+  public VacancyRuns vacancyRuns(){
+    VacancyRuns runs = new VacancyRuns();
+    engine.occupancy.forEachFreeRun((fromIndex, length) -> {
+      runs.count++;
+      runs.histogram[bucketOf(length)]++;
+      if (length > runs.longest){
+        runs.longest = length;
+        runs.firstCapsule = fromIndex + 1;
+      }
+    });
+    return runs;
+  }
+
+  /**
+   * Heatmap of the hotel now: the share of occupied capsules in each block of
+   * blockSize capsules, the last block possibly shorter.
+   */
+  public double[] occupancyByBlock(int blockSize){
+    int capacity = engine.capacity();
+    double[] ratios = new double[blocks(capacity, blockSize)];
+    OccupancyIndex occupancy = engine.occupancy;
+    blockStream(ratios.length, capacity).forEach(b -> {
+      int from = b * blockSize;
+      int to = (int) Math.min(capacity, (long) from + blockSize);
+      ratios[b] = occupancy.countOccupied(from, to) / (double) (to - from);
+    });
+    return ratios;
+  }
+
+  /**
+   * Heatmap since attach: the share of the time the capsules of each block of
+   * blockSize had guests.
+   */
+  public double[] utilizationByBlock(int blockSize){
+    int capacity = engine.capacity();
+    double[] ratios = new double[blocks(capacity, blockSize)];
+    Chunk[] chunks = this.chunks;
+    long now = now();
+    long elapsed = Math.max(1, now - 1);
+    blockStream(ratios.length, capacity).forEach(b -> {
+      int from = b * blockSize;
+      int to = (int) Math.min(capacity, (long) from + blockSize);
+      long sum = 0;
+      for (int index = from; index < to; index++){
+        sum += occupiedNanos(chunks[index >>> CHUNK_SHIFT], index & CHUNK_MASK, now);
+      }
+      ratios[b] = sum / ((double) elapsed * (to - from));
+    });
+    return ratios;
+  }
+
+  /** Check-ins since attach per block of blockSize capsules. */
+  public long[] checkInsByBlock(int blockSize){
+    int capacity = engine.capacity();
+    long[] counts = new long[blocks(capacity, blockSize)];
+    Chunk[] chunks = this.chunks;
+    blockStream(counts.length, capacity).forEach(b -> {
+      int from = b * blockSize;
+      int to = (int) Math.min(capacity, (long) from + blockSize);
+      long sum = 0;
+      for (int index = from; index < to; index++){
+        sum += chunks[index >>> CHUNK_SHIFT].checkIns[index & CHUNK_MASK];
+      }
+      counts[b] = sum;
+    });
+    return counts;
+  }
+
+  /**
+   * Capsules by turnover: bucket 0 counts the capsules nobody checked into
+   * since attach, bucket k the ones with 2^(k-1) to 2^k - 1 check-ins.
+   */
+  public int[] turnoverHistogram(){
+    int capacity = engine.capacity();
+    Chunk[] chunks = this.chunks;
+    return stream(capacity).mapToObj(c -> {
+      int[] histogram = new int[BUCKETS];
+      int[] checkIns = chunks[c].checkIns;
+      for (int i = 0, n = chunkLength(c, capacity); i < n; i++){
+        histogram[bucketOf(checkIns[i])]++;
+      }
+      return histogram;
+    }).reduce(new int[BUCKETS], (a, b) -> {
+      int[] sum = new int[BUCKETS];
+      for (int k = 0; k < BUCKETS; k++){
+        sum[k] = a[k] + b[k];
+      }
+      return sum;
+    });
+  }
+
+  // 0 for 0, k for 2^(k-1) to 2^k - 1
+  static int bucketOf(int value){
+    return 32 - Integer.numberOfLeadingZeros(value);
+  }
+
+  // one element per chunk, parallel for big hotels
+  private static IntStream stream(int capacity){
+    IntStream chunks = IntStream.range(0, (int) (((long) capacity + CHUNK_SIZE - 1) >>> CHUNK_SHIFT));
+    return capacity >= PARALLEL_THRESHOLD ? chunks.parallel() : chunks;
+  }
+
+  private static IntStream blockStream(int blocks, int capacity){
+    IntStream stream = IntStream.range(0, blocks);
+    return capacity >= PARALLEL_THRESHOLD ? stream.parallel() : stream;
+  }
+
+  private static int chunkLength(int c, int capacity){
+    return Math.min(CHUNK_SIZE, capacity - (c << CHUNK_SHIFT));
+  }
+
+  private static int blocks(int capacity, int blockSize){
+    if (blockSize < 1){
+      throw new IllegalArgumentException("Block size must be at least 1.");
+    }
+    return (int) (((long) capacity + blockSize - 1) / blockSize);
+  }
+
+  private void checkCapsule(int capsuleNumber){
+    if (capsuleNumber < 1 || capsuleNumber > engine.capacity()){
+      throw new IllegalArgumentException("Capsule #" + capsuleNumber + " does not exist.");
+    }
+  }
+}
@@ -0,0 +1,456 @@
+package zih;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bitset of which capsules are occupied.
+ * One bit per capsule (0-based index), packed 64 to a long, plus a running
+ * count of occupied capsules so emptiness and totals never need a scan.
+ * Searches walk whole words at a time instead of single capsules.
+ *
+ * The bits are kept in chunks of 65536 capsules. Above each chunk's capsule
+ * bits sits a summary tree: one bit per word of the level below, set when that
+ * word is full. nextFree descends it, so finding a free capsule inside a chunk
+ * touches three words however full the chunk is, and a full chunk is skipped
+ * after reading its top word. Bits past the capacity and past the end of each
+ * level are kept set, so the last, partly used words read as full once their
+ * real capsules are.
+ *
+ * resize adds or drops whole chunks and flips padding bits; the bits of the
+ * capsules that stay are never copied, so occupy and release keep running
+ * during a resize.
+ *
+ * Bits are flipped with atomic or/and on the word, so occupy and release
+ * are safe to call from many threads without a lock. Counts and searches
+ * read a moving target while writers are active; they are exact once the
+ * writers are quiet. A summary bit can briefly lag its word, so nextFree may
+ * skip a capsule freed a moment ago, but it never returns one the capsule
+ * bits show as occupied.
+ */
+public class OccupancyIndex {
+  private static final int WORD_SHIFT = 6;          // 64 bits per word
+  private static final int WORD_MASK = 63;
+  // 2^16 capsules per chunk: 1024 words, 16 summary words and one top word
+  private static final int CHUNK_SHIFT = 16;
+  private static final int CHUNK_BITS = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_WORD_SHIFT = CHUNK_SHIFT - WORD_SHIFT;
+  private static final int CHUNK_WORD_MASK = (1 << CHUNK_WORD_SHIFT) - 1;
+  private static final int LEVELS = 3;
+  private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private static final long FULL = -1L;
+
+  // chunks[c][k] is level k of chunk c; level 0 holds the capsule bits and
+  // levels[k + 1] has one bit per word of levels[k], set while that word is full
+  private volatile long[][][] chunks;
+  private volatile int capacity;
+  private final LongAdder occupied = new LongAdder();
+
+  public OccupancyIndex(int capacity){
+    if (capacity < 0){
+      throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+    }
+    this.capacity = capacity;
+    long[][][] chunks = new long[chunksFor(capacity)][][];
+    for (int c = 0; c < chunks.length; c++){
+      chunks[c] = newChunk(c, capacity);
+    }
+    this.chunks = chunks;
+  }
+
+  /**
+   * Takes the occupied bits and count of a snapshot. Only for a fresh index
+   * that nobody else is using yet.
+   */
+  void load(MappedSnapshot snapshot){
+    long[][][] chunks = this.chunks;
+    for (int c = 0; c < chunks.length; c++){
+      snapshot.readOccupancy(c << CHUNK_WORD_SHIFT, chunks[c][0]);
+      summarize(chunks[c], c, capacity);
+    }
+    occupied.reset();
+    occupied.add(snapshot.guestCount());
+    VarHandle.releaseFence();
+  }
+
+  /**
+   * Grows or shrinks the index to capacity capsules, at the high end.
+   *
+   * Added capsules start free. Dropped capsules must be marked occupied first
+   * (the engine reserves them), so nobody is using them; they turn back into
+   * padding and leave the occupied count.
+   */
+  public synchronized void resize(int capacity){
+    if (capacity < 0){
+      throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+    }
+    int previous = this.capacity;
+    if (capacity > previous){
+      long[][][] current = chunks;
+      long[][][] grown = Arrays.copyOf(current, chunksFor(capacity));
+      for (int c = current.length; c < grown.length; c++){
+        grown[c] = newChunk(c, capacity);
+      }
+      chunks = grown;
+      // the old last chunk kept its capsules past the end as padding, free them
+      clearPadding(current, previous, (int) Math.min(capacity, (long) current.length << CHUNK_SHIFT));
+      this.capacity = capacity;
+    } else if (capacity < previous){
+      int dropped = countOccupied(capacity, previous);
+      if (dropped != previous - capacity){
+        throw new IllegalStateException("capsules " + capacity + " to " + (previous - 1)
+                + " must be marked occupied before they are dropped");
+      }
+      this.capacity = capacity;
+      occupied.add(-dropped);
+      chunks = Arrays.copyOf(chunks, chunksFor(capacity));
+    }
+  }
+
+  public int capacity(){
+    return capacity;
+  }
+
+  public int occupiedCount(){
+    return (int) occupied.sum();
+  }
+
+  public int freeCount(){
+    return capacity - occupiedCount();
+  }
+
+  public boolean isEmpty(){
+    return occupied.sum() == 0;
+  }
+
+  public boolean isFull(){
+    return occupiedCount() == capacity;
+  }
+
+  public boolean isOccupied(int index){
+    checkIndex(index);
+    return (word(chunks, index >>> WORD_SHIFT) & (1L << index)) != 0;
+  }
+
+  /**
+   * Marks the capsule at index as occupied.
+   * @return true if the capsule was free before
+   */
+  public boolean occupy(int index){
+    checkIndex(index);
+    long[][] chunk = chunks[index >>> CHUNK_SHIFT];
+    int w = (index >>> WORD_SHIFT) & CHUNK_WORD_MASK;
+    long bit = 1L << index;
+    long before = (long) WORDS.getAndBitwiseOr(chunk[0], w, bit);
+    if ((before & bit) != 0){
+      return false;
+    }
+    occupied.increment();
+    if ((before | bit) == FULL){
+      updateSummary(chunk, 0, w);
+    }
+    return true;
+  }
+
+  /**
+   * Marks the capsule at index as free.
+   * @return true if the capsule was occupied before
+   */
+  public boolean release(int index){
+    checkIndex(index);
+    long[][] chunk = chunks[index >>> CHUNK_SHIFT];
+    int w = (index >>> WORD_SHIFT) & CHUNK_WORD_MASK;
+    long bit = 1L << index;
+    long before = (long) WORDS.getAndBitwiseAnd(chunk[0], w, ~bit);
+    if ((before & bit) == 0){
+      return false;
+    }
+    occupied.decrement();
+    if (before == FULL){
+      updateSummary(chunk, 0, w);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the index of the first free capsule at or after fromIndex,
+   * or -1 if every capsule from there to the end is occupied.
+   */
+  public int nextFree(int fromIndex){
+    int capacity = this.capacity;
+    if (fromIndex < 0){
+      fromIndex = 0;
+    }
+    if (fromIndex >= capacity){
+      return -1;
+    }
+    long[][][] chunks = this.chunks;
+    int from = fromIndex & (CHUNK_BITS - 1);
+    for (int c = fromIndex >>> CHUNK_SHIFT; c < chunks.length; c++){
+      int found = nextClear(chunks[c], 0, from);
+      if (found < CHUNK_BITS){
+        int index = (c << CHUNK_SHIFT) + found;
+        return index < capacity ? index : -1;
+      }
+      from = 0;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the first free capsule at or after fromIndex, wrapping
+   * around to the start, or -1 if no capsule is free.
+   */
+  public int nextFreeWrapping(int fromIndex){
+    int index = nextFree(fromIndex);
+    return index >= 0 || fromIndex <= 0 ? index : nextFree(0);
+  }
+
+  /**
+   * Returns the index of the first occupied capsule at or after fromIndex,
+   * or -1 if there is none.
+   */
+  public int nextOccupied(int fromIndex){
+    int capacity = this.capacity;
+    if (fromIndex < 0){
+      fromIndex = 0;
+    }
+    if (fromIndex >= capacity){
+      return -1;
+    }
+    long[][][] chunks = this.chunks;
+    int lastWord = wordsFor(capacity);
+    int w = fromIndex >>> WORD_SHIFT;
+    long used = word(chunks, w) & (-1L << fromIndex);
+    while (used == 0){
+      if (++w == lastWord){
+        return -1;
+      }
+      used = word(chunks, w);
+    }
+    int index = (w << WORD_SHIFT) + Long.numberOfTrailingZeros(used);
+    // padding bits past the capacity are set too
+    return index < capacity ? index : -1;
+  }
+
+  public int firstFree(){
+    return nextFree(0);
+  }
+
+  public int firstOccupied(){
+    return nextOccupied(0);
+  }
+
+  /**
+   * Counts the occupied capsules with index in [from, to).
+   */
+  public int countOccupied(int from, int to){
+    int capacity = this.capacity;
+    if (from < 0 || to > capacity || from > to){
+      throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") outside [0, " + capacity + ")");
+    }
+    if (from == to){
+      return 0;
+    }
+    long[][][] chunks = this.chunks;
+    int firstWord = from >>> WORD_SHIFT;
+    int lastWord = (to - 1) >>> WORD_SHIFT;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> (63 - ((to - 1) & WORD_MASK));
+
+    if (firstWord == lastWord){
+      return Long.bitCount(word(chunks, firstWord) & firstMask & lastMask);
+    }
+    int count = Long.bitCount(word(chunks, firstWord) & firstMask);
+    for (int w = firstWord + 1; w < lastWord; w++){
+      count += Long.bitCount(word(chunks, w));
+    }
+    count += Long.bitCount(word(chunks, lastWord) & lastMask);
+    return count;
+  }
+
+  public int countFree(int from, int to){
+    return (to - from) - countOccupied(from, to);
+  }
+
+  /** Receives runs of free capsules from forEachFreeRun. */
+  interface FreeRunConsumer {
+    void accept(int fromIndex, int length);
+  }
+
+  /**
+   * Hands every maximal run of consecutive free capsules to consumer, lowest
+   * first. Empty and full words are passed over whole; a mixed word costs one
+   * step per run of equal bits in it, not one per capsule.
+   */
+  void forEachFreeRun(FreeRunConsumer consumer){
+    int capacity = this.capacity;
+    long[][][] chunks = this.chunks;
+    int words = wordsFor(capacity);
+    int start = 0;
+    int run = 0;
+    for (int w = 0; w < words; w++){
+      long bits = word(chunks, w);
+      int base = w << WORD_SHIFT;
+      if (bits == 0){
+        if (run == 0){
+          start = base;
+        }
+        run += 64;
+        continue;
+      }
+      int bit = 0;
+      while (bit < 64){
+        long rest = bits >>> bit;
+        if ((rest & 1) == 0){
+          int zeros = rest == 0 ? 64 - bit : Long.numberOfTrailingZeros(rest);
+          if (run == 0){
+            start = base + bit;
+          }
+          run += zeros;
+          bit += zeros;
+        } else {
+          if (run > 0){
+            consumer.accept(start, run);
+            run = 0;
+          }
+          // ~rest has the bits shifted in from above set, so this stops at 64
+          bit += Long.numberOfTrailingZeros(~rest);
+        }
+      }
+    }
+    // a chunk dropped by a concurrent shrink reads as free, never report past the capacity
+    run = Math.min(run, capacity - start);
+    if (run > 0){
+      consumer.accept(start, run);
+    }
+  }
+
+  // first clear bit at or after from in the given level of a chunk, or a padding index if none
+  private static int nextClear(long[][] levels, int level, int from){
+    long[] bits = levels[level];
+    int w = from >>> WORD_SHIFT;
+    if (w >= bits.length){
+      return bits.length << WORD_SHIFT;
+    }
+    long clear = ~(long) WORDS.getAcquire(bits, w) & (-1L << from);
+    while (clear == 0){
+      if (level + 1 < levels.length){
+        // ask the level above for the next word that is not full
+        w = nextClear(levels, level + 1, w + 1);
+      } else {
+        w++;
+      }
+      if (w >= bits.length){
+        return bits.length << WORD_SHIFT;
+      }
+      // re-read: the summary may lag a word that just filled up
+      clear = ~(long) WORDS.getAcquire(bits, w);
+    }
+    return (w << WORD_SHIFT) + Long.numberOfTrailingZeros(clear);
+  }
+
+  /**
+   * Copies the fullness of word w at level into the level above, and on up
+   * while that changes a word's fullness there too. Re-reads the word after
+   * each write, so when two threads race to fill and free the same word the
+   * last writer leaves the summary bit matching the word.
+   */
+  private static void updateSummary(long[][] levels, int level, int w){
+    while (level + 1 < levels.length){
+      long[] parent = levels[level + 1];
+      int p = w >>> WORD_SHIFT;
+      long bit = 1L << w;
+      boolean full;
+      long before;
+      do {
+        full = (long) WORDS.getAcquire(levels[level], w) == FULL;
+        before = full ? (long) WORDS.getAndBitwiseOr(parent, p, bit)
+                : (long) WORDS.getAndBitwiseAnd(parent, p, ~bit);
+      } while (((long) WORDS.getAcquire(levels[level], w) == FULL) != full);
+      long after = full ? before | bit : before & ~bit;
+      if ((before == FULL) == (after == FULL)){
+        return;                           // the parent word did not change fullness
+      }
+      level++;
+      w = p;
+    }
+  }
+
+  // clears the padding bits of capsules [from, to), which the index now covers
+  private static void clearPadding(long[][][] chunks, int from, int to){
+    for (int index = from; index < to; ){
+      int end = Math.min(to, (index | WORD_MASK) + 1);
+      long[][] chunk = chunks[index >>> CHUNK_SHIFT];
+      int w = (index >>> WORD_SHIFT) & CHUNK_WORD_MASK;
+      long mask = (-1L << index) & (-1L >>> (63 - ((end - 1) & WORD_MASK)));
+      long before = (long) WORDS.getAndBitwiseAnd(chunk[0], w, ~mask);
+      if (before == FULL){
+        updateSummary(chunk, 0, w);
+      }
+      index = end;
+    }
+  }
+
+  // an empty chunk c for an index of the given capacity
+  private static long[][] newChunk(int c, int capacity){
+    long[][] levels = new long[LEVELS][];
+    for (int level = 0, bits = CHUNK_BITS; level < LEVELS; level++){
+      levels[level] = new long[wordsFor(bits)];
+      bits = levels[level].length;
+    }
+    summarize(levels, c, capacity);
+    VarHandle.releaseFence();
+    return levels;
+  }
+
+  // sets the padding bits of chunk c and recomputes its summary levels, before the chunk is shared
+  private static void summarize(long[][] levels, int c, int capacity){
+    long[] words = levels[0];
+    long used = Math.max(0, Math.min(CHUNK_BITS, capacity - ((long) c << CHUNK_SHIFT)));
+    if (used < CHUNK_BITS){
+      int w = (int) (used >>> WORD_SHIFT);
+      if ((used & WORD_MASK) != 0){
+        words[w++] |= -1L << used;
+      }
+      Arrays.fill(words, w, words.length, FULL);
+    }
+    for (int level = 1; level < levels.length; level++){
+      long[] current = levels[level];
+      long[] below = levels[level - 1];
+      Arrays.fill(current, 0L);
+      for (int w = 0; w < below.length; w++){
+        if (below[w] == FULL){
+          current[w >>> WORD_SHIFT] |= 1L << w;
+        }
+      }
+      if ((below.length & WORD_MASK) != 0){
+        current[current.length - 1] |= -1L << below.length;
+      }
+    }
+  }
+
+  private static int wordsFor(int bits){
+    return (int) (((long) bits + WORD_MASK) >>> WORD_SHIFT);
+  }
+
+  private static int chunksFor(int capacity){
+    return (int) (((long) capacity + CHUNK_BITS - 1) >>> CHUNK_SHIFT);
+  }
+
+  // word w of the capsule bits; a chunk dropped by a concurrent shrink reads as empty
+  private static long word(long[][][] chunks, int w){
+    int c = w >>> CHUNK_WORD_SHIFT;
+    return c < chunks.length ? (long) WORDS.getAcquire(chunks[c][0], w & CHUNK_WORD_MASK) : 0L;
+  }
+
+  private void checkIndex(int index){
+    int capacity = this.capacity;
+    if (index < 0 || index >= capacity){
+      throw new IndexOutOfBoundsException("capsule index " + index + " outside [0, " + capacity + ")");
+    }
+  }
+}
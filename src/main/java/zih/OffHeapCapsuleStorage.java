@@ -0,0 +1,59 @@
+package zih;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Guest IDs in a direct buffer outside the Java heap, names in a GuestNamePool.
+ * The GC never scans or copies the slot table, and heap use does not depend on
+ * the number of capsules. Limited to 2^29 capsules (one 2 GB buffer).
+ */
+public class OffHeapCapsuleStorage implements CapsuleStorage {
+  private static final VarHandle IDS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+  private final ByteBuffer ids;
+  private final int capacity;
+  private final GuestNamePool names;
+
+  public OffHeapCapsuleStorage(int capacity, GuestNamePool names){
+    if (capacity > Integer.MAX_VALUE / 4){
+      throw new IllegalArgumentException("Too many capsules for one off-heap table: " + capacity);
+    }
+    // direct buffers start zeroed, i.e. every slot is null
+    this.ids = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder());
+    this.capacity = capacity;
+    this.names = names;
+  }
+
+  @Override
+  public int capacity(){
+    return capacity;
+  }
+
+  @Override
+  public String get(int index){
+    return names.decode((int) IDS.getAcquire(ids, index * 4));
+  }
+
+  @Override
+  public void set(int index, String value){
+    IDS.setRelease(ids, index * 4, names.encode(value));
+  }
+
+  @Override
+  public boolean compareAndSet(int index, String expected, String update){
+    int expectedId = names.lookup(expected);
+    return expectedId >= 0 && IDS.compareAndSet(ids, index * 4, expectedId, names.encode(update));
+  }
+
+  public GuestNamePool names(){
+    return names;
+  }
+
+  // bytes held outside the heap
+  public long offHeapBytes(){
+    return ids.capacity();
+  }
+}
@@ -0,0 +1,276 @@
+package zih;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HotelService whose capsules live in another process: every call is a request
+ * to a HotelHttpServer, usually one shard of a ShardedHotelService.
+ *
+ * Refusals come back as results just like from a local BookingEngine; a server
+ * that cannot be reached or answers something unreadable or an error that is no
+ * BookingError surfaces as an UncheckedIOException, and a request it refuses as
+ * a whole, e.g. a range outside it, as an UpstreamException. The capacity is
+ * read when connecting and refreshed by resize() and occupiedCount(), so the
+ * remote hotel should be resized through this client.
+ */
+public class RemoteHotelService implements HotelService {
+  private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+  private final URI base;
+  private final HttpClient client;
+  private volatile int capacity;
+
+  /**
+   * Connects to the hotel served at base, e.g. http://localhost:8081/
+   * @throws UncheckedIOException if it does not answer
+   */
+  public RemoteHotelService(URI base){
+    this.base = base.getPath().endsWith("/") ? base : URI.create(base + "/");
+    // the JDK server speaks HTTP/1.1 only, skip the HTTP/2 upgrade attempt
+    this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(TIMEOUT)
+            .build();
+    occupiedCount();
+  }
+
+  public URI base(){
+    return base;
+  }
+
+  @Override
+  public CheckInResult checkIn(int capsuleNumber, String guestName){
+    Map<String, Object> reply = send("POST", "checkin?capsule=" + capsuleNumber + "&guest=" + encode(guestName), null);
+    return checkInResult(reply, guestName);
+  }
+
+  @Override
+  public CheckInResult checkInAny(String guestName, AssignmentPolicy policy){
+    Map<String, Object> reply = send("POST", "checkin?guest=" + encode(guestName) + "&policy=" + policy, null);
+    return checkInResult(reply, guestName);
+  }
+
+  @Override
+  public CheckOutResult checkOut(int capsuleNumber){
+    return checkOutResult(send("POST", "checkout?capsule=" + capsuleNumber, null));
+  }
+
+  @Override
+  public BatchResult<CheckInResult> checkInAll(Map<Integer, String> bookings, BatchMode mode){
+    StringBuilder body = new StringBuilder(bookings.size() * 32);
+    for (Map.Entry<Integer, String> booking : bookings.entrySet()){
+      if (booking.getKey() == null || booking.getValue() == null){
+        throw new IllegalArgumentException("capsule numbers and guest names must not be null");
+      }
+      body.append("capsule=").append(booking.getKey()).append("&guest=").append(encode(booking.getValue())).append('\n');
+    }
+    return checkInResults(send("POST", "batch/checkin?mode=" + mode, body.toString()));
+  }
+
+  @Override
+  public BatchResult<CheckInResult> checkInAll(List<String> guestNames, AssignmentPolicy policy, BatchMode mode){
+    StringBuilder body = new StringBuilder(guestNames.size() * 24);
+    for (String guestName : guestNames){
+      if (guestName == null){
+        throw new IllegalArgumentException("guestName must not be null");
+      }
+      body.append("guest=").append(encode(guestName)).append('\n');
+    }
+    return checkInResults(send("POST", "batch/checkin?mode=" + mode + "&policy=" + policy, body.toString()));
+  }
+
+  @Override
+  public BatchResult<CheckOutResult> checkOutAll(int[] capsuleNumbers, BatchMode mode){
+    StringBuilder body = new StringBuilder(capsuleNumbers.length * 16);
+    for (int capsuleNumber : capsuleNumbers){
+      body.append("capsule=").append(capsuleNumber).append('\n');
+    }
+    Map<String, Object> reply = send("POST", "batch/checkout?mode=" + mode, body.toString());
+    List<CheckOutResult> results = new ArrayList<>(capsuleNumbers.length);
+    for (Object item : list(reply, "results")){
+      @SuppressWarnings("unchecked")
+      Map<String, Object> result = (Map<String, Object>) item;
+      results.add(checkOutResult(result));
+    }
+    return new BatchResult<>(results, number(reply, "succeeded"));
+  }
+
+  @Override
+  public String guestAt(int capsuleNumber){
+    if (!exists(capsuleNumber)){
+      return null;
+    }
+    return guestsInRange(capsuleNumber - 1, capsuleNumber)[0];
+  }
+
+  // pages through /guests, HotelHttpServer.MAX_PAGE capsules per request
+  @Override
+  public String[] guestsInRange(int start, int end){
+    String[] guests = new String[end - start];
+    for (int from = start; from < end; from += HotelHttpServer.MAX_PAGE){
+      int to = Math.min(end, from + HotelHttpServer.MAX_PAGE);
+      Map<String, Object> reply = send("GET", "guests?start=" + from + "&end=" + to
+              + "&pageSize=" + HotelHttpServer.MAX_PAGE, null);
+      failOnError(reply);
+      for (Object item : list(reply, "guests")){
+        @SuppressWarnings("unchecked")
+        Map<String, Object> guest = (Map<String, Object>) item;
+        guests[number(guest, "capsule") - 1 - start] = (String) guest.get("guest");
+      }
+    }
+    return guests;
+  }
+
+  @Override
+  public int nextOccupied(int fromCapsuleNumber){
+    int capacity = this.capacity;
+    int from = Math.max(1, fromCapsuleNumber);
+    if (from > capacity){
+      return 0;
+    }
+    Map<String, Object> reply = send("GET", "guests?start=" + (from - 1) + "&end=" + capacity
+            + "&occupied=true&pageSize=1", null);
+    failOnError(reply);
+    List<Object> guests = list(reply, "guests");
+    if (guests.isEmpty()){
+      return 0;
+    }
+    @SuppressWarnings("unchecked")
+    Map<String, Object> guest = (Map<String, Object>) guests.get(0);
+    return number(guest, "capsule");
+  }
+
+  @Override
+  public int capacity(){
+    return capacity;
+  }
+
+  /**
+   * @throws UnsupportedOperationException if the remote hotel has a fixed capacity
+   */
+  @Override
+  public ResizeResult resize(int numberOfCapsules){
+    Map<String, Object> reply = send("POST", "resize?capsules=" + numberOfCapsules, null);
+    Object error = reply.get("error");
+    if ("FIXED_CAPACITY".equals(error)){
+      throw new UnsupportedOperationException("The hotel at " + base + " has a fixed number of capsules");
+    }
+    if (error != null){
+      return ResizeResult.failed(bookingError(reply), capacity, number(reply, "capsule"));
+    }
+    capacity = number(reply, "capacity");
+    return ResizeResult.resized(number(reply, "previousCapacity"), capacity);
+  }
+
+  @Override
+  public int occupiedCount(){
+    Map<String, Object> reply = send("GET", "stats", null);
+    failOnError(reply);
+    capacity = number(reply, "capacity");
+    return number(reply, "occupied");
+  }
+
+  private CheckInResult checkInResult(Map<String, Object> reply, String guestName){
+    if (reply.get("error") != null){
+      return CheckInResult.failed(bookingError(reply), number(reply, "capsule"), guestName);
+    }
+    return CheckInResult.booked(number(reply, "capsule"), guestName);
+  }
+
+  private CheckOutResult checkOutResult(Map<String, Object> reply){
+    if (reply.get("error") != null){
+      return CheckOutResult.failed(bookingError(reply), number(reply, "capsule"));
+    }
+    return CheckOutResult.checkedOut(number(reply, "capsule"), (String) reply.get("guest"));
+  }
+
+  private BatchResult<CheckInResult> checkInResults(Map<String, Object> reply){
+    List<Object> items = list(reply, "results");
+    List<CheckInResult> results = new ArrayList<>(items.size());
+    for (Object item : items){
+      @SuppressWarnings("unchecked")
+      Map<String, Object> result = (Map<String, Object>) item;
+      results.add(checkInResult(result, (String) result.get("guest")));
+    }
+    return new BatchResult<>(results, number(reply, "succeeded"));
+  }
+
+  // the refusal in reply; anything else, e.g. a 405 or a shard behind the server being down, is not the caller's doing
+  private BookingError bookingError(Map<String, Object> reply){
+    Object error = reply.get("error");
+    for (BookingError known : BookingError.values()){
+      if (known.name().equals(error)){
+        return known;
+      }
+    }
+    throw new UncheckedIOException(new IOException("The hotel at " + base + " answered " + reply));
+  }
+
+  // a request the server refused as a whole, e.g. a range outside the remote hotel
+  private void failOnError(Map<String, Object> reply){
+    if (reply.containsKey("error")){
+      throw new UpstreamException("The hotel at " + base + " refused the request: " + reply.get("error"));
+    }
+  }
+
+  private Map<String, Object> send(String method, String pathAndQuery, String body){
+    HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve(pathAndQuery)).timeout(TIMEOUT);
+    if (body == null){
+      request.method(method, HttpRequest.BodyPublishers.noBody());
+    } else {
+      request.header("Content-Type", "text/plain; charset=utf-8")
+              .method(method, HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+    }
+    HttpResponse<String> response;
+    try {
+      response = client.send(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    } catch (IOException e){
+      throw new UncheckedIOException("The hotel at " + base + " did not answer", e);
+    } catch (InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException(new InterruptedIOException("Interrupted waiting for " + base));
+    }
+    try {
+      return Json.parseObject(response.body());
+    } catch (IllegalArgumentException e){
+      throw new UncheckedIOException(new IOException("Unreadable reply " + response.statusCode()
+              + " from " + base + pathAndQuery, e));
+    }
+  }
+
+  private static String encode(String value){
+    if (value == null){
+      throw new IllegalArgumentException("guestName must not be null");
+    }
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  private static int number(Map<String, Object> reply, String name){
+    Object value = reply.get(name);
+    if (!(value instanceof Long)){
+      throw new UncheckedIOException(new IOException("Reply without " + name + ": " + reply));
+    }
+    return ((Long) value).intValue();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Object> list(Map<String, Object> reply, String name){
+    Object value = reply.get(name);
+    if (!(value instanceof List)){
+      throw new UncheckedIOException(new IOException("Reply without " + name + ": " + reply));
+    }
+    return (List<Object>) value;
+  }
+}
@@ -0,0 +1,73 @@
+package zih;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * A stay booked in advance: one guest in one capsule for the nights from
+ * arrival up to, not including, departure. Two reservations are equal when
+ * they are for the same guest, capsule and dates.
+ */
+public final class Reservation {
+  private final String guestName;
+  private final int capsuleNumber;
+  // epoch days, departure exclusive
+  private final int arrival;
+  private final int departure;
+
+  Reservation(String guestName, int capsuleNumber, int arrival, int departure){
+    this.guestName = guestName;
+    this.capsuleNumber = capsuleNumber;
+    this.arrival = arrival;
+    this.departure = departure;
+  }
+
+  public String getGuestName(){
+    return guestName;
+  }
+
+  public int getCapsuleNumber(){
+    return capsuleNumber;
+  }
+
+  public LocalDate getArrival(){
+    return LocalDate.ofEpochDay(arrival);
+  }
+
+  // the day the guest leaves, the first night not included
+  public LocalDate getDeparture(){
+    return LocalDate.ofEpochDay(departure);
+  }
+
+  public int getNights(){
+    return departure - arrival;
+  }
+
+  int arrivalDay(){
+    return arrival;
+  }
+
+  int departureDay(){
+    return departure;
+  }
+
+  @Override
+  public boolean equals(Object other){
+    if (!(other instanceof Reservation)){
+      return false;
+    }
+    Reservation that = (Reservation) other;
+    return capsuleNumber == that.capsuleNumber && arrival == that.arrival
+            && departure == that.departure && guestName.equals(that.guestName);
+  }
+
+  @Override
+  public int hashCode(){
+    return Objects.hash(guestName, capsuleNumber, arrival, departure);
+  }
+
+  @Override
+  public String toString(){
+    return guestName + " #" + capsuleNumber + " " + getArrival() + ".." + getDeparture();
+  }
+}
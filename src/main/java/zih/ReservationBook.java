@@ -0,0 +1,398 @@
+package zih;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Advance reservations: every capsule carries a timeline of stays, so guests
+ * can book nights ahead and one capsule can go to different guests on
+ * different dates. A stay covers the nights from arrival up to, not
+ * including, departure, so one guest can leave on the day the next arrives.
+ *
+ * Two structures are kept in step under a per-capsule lock stripe:
+ *   timeline  per capsule, its stays sorted by date in parallel int arrays;
+ *             stays never overlap, so a binary search finds any conflict
+ *   nights    per day, one bit per capsule set while it is reserved that
+ *             night, packed 64 to a long like OccupancyIndex
+ *
+ * "Which capsules are free from A to B" ORs the night words of the range, 64
+ * capsules at a time, stops as soon as a word is fully booked and returns
+ * after the first N hits; it never looks at a timeline. Days nobody has
+ * booked have no bitmap at all.
+ *
+ * Reservations are separate from the live check-ins of a BookingEngine: the
+ * engine says who sleeps in a capsule tonight, the book who will.
+ */
+public class ReservationBook {
+  private static final int WORD_SHIFT = 6;          // 64 capsules per word
+  private static final int WORD_MASK = 63;
+  // power of two so the stripe is a mask away from the capsule index
+  private static final int STRIPES = 1024;
+  private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private final int capacity;
+  private final int words;
+  // bits past the capacity in the last word, always reported as reserved
+  private final long padding;
+  // epoch day -> capsules reserved that night
+  private final ConcurrentHashMap<Integer, long[]> nights = new ConcurrentHashMap<>();
+  // stays per capsule (0-based), created by the first reservation; guarded by the stripe
+  private final Timeline[] timelines;
+  private final Object[] stripes = new Object[STRIPES];
+  private final LongAdder reservations = new LongAdder();
+
+  public ReservationBook(int numberOfCapsules){
+    if (numberOfCapsules <= 0){
+      throw new IllegalArgumentException("Number of capsules must be greater than 0.");
+    }
+    this.capacity = numberOfCapsules;
+    this.words = (numberOfCapsules + WORD_MASK) >>> WORD_SHIFT;
+    this.padding = (numberOfCapsules & WORD_MASK) == 0 ? 0 : -1L << numberOfCapsules;
+    this.timelines = new Timeline[numberOfCapsules];
+    for (int i = 0; i < STRIPES; i++){
+      stripes[i] = new Object();
+    }
+  }
+
+  public int capacity(){
+    return capacity;
+  }
+
+  public boolean exists(int capsuleNumber){
+    return capsuleNumber >= 1 && capsuleNumber <= capacity;
+  }
+
+  // reservations currently in the book
+  public long reservationCount(){
+    return reservations.sum();
+  }
+
+  /**
+   * Reserves the capsule for the nights from arrival to departure.
+   * Fails with DOES_NOT_EXIST, or OCCUPIED if another stay overlaps.
+   */
+  public ReservationResult reserve(int capsuleNumber, String guestName, LocalDate arrival, LocalDate departure){
+    checkGuest(guestName);
+    int from = checkArrival(arrival, departure);
+    int to = (int) departure.toEpochDay();
+    if (!exists(capsuleNumber)){
+      return ReservationResult.failed(BookingError.DOES_NOT_EXIST, capsuleNumber);
+    }
+    Reservation reservation = book(capsuleNumber - 1, guestName, from, to);
+    return reservation != null
+            ? ReservationResult.reserved(reservation)
+            : ReservationResult.failed(BookingError.OCCUPIED, capsuleNumber);
+  }
+
+  /**
+   * Reserves the lowest-numbered capsule that is free for every night of the
+   * stay. Fails with NO_VACANCY when there is none.
+   *
+   * Like BookingEngine.checkInAny, the night bitmaps only suggest a capsule and
+   * the reservation itself re-checks its timeline, so a suggestion another
+   * thread takes first just moves the search on.
+   */
+  public ReservationResult reserveAny(String guestName, LocalDate arrival, LocalDate departure){
+    checkGuest(guestName);
+    int from = checkArrival(arrival, departure);
+    int to = (int) departure.toEpochDay();
+    long[][] booked = bitmaps(from, to);
+    for (int index = nextFree(booked, 0); index >= 0; index = nextFree(booked, index + 1)){
+      Reservation reservation = book(index, guestName, from, to);
+      if (reservation != null){
+        return ReservationResult.reserved(reservation);
+      }
+    }
+    return ReservationResult.failed(BookingError.NO_VACANCY, 0);
+  }
+
+  /**
+   * Takes the stay out of the book.
+   * @return false if it was not there (already cancelled, or never booked)
+   */
+  public boolean cancel(Reservation reservation){
+    int index = reservation.getCapsuleNumber() - 1;
+    if (index < 0 || index >= capacity){
+      return false;
+    }
+    synchronized (stripes[index & (STRIPES - 1)]){
+      Timeline timeline = timelines[index];
+      if (timeline == null || !timeline.remove(reservation)){
+        return false;
+      }
+      for (int day = reservation.arrivalDay(); day < reservation.departureDay(); day++){
+        long[] night = nights.get(day);
+        if (night != null){                 // null once forgetBefore passed that night
+          WORDS.getAndBitwiseAnd(night, index >>> WORD_SHIFT, ~(1L << index));
+        }
+      }
+    }
+    reservations.decrement();
+    return true;
+  }
+
+  /**
+   * Capsule numbers free for every night from arrival to departure, lowest
+   * first, at most limit of them.
+   */
+  public int[] freeCapsules(LocalDate arrival, LocalDate departure, int limit){
+    if (limit < 0){
+      throw new IllegalArgumentException("limit must not be negative: " + limit);
+    }
+    int from = checkArrival(arrival, departure);
+    long[][] booked = bitmaps(from, (int) departure.toEpochDay());
+    int[] found = new int[Math.min(limit, capacity)];
+    int count = 0;
+    for (int w = 0; w < words && count < found.length; w++){
+      long free = ~reservedWord(booked, w);
+      while (free != 0 && count < found.length){
+        found[count++] = (w << WORD_SHIFT) + Long.numberOfTrailingZeros(free) + 1;
+        free &= free - 1;
+      }
+    }
+    return count == found.length ? found : Arrays.copyOf(found, count);
+  }
+
+  // counts the capsules free for every night from arrival to departure
+  public int countFree(LocalDate arrival, LocalDate departure){
+    int from = checkArrival(arrival, departure);
+    long[][] booked = bitmaps(from, (int) departure.toEpochDay());
+    int free = 0;
+    for (int w = 0; w < words; w++){
+      free += Long.bitCount(~reservedWord(booked, w));
+    }
+    return free;
+  }
+
+  public boolean isFree(int capsuleNumber, LocalDate arrival, LocalDate departure){
+    int from = checkArrival(arrival, departure);
+    if (!exists(capsuleNumber)){
+      return false;
+    }
+    int index = capsuleNumber - 1;
+    synchronized (stripes[index & (STRIPES - 1)]){
+      Timeline timeline = timelines[index];
+      return timeline == null || !timeline.overlaps(from, (int) departure.toEpochDay());
+    }
+  }
+
+  /**
+   * @return the stay that covers the night of day in the capsule, or null if it is free then
+   */
+  public Reservation reservationAt(int capsuleNumber, LocalDate day){
+    if (!exists(capsuleNumber)){
+      return null;
+    }
+    int index = capsuleNumber - 1;
+    synchronized (stripes[index & (STRIPES - 1)]){
+      Timeline timeline = timelines[index];
+      return timeline == null ? null : timeline.at(capsuleNumber, (int) day.toEpochDay());
+    }
+  }
+
+  // the capsule's stays in date order
+  public List<Reservation> reservationsOf(int capsuleNumber){
+    List<Reservation> stays = new ArrayList<>();
+    if (!exists(capsuleNumber)){
+      return stays;
+    }
+    int index = capsuleNumber - 1;
+    synchronized (stripes[index & (STRIPES - 1)]){
+      Timeline timeline = timelines[index];
+      for (int i = 0; timeline != null && i < timeline.size; i++){
+        stays.add(timeline.get(capsuleNumber, i));
+      }
+    }
+    return stays;
+  }
+
+  /**
+   * Forgets every stay that departed on or before day and the night bitmaps
+   * before it, so the book only grows with the future it holds.
+   * @return the number of stays dropped
+   */
+  public int forgetBefore(LocalDate day){
+    int cutoff = (int) day.toEpochDay();
+    int dropped = 0;
+    for (int index = 0; index < capacity; index++){
+      synchronized (stripes[index & (STRIPES - 1)]){
+        Timeline timeline = timelines[index];
+        if (timeline != null){
+          dropped += timeline.dropDepartedBy(cutoff);
+        }
+      }
+    }
+    nights.keySet().removeIf(night -> night < cutoff);
+    reservations.add(-dropped);
+    return dropped;
+  }
+
+  // adds the stay to the capsule's timeline and night bitmaps, null if it overlaps another
+  private Reservation book(int index, String guestName, int from, int to){
+    synchronized (stripes[index & (STRIPES - 1)]){
+      Timeline timeline = timelines[index];
+      if (timeline == null){
+        timeline = new Timeline();
+        timelines[index] = timeline;
+      } else if (timeline.overlaps(from, to)){
+        return null;
+      }
+      timeline.add(from, to, guestName);
+      for (int day = from; day < to; day++){
+        WORDS.getAndBitwiseOr(night(day), index >>> WORD_SHIFT, 1L << index);
+      }
+    }
+    reservations.increment();
+    return new Reservation(guestName, index + 1, from, to);
+  }
+
+  // the bitmap for the night of day, created empty on first use
+  private long[] night(int day){
+    long[] night = nights.get(day);
+    return night != null ? night : nights.computeIfAbsent(day, ignored -> new long[words]);
+  }
+
+  // the bitmaps of the nights [from, to) that anyone has booked
+  private long[][] bitmaps(int from, int to){
+    long[][] booked = new long[to - from][];
+    int count = 0;
+    for (int day = from; day < to; day++){
+      long[] night = nights.get(day);
+      if (night != null){
+        booked[count++] = night;
+      }
+    }
+    return Arrays.copyOf(booked, count);
+  }
+
+  // capsules in word w reserved on any of the nights
+  private long reservedWord(long[][] booked, int w){
+    long reserved = w == words - 1 ? padding : 0;
+    for (int i = 0; i < booked.length && reserved != -1L; i++){
+      reserved |= (long) WORDS.getAcquire(booked[i], w);
+    }
+    return reserved;
+  }
+
+  // first capsule index at or after fromIndex free on all the nights, -1 if none
+  private int nextFree(long[][] booked, int fromIndex){
+    if (fromIndex >= capacity){
+      return -1;
+    }
+    int w = fromIndex >>> WORD_SHIFT;
+    long free = ~reservedWord(booked, w) & (-1L << fromIndex);
+    while (free == 0){
+      if (++w == words){
+        return -1;
+      }
+      free = ~reservedWord(booked, w);
+    }
+    return (w << WORD_SHIFT) + Long.numberOfTrailingZeros(free);
+  }
+
+  private static void checkGuest(String guestName){
+    if (guestName == null){
+      throw new IllegalArgumentException("guestName must not be null");
+    }
+  }
+
+  // the arrival as an epoch day, after checking the stay is at least one night
+  private static int checkArrival(LocalDate arrival, LocalDate departure){
+    if (!arrival.isBefore(departure)){
+      throw new IllegalArgumentException("departure " + departure + " must be after arrival " + arrival);
+    }
+    return (int) arrival.toEpochDay();
+  }
+
+  /**
+   * Stays of one capsule sorted by arrival. They never overlap, so the
+   * departures are sorted too and one binary search over them answers
+   * "what is booked around this date".
+   */
+  private static final class Timeline {
+    int[] arrivals = new int[2];
+    int[] departures = new int[2];
+    String[] guests = new String[2];
+    int size;
+
+    // position of the first stay that is still there on the night of day
+    int firstDepartingAfter(int day){
+      int low = 0;
+      int high = size;
+      while (low < high){
+        int middle = (low + high) >>> 1;
+        if (departures[middle] > day){
+          high = middle;
+        } else {
+          low = middle + 1;
+        }
+      }
+      return low;
+    }
+
+    boolean overlaps(int from, int to){
+      int i = firstDepartingAfter(from);
+      return i < size && arrivals[i] < to;
+    }
+
+    void add(int from, int to, String guestName){
+      int i = firstDepartingAfter(from);
+      if (size == arrivals.length){
+        arrivals = Arrays.copyOf(arrivals, size * 2);
+        departures = Arrays.copyOf(departures, size * 2);
+        guests = Arrays.copyOf(guests, size * 2);
+      }
+      System.arraycopy(arrivals, i, arrivals, i + 1, size - i);
+      System.arraycopy(departures, i, departures, i + 1, size - i);
+      System.arraycopy(guests, i, guests, i + 1, size - i);
+      arrivals[i] = from;
+      departures[i] = to;
+      guests[i] = guestName;
+      size++;
+    }
+
+    boolean remove(Reservation reservation){
+      int i = firstDepartingAfter(reservation.arrivalDay());
+      if (i == size || arrivals[i] != reservation.arrivalDay() || departures[i] != reservation.departureDay()
+              || !guests[i].equals(reservation.getGuestName())){
+        return false;
+      }
+      removeRange(i, i + 1);
+      return true;
+    }
+
+    // drops the stays departed by day, which are all at the front
+    int dropDepartedBy(int day){
+      int departed = firstDepartingAfter(day);
+      removeRange(0, departed);
+      return departed;
+    }
+
+    Reservation at(int capsuleNumber, int day){
+      int i = firstDepartingAfter(day);
+      return i < size && arrivals[i] <= day ? get(capsuleNumber, i) : null;
+    }
+
+    Reservation get(int capsuleNumber, int i){
+      return new Reservation(guests[i], capsuleNumber, arrivals[i], departures[i]);
+    }
+
+    private void removeRange(int from, int to){
+      int removed = to - from;
+      if (removed == 0){
+        return;
+      }
+      System.arraycopy(arrivals, to, arrivals, from, size - to);
+      System.arraycopy(departures, to, departures, from, size - to);
+      System.arraycopy(guests, to, guests, from, size - to);
+      size -= removed;
+      Arrays.fill(guests, size, size + removed, null);
+    }
+  }
+}
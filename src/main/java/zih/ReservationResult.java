@@ -0,0 +1,53 @@
+package zih;
+
+/**
+ * Outcome of a reservation: either the stay that was booked, or the error
+ * says why not.
+ */
+public final class ReservationResult {
+  private final BookingError error;
+  private final int capsuleNumber;
+  private final Reservation reservation;
+
+  private ReservationResult(BookingError error, int capsuleNumber, Reservation reservation){
+    this.error = error;
+    this.capsuleNumber = capsuleNumber;
+    this.reservation = reservation;
+  }
+
+  public static ReservationResult reserved(Reservation reservation){
+    return new ReservationResult(null, reservation.getCapsuleNumber(), reservation);
+  }
+
+  public static ReservationResult failed(BookingError error, int capsuleNumber){
+    if (error == null){
+      throw new IllegalArgumentException("error must not be null");
+    }
+    return new ReservationResult(error, capsuleNumber, null);
+  }
+
+  public boolean isSuccess(){
+    return error == null;
+  }
+
+  // null when the reservation succeeded
+  public BookingError getError(){
+    return error;
+  }
+
+  public int getCapsuleNumber(){
+    return capsuleNumber;
+  }
+
+  // the booked stay, null on failure
+  public Reservation getReservation(){
+    return reservation;
+  }
+
+  @Override
+  public String toString(){
+    return isSuccess()
+            ? "ReservationResult[" + reservation + "]"
+            : "ReservationResult[" + error + " #" + capsuleNumber + "]";
+  }
+}
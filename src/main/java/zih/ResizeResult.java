@@ -0,0 +1,61 @@
+package zih;
+
+/**
+ * Outcome of changing the number of capsules: the capacity before and after,
+ * or the error says why it stayed as it was.
+ */
+public final class ResizeResult {
+  private final BookingError error;
+  private final int previousCapacity;
+  private final int capacity;
+  private final int capsuleNumber;
+
+  private ResizeResult(BookingError error, int previousCapacity, int capacity, int capsuleNumber){
+    this.error = error;
+    this.previousCapacity = previousCapacity;
+    this.capacity = capacity;
+    this.capsuleNumber = capsuleNumber;
+  }
+
+  public static ResizeResult resized(int previousCapacity, int capacity){
+    return new ResizeResult(null, previousCapacity, capacity, 0);
+  }
+
+  // capsuleNumber is the capsule that stopped the resize, e.g. an occupied one a shrink would drop
+  public static ResizeResult failed(BookingError error, int capacity, int capsuleNumber){
+    if (error == null){
+      throw new IllegalArgumentException("error must not be null");
+    }
+    return new ResizeResult(error, capacity, capacity, capsuleNumber);
+  }
+
+  public boolean isSuccess(){
+    return error == null;
+  }
+
+  // null when the resize succeeded
+  public BookingError getError(){
+    return error;
+  }
+
+  public int getPreviousCapacity(){
+    return previousCapacity;
+  }
+
+  // the capacity now, unchanged on failure
+  public int getCapacity(){
+    return capacity;
+  }
+
+  // the capsule that stopped the resize, 0 on success
+  public int getCapsuleNumber(){
+    return capsuleNumber;
+  }
+
+  @Override
+  public String toString(){
+    return isSuccess()
+            ? "ResizeResult[" + previousCapacity + " -> " + capacity + " capsules]"
+            : "ResizeResult[" + error + " #" + capsuleNumber + ", still " + capacity + " capsules]";
+  }
+}
@@ -0,0 +1,84 @@
+package zih;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Slot table cut into segments of 16384 capsules, each a CapsuleStorage of its
+ * own (plain arrays unless another segment factory is given). Growing appends
+ * segments and shrinking drops the ones past the end, so a resize only copies
+ * the small segment directory, never the slots that stay, and readers and
+ * writers keep going while it runs.
+ *
+ * Slots past the last segment read as BUSY and refuse every compare-and-set,
+ * so a booking that checked its capsule number just before a shrink cannot
+ * land in a segment that is gone.
+ */
+public class SegmentedCapsuleStorage implements CapsuleStorage {
+  static final int SEGMENT_SHIFT = 14;
+  static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+  private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  private final IntFunction<CapsuleStorage> segmentFactory;
+  private volatile CapsuleStorage[] segments = new CapsuleStorage[0];
+  private volatile int capacity;
+
+  // segmentFactory builds one segment from its size, e.g. CapsuleStorage::array
+  public SegmentedCapsuleStorage(int capacity, IntFunction<CapsuleStorage> segmentFactory){
+    this.segmentFactory = segmentFactory;
+    resize(capacity);
+  }
+
+  @Override
+  public int capacity(){
+    return capacity;
+  }
+
+  @Override
+  public String get(int index){
+    CapsuleStorage[] segments = this.segments;
+    int segment = index >>> SEGMENT_SHIFT;
+    return segment < segments.length ? segments[segment].get(index & SEGMENT_MASK) : BUSY;
+  }
+
+  @Override
+  public void set(int index, String value){
+    CapsuleStorage[] segments = this.segments;
+    int segment = index >>> SEGMENT_SHIFT;
+    if (segment < segments.length){
+      segments[segment].set(index & SEGMENT_MASK, value);
+    }
+  }
+
+  @Override
+  public boolean compareAndSet(int index, String expected, String update){
+    CapsuleStorage[] segments = this.segments;
+    int segment = index >>> SEGMENT_SHIFT;
+    return segment < segments.length && segments[segment].compareAndSet(index & SEGMENT_MASK, expected, update);
+  }
+
+  /**
+   * Adds or drops segments so that capacity slots fit. Slots of the last,
+   * partly used segment keep their values either way.
+   */
+  @Override
+  public synchronized void resize(int capacity){
+    if (capacity < 0){
+      throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+    }
+    CapsuleStorage[] current = segments;
+    int needed = (int) (((long) capacity + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    if (needed != current.length){
+      CapsuleStorage[] resized = Arrays.copyOf(current, needed);
+      for (int segment = current.length; segment < needed; segment++){
+        resized[segment] = segmentFactory.apply(SEGMENT_SIZE);
+      }
+      segments = resized;
+    }
+    this.capacity = capacity;
+  }
+
+  public int segmentCount(){
+    return segments.length;
+  }
+}
@@ -0,0 +1,577 @@
+package zih;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * One hotel whose capsules are split across several HotelServices, usually
+ * RemoteHotelServices in front of HotelHttpServer processes. Each shard owns a
+ * consecutive range of capsule numbers in the order the shards are given: with
+ * shards of 100 and 50 capsules, capsules 1-100 are the first shard's 1-100 and
+ * 101-150 the second's 1-50.
+ *
+ * Single-capsule operations go to the owning shard only. checkInAny asks all
+ * shards for their free count at once and books in the one the policy prefers,
+ * moving on to the next if that one filled up meanwhile. Views (guestsInRange,
+ * nextOccupied) are answered by the shards the range covers and stitched
+ * together in capsule order.
+ *
+ * Batches are split per shard and the parts run in parallel. An ALL_OR_NOTHING
+ * batch is atomic within each shard; when a part fails, the parts that went
+ * through are undone afterwards, so unlike on one BookingEngine another client
+ * may briefly see bookings of a batch that ends up rolled back. An item whose
+ * undo fails, e.g. because another guest took the capsule meanwhile, is
+ * reported with what actually happened to it and counted as done.
+ *
+ * Only the last shard can be resized, the others keep their numbers.
+ */
+public class ShardedHotelService implements HotelService, Closeable {
+  private final HotelService[] shards;
+  // capsules before each shard, plus the total capacity at the end
+  private volatile int[] offsets;
+  private final ExecutorService executor;
+  private final AtomicInteger roundRobinShard = new AtomicInteger();
+
+  public ShardedHotelService(List<? extends HotelService> shards){
+    if (shards.isEmpty()){
+      throw new IllegalArgumentException("A sharded hotel needs at least one shard");
+    }
+    this.shards = shards.toArray(new HotelService[0]);
+    int[] offsets = new int[this.shards.length + 1];
+    for (int shard = 0; shard < this.shards.length; shard++){
+      offsets[shard + 1] = offsets[shard] + this.shards[shard].capacity();
+    }
+    this.offsets = offsets;
+    this.executor = HotelHttpServer.requestExecutor();
+  }
+
+  /**
+   * Routes to the hotels served at the comma-separated base URLs, in order.
+   */
+  public static ShardedHotelService connect(String urls){
+    List<RemoteHotelService> shards = new ArrayList<>();
+    for (String url : urls.split(",")){
+      if (!url.isBlank()){
+        shards.add(new RemoteHotelService(URI.create(url.strip())));
+      }
+    }
+    return new ShardedHotelService(shards);
+  }
+
+  public int shardCount(){
+    return shards.length;
+  }
+
+  public HotelService shard(int shard){
+    return shards[shard];
+  }
+
+  // the capsule number the shard's first capsule has in this hotel, minus one
+  public int offsetOf(int shard){
+    return offsets[shard];
+  }
+
+  @Override
+  public CheckInResult checkIn(int capsuleNumber, String guestName){
+    int[] offsets = this.offsets;
+    int shard = shardOf(offsets, capsuleNumber);
+    if (shard < 0){
+      return CheckInResult.failed(BookingError.DOES_NOT_EXIST, capsuleNumber, guestName);
+    }
+    return global(shards[shard].checkIn(capsuleNumber - offsets[shard], guestName), offsets[shard]);
+  }
+
+  @Override
+  public CheckInResult checkInAny(String guestName, AssignmentPolicy policy){
+    int[] offsets = this.offsets;
+    for (int shard : candidates(policy, freeCounts())){
+      CheckInResult result = shards[shard].checkInAny(guestName, policy);
+      if (result.isSuccess() || result.getError() != BookingError.NO_VACANCY){
+        return global(result, offsets[shard]);
+      }
+    }
+    return CheckInResult.failed(BookingError.NO_VACANCY, 0, guestName);
+  }
+
+  @Override
+  public CheckOutResult checkOut(int capsuleNumber){
+    int[] offsets = this.offsets;
+    int shard = shardOf(offsets, capsuleNumber);
+    if (shard < 0){
+      return CheckOutResult.failed(BookingError.DOES_NOT_EXIST, capsuleNumber);
+    }
+    return global(shards[shard].checkOut(capsuleNumber - offsets[shard]), offsets[shard]);
+  }
+
+  @Override
+  public BatchResult<CheckInResult> checkInAll(Map<Integer, String> bookings, BatchMode mode){
+    int[] offsets = this.offsets;
+    CheckInResult[] results = new CheckInResult[bookings.size()];
+    List<List<Integer>> items = emptyLists();
+    List<Map<Integer, String>> parts = new ArrayList<>(shards.length);
+    for (int shard = 0; shard < shards.length; shard++){
+      parts.add(new LinkedHashMap<>());
+    }
+    boolean invalid = false;
+    int item = 0;
+    for (Map.Entry<Integer, String> booking : bookings.entrySet()){
+      if (booking.getKey() == null || booking.getValue() == null){
+        throw new IllegalArgumentException("capsule numbers and guest names must not be null");
+      }
+      int shard = shardOf(offsets, booking.getKey());
+      if (shard < 0){
+        results[item] = CheckInResult.failed(BookingError.DOES_NOT_EXIST, booking.getKey(), booking.getValue());
+        invalid = true;
+      } else {
+        items.get(shard).add(item);
+        parts.get(shard).put(booking.getKey() - offsets[shard], booking.getValue());
+      }
+      item++;
+    }
+    if (invalid && mode == BatchMode.ALL_OR_NOTHING){
+      return rolledBackCheckIns(results, bookings.keySet().stream().mapToInt(Integer::intValue).toArray(),
+              bookings.values().toArray(new String[0]));
+    }
+    List<BatchResult<CheckInResult>> done = fanOut(nonEmpty(items), shard -> shards[shard].checkInAll(parts.get(shard), mode));
+    return finishCheckIns(offsets, items, done, results, mode);
+  }
+
+  /**
+   * Deals the guests out to the shards that have room, in the policy's order:
+   * LOWEST_NUMBERED fills the shards front to back, ROUND_ROBIN and SPREAD_OUT
+   * hand them out one shard after the other. Each shard then picks capsules by
+   * the same policy.
+   */
+  @Override
+  public BatchResult<CheckInResult> checkInAll(List<String> guestNames, AssignmentPolicy policy, BatchMode mode){
+    int[] offsets = this.offsets;
+    String[] names = guestNames.toArray(new String[0]);
+    for (String guestName : names){
+      if (guestName == null){
+        throw new IllegalArgumentException("guestName must not be null");
+      }
+    }
+    CheckInResult[] results = new CheckInResult[names.length];
+    List<List<Integer>> items = emptyLists();
+    int[] room = freeCounts();
+    int[] candidates = candidates(policy, room);
+    int next = 0;
+    boolean full = false;
+    for (int item = 0; item < names.length; item++){
+      int shard = -1;
+      for (int tried = 0; tried < candidates.length && shard < 0; tried++){
+        int candidate = candidates[next];
+        if (room[candidate] > 0){
+          shard = candidate;
+        } else {
+          next = (next + 1) % candidates.length;
+        }
+      }
+      if (shard < 0){
+        results[item] = CheckInResult.failed(BookingError.NO_VACANCY, 0, names[item]);
+        full = true;
+        continue;
+      }
+      items.get(shard).add(item);
+      room[shard]--;
+      if (policy != AssignmentPolicy.LOWEST_NUMBERED){
+        next = (next + 1) % candidates.length;
+      }
+    }
+    if (full && mode == BatchMode.ALL_OR_NOTHING){
+      return rolledBackCheckIns(results, new int[names.length], names);
+    }
+    List<BatchResult<CheckInResult>> done = fanOut(nonEmpty(items), shard -> {
+      List<String> part = new ArrayList<>(items.get(shard).size());
+      for (int item : items.get(shard)){
+        part.add(names[item]);
+      }
+      return shards[shard].checkInAll(part, policy, mode);
+    });
+    BatchResult<CheckInResult> finished = finishCheckIns(offsets, items, done, results, mode);
+    if (mode == BatchMode.ALL_OR_NOTHING || finished.isSuccess()){
+      return finished;
+    }
+    // another client took the room a shard reported, try the other shards
+    List<CheckInResult> retried = new ArrayList<>(finished.getResults());
+    int booked = finished.getSuccessCount();
+    for (int item = 0; item < retried.size(); item++){
+      if (retried.get(item).getError() == BookingError.NO_VACANCY && shards.length > 1 && !full){
+        CheckInResult result = checkInAny(names[item], policy);
+        retried.set(item, result);
+        if (result.isSuccess()){
+          booked++;
+        } else {
+          full = true;
+        }
+      }
+    }
+    return new BatchResult<>(retried, booked);
+  }
+
+  @Override
+  public BatchResult<CheckOutResult> checkOutAll(int[] capsuleNumbers, BatchMode mode){
+    int[] offsets = this.offsets;
+    CheckOutResult[] results = new CheckOutResult[capsuleNumbers.length];
+    List<List<Integer>> items = emptyLists();
+    boolean invalid = false;
+    for (int item = 0; item < capsuleNumbers.length; item++){
+      int shard = shardOf(offsets, capsuleNumbers[item]);
+      if (shard < 0){
+        results[item] = CheckOutResult.failed(BookingError.DOES_NOT_EXIST, capsuleNumbers[item]);
+        invalid = true;
+      } else {
+        items.get(shard).add(item);
+      }
+    }
+    if (invalid && mode == BatchMode.ALL_OR_NOTHING){
+      for (int item = 0; item < results.length; item++){
+        if (results[item] == null){
+          results[item] = CheckOutResult.failed(BookingError.ROLLED_BACK, capsuleNumbers[item]);
+        }
+      }
+      return new BatchResult<>(Arrays.asList(results), 0);
+    }
+    int[] active = nonEmpty(items);
+    List<BatchResult<CheckOutResult>> done = fanOut(active, shard -> {
+      List<Integer> part = items.get(shard);
+      int[] local = new int[part.size()];
+      for (int i = 0; i < local.length; i++){
+        local[i] = capsuleNumbers[part.get(i)] - offsets[shard];
+      }
+      return shards[shard].checkOutAll(local, mode);
+    });
+
+    boolean rollBack = mode == BatchMode.ALL_OR_NOTHING && done.stream().anyMatch(part -> !part.isSuccess());
+    // per part, the undo that put its guests back into their capsules
+    List<BatchResult<CheckInResult>> undone = new ArrayList<>();
+    if (rollBack){
+      undone = undo(done, i -> {
+        Map<Integer, String> guests = new LinkedHashMap<>();
+        for (CheckOutResult result : done.get(i).getResults()){
+          guests.put(result.getCapsuleNumber(), result.getGuestName());
+        }
+        return shards[active[i]].checkInAll(guests, BatchMode.BEST_EFFORT);
+      });
+    }
+    int checkedOut = 0;
+    for (int i = 0; i < active.length; i++){
+      int shard = active[i];
+      BatchResult<CheckOutResult> part = done.get(i);
+      for (int k = 0; k < part.size(); k++){
+        CheckOutResult result = part.get(k);
+        int item = items.get(shard).get(k);
+        // a guest whose capsule was booked or left dirty before the undo stays checked out
+        if (rollBack && result.isSuccess() && undone.get(i).get(k).isSuccess()){
+          results[item] = CheckOutResult.failed(BookingError.ROLLED_BACK, capsuleNumbers[item]);
+        } else {
+          results[item] = global(result, offsets[shard]);
+          if (result.isSuccess()){
+            checkedOut++;
+          }
+        }
+      }
+    }
+    return new BatchResult<>(Arrays.asList(results), checkedOut);
+  }
+
+  @Override
+  public String guestAt(int capsuleNumber){
+    int[] offsets = this.offsets;
+    int shard = shardOf(offsets, capsuleNumber);
+    return shard < 0 ? null : shards[shard].guestAt(capsuleNumber - offsets[shard]);
+  }
+
+  // every shard the range covers reads its part at the same time
+  @Override
+  public String[] guestsInRange(int start, int end){
+    int[] offsets = this.offsets;
+    String[] guests = new String[end - start];
+    if (start >= end){
+      return guests;
+    }
+    int first = shardOf(offsets, start + 1);
+    int last = shardOf(offsets, end);
+    if (first < 0 || last < 0){
+      throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") outside [0, " + offsets[shards.length] + ")");
+    }
+    int[] covered = new int[last - first + 1];
+    Arrays.setAll(covered, i -> first + i);
+    List<String[]> parts = fanOut(covered, shard -> shards[shard].guestsInRange(
+            Math.max(start, offsets[shard]) - offsets[shard],
+            Math.min(end, offsets[shard + 1]) - offsets[shard]));
+    for (int i = 0; i < covered.length; i++){
+      String[] part = parts.get(i);
+      System.arraycopy(part, 0, guests, Math.max(start, offsets[covered[i]]) - start, part.length);
+    }
+    return guests;
+  }
+
+  @Override
+  public int nextOccupied(int fromCapsuleNumber){
+    int[] offsets = this.offsets;
+    int from = Math.max(1, fromCapsuleNumber);
+    int shard = shardOf(offsets, from);
+    if (shard < 0){
+      return 0;
+    }
+    for (int local = from - offsets[shard]; shard < shards.length; shard++, local = 1){
+      int found = shards[shard].nextOccupied(local);
+      if (found != 0){
+        return found + offsets[shard];
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public int capacity(){
+    return offsets[shards.length];
+  }
+
+  /**
+   * Grows or shrinks the last shard. Shrinking into the capsules of an earlier
+   * shard is refused with INVALID_INPUT.
+   */
+  @Override
+  public synchronized ResizeResult resize(int numberOfCapsules){
+    int[] offsets = this.offsets;
+    int last = shards.length - 1;
+    int capacity = offsets[last + 1];
+    if (numberOfCapsules <= offsets[last]){
+      return ResizeResult.failed(BookingError.INVALID_INPUT, capacity, 0);
+    }
+    ResizeResult result = shards[last].resize(numberOfCapsules - offsets[last]);
+    if (!result.isSuccess()){
+      int capsuleNumber = result.getCapsuleNumber() == 0 ? 0 : result.getCapsuleNumber() + offsets[last];
+      return ResizeResult.failed(result.getError(), capacity, capsuleNumber);
+    }
+    int[] resized = offsets.clone();
+    resized[last + 1] = offsets[last] + result.getCapacity();
+    this.offsets = resized;
+    return ResizeResult.resized(capacity, resized[last + 1]);
+  }
+
+  @Override
+  public int occupiedCount(){
+    int occupied = 0;
+    for (int count : fanOut(allShards(), shard -> shards[shard].occupiedCount())){
+      occupied += count;
+    }
+    return occupied;
+  }
+
+  @Override
+  public boolean exists(int capsuleNumber){
+    return capsuleNumber >= 1 && capsuleNumber <= capacity();
+  }
+
+  /**
+   * Stops the threads that talk to the shards; the shards themselves keep running.
+   */
+  @Override
+  public void close(){
+    executor.shutdown();
+  }
+
+  // the shard owning capsuleNumber, or -1 if no shard does
+  static int shardOf(int[] offsets, int capsuleNumber){
+    int shards = offsets.length - 1;
+    if (capsuleNumber < 1 || capsuleNumber > offsets[shards]){
+      return -1;
+    }
+    // the last shard whose offset is below capsuleNumber
+    int low = 0;
+    int high = shards - 1;
+    while (low < high){
+      int middle = (low + high + 1) >>> 1;
+      if (offsets[middle] < capsuleNumber){
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return low;
+  }
+
+  // free capsules per shard, all shards asked at once
+  private int[] freeCounts(){
+    List<Integer> occupied = fanOut(allShards(), shard -> shards[shard].occupiedCount());
+    int[] free = new int[shards.length];
+    for (int shard = 0; shard < shards.length; shard++){
+      free[shard] = shards[shard].capacity() - occupied.get(shard);
+    }
+    return free;
+  }
+
+  // the shards with room in the order the policy tries them
+  private int[] candidates(AssignmentPolicy policy, int[] free){
+    int n = shards.length;
+    int start = policy == AssignmentPolicy.ROUND_ROBIN ? Math.floorMod(roundRobinShard.getAndIncrement(), n) : 0;
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++){
+      order[i] = (start + i) % n;
+    }
+    if (policy == AssignmentPolicy.SPREAD_OUT){
+      // emptiest shard first
+      Arrays.sort(order, (a, b) -> Integer.compare(free[b], free[a]));
+    }
+    return Arrays.stream(order).filter(shard -> free[shard] > 0).mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Runs task for each of the given shards at once, the first on the calling
+   * thread, and returns the results in the same order.
+   */
+  private <T> List<T> fanOut(int[] selected, IntFunction<T> task){
+    List<T> results = new ArrayList<>(selected.length);
+    if (selected.length == 0){
+      return results;
+    }
+    List<Future<T>> futures = new ArrayList<>(selected.length - 1);
+    for (int i = 1; i < selected.length; i++){
+      int shard = selected[i];
+      futures.add(executor.submit(() -> task.apply(shard)));
+    }
+    results.add(task.apply(selected[0]));
+    for (Future<T> future : futures){
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e){
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted waiting for a shard", e);
+      } catch (ExecutionException e){
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException){
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error){
+          throw (Error) cause;
+        }
+        throw new UpstreamException(cause);
+      }
+    }
+    return results;
+  }
+
+  // merges per-shard batch results back into item order, undoing the rest when an ALL_OR_NOTHING part failed
+  private BatchResult<CheckInResult> finishCheckIns(int[] offsets, List<List<Integer>> items,
+                                                    List<BatchResult<CheckInResult>> done,
+                                                    CheckInResult[] results, BatchMode mode){
+    int[] active = nonEmpty(items);
+    boolean rollBack = mode == BatchMode.ALL_OR_NOTHING && done.stream().anyMatch(part -> !part.isSuccess());
+    List<BatchResult<CheckOutResult>> undone = new ArrayList<>();
+    if (rollBack){
+      undone = undo(done, i -> {
+        int[] capsuleNumbers = done.get(i).getResults().stream().mapToInt(CheckInResult::getCapsuleNumber).toArray();
+        return shards[active[i]].checkOutAll(capsuleNumbers, BatchMode.BEST_EFFORT);
+      });
+    }
+    int booked = 0;
+    for (int i = 0; i < active.length; i++){
+      int shard = active[i];
+      BatchResult<CheckInResult> part = done.get(i);
+      for (int k = 0; k < part.size(); k++){
+        CheckInResult result = part.get(k);
+        int item = items.get(shard).get(k);
+        // a guest another client checked out before the undo stays booked, as far as this batch goes
+        if (rollBack && result.isSuccess() && undone.get(i).get(k).isSuccess()){
+          results[item] = CheckInResult.failed(BookingError.ROLLED_BACK, result.getCapsuleNumber() + offsets[shard],
+                  result.getGuestName());
+        } else {
+          results[item] = global(result, offsets[shard]);
+          if (result.isSuccess()){
+            booked++;
+          }
+        }
+      }
+    }
+    return new BatchResult<>(Arrays.asList(results), booked);
+  }
+
+  /**
+   * Undoes the parts of a failed ALL_OR_NOTHING batch that went through, at
+   * once, and returns the undo of each part in the order of done; null for a
+   * part that failed and had nothing to undo.
+   */
+  private <T, U> List<BatchResult<U>> undo(List<BatchResult<T>> done, IntFunction<BatchResult<U>> task){
+    List<Integer> succeeded = new ArrayList<>();
+    for (int i = 0; i < done.size(); i++){
+      if (done.get(i).isSuccess()){
+        succeeded.add(i);
+      }
+    }
+    List<BatchResult<U>> undone = fanOut(succeeded.stream().mapToInt(Integer::intValue).toArray(), task);
+    List<BatchResult<U>> byPart = new ArrayList<>(done.size());
+    for (int i = 0; i < done.size(); i++){
+      byPart.add(null);
+    }
+    for (int j = 0; j < succeeded.size(); j++){
+      byPart.set(succeeded.get(j), undone.get(j));
+    }
+    return byPart;
+  }
+
+  // an ALL_OR_NOTHING batch refused before any shard saw it, capsule numbers 0 where none was asked for
+  private static BatchResult<CheckInResult> rolledBackCheckIns(CheckInResult[] results, int[] capsuleNumbers,
+                                                               String[] guestNames){
+    for (int item = 0; item < results.length; item++){
+      if (results[item] == null){
+        results[item] = CheckInResult.failed(BookingError.ROLLED_BACK, capsuleNumbers[item], guestNames[item]);
+      }
+    }
+    return new BatchResult<>(Arrays.asList(results), 0);
+  }
+
+  private List<List<Integer>> emptyLists(){
+    List<List<Integer>> lists = new ArrayList<>(shards.length);
+    for (int shard = 0; shard < shards.length; shard++){
+      lists.add(new ArrayList<>());
+    }
+    return lists;
+  }
+
+  // the shards that got at least one item
+  private static int[] nonEmpty(List<List<Integer>> items){
+    int[] shards = new int[items.size()];
+    int count = 0;
+    for (int shard = 0; shard < items.size(); shard++){
+      if (!items.get(shard).isEmpty()){
+        shards[count++] = shard;
+      }
+    }
+    return Arrays.copyOf(shards, count);
+  }
+
+  private int[] allShards(){
+    int[] all = new int[shards.length];
+    Arrays.setAll(all, shard -> shard);
+    return all;
+  }
+
+  // a shard's result in this hotel's capsule numbers
+  private static CheckInResult global(CheckInResult result, int offset){
+    if (result.isSuccess()){
+      return CheckInResult.booked(result.getCapsuleNumber() + offset, result.getGuestName());
+    }
+    int capsuleNumber = result.getCapsuleNumber() == 0 ? 0 : result.getCapsuleNumber() + offset;
+    return CheckInResult.failed(result.getError(), capsuleNumber, result.getGuestName());
+  }
+
+  private static CheckOutResult global(CheckOutResult result, int offset){
+    if (result.isSuccess()){
+      return CheckOutResult.checkedOut(result.getCapsuleNumber() + offset, result.getGuestName());
+    }
+    return CheckOutResult.failed(result.getError(), result.getCapsuleNumber() + offset);
+  }
+}
@@ -0,0 +1,172 @@
+package zih;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a LoadSimulator run achieved: the bookings made and refused, how fast
+ * the hotel took them, and how full it was over virtual time. Replications of
+ * one scenario merge into one report; counts add up and the occupancy curve is
+ * their mean.
+ */
+public final class SimulationReport {
+  private final String name;
+  private final int capacity;
+  private final int replications;
+  private final int sampleMinutes;
+  private final long checkInAttempts;
+  private final long checkIns;
+  private final long checkOuts;
+  private final long[] errors;
+  private final long busyNanos;
+  // occupied capsules at each sample, summed over the replications
+  private final long[] occupancySums;
+  private final int peakOccupancy;
+
+  SimulationReport(String name, int capacity, int replications, int sampleMinutes,
+                   long checkInAttempts, long checkIns, long checkOuts, long[] errors,
+                   long busyNanos, long[] occupancySums, int peakOccupancy){
+    this.name = name;
+    this.capacity = capacity;
+    this.replications = replications;
+    this.sampleMinutes = sampleMinutes;
+    this.checkInAttempts = checkInAttempts;
+    this.checkIns = checkIns;
+    this.checkOuts = checkOuts;
+    this.errors = errors;
+    this.busyNanos = busyNanos;
+    this.occupancySums = occupancySums;
+    this.peakOccupancy = peakOccupancy;
+  }
+
+  /**
+   * Both reports must come from replications of the same scenario.
+   */
+  SimulationReport merge(SimulationReport other){
+    long[] mergedErrors = errors.clone();
+    for (int i = 0; i < mergedErrors.length; i++){
+      mergedErrors[i] += other.errors[i];
+    }
+    long[] mergedSums = occupancySums.clone();
+    for (int i = 0; i < mergedSums.length; i++){
+      mergedSums[i] += other.occupancySums[i];
+    }
+    return new SimulationReport(name, capacity, replications + other.replications, sampleMinutes,
+            checkInAttempts + other.checkInAttempts, checkIns + other.checkIns, checkOuts + other.checkOuts,
+            mergedErrors, busyNanos + other.busyNanos, mergedSums, Math.max(peakOccupancy, other.peakOccupancy));
+  }
+
+  public String getName(){
+    return name;
+  }
+
+  public int getCapacity(){
+    return capacity;
+  }
+
+  public int getReplications(){
+    return replications;
+  }
+
+  /** Check-ins tried, a group counting once per guest. */
+  public long getCheckInAttempts(){
+    return checkInAttempts;
+  }
+
+  public long getCheckIns(){
+    return checkIns;
+  }
+
+  public long getCheckOuts(){
+    return checkOuts;
+  }
+
+  /** Check-ins and check-outs tried. */
+  public long getOperations(){
+    return checkInAttempts + checkOuts + errorCount(BookingError.UNOCCUPIED);
+  }
+
+  public long errorCount(BookingError error){
+    return errors[error.ordinal()];
+  }
+
+  /** Share of check-ins refused with error, 0 to 1. */
+  public double rejectionRate(BookingError error){
+    return checkInAttempts == 0 ? 0 : errorCount(error) / (double) checkInAttempts;
+  }
+
+  /** Share of check-ins refused for any reason, 0 to 1. */
+  public double rejectionRate(){
+    return checkInAttempts == 0 ? 0 : (checkInAttempts - checkIns) / (double) checkInAttempts;
+  }
+
+  /**
+   * Wall-clock time the replications spent running, added up; the virtual
+   * time of a run costs only what its bookings and event queue cost.
+   */
+  public long getBusyNanos(){
+    return busyNanos;
+  }
+
+  /**
+   * Operations per second of one replication driving its hotel, the rate the
+   * hotel kept up with. Replications run side by side, so the whole run does
+   * more per wall-clock second.
+   */
+  public double operationsPerSecond(){
+    return busyNanos == 0 ? 0 : getOperations() / (busyNanos / 1e9);
+  }
+
+  /** Virtual minutes between two points of the occupancy curve. */
+  public int getSampleMinutes(){
+    return sampleMinutes;
+  }
+
+  /**
+   * Mean occupied capsules at 0, sampleMinutes, 2 * sampleMinutes, ... virtual
+   * minutes into the run.
+   */
+  public double[] occupancyCurve(){
+    return Arrays.stream(occupancySums).mapToDouble(sum -> sum / (double) replications).toArray();
+  }
+
+  /** Most capsules occupied at any sample of any replication. */
+  public int getPeakOccupancy(){
+    return peakOccupancy;
+  }
+
+  /**
+   * Prints the counts, refusals by reason and the occupancy curve as the
+   * lowest, mean and highest sample of each virtual day.
+   */
+  public void appendTo(Appendable out) throws IOException {
+    out.append(String.format("%s: %,d x %,d capsules, %,d ms busy%n",
+            name, replications, capacity, TimeUnit.NANOSECONDS.toMillis(busyNanos)));
+    out.append(String.format("  operations: %,d  check-ins: %,d of %,d  check-outs: %,d%n",
+            getOperations(), checkIns, checkInAttempts, checkOuts));
+    out.append(String.format("  refused check-ins: %.1f%%%n", 100 * rejectionRate()));
+    for (BookingError error : BookingError.values()){
+      if (errors[error.ordinal()] > 0){
+        out.append(String.format("    %s: %,d (%.1f%%)%n", error, errors[error.ordinal()], 100 * rejectionRate(error)));
+      }
+    }
+    out.append(String.format("  throughput: %,.0f operations/s per hotel%n", operationsPerSecond()));
+    out.append(String.format("  occupancy (peak %.1f%%):%n", 100.0 * peakOccupancy / capacity));
+    double[] curve = occupancyCurve();
+    int samplesPerDay = (int) Math.max(1, TimeUnit.DAYS.toMinutes(1) / sampleMinutes);
+    for (int from = 0; from < curve.length; from += samplesPerDay){
+      int to = Math.min(curve.length, from + samplesPerDay);
+      double min = Double.MAX_VALUE;
+      double max = 0;
+      double sum = 0;
+      for (int i = from; i < to; i++){
+        min = Math.min(min, curve[i]);
+        max = Math.max(max, curve[i]);
+        sum += curve[i];
+      }
+      out.append(String.format("    day %d: min %5.1f%%  mean %5.1f%%  max %5.1f%%%n", from / samplesPerDay + 1,
+              100 * min / capacity, 100 * sum / (to - from) / capacity, 100 * max / capacity));
+    }
+  }
+}
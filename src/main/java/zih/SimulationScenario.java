@@ -0,0 +1,239 @@
+package zih;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What LoadSimulator plays against a hotel: how guests arrive, how long they
+ * stay and when they leave, in virtual time. Walk-ins arrive as a Poisson
+ * process; groups arrive in bursts and are booked with one checkInAll; every
+ * guest stays a whole number of nights and leaves in the morning check-out
+ * wave around checkoutHour. Setters return the scenario, so a run reads
+ *
+ *   new SimulationScenario("weekend", 10_000).days(2).walkInsPerHour(400).groupsPerDay(30)
+ *
+ * The presets are starting points for capacity planning, the setters tune them.
+ */
+public final class SimulationScenario {
+  private final String name;
+  private final int capacity;
+  private int days = 7;
+  private double walkInsPerHour;
+  private double groupsPerDay;
+  private int groupSize = 12;
+  private double requestedShare = 0.2;
+  private double meanNights = 2;
+  private int checkoutHour = 10;
+  private int checkoutSpreadMinutes = 45;
+  private AssignmentPolicy policy = AssignmentPolicy.LOWEST_NUMBERED;
+  private int sampleMinutes = 60;
+  private int replications = 1;
+  private long seed = 1;
+
+  /**
+   * A scenario with no arrivals yet; walkInsPerHour and groupsPerDay add them.
+   */
+  public SimulationScenario(String name, int capacity){
+    if (capacity < 1){
+      throw new IllegalArgumentException("A hotel needs at least one capsule.");
+    }
+    this.name = name;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Walk-ins that about fill the hotel at two nights a stay, 20% of them asking
+   * for a capsule of their own.
+   */
+  public static SimulationScenario steady(int capacity){
+    return new SimulationScenario("steady", capacity).walkInsPerHour(capacity / 48.0);
+  }
+
+  /**
+   * Half the guests come in tour groups of 12, booked together, the rest walk
+   * in.
+   */
+  public static SimulationScenario groupBursts(int capacity){
+    return new SimulationScenario("group bursts", capacity)
+            .walkInsPerHour(capacity / 96.0).groupsPerDay(capacity / 24.0);
+  }
+
+  /**
+   * More one-night guests than capsules, everyone leaving within minutes of
+   * 10:00, so every morning the hotel empties at once and then turns guests
+   * away again.
+   */
+  public static SimulationScenario checkoutWave(int capacity){
+    return new SimulationScenario("check-out wave", capacity)
+            .walkInsPerHour(capacity / 20.0).meanNights(1).checkoutSpreadMinutes(10);
+  }
+
+  public SimulationScenario days(int days){
+    if (days < 1){
+      throw new IllegalArgumentException("A simulation runs at least one day.");
+    }
+    this.days = days;
+    return this;
+  }
+
+  /** Mean walk-ins per virtual hour, 0 for none. */
+  public SimulationScenario walkInsPerHour(double walkInsPerHour){
+    if (walkInsPerHour < 0){
+      throw new IllegalArgumentException("Arrival rate must not be negative.");
+    }
+    this.walkInsPerHour = walkInsPerHour;
+    return this;
+  }
+
+  /** Mean groups per virtual day, 0 for none. */
+  public SimulationScenario groupsPerDay(double groupsPerDay){
+    if (groupsPerDay < 0){
+      throw new IllegalArgumentException("Arrival rate must not be negative.");
+    }
+    this.groupsPerDay = groupsPerDay;
+    return this;
+  }
+
+  public SimulationScenario groupSize(int groupSize){
+    if (groupSize < 1){
+      throw new IllegalArgumentException("A group has at least one guest.");
+    }
+    this.groupSize = groupSize;
+    return this;
+  }
+
+  /**
+   * Share of walk-ins asking for a capsule number of their own instead of any
+   * free one. They pick from the hotel and a few percent past its end, so they
+   * are refused with OCCUPIED and DOES_NOT_EXIST the way guests at the desk are.
+   */
+  public SimulationScenario requestedShare(double requestedShare){
+    if (requestedShare < 0 || requestedShare > 1){
+      throw new IllegalArgumentException("Share must be between 0 and 1.");
+    }
+    this.requestedShare = requestedShare;
+    return this;
+  }
+
+  /** Mean nights a guest stays, at least 1; stays are geometric. */
+  public SimulationScenario meanNights(double meanNights){
+    if (meanNights < 1){
+      throw new IllegalArgumentException("Guests stay at least one night.");
+    }
+    this.meanNights = meanNights;
+    return this;
+  }
+
+  /** Hour of the day the check-out wave starts, 0-23. */
+  public SimulationScenario checkoutHour(int checkoutHour){
+    if (checkoutHour < 0 || checkoutHour > 23){
+      throw new IllegalArgumentException("Hour must be between 0 and 23.");
+    }
+    this.checkoutHour = checkoutHour;
+    return this;
+  }
+
+  /** Mean minutes past checkoutHour a guest leaves; smaller makes a steeper wave. */
+  public SimulationScenario checkoutSpreadMinutes(int checkoutSpreadMinutes){
+    if (checkoutSpreadMinutes < 0){
+      throw new IllegalArgumentException("Spread must not be negative.");
+    }
+    this.checkoutSpreadMinutes = checkoutSpreadMinutes;
+    return this;
+  }
+
+  /** How walk-ins and groups without a capsule number are placed. */
+  public SimulationScenario policy(AssignmentPolicy policy){
+    if (policy == null){
+      throw new IllegalArgumentException("policy must not be null");
+    }
+    this.policy = policy;
+    return this;
+  }
+
+  /** Virtual minutes between two points of the occupancy curve. */
+  public SimulationScenario sampleMinutes(int sampleMinutes){
+    if (sampleMinutes < 1){
+      throw new IllegalArgumentException("Sample interval must be at least one minute.");
+    }
+    this.sampleMinutes = sampleMinutes;
+    return this;
+  }
+
+  /**
+   * Independent runs, each with its own hotel and seed + i, forked side by side
+   * and merged into one report.
+   */
+  public SimulationScenario replications(int replications){
+    if (replications < 1){
+      throw new IllegalArgumentException("A scenario runs at least once.");
+    }
+    this.replications = replications;
+    return this;
+  }
+
+  public SimulationScenario seed(long seed){
+    this.seed = seed;
+    return this;
+  }
+
+  public String getName(){
+    return name;
+  }
+
+  public int getCapacity(){
+    return capacity;
+  }
+
+  public int getDays(){
+    return days;
+  }
+
+  public double getWalkInsPerHour(){
+    return walkInsPerHour;
+  }
+
+  public double getGroupsPerDay(){
+    return groupsPerDay;
+  }
+
+  public int getGroupSize(){
+    return groupSize;
+  }
+
+  public double getRequestedShare(){
+    return requestedShare;
+  }
+
+  public double getMeanNights(){
+    return meanNights;
+  }
+
+  public int getCheckoutHour(){
+    return checkoutHour;
+  }
+
+  public int getCheckoutSpreadMinutes(){
+    return checkoutSpreadMinutes;
+  }
+
+  public AssignmentPolicy getPolicy(){
+    return policy;
+  }
+
+  public int getSampleMinutes(){
+    return sampleMinutes;
+  }
+
+  public int getReplications(){
+    return replications;
+  }
+
+  public long getSeed(){
+    return seed;
+  }
+
+  // virtual length of the run
+  long durationSeconds(){
+    return TimeUnit.DAYS.toSeconds(days);
+  }
+}
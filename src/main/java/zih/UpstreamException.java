@@ -0,0 +1,16 @@
+package zih;
+
+/**
+ * Another hotel this one relies on, a RemoteHotelService or a shard of a
+ * ShardedHotelService, refused or failed a request in a way the caller had no
+ * part in. HotelHttpServer answers it with 502 (BAD_GATEWAY).
+ */
+public class UpstreamException extends RuntimeException {
+  public UpstreamException(String message){
+    super(message);
+  }
+
+  public UpstreamException(Throwable cause){
+    super(cause);
+  }
+}
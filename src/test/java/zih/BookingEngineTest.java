@@ -0,0 +1,461 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingEngineTest {
+  static final int THREADS = 8;
+
+  @Test
+  public void shouldCheckInAndOutByNumberTest(){
+    BookingEngine engine = new BookingEngine(20);
+
+    assertTrue(engine.checkIn(1, "John").isSuccess());
+    assertEquals(BookingError.OCCUPIED, engine.checkIn(1, "Mary").getError());
+    assertEquals(BookingError.DOES_NOT_EXIST, engine.checkIn(21, "Mary").getError());
+    assertEquals("John", engine.guestAt(1));
+    assertEquals(1, engine.occupiedCount());
+
+    CheckOutResult result = engine.checkOut(1);
+    assertTrue(result.isSuccess());
+    assertEquals("John", result.getGuestName());
+    assertEquals(BookingError.UNOCCUPIED, engine.checkOut(1).getError());
+    assertEquals(BookingError.DOES_NOT_EXIST, engine.checkOut(0).getError());
+    assertTrue(engine.isEmpty());
+  }
+
+  // every thread tries to book every capsule, each capsule must end up with exactly one winner
+  @Test
+  public void shouldNeverDoubleBookUnderContentionTest() throws Exception {
+    int numberOfCapsules = 10_000;
+    BookingEngine engine = new BookingEngine(numberOfCapsules);
+    AtomicIntegerArray winners = new AtomicIntegerArray(numberOfCapsules);
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++){
+      String guest = "Guest-" + t;
+      futures.add(pool.submit(() -> {
+        start.await();
+        for (int n = 1; n <= numberOfCapsules; n++){
+          if (engine.checkIn(n, guest).isSuccess()){
+            winners.incrementAndGet(n - 1);
+          }
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures){
+      future.get(30, TimeUnit.SECONDS);
+    }
+    pool.shutdown();
+
+    for (int i = 0; i < numberOfCapsules; i++){
+      assertEquals(1, winners.get(i), "capsule #" + (i + 1));
+      assertNotNull(engine.guestAt(i + 1));
+    }
+    assertEquals(numberOfCapsules, engine.occupiedCount());
+    assertEquals(-1, engine.occupancy.firstFree());
+  }
+
+  // threads churn random check-ins and check-outs over a small hotel
+  // each thread counts its own successes; the totals must match what is left in the hotel
+  @Test
+  public void shouldNotLoseBookingsWhenChurningTest() throws Exception {
+    int numberOfCapsules = 64;
+    int operations = 200_000;
+    BookingEngine engine = new BookingEngine(numberOfCapsules);
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+    List<Future<long[]>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++){
+      String guest = "Guest-" + t;
+      futures.add(pool.submit(() -> {
+        start.await();
+        long checkedIn = 0;
+        long checkedOut = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < operations; i++){
+          int capsuleNumber = random.nextInt(numberOfCapsules) + 1;
+          if (random.nextBoolean()){
+            if (engine.checkIn(capsuleNumber, guest).isSuccess()){
+              checkedIn++;
+            }
+          } else if (engine.checkOut(capsuleNumber).isSuccess()){
+            checkedOut++;
+          }
+        }
+        return new long[]{checkedIn, checkedOut};
+      }));
+    }
+    start.countDown();
+    long checkedIn = 0;
+    long checkedOut = 0;
+    for (Future<long[]> future : futures){
+      long[] counts = future.get(60, TimeUnit.SECONDS);
+      checkedIn += counts[0];
+      checkedOut += counts[1];
+    }
+    pool.shutdown();
+
+    int stillBooked = 0;
+    for (int n = 1; n <= numberOfCapsules; n++){
+      boolean booked = engine.guestAt(n) != null;
+      assertEquals(booked, engine.occupancy.isOccupied(n - 1), "capsule #" + n);
+      if (booked){
+        stillBooked++;
+      }
+    }
+    assertEquals(checkedIn - checkedOut, stillBooked);
+    assertEquals(stillBooked, engine.occupiedCount());
+  }
+
+  @Test
+  public void shouldAssignCapsuleByPolicyTest(){
+    BookingEngine engine = new BookingEngine(8);
+    engine.checkIn(1, "John");
+
+    assertEquals(2, engine.checkInAny("Mary", AssignmentPolicy.LOWEST_NUMBERED).getCapsuleNumber());
+    engine.checkOut(2);
+
+    // round robin moves on from the capsule it handed out last, even when that one is free again
+    assertEquals(2, engine.checkInAny("Anna", AssignmentPolicy.ROUND_ROBIN).getCapsuleNumber());
+    engine.checkOut(2);
+    assertEquals(3, engine.checkInAny("Paul", AssignmentPolicy.ROUND_ROBIN).getCapsuleNumber());
+
+    // spread out starts at the front, then the middle, then the quarters
+    BookingEngine spread = new BookingEngine(8);
+    assertEquals(1, spread.checkInAny("A", AssignmentPolicy.SPREAD_OUT).getCapsuleNumber());
+    assertEquals(5, spread.checkInAny("B", AssignmentPolicy.SPREAD_OUT).getCapsuleNumber());
+    assertEquals(3, spread.checkInAny("C", AssignmentPolicy.SPREAD_OUT).getCapsuleNumber());
+    assertEquals(7, spread.checkInAny("D", AssignmentPolicy.SPREAD_OUT).getCapsuleNumber());
+  }
+
+  @Test
+  public void shouldReportNoVacancyWhenFullTest(){
+    BookingEngine engine = new BookingEngine(3);
+    for (AssignmentPolicy policy : AssignmentPolicy.values()){
+      assertTrue(engine.checkInAny("Guest", policy).isSuccess());
+    }
+    CheckInResult result = engine.checkInAny("Late", AssignmentPolicy.LOWEST_NUMBERED);
+    assertEquals(BookingError.NO_VACANCY, result.getError());
+    assertEquals(3, engine.occupiedCount());
+  }
+
+  // threads auto-assign until the hotel is full; every capsule must go to exactly one of them
+  @Test
+  public void shouldNeverAssignSameCapsuleTwiceTest() throws Exception {
+    int numberOfCapsules = 50_000;
+    for (AssignmentPolicy policy : AssignmentPolicy.values()){
+      BookingEngine engine = new BookingEngine(numberOfCapsules);
+      CountDownLatch start = new CountDownLatch(1);
+      ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+      List<Future<List<Integer>>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++){
+        String guest = "Guest-" + t;
+        futures.add(pool.submit(() -> {
+          start.await();
+          List<Integer> assigned = new ArrayList<>();
+          CheckInResult result;
+          while ((result = engine.checkInAny(guest, policy)).isSuccess()){
+            assigned.add(result.getCapsuleNumber());
+          }
+          assertEquals(BookingError.NO_VACANCY, result.getError());
+          return assigned;
+        }));
+      }
+      start.countDown();
+      Set<Integer> capsules = new HashSet<>();
+      for (Future<List<Integer>> future : futures){
+        for (int capsuleNumber : future.get(60, TimeUnit.SECONDS)){
+          assertTrue(capsules.add(capsuleNumber), policy + " assigned capsule #" + capsuleNumber + " twice");
+        }
+      }
+      pool.shutdown();
+      assertEquals(numberOfCapsules, capsules.size(), policy.toString());
+      assertTrue(engine.occupancy.isFull());
+    }
+  }
+
+  @Test
+  public void shouldRollBackWholeBatchWhenOneItemFailsTest(){
+    BookingEngine engine = new BookingEngine(10);
+    engine.checkIn(3, "John");
+
+    Map<Integer, String> group = new LinkedHashMap<>();
+    group.put(1, "Anna");
+    group.put(3, "Paul");
+    group.put(5, "Mary");
+    BatchResult<CheckInResult> results = engine.checkInAll(group, BatchMode.ALL_OR_NOTHING);
+    assertFalse(results.isSuccess());
+    assertEquals(0, results.getSuccessCount());
+    assertEquals(BookingError.ROLLED_BACK, results.get(0).getError());
+    assertEquals(BookingError.OCCUPIED, results.get(1).getError());
+    assertEquals(BookingError.ROLLED_BACK, results.get(2).getError());
+    assertNull(engine.guestAt(1));
+    assertNull(engine.guestAt(5));
+    assertEquals(1, engine.occupiedCount());
+
+    results = engine.checkInAll(group, BatchMode.BEST_EFFORT);
+    assertEquals(2, results.getSuccessCount());
+    assertEquals("Anna", engine.guestAt(1));
+    assertEquals("John", engine.guestAt(3));
+    assertEquals("Mary", engine.guestAt(5));
+
+    // a capsule outside the hotel fails the batch before anything is claimed
+    group.clear();
+    group.put(2, "Zoë");
+    group.put(11, "Liam");
+    results = engine.checkInAll(group, BatchMode.ALL_OR_NOTHING);
+    assertEquals(BookingError.ROLLED_BACK, results.get(0).getError());
+    assertEquals(BookingError.DOES_NOT_EXIST, results.get(1).getError());
+    assertNull(engine.guestAt(2));
+  }
+
+  @Test
+  public void shouldAssignWholeGroupOrNobodyTest(){
+    BookingEngine engine = new BookingEngine(4);
+    engine.checkIn(2, "John");
+
+    BatchResult<CheckInResult> results = engine.checkInAll(List.of("A", "B", "C", "D"),
+            AssignmentPolicy.LOWEST_NUMBERED, BatchMode.ALL_OR_NOTHING);
+    assertEquals(BookingError.ROLLED_BACK, results.get(0).getError());
+    assertEquals(BookingError.NO_VACANCY, results.get(3).getError());
+    assertEquals(1, engine.occupiedCount());
+
+    results = engine.checkInAll(List.of("A", "B", "C", "D"),
+            AssignmentPolicy.LOWEST_NUMBERED, BatchMode.BEST_EFFORT);
+    assertEquals(3, results.getSuccessCount());
+    assertEquals(1, results.get(0).getCapsuleNumber());
+    assertEquals(3, results.get(1).getCapsuleNumber());
+    assertEquals(4, results.get(2).getCapsuleNumber());
+    assertEquals(BookingError.NO_VACANCY, results.get(3).getError());
+    assertTrue(engine.occupancy.isFull());
+  }
+
+  @Test
+  public void shouldPutGuestsBackWhenCheckOutBatchFailsTest(){
+    BookingEngine engine = new BookingEngine(10);
+    engine.checkIn(1, "John");
+    engine.checkIn(2, "Mary");
+
+    BatchResult<CheckOutResult> results = engine.checkOutAll(new int[]{1, 2, 3}, BatchMode.ALL_OR_NOTHING);
+    assertEquals(BookingError.ROLLED_BACK, results.get(0).getError());
+    assertEquals(BookingError.UNOCCUPIED, results.get(2).getError());
+    assertEquals("John", engine.guestAt(1));
+    assertEquals("Mary", engine.guestAt(2));
+    assertEquals(2, engine.occupiedCount());
+
+    // the same capsule twice in one batch is only checked out once
+    results = engine.checkOutAll(new int[]{1, 2, 1}, BatchMode.BEST_EFFORT);
+    assertEquals(2, results.getSuccessCount());
+    assertEquals("Mary", results.get(1).getGuestName());
+    assertEquals(BookingError.UNOCCUPIED, results.get(2).getError());
+    assertTrue(engine.isEmpty());
+  }
+
+  // all-or-nothing groups race single check-ins for the same capsules: a group either
+  // holds all its capsules or none of them
+  @Test
+  public void shouldKeepBatchesAtomicUnderContentionTest() throws Exception {
+    int numberOfCapsules = 1_000;
+    int groupSize = 10;
+    BookingEngine engine = new BookingEngine(numberOfCapsules);
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++){
+      String guest = "Guest-" + t;
+      boolean batches = t % 2 == 0;
+      futures.add(pool.submit(() -> {
+        start.await();
+        for (int first = 1; first <= numberOfCapsules; first += groupSize){
+          if (batches){
+            Map<Integer, String> group = new LinkedHashMap<>();
+            for (int n = first; n < first + groupSize; n++){
+              group.put(n, guest);
+            }
+            engine.checkInAll(group, BatchMode.ALL_OR_NOTHING);
+          } else {
+            engine.checkIn(first + ThreadLocalRandom.current().nextInt(groupSize), guest);
+          }
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures){
+      future.get(60, TimeUnit.SECONDS);
+    }
+    pool.shutdown();
+
+    for (int first = 1; first <= numberOfCapsules; first += groupSize){
+      Set<String> guests = new HashSet<>();
+      for (int n = first; n < first + groupSize; n++){
+        guests.add(engine.guestAt(n));
+        assertEquals(engine.guestAt(n) != null, engine.occupancy.isOccupied(n - 1));
+      }
+      // one batch guest in every capsule, or only single bookings
+      if (guests.size() == 1 && !guests.contains(null)){
+        String guest = guests.iterator().next();
+        assertTrue(Integer.parseInt(guest.substring(6)) % 2 == 0, "group " + first);
+      } else {
+        for (String guest : guests){
+          assertTrue(guest == null || Integer.parseInt(guest.substring(6)) % 2 == 1, "group " + first + " " + guests);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void shouldGrowAndShrinkKeepingGuestsTest(){
+    BookingEngine engine = new BookingEngine(20);
+    engine.checkIn(1, "John");
+    engine.checkIn(20, "Mary");
+
+    ResizeResult grown = engine.resize(100_000);
+    assertTrue(grown.isSuccess());
+    assertEquals(20, grown.getPreviousCapacity());
+    assertEquals(100_000, engine.capacity());
+    assertEquals("Mary", engine.guestAt(20));
+    assertTrue(engine.checkIn(99_999, "Anna").isSuccess());
+    assertEquals(2, engine.checkInAny("Zoë", AssignmentPolicy.LOWEST_NUMBERED).getCapsuleNumber());
+
+    ResizeResult refused = engine.resize(30);
+    assertEquals(BookingError.OCCUPIED, refused.getError());
+    assertEquals(99_999, refused.getCapsuleNumber());
+    assertEquals(100_000, engine.capacity());
+    // a refused shrink leaves every dropped capsule bookable again
+    assertTrue(engine.checkIn(99_998, "Carl").isSuccess());
+
+    engine.checkOut(99_999);
+    engine.checkOut(99_998);
+    assertTrue(engine.resize(30).isSuccess());
+    assertEquals(30, engine.capacity());
+    assertEquals(3, engine.occupiedCount());
+    assertEquals(BookingError.DOES_NOT_EXIST, engine.checkIn(31, "Anna").getError());
+    assertNull(engine.guestAt(99_999));
+
+    // capsules that come back after a shrink are free
+    assertTrue(engine.resize(40).isSuccess());
+    assertEquals(22, engine.occupancy.nextFree(21) + 1);
+    assertTrue(engine.checkIn(40, "Anna").isSuccess());
+    assertThrows(UnsupportedOperationException.class, () -> new BookingEngine(CapsuleStorage.array(10)).resize(20));
+  }
+
+  // bookings keep running while the hotel grows and shrinks underneath them
+  @Test
+  public void shouldKeepBookingsConsistentDuringResizesTest() throws Exception {
+    BookingEngine engine = new BookingEngine(1_000);
+    int perThread = 100;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    List<Future<List<Integer>>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++){
+      String guest = "Guest-" + t;
+      futures.add(pool.submit(() -> {
+        start.await();
+        List<Integer> held = new ArrayList<>();
+        for (int round = 0; round < 20_000; round++){
+          if (held.size() < perThread){
+            CheckInResult result = engine.checkInAny(guest, AssignmentPolicy.LOWEST_NUMBERED);
+            if (result.isSuccess()){
+              held.add(result.getCapsuleNumber());
+            }
+          } else {
+            int capsuleNumber = held.remove(ThreadLocalRandom.current().nextInt(held.size()));
+            assertEquals(guest, engine.checkOut(capsuleNumber).getGuestName());
+          }
+        }
+        return held;
+      }));
+    }
+    start.countDown();
+    int resizes = 0;
+    while (!futures.stream().allMatch(Future::isDone)){
+      engine.resize(resizes % 2 == 0 ? 70_000 : 1_000);
+      resizes++;
+    }
+    Set<Integer> capsules = new HashSet<>();
+    for (Future<List<Integer>> future : futures){
+      for (int capsuleNumber : future.get(60, TimeUnit.SECONDS)){
+        assertTrue(capsules.add(capsuleNumber), "capsule #" + capsuleNumber + " held twice");
+        assertTrue(engine.exists(capsuleNumber));
+        assertNotNull(engine.guestAt(capsuleNumber));
+      }
+    }
+    pool.shutdown();
+    assertEquals(capsules.size(), engine.occupiedCount());
+    assertEquals(-1, engine.occupancy.nextOccupied(engine.capacity()));
+    for (int n = 1; n <= engine.capacity(); n++){
+      assertEquals(capsules.contains(n), engine.occupancy.isOccupied(n - 1), "capsule #" + n);
+    }
+  }
+
+  // with turnover a checked-out capsule is neither occupied nor free until it is cleaned
+  @Test
+  public void shouldHoldCheckedOutCapsulesForCleaningTest(){
+    BookingEngine engine = new BookingEngine(3);
+    engine.enableTurnover();
+    engine.checkIn(1, "John");
+    engine.checkIn(2, "Mary");
+    assertEquals("John", engine.checkOut(1).getGuestName());
+
+    assertTrue(engine.isDirty(1));
+    assertNull(engine.guestAt(1));
+    assertEquals(1, engine.occupiedCount());
+    assertEquals(2, engine.nextOccupied(1));
+    assertEquals(BookingError.CLEANING, engine.checkIn(1, "Anna").getError());
+    assertEquals(BookingError.UNOCCUPIED, engine.checkOut(1).getError());
+    // automatic check-ins only see clean capsules
+    assertEquals(3, engine.checkInAny("Anna", AssignmentPolicy.LOWEST_NUMBERED).getCapsuleNumber());
+    assertEquals(BookingError.NO_VACANCY, engine.checkInAny("Zoë", AssignmentPolicy.LOWEST_NUMBERED).getError());
+    assertEquals(BookingError.OCCUPIED, engine.resize(1).getError());
+
+    engine.checkOutAll(new int[]{2, 3}, BatchMode.ALL_OR_NOTHING);
+    assertTrue(engine.isEmpty());
+    assertEquals(3, engine.dirtyCount());
+    assertTrue(engine.finishCleaning(1));
+    assertFalse(engine.finishCleaning(1));
+    assertEquals(0, engine.occupiedCount());
+    assertEquals(1, engine.checkInAny("Zoë", AssignmentPolicy.LOWEST_NUMBERED).getCapsuleNumber());
+    assertEquals(2, engine.dirtyCount());
+  }
+
+  @Test
+  public void shouldResizeWithTurnoverTest(){
+    BookingEngine engine = new BookingEngine(10);
+    engine.enableTurnover();
+    engine.checkIn(3, "John");
+    engine.checkOut(3);
+    assertEquals(BookingError.OCCUPIED, engine.resize(2).getError());
+    assertTrue(engine.resize(3).isSuccess());
+    assertTrue(engine.isDirty(3));
+    assertEquals(1, engine.dirtyCount());
+
+    assertTrue(engine.resize(12).isSuccess());
+    assertFalse(engine.isDirty(12));
+    assertEquals(12, engine.checkIn(12, "Mary").getCapsuleNumber());
+    assertTrue(engine.finishCleaning(3));
+    assertEquals(0, engine.dirtyCount());
+    assertEquals(BookingError.OCCUPIED, engine.resize(3).getError());
+  }
+}
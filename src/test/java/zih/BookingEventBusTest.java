@@ -0,0 +1,209 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingEventBusTest {
+
+  // copies the events a subscription delivers, they are reused by the ring
+  private static final class Recorder implements BookingEventHandler {
+    final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    final List<Long> sequences = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger batches = new AtomicInteger();
+
+    @Override
+    public void onEvent(BookingEvent event, long sequence, boolean endOfBatch){
+      events.add(event.toString());
+      sequences.add(sequence);
+      if (endOfBatch){
+        batches.incrementAndGet();
+      }
+    }
+  }
+
+  @Test
+  public void shouldPublishBookingsInOrderTest() throws Exception {
+    BookingEngine engine = new BookingEngine(10);
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 16)){
+      Recorder recorder = new Recorder();
+      BookingEventBus.Subscription subscription = bus.subscribe(recorder);
+      engine.checkIn(1, "John");
+      engine.checkIn(2, "Mary");
+      engine.checkOut(1);
+      engine.checkIn(1, "Mary");
+      // refused bookings publish nothing
+      engine.checkIn(2, "Anna");
+
+      assertEquals(4, bus.lastSequence());
+      assertTrue(subscription.awaitSequence(4, 10, TimeUnit.SECONDS));
+      assertEquals(List.of("CHECK_IN John #1", "CHECK_IN Mary #2", "CHECK_OUT John #1", "CHECK_IN Mary #1"),
+              recorder.events);
+      assertEquals(List.of(1L, 2L, 3L, 4L), recorder.sequences);
+    }
+  }
+
+  @Test
+  public void shouldDeliverEverythingAvailableAsOneBatchTest() throws Exception {
+    BookingEngine engine = new BookingEngine(100);
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 128)){
+      List<String> group = new ArrayList<>();
+      for (int i = 0; i < 50; i++){
+        group.add("Guest-" + i);
+      }
+      engine.checkInAll(group, AssignmentPolicy.LOWEST_NUMBERED, BatchMode.ALL_OR_NOTHING);
+      // all 50 are already published when the subscription starts
+      Recorder recorder = new Recorder();
+      BookingEventBus.Subscription subscription = bus.subscribe(1, recorder);
+      assertTrue(subscription.awaitSequence(50, 10, TimeUnit.SECONDS));
+      assertEquals(50, recorder.events.size());
+      assertEquals(1, recorder.batches.get());
+    }
+  }
+
+  @Test
+  public void shouldReplayFromSequenceStillInRingTest() throws Exception {
+    BookingEngine engine = new BookingEngine(100);
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 8)){
+      for (int n = 1; n <= 20; n++){
+        engine.checkIn(n, "Guest-" + n);
+      }
+      assertEquals(13, bus.oldestSequence());
+      assertThrows(IllegalArgumentException.class, () -> bus.subscribe(12, new Recorder()));
+      assertThrows(IllegalArgumentException.class, () -> bus.subscribe(0, new Recorder()));
+
+      Recorder recorder = new Recorder();
+      BookingEventBus.Subscription subscription = bus.subscribe(15, recorder);
+      engine.checkOut(3);
+      assertTrue(subscription.awaitSequence(21, 10, TimeUnit.SECONDS));
+      assertEquals("CHECK_IN Guest-15 #15", recorder.events.get(0));
+      assertEquals("CHECK_OUT Guest-3 #3", recorder.events.get(6));
+      assertEquals(7, recorder.events.size());
+    }
+  }
+
+  // a tiny ring and a slow subscriber: bookings wait for it, no event is lost or reordered
+  @Test
+  public void shouldHoldBookingsForSlowSubscriberTest() throws Exception {
+    int threads = 4;
+    int perThread = 500;
+    BookingEngine engine = new BookingEngine(threads);
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 8)){
+      Map<Integer, List<BookingEvent.Type>> byCapsule = new HashMap<>();
+      BookingEventBus.Subscription subscription = bus.subscribe((event, sequence, endOfBatch) -> {
+        byCapsule.computeIfAbsent(event.getCapsuleNumber(), capsule -> new ArrayList<>()).add(event.getType());
+        if (sequence % 64 == 0){
+          Thread.yield();
+        }
+      });
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 1; t <= threads; t++){
+        int capsuleNumber = t;
+        futures.add(pool.submit(() -> {
+          for (int i = 0; i < perThread; i++){
+            assertTrue(engine.checkIn(capsuleNumber, "Guest-" + i).isSuccess());
+            assertTrue(engine.checkOut(capsuleNumber).isSuccess());
+          }
+        }));
+      }
+      for (Future<?> future : futures){
+        future.get(60, TimeUnit.SECONDS);
+      }
+      pool.shutdown();
+
+      long last = threads * perThread * 2L;
+      assertEquals(last, bus.lastSequence());
+      assertTrue(subscription.awaitSequence(last, 30, TimeUnit.SECONDS));
+      for (int capsuleNumber = 1; capsuleNumber <= threads; capsuleNumber++){
+        List<BookingEvent.Type> types = byCapsule.get(capsuleNumber);
+        assertEquals(perThread * 2, types.size());
+        for (int i = 0; i < types.size(); i++){
+          assertEquals(i % 2 == 0 ? BookingEvent.Type.CHECK_IN : BookingEvent.Type.CHECK_OUT, types.get(i));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void shouldStopWaitingForClosedSubscriptionTest() throws Exception {
+    BookingEngine engine = new BookingEngine(10);
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 4)){
+      BookingEventBus.Subscription stuck = bus.subscribe((event, sequence, endOfBatch) -> {
+        throw new IllegalStateException("not interested");
+      });
+      stuck.close();
+      for (int i = 0; i < 20; i++){
+        engine.checkIn(1, "John");
+        engine.checkOut(1);
+      }
+      assertEquals(40, bus.lastSequence());
+    }
+  }
+
+  // a handler booking on a full ring would wait for itself while holding the capsule's stripe
+  @Test
+  public void shouldRefuseBookingFromHandlerTest() throws Exception {
+    BookingEngine engine = new BookingEngine(100);
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 4)){
+      List<RuntimeException> errors = Collections.synchronizedList(new ArrayList<>());
+      List<Long> failedAt = Collections.synchronizedList(new ArrayList<>());
+      bus.setErrorHandler((error, event, sequence) -> {
+        errors.add(error);
+        failedAt.add(sequence);
+      });
+      BookingEventBus.Subscription subscription = bus.subscribe((event, sequence, endOfBatch) -> {
+        if (event.getType() == BookingEvent.Type.CHECK_IN && event.getCapsuleNumber() <= 20){
+          engine.checkIn(event.getCapsuleNumber() + 50, "Companion");
+        }
+      });
+      for (int n = 1; n <= 20; n++){
+        engine.checkIn(n, "Guest-" + n);
+      }
+      assertTrue(subscription.awaitSequence(20, 10, TimeUnit.SECONDS));
+      assertEquals(20, bus.lastSequence());
+      assertEquals(20, errors.size());
+      for (int i = 0; i < 20; i++){
+        assertTrue(errors.get(i) instanceof IllegalStateException, errors.get(i).toString());
+        assertEquals(i + 1, failedAt.get(i));
+      }
+      // bookings from the test thread still publish
+      engine.checkOut(1);
+      assertEquals(21, bus.lastSequence());
+    }
+  }
+
+  @Test
+  public void shouldReportHandlerFailuresAndKeepDeliveringTest() throws Exception {
+    BookingEngine engine = new BookingEngine(10);
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 16)){
+      List<String> failures = Collections.synchronizedList(new ArrayList<>());
+      bus.setErrorHandler((error, event, sequence) -> failures.add(sequence + " " + event + " " + error.getMessage()));
+      Recorder recorder = new Recorder();
+      BookingEventBus.Subscription subscription = bus.subscribe((event, sequence, endOfBatch) -> {
+        if (event.getCapsuleNumber() == 2){
+          throw new IllegalArgumentException("no capsule 2 in billing");
+        }
+        recorder.onEvent(event, sequence, endOfBatch);
+      });
+      engine.checkIn(1, "John");
+      engine.checkIn(2, "Mary");
+      engine.checkIn(3, "Anna");
+      assertTrue(subscription.awaitSequence(3, 10, TimeUnit.SECONDS));
+      assertEquals(List.of("2 CHECK_IN Mary #2 no capsule 2 in billing"), failures);
+      assertEquals(List.of("CHECK_IN John #1", "CHECK_IN Anna #3"), recorder.events);
+      assertThrows(IllegalArgumentException.class, () -> bus.setErrorHandler(null));
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingReplayTest {
+
+  private static BookingReplay replay(HotelService service, String trace, StringBuilder out) throws Exception {
+    BookingReplay replay = new BookingReplay(service, 3);
+    replay.replay(new BufferedReader(new StringReader(trace)), out);
+    return replay;
+  }
+
+  @Test
+  public void shouldReplayOperationsTest() throws Exception {
+    BookingEngine engine = new BookingEngine(10);
+    StringBuilder out = new StringBuilder();
+    BookingReplay replay = replay(engine, "CHECKIN John 1\n"
+            + "checkin Mary Ann Smith 2\n"
+            + "# a comment\n"
+            + "\n"
+            + "CHECKOUT 1\n"
+            + "VIEW 2\n", out);
+
+    assertNull(engine.guestAt(1));
+    assertEquals("Mary Ann Smith", engine.guestAt(2));
+    assertEquals(6, replay.lineCount());
+    assertEquals(4, replay.operationCount());
+    assertEquals("Capsule: Guest\n1: [unoccupied]\n2: Mary Ann Smith\n3: [unoccupied]\n", out.toString());
+  }
+
+  @Test
+  public void shouldReportRefusedLinesAndGoOnTest() throws Exception {
+    BookingEngine engine = new BookingEngine(10);
+    StringBuilder out = new StringBuilder();
+    BookingReplay replay = replay(engine, "CHECKIN John 1\n"
+            + "CHECKIN Mary 1\n"
+            + "CHECKOUT 5\n"
+            + "CHECKIN Anna\n"
+            + "DANCE 3\n"
+            + "VIEW 11\n"
+            + "CHECKIN Anna 2\n", out);
+
+    assertEquals("Anna", engine.guestAt(2));
+    assertEquals(2, replay.operationCount());
+    assertEquals(1, replay.errorCount(BookingError.OCCUPIED));
+    assertEquals(1, replay.errorCount(BookingError.UNOCCUPIED));
+    assertEquals(2, replay.errorCount(BookingError.INVALID_INPUT));
+    assertEquals(1, replay.errorCount(BookingError.DOES_NOT_EXIST));
+    assertEquals("line 2: CHECKIN Mary 1: OCCUPIED\n"
+            + "line 3: CHECKOUT 5: UNOCCUPIED\n"
+            + "line 4: CHECKIN Anna: INVALID_INPUT\n"
+            + "line 5: DANCE 3: INVALID_INPUT\n"
+            + "line 6: VIEW 11: DOES_NOT_EXIST\n", out.toString());
+
+    StringBuilder summary = new StringBuilder();
+    replay.appendSummary(summary);
+    assertTrue(summary.toString().startsWith("Replayed 7 operations from 7 lines"), summary.toString());
+    assertTrue(summary.toString().contains("refused: 5"), summary.toString());
+  }
+}
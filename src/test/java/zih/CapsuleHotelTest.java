@@ -54,8 +54,8 @@ class CapsuleHotelTest {
     scanner = new Scanner(System.in);
 
     boolean result = capsuleHotel.handleCheckIn(scanner, "John");
-    assertNotNull(capsuleHotel.capsules[0]);
-    assertEquals("John", capsuleHotel.capsules[0]);
+    assertNotNull(capsuleHotel.service.guestAt(1));
+    assertEquals("John", capsuleHotel.service.guestAt(1));
     assertTrue(result);
 
     String capturedOutput = outputStream.toString().trim();
@@ -64,6 +64,103 @@ class CapsuleHotelTest {
     assertTrue(capturedOutput.contains(expectedOutput));
   }
 
+  // a blank capsule number books the next free capsule
+  @Test
+  public void shouldCheckInGuestToNextFreeCapsuleTest(){
+    capsuleHotel.service.checkIn(1, "John");
+    String input = "\n";
+    InputStream inputStream = new ByteArrayInputStream(input.getBytes());
+    System.setIn(inputStream);
+
+    scanner = new Scanner(System.in);
+
+    boolean result = capsuleHotel.handleCheckIn(scanner, "Mary");
+    assertEquals("Mary", capsuleHotel.service.guestAt(2));
+    assertTrue(result);
+
+    String capturedOutput = outputStream.toString().trim();
+    String expectedOutput = "SUCCESS!\n" +
+            "Mary is booked in capsule #2.";
+    assertTrue(capturedOutput.contains(expectedOutput));
+  }
+
+  // a group is typed in one name per line and booked in one go
+  @Test
+  public void shouldCheckInGroupTest(){
+    capsuleHotel.service.checkIn(2, "John");
+    String input = "Anna\nPaul\n\n";
+    InputStream inputStream = new ByteArrayInputStream(input.getBytes());
+    System.setIn(inputStream);
+
+    scanner = new Scanner(System.in);
+
+    assertEquals(2, capsuleHotel.handleGroupCheckIn(scanner));
+    assertEquals("Anna", capsuleHotel.service.guestAt(1));
+    assertEquals("Paul", capsuleHotel.service.guestAt(3));
+
+    String capturedOutput = outputStream.toString().trim();
+    assertTrue(capturedOutput.contains("Paul is booked in capsule #3."));
+    assertTrue(capturedOutput.contains("2 of 2 guests booked."));
+  }
+
+  @Test
+  public void shouldCheckOutGroupTest(){
+    capsuleHotel.service.checkIn(1, "John");
+    capsuleHotel.service.checkIn(2, "Mary");
+    String input = "1, 2 3\n";
+    InputStream inputStream = new ByteArrayInputStream(input.getBytes());
+    System.setIn(inputStream);
+
+    scanner = new Scanner(System.in);
+
+    assertEquals(2, capsuleHotel.handleGroupCheckOut(scanner));
+    assertTrue(capsuleHotel.service.isEmpty());
+
+    String capturedOutput = outputStream.toString().trim();
+    assertTrue(capturedOutput.contains("Mary is checked out from capsule #2."));
+    assertTrue(capturedOutput.contains("Capsule #3 is unoccupied."));
+  }
+
+  @Test
+  public void shouldFindGuestByNameTest(){
+    capsuleHotel.service.checkIn(4, "John");
+    capsuleHotel.service.checkIn(9, "Johanna");
+    capsuleHotel.service.checkIn(12, "Mary");
+    String input = "joh\n";
+    InputStream inputStream = new ByteArrayInputStream(input.getBytes());
+    System.setIn(inputStream);
+
+    scanner = new Scanner(System.in);
+
+    assertEquals(2, capsuleHotel.findGuest(scanner));
+    String capturedOutput = outputStream.toString().trim();
+    assertTrue(capturedOutput.contains("9: Johanna\n4: John"));
+    assertFalse(capturedOutput.contains("Mary"));
+  }
+
+  // the second view comes from the cache, the check-in in between drops it
+  @Test
+  public void shouldViewGuestsThroughCacheTest(){
+    GuestViewCache cache = capsuleHotel.enableViewCache(16);
+    assertNotNull(cache);
+    capsuleHotel.service.checkIn(3, "John");
+    System.setIn(new ByteArrayInputStream("5\n5\n5\n".getBytes()));
+    scanner = new Scanner(System.in);
+
+    capsuleHotel.viewGuests(scanner);
+    capsuleHotel.viewGuests(scanner);
+    assertEquals(1, cache.hitCount());
+    capsuleHotel.service.checkIn(4, "Mary");
+    capsuleHotel.viewGuests(scanner);
+
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.invalidationCount());
+    String capturedOutput = outputStream.toString();
+    assertEquals(3, capturedOutput.split("3: John\n", -1).length - 1);
+    assertEquals(2, capturedOutput.split("4: \\[unoccupied\\]\n", -1).length - 1);
+    assertTrue(capturedOutput.contains("4: Mary\n"));
+  }
+
   @Test
   public void shouldNotCheckGuestInOccupiedCapsuleTest(){
     String input = "1\n";
@@ -73,8 +170,8 @@ class CapsuleHotelTest {
     scanner = new Scanner(System.in);
 
     boolean result = capsuleHotel.handleCheckIn(scanner, "John");
-    assertNotNull(capsuleHotel.capsules[0]);
-    assertEquals("John", capsuleHotel.capsules[0]);
+    assertNotNull(capsuleHotel.service.guestAt(1));
+    assertEquals("John", capsuleHotel.service.guestAt(1));
     assertTrue(result);
 
     input = "1\n";
@@ -89,8 +186,8 @@ class CapsuleHotelTest {
             "Capsule #1 is occupied.";
     assertTrue(capturedOutput.contains(expectedOutput));
 
-    assertNotNull(capsuleHotel.capsules[0]);
-    assertEquals("John", capsuleHotel.capsules[0]);
+    assertNotNull(capsuleHotel.service.guestAt(1));
+    assertEquals("John", capsuleHotel.service.guestAt(1));
     assertFalse(result);
   }
 
@@ -122,7 +219,7 @@ class CapsuleHotelTest {
     scanner = new Scanner(System.in);
 
     boolean result = capsuleHotel.handleCheckIn(scanner, "John");
-    assertNotNull(capsuleHotel.capsules[0]);
+    assertNotNull(capsuleHotel.service.guestAt(1));
 
     // check a guest out
     input = "1\n";  // Input to stimulate user typing "42" and pressing enter
@@ -132,7 +229,7 @@ class CapsuleHotelTest {
     // create a scanner to read from the stimulated input
     scanner = new Scanner(System.in);
     result = capsuleHotel.handleCheckOut(scanner);
-    assertNull(capsuleHotel.capsules[0]);
+    assertNull(capsuleHotel.service.guestAt(1));
     assertTrue(result);
 
     // get the captured output
@@ -151,7 +248,7 @@ class CapsuleHotelTest {
     scanner = new Scanner(System.in);
 
     boolean result = capsuleHotel.handleCheckIn(scanner, "John");
-    assertNotNull(capsuleHotel.capsules[0]);
+    assertNotNull(capsuleHotel.service.guestAt(1));
 
     input = "5\n";
     inputStream = new ByteArrayInputStream(input.getBytes());
@@ -159,7 +256,7 @@ class CapsuleHotelTest {
 
     scanner = new Scanner(System.in);
     result = capsuleHotel.handleCheckOut(scanner);
-    assertNull(capsuleHotel.capsules[4]);
+    assertNull(capsuleHotel.service.guestAt(5));
     assertFalse(result);
 
     String capturedOutput = outputStream.toString().trim();
@@ -192,7 +289,7 @@ class CapsuleHotelTest {
     scanner = new Scanner(System.in);
 
     boolean result = capsuleHotel.handleCheckIn(scanner, "John");
-    assertNotNull(capsuleHotel.capsules[0]);
+    assertNotNull(capsuleHotel.service.guestAt(1));
 
     input = "21\n";
     inputStream = new ByteArrayInputStream(input.getBytes());
@@ -221,8 +318,8 @@ class CapsuleHotelTest {
     scanner = new Scanner(System.in);
 
     boolean result = capsuleHotel.handleCheckIn(scanner, "John");
-    assertNotNull(capsuleHotel.capsules[0]);
-    assertEquals("John", capsuleHotel.capsules[0]);
+    assertNotNull(capsuleHotel.service.guestAt(1));
+    assertEquals("John", capsuleHotel.service.guestAt(1));
     assertTrue(result);
 
     String capturedOutput = outputStream.toString().trim();
@@ -265,8 +362,8 @@ class CapsuleHotelTest {
     scanner = new Scanner(System.in);
 
     boolean result = capsuleHotel.handleCheckIn(scanner, "John");
-    assertNotNull(capsuleHotel.capsules[0]);
-    assertEquals("John", capsuleHotel.capsules[0]);
+    assertNotNull(capsuleHotel.service.guestAt(1));
+    assertEquals("John", capsuleHotel.service.guestAt(1));
     assertTrue(result);
 
     String capturedOutput = outputStream.toString().trim();
@@ -309,8 +406,8 @@ class CapsuleHotelTest {
     scanner = new Scanner(System.in);
 
     boolean result = capsuleHotel.handleCheckIn(scanner, "John");
-    assertNotNull(capsuleHotel.capsules[9]);
-    assertEquals("John", capsuleHotel.capsules[9]);
+    assertNotNull(capsuleHotel.service.guestAt(10));
+    assertEquals("John", capsuleHotel.service.guestAt(10));
     assertTrue(result);
 
     String capturedOutput = outputStream.toString().trim();
@@ -353,8 +450,8 @@ class CapsuleHotelTest {
     scanner = new Scanner(System.in);
 
     boolean result = capsuleHotel.handleCheckIn(scanner, "John");
-    assertNotNull(capsuleHotel.capsules[9]);
-    assertEquals("John", capsuleHotel.capsules[9]);
+    assertNotNull(capsuleHotel.service.guestAt(10));
+    assertEquals("John", capsuleHotel.service.guestAt(10));
     assertTrue(result);
 
     String capturedOutput = outputStream.toString().trim();
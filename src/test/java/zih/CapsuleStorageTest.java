@@ -0,0 +1,105 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapsuleStorageTest {
+  @TempDir
+  Path directory;
+
+  static List<CapsuleStorage> backends(int capacity){
+    return List.of(CapsuleStorage.array(capacity), CapsuleStorage.dictionary(capacity),
+            CapsuleStorage.offHeap(capacity), CapsuleStorage.segmented(capacity));
+  }
+
+  @Test
+  public void shouldCompareAndSetGuestsAndMarkersTest(){
+    for (CapsuleStorage storage : backends(4)){
+      String backend = storage.getClass().getSimpleName();
+      assertEquals(4, storage.capacity(), backend);
+      assertNull(storage.get(0), backend);
+
+      assertTrue(storage.compareAndSet(0, null, CapsuleStorage.BUSY), backend);
+      assertSame(CapsuleStorage.BUSY, storage.get(0), backend);
+      assertFalse(storage.compareAndSet(0, null, CapsuleStorage.BUSY), backend);
+      storage.set(0, "John");
+      assertTrue(storage.compareAndSet(0, storage.get(0), CapsuleStorage.BUSY), backend);
+      // markers are matched by identity, never by their text
+      storage.set(0, CapsuleStorage.VACANT);
+      assertSame(CapsuleStorage.VACANT, storage.get(0), backend);
+      assertFalse(storage.compareAndSet(0, "<vacant>", "Mary"), backend);
+      assertTrue(storage.compareAndSet(0, CapsuleStorage.VACANT, "Mary"), backend);
+      assertEquals("Mary", storage.get(0), backend);
+      assertFalse(storage.compareAndSet(0, "Nobody", null), backend);
+    }
+  }
+
+  @Test
+  public void shouldStoreRepeatedNamesOnceTest(){
+    DictionaryCapsuleStorage storage = (DictionaryCapsuleStorage) CapsuleStorage.dictionary(1000);
+    for (int i = 0; i < 1000; i++){
+      storage.set(i, "Guest-" + (i % 10));
+    }
+    assertEquals(10, storage.names().size());
+    assertEquals("Guest-7", storage.get(997));
+  }
+
+  @Test
+  public void shouldRunEngineOnEveryBackendTest(){
+    for (CapsuleStorage storage : backends(20)){
+      BookingEngine engine = new BookingEngine(storage);
+      assertTrue(engine.checkIn(1, "John").isSuccess());
+      assertEquals(BookingError.OCCUPIED, engine.checkIn(1, "Mary").getError());
+      assertTrue(engine.checkIn(20, "John").isSuccess());
+      assertEquals("John", engine.checkOut(1).getGuestName());
+      assertNull(engine.guestAt(1));
+      assertEquals("John", engine.guestAt(20));
+      assertEquals(1, engine.occupiedCount());
+    }
+  }
+
+  @Test
+  public void shouldRestoreStoreIntoOffHeapStorageTest() throws Exception {
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      store.engine().checkIn(1, "John");
+      store.compact();
+      store.engine().checkIn(2, "Mary");
+    }
+    try (HotelStore store = HotelStore.open(directory, 20, CapsuleStorage::offHeap)){
+      BookingEngine engine = store.engine();
+      assertTrue(engine.storage instanceof OffHeapCapsuleStorage);
+      assertEquals("John", engine.guestAt(1));
+      assertEquals("Mary", engine.guestAt(2));
+      assertNull(engine.guestAt(3));
+      assertTrue(engine.checkIn(3, "Anna").isSuccess());
+      assertEquals(BookingError.OCCUPIED, engine.checkIn(1, "Anna").getError());
+    }
+  }
+
+  @Test
+  public void shouldResizeSegmentsInPlaceTest(){
+    GuestNamePool pool = new GuestNamePool();
+    SegmentedCapsuleStorage storage = (SegmentedCapsuleStorage) CapsuleStorage.segmented(10,
+            size -> new DictionaryCapsuleStorage(size, pool));
+    storage.set(3, "John");
+    storage.resize(SegmentedCapsuleStorage.SEGMENT_SIZE * 2 + 1);
+    assertEquals(3, storage.segmentCount());
+    assertEquals("John", storage.get(3));
+    storage.set(SegmentedCapsuleStorage.SEGMENT_SIZE * 2, "Mary");
+    assertEquals("Mary", storage.get(SegmentedCapsuleStorage.SEGMENT_SIZE * 2));
+
+    storage.resize(10);
+    assertEquals(1, storage.segmentCount());
+    assertEquals("John", storage.get(3));
+    // a slot of a dropped segment reads as busy and cannot be claimed
+    assertSame(CapsuleStorage.BUSY, storage.get(SegmentedCapsuleStorage.SEGMENT_SIZE * 2));
+    assertFalse(storage.compareAndSet(SegmentedCapsuleStorage.SEGMENT_SIZE, null, "Anna"));
+
+    assertThrows(UnsupportedOperationException.class, () -> CapsuleStorage.array(10).resize(20));
+  }
+}
@@ -0,0 +1,127 @@
+package zih;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuestIndexTest {
+  BookingEngine engine;
+  GuestIndex index;
+
+  @BeforeEach
+  public void setUp(){
+    engine = new BookingEngine(100);
+    index = GuestIndex.attach(engine);
+  }
+
+  @Test
+  public void shouldFindGuestByNameIgnoringCaseTest(){
+    engine.checkIn(7, "John");
+    engine.checkIn(3, "john");
+    engine.checkIn(9, "Mary");
+
+    assertArrayEquals(new int[]{3, 7}, index.find("JOHN"));
+    assertEquals(9, index.capsuleOf("mary"));
+    assertEquals(0, index.capsuleOf("Anna"));
+
+    engine.checkOut(3);
+    assertArrayEquals(new int[]{7}, index.find("John"));
+    engine.checkOut(7);
+    assertEquals(0, index.find("John").length);
+    assertEquals(1, index.nameCount());
+  }
+
+  @Test
+  public void shouldFindGuestsByPrefixTest(){
+    engine.checkIn(1, "Mary");
+    engine.checkIn(2, "Marc");
+    engine.checkIn(3, "Martin");
+    engine.checkIn(4, "Anna");
+    engine.checkIn(5, "Mar");
+
+    List<GuestLocation> found = index.findByPrefix("mar", 10);
+    assertEquals(4, found.size());
+    assertEquals("Mar", found.get(0).getGuestName());
+    assertEquals(2, found.get(1).getCapsuleNumber());
+    assertEquals("Martin", found.get(2).getGuestName());
+    assertEquals("Mary", found.get(3).getGuestName());
+
+    assertEquals(2, index.findByPrefix("Mar", 2).size());
+    assertEquals(5, index.findByPrefix("", 10).size());
+    assertTrue(index.findByPrefix("Mz", 10).isEmpty());
+  }
+
+  @Test
+  public void shouldIndexGuestsBookedBeforeAttachTest(){
+    BookingEngine other = new BookingEngine(10);
+    other.checkIn(4, "Anna");
+    GuestIndex late = GuestIndex.attach(other);
+    assertEquals(4, late.capsuleOf("Anna"));
+
+    Map<Integer, String> group = new LinkedHashMap<>();
+    group.put(5, "Paul");
+    group.put(6, "Paula");
+    other.checkInAll(group, BatchMode.ALL_OR_NOTHING);
+    assertEquals(2, late.findByPrefix("Paul", 10).size());
+    other.checkOutAll(new int[]{5, 6}, BatchMode.BEST_EFFORT);
+    assertTrue(late.findByPrefix("Paul", 10).isEmpty());
+  }
+
+  // threads churn a few names over a small hotel; once they stop the index must
+  // match the capsules exactly
+  @Test
+  public void shouldStayConsistentUnderConcurrentBookingsTest() throws Exception {
+    int threads = 8;
+    String[] names = {"Anna", "anna", "Paul", "Mary", "Zoë"};
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++){
+      futures.add(pool.submit(() -> {
+        start.await();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 50_000; i++){
+          int capsuleNumber = random.nextInt(engine.capacity()) + 1;
+          if (random.nextBoolean()){
+            engine.checkIn(capsuleNumber, names[random.nextInt(names.length)]);
+          } else {
+            engine.checkOut(capsuleNumber);
+          }
+          if (i % 100 == 0){
+            // whatever a lookup returns must be in the capsule right then or a moment ago
+            for (int found : index.find("anna")){
+              assertTrue(found >= 1 && found <= engine.capacity());
+            }
+          }
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures){
+      future.get(60, TimeUnit.SECONDS);
+    }
+    pool.shutdown();
+
+    int indexed = 0;
+    for (String name : new String[]{"anna", "paul", "mary", "zoë"}){
+      for (int capsuleNumber : index.find(name)){
+        assertTrue(engine.guestAt(capsuleNumber).equalsIgnoreCase(name));
+        indexed++;
+      }
+    }
+    assertEquals(engine.occupiedCount(), indexed);
+  }
+}
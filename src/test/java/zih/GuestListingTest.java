@@ -0,0 +1,97 @@
+package zih;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuestListingTest {
+  BookingEngine engine;
+
+  @BeforeEach
+  public void setUp(){
+    engine = new BookingEngine(100_000);
+    for (int n = 7; n <= 100_000; n += 1_000){
+      engine.checkIn(n, "Guest-" + n);
+    }
+  }
+
+  @Test
+  public void shouldStreamEveryCapsuleInRangeTest(){
+    List<GuestLocation> guests = GuestListing.stream(engine, 5, 8, false).collect(Collectors.toList());
+    assertEquals(3, guests.size());
+    assertEquals(6, guests.get(0).getCapsuleNumber());
+    assertNull(guests.get(0).getGuestName());
+    assertEquals("Guest-7", guests.get(1).getGuestName());
+
+    assertEquals(100_000, GuestListing.stream(engine, 0, 100_000, false).count());
+  }
+
+  @Test
+  public void shouldStreamOccupiedCapsulesOnlyTest(){
+    List<Integer> capsules = GuestListing.stream(engine, 0, 3_000, true)
+            .map(GuestLocation::getCapsuleNumber)
+            .collect(Collectors.toList());
+    assertEquals(List.of(7, 1_007, 2_007), capsules);
+
+    assertEquals(100, GuestListing.stream(engine, 0, 100_000, true).count());
+    // split into halves, still every guest exactly once and in order
+    assertEquals(100, GuestListing.stream(engine, 0, 100_000, true).parallel().count());
+    List<Integer> parallel = GuestListing.stream(engine, 0, 100_000, true).parallel()
+            .map(GuestLocation::getCapsuleNumber)
+            .collect(Collectors.toList());
+    assertEquals(7, parallel.get(0));
+    assertEquals(99_007, parallel.get(99));
+  }
+
+  @Test
+  public void shouldWalkPagesWithTokensTest(){
+    List<GuestLocation> all = new ArrayList<>();
+    GuestListing.Page page = GuestListing.page(engine, 0, 100_000, true, 30);
+    int pages = 1;
+    all.addAll(page.getGuests());
+    while (page.hasNext()){
+      page = GuestListing.page(engine, page.getNextPageToken(), 30);
+      all.addAll(page.getGuests());
+      pages++;
+    }
+    assertEquals(100, all.size());
+    assertEquals(4, pages);
+    assertEquals("Guest-99007", all.get(99).getGuestName());
+
+    page = GuestListing.page(engine, 0, 20, false, 11);
+    assertEquals(11, page.getGuests().size());
+    page = GuestListing.page(engine, page.getNextPageToken(), 11);
+    assertEquals(9, page.getGuests().size());
+    assertEquals(12, page.getGuests().get(0).getCapsuleNumber());
+    assertFalse(page.hasNext());
+  }
+
+  @Test
+  public void shouldEndOnPageFilledByLastGuestTest(){
+    GuestListing.Page page = GuestListing.page(engine, 0, 100_000, true, 100);
+    assertEquals(100, page.getGuests().size());
+    assertFalse(page.hasNext());
+
+    page = GuestListing.page(engine, 0, 100_000, true, 25);
+    for (int pages = 1; pages < 4; pages++){
+      assertTrue(page.hasNext());
+      page = GuestListing.page(engine, page.getNextPageToken(), 25);
+    }
+    assertEquals(25, page.getGuests().size());
+    assertFalse(page.hasNext());
+    // the guest past the end of the range does not count
+    assertFalse(GuestListing.page(engine, 0, 99_006, true, 99).hasNext());
+  }
+
+  @Test
+  public void shouldRejectBadPageTokensTest(){
+    assertThrows(IllegalArgumentException.class, () -> GuestListing.page(engine, "garbage", 10));
+    assertThrows(IllegalArgumentException.class, () -> GuestListing.page(engine, "0.zzzzz.o", 10));
+    assertThrows(IndexOutOfBoundsException.class, () -> GuestListing.stream(engine, 0, 100_001, false));
+  }
+}
@@ -0,0 +1,94 @@
+package zih;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuestRangeRendererTest {
+  BookingEngine engine;
+  public final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+  public final PrintStream originalSystemOut = System.out;
+
+  @BeforeEach
+  public void setUp(){
+    engine = new BookingEngine(120);
+    engine.checkIn(2, "John");
+    engine.checkIn(105, "Mary");
+    System.setOut(new PrintStream(outputStream));
+  }
+
+  @AfterEach
+  public void tearDown(){
+    System.setOut(originalSystemOut);
+  }
+
+  @Test
+  public void shouldRenderRangeIntoBuilderTest(){
+    StringBuilder out = new StringBuilder();
+    GuestRangeRenderer.render(engine, 0, 3, out);
+    assertEquals("Capsule: Guest\n" +
+            "1: [unoccupied]\n" +
+            "2: John\n" +
+            "3: [unoccupied]\n", out.toString());
+  }
+
+  @Test
+  public void shouldRenderSameTextIntoWriterTest() throws IOException {
+    StringBuilder expected = new StringBuilder();
+    GuestRangeRenderer.render(engine, 95, 120, expected);
+
+    StringWriter writer = new StringWriter();
+    GuestRangeRenderer.render(engine, 95, 120, writer);
+    assertEquals(expected.toString(), writer.toString());
+    assertTrue(writer.toString().contains("105: Mary\n"));
+  }
+
+  @Test
+  public void shouldRejectRangeOutsideHotelTest(){
+    assertThrows(IndexOutOfBoundsException.class,
+            () -> GuestRangeRenderer.render(engine, 110, 121, new StringBuilder()));
+  }
+
+  @Test
+  public void shouldViewConfiguredWindowSizeTest(){
+    CapsuleHotel hotel = new CapsuleHotel(engine);
+    hotel.setViewRange(5);
+
+    hotel.viewGuests(new Scanner(new ByteArrayInputStream("50\n".getBytes())));
+    String capturedOutput = outputStream.toString();
+    assertTrue(capturedOutput.contains("Capsule: Guest\n" +
+            "48: [unoccupied]\n" +
+            "49: [unoccupied]\n" +
+            "50: [unoccupied]\n" +
+            "51: [unoccupied]\n" +
+            "52: [unoccupied]\n\n"));
+  }
+
+  @Test
+  public void shouldRenderOccupiedCapsulesOnlyTest() throws IOException {
+    StringWriter out = new StringWriter();
+    assertEquals(2, GuestRangeRenderer.renderOccupied(engine, 0, 120, out));
+    assertEquals("Capsule: Guest\n2: John\n105: Mary\n", out.toString());
+  }
+
+  // ranges longer than one chunk print the same text as a single buffer would
+  @Test
+  public void shouldPrintLargeRangeInChunksTest(){
+    BookingEngine large = new BookingEngine(CapsuleHotel.PRINT_CHUNK * 2 + 5);
+    large.checkIn(CapsuleHotel.PRINT_CHUNK + 1, "Anna");
+    StringBuilder expected = new StringBuilder();
+    GuestRangeRenderer.render(large, 3, large.capacity(), expected);
+
+    new CapsuleHotel(large).printGuestInRange(3, large.capacity());
+    assertEquals(expected + System.lineSeparator(), outputStream.toString());
+  }
+}
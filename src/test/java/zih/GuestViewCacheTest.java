@@ -0,0 +1,142 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuestViewCacheTest {
+
+  private static String renderDirectly(HotelService service, int start, int end){
+    StringBuilder out = new StringBuilder();
+    GuestRangeRenderer.render(service, start, end, out);
+    return out.toString();
+  }
+
+  @Test
+  public void shouldServeRepeatedViewsFromCacheTest(){
+    BookingEngine engine = new BookingEngine(100);
+    engine.checkIn(3, "John");
+    GuestViewCache cache = GuestViewCache.attach(engine, 8);
+
+    String first = cache.render(0, 11);
+    assertEquals(renderDirectly(engine, 0, 11), first);
+    assertSame(first, cache.render(0, 11));
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+    assertEquals(0.5, cache.hitRatio(), 1e-9);
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.hitLatency().getCount());
+    assertEquals(1, cache.missLatency().getCount());
+
+    // longer than a page: rendered every time, never counted
+    assertEquals(renderDirectly(engine, 0, 100), cache.render(0, 100));
+    assertThrows(IndexOutOfBoundsException.class, () -> cache.render(95, 101));
+  }
+
+  @Test
+  public void shouldDropOnlyPagesHoldingBookedCapsuleTest(){
+    BookingEngine engine = new BookingEngine(100);
+    GuestViewCache cache = GuestViewCache.attach(engine, 8);
+    cache.render(0, 11);
+    cache.render(5, 16);
+    cache.render(20, 31);
+
+    // capsule 16 is index 15, only in the second page
+    engine.checkIn(16, "John");
+    assertEquals(1, cache.invalidationCount());
+    assertEquals(2, cache.size());
+    assertTrue(cache.render(5, 16).contains("16: John\n"));
+    assertEquals(4, cache.missCount());
+    cache.render(0, 11);
+    cache.render(20, 31);
+    assertEquals(2, cache.hitCount());
+
+    // a group across the first two, a check-out in the third
+    engine.checkInAll(Map.of(1, "Mary", 2, "Ann"), BatchMode.ALL_OR_NOTHING);
+    engine.checkIn(21, "Zoë");
+    long hits = cache.hitCount();
+    assertEquals(renderDirectly(engine, 0, 11), cache.render(0, 11));
+    assertEquals(renderDirectly(engine, 20, 31), cache.render(20, 31));
+    assertEquals(hits, cache.hitCount());
+    engine.checkOut(50);
+    assertEquals(renderDirectly(engine, 20, 31), cache.render(20, 31));
+    assertEquals(hits + 1, cache.hitCount());
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedPageTest(){
+    BookingEngine engine = new BookingEngine(100);
+    GuestViewCache cache = GuestViewCache.attach(engine, 2);
+    cache.render(0, 11);
+    cache.render(20, 31);
+    cache.render(0, 11);
+    cache.render(40, 51);
+    assertEquals(1, cache.evictionCount());
+    assertEquals(2, cache.size());
+
+    long hits = cache.hitCount();
+    cache.render(0, 11);
+    assertEquals(hits + 1, cache.hitCount());
+    cache.render(20, 31);
+    assertEquals(hits + 1, cache.hitCount());
+  }
+
+  @Test
+  public void shouldDropPagesPastShrunkEndTest(){
+    BookingEngine engine = new BookingEngine(100);
+    GuestViewCache cache = GuestViewCache.attach(engine, 8);
+    cache.render(0, 11);
+    cache.render(89, 100);
+    assertTrue(engine.resize(50).isSuccess());
+    assertEquals(1, cache.size());
+    assertTrue(engine.resize(100).isSuccess());
+    cache.render(89, 100);
+    assertEquals(0, cache.hitCount());
+    cache.render(0, 11);
+    assertEquals(1, cache.hitCount());
+  }
+
+  // bookings race the renders; once they stop, every page the cache hands out is current
+  @Test
+  public void shouldNeverKeepStalePageTest() throws Exception {
+    int capacity = 200;
+    BookingEngine engine = new BookingEngine(capacity);
+    GuestViewCache cache = GuestViewCache.attach(engine, 16);
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread booker = new Thread(() -> {
+      Random random = new Random(5);
+      for (int i = 0; running.get(); i++){
+        int capsuleNumber = random.nextInt(capacity) + 1;
+        if (engine.guestAt(capsuleNumber) == null){
+          engine.checkIn(capsuleNumber, "Guest-" + i);
+        } else {
+          engine.checkOut(capsuleNumber);
+        }
+      }
+    });
+    booker.start();
+    Random random = new Random(6);
+    Map<Integer, Integer> windows = new LinkedHashMap<>();
+    try {
+      for (int i = 0; i < 20_000; i++){
+        int start = random.nextInt(20) * 10;
+        int end = Math.min(capacity, start + 11);
+        windows.put(start, end);
+        cache.render(start, end);
+      }
+    } finally {
+      running.set(false);
+      booker.join();
+    }
+    for (Map.Entry<Integer, Integer> window : windows.entrySet()){
+      assertEquals(renderDirectly(engine, window.getKey(), window.getValue()),
+              cache.render(window.getKey(), window.getValue()));
+    }
+    assertTrue(cache.invalidationCount() > 0);
+  }
+}
@@ -0,0 +1,166 @@
+package zih;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotelHttpServerTest {
+  BookingEngine engine;
+  HotelHttpServer server;
+  HttpClient client = HttpClient.newHttpClient();
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    engine = new BookingEngine(20);
+    server = HotelHttpServer.start(engine, new InetSocketAddress("localhost", 0));
+  }
+
+  @AfterEach
+  public void tearDown(){
+    server.close();
+  }
+
+  HttpResponse<String> send(String method, String path) throws Exception {
+    HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path))
+            .method(method, HttpRequest.BodyPublishers.noBody())
+            .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  HttpResponse<String> send(String method, String path, String body) throws Exception {
+    HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path))
+            .method(method, HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  @Test
+  public void shouldCheckInAndOutOverHttpTest() throws Exception {
+    HttpResponse<String> response = send("POST", "/checkin?capsule=3&guest=Zo%C3%AB%20%22Z%22");
+    assertEquals(200, response.statusCode());
+    assertEquals("{\"capsule\":3,\"guest\":\"Zoë \\\"Z\\\"\"}", response.body());
+    assertEquals("Zoë \"Z\"", engine.guestAt(3));
+
+    response = send("POST", "/checkin?capsule=3&guest=Mary");
+    assertEquals(409, response.statusCode());
+    assertEquals("{\"error\":\"OCCUPIED\",\"capsule\":3}", response.body());
+
+    response = send("POST", "/checkin?guest=Mary");
+    assertEquals("{\"capsule\":1,\"guest\":\"Mary\"}", response.body());
+
+    response = send("POST", "/checkout?capsule=3");
+    assertEquals(200, response.statusCode());
+    assertNull(engine.guestAt(3));
+    assertEquals(409, send("POST", "/checkout?capsule=3").statusCode());
+    assertEquals(404, send("POST", "/checkout?capsule=21").statusCode());
+    assertEquals(400, send("POST", "/checkout?capsule=abc").statusCode());
+    assertEquals(405, send("GET", "/checkout?capsule=1").statusCode());
+  }
+
+  // two lines for one capsule must not quietly drop the first guest
+  @Test
+  public void shouldRefuseBatchNamingCapsuleTwiceTest() throws Exception {
+    HttpResponse<String> response = send("POST", "/batch/checkin?mode=BEST_EFFORT",
+            "capsule=1&guest=John\ncapsule=2&guest=Mary\ncapsule=1&guest=Anna\n");
+    assertEquals(400, response.statusCode());
+    assertEquals("{\"error\":\"INVALID_INPUT\",\"capsule\":1}", response.body());
+    assertTrue(engine.isEmpty());
+
+    response = send("POST", "/batch/checkin?mode=BEST_EFFORT", "capsule=1&guest=John\ncapsule=2&guest=Mary\n");
+    assertEquals(200, response.statusCode());
+    assertTrue(response.body().startsWith("{\"succeeded\":2,"), response.body());
+  }
+
+  @Test
+  public void shouldServeRangeAndStatsTest() throws Exception {
+    engine.checkIn(2, "John");
+    assertEquals("{\"guests\":[{\"capsule\":1,\"guest\":null},{\"capsule\":2,\"guest\":\"John\"}]}",
+            send("GET", "/guests?start=0&end=2").body());
+    assertEquals(404, send("GET", "/guests?start=15&end=25").statusCode());
+    assertEquals("{\"capacity\":20,\"occupied\":1,\"free\":19}", send("GET", "/stats").body());
+  }
+
+  @Test
+  public void shouldPageThroughGuestsTest() throws Exception {
+    engine.checkIn(4, "John");
+    engine.checkIn(9, "Mary");
+    engine.checkIn(17, "Anna");
+    String body = send("GET", "/guests?start=0&end=20&occupied=true&pageSize=2").body();
+    assertTrue(body.startsWith("{\"guests\":[{\"capsule\":4,\"guest\":\"John\"},{\"capsule\":9,"), body);
+    String token = body.substring(body.indexOf("\"nextPageToken\":\"") + 17, body.length() - 2);
+    assertEquals("{\"guests\":[{\"capsule\":17,\"guest\":\"Anna\"}]}",
+            send("GET", "/guests?pageSize=2&pageToken=" + token).body());
+    assertEquals(400, send("GET", "/guests?pageToken=nonsense").statusCode());
+
+    assertEquals("Capsule: Guest\n4: John\n9: Mary\n17: Anna\n", send("GET", "/export?occupied=true").body());
+    assertEquals(21, send("GET", "/export").body().split("\n").length);
+  }
+
+  @Test
+  public void shouldResizeOverHttpTest() throws Exception {
+    engine.checkIn(15, "John");
+    assertEquals("{\"previousCapacity\":20,\"capacity\":40}", send("POST", "/resize?capsules=40").body());
+    assertEquals(200, send("POST", "/checkin?capsule=40&guest=Mary").statusCode());
+
+    HttpResponse<String> response = send("POST", "/resize?capsules=10");
+    assertEquals(409, response.statusCode());
+    assertEquals("{\"error\":\"OCCUPIED\",\"capsule\":15}", response.body());
+    assertEquals(400, send("POST", "/resize?capsules=0").statusCode());
+    assertEquals(405, send("GET", "/resize?capsules=30").statusCode());
+    assertEquals("{\"capacity\":40,\"occupied\":2,\"free\":38}", send("GET", "/stats").body());
+  }
+
+  // concurrent clients racing for the same capsules: exactly one wins each
+  // a bug on the server is no upstream failure and no bad request
+  @Test
+  public void shouldAnswerInternalErrorWhenServiceFailsTest() throws Exception {
+    engine.addListener(new BookingListener() {
+      @Override
+      public void onCheckIn(int capsuleNumber, String guestName){
+      }
+
+      @Override
+      public void onCheckOut(int capsuleNumber, String guestName){
+      }
+
+      @Override
+      public void afterCommit(){
+        throw new IllegalStateException("listener broke");
+      }
+    });
+    HttpResponse<String> response = send("POST", "/checkin?capsule=3&guest=John");
+    assertEquals(500, response.statusCode());
+    assertEquals("{\"error\":\"INTERNAL_ERROR\"}", response.body());
+  }
+
+  @Test
+  public void shouldServeConcurrentClientsTest() throws Exception {
+    List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+    for (int i = 0; i < 200; i++){
+      HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port()
+                      + "/checkin?capsule=" + (i % 20 + 1) + "&guest=Guest-" + i))
+              .POST(HttpRequest.BodyPublishers.noBody())
+              .build();
+      responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+    }
+    int booked = 0;
+    for (CompletableFuture<HttpResponse<String>> response : responses){
+      if (response.get().statusCode() == 200){
+        booked++;
+      }
+    }
+    assertEquals(20, booked);
+    assertEquals(20, engine.occupiedCount());
+  }
+}
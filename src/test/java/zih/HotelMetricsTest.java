@@ -0,0 +1,117 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotelMetricsTest {
+
+  @Test
+  public void shouldKeepPercentilesWithinBucketPrecisionTest(){
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 100_000; value++){
+      histogram.record(value * 1_000);     // 1 us .. 100 ms, uniform
+    }
+    LatencySnapshot snapshot = histogram.snapshot();
+    assertEquals(100_000, snapshot.getCount());
+    assertEquals(50_000_500.0, snapshot.getMean(), 1.0);
+    assertEquals(50_000_000, snapshot.getP50(), 50_000_000 * 0.07);
+    assertEquals(99_000_000, snapshot.getP99(), 99_000_000 * 0.07);
+    assertEquals(100_000_000, snapshot.getMax());
+    assertTrue(snapshot.getP999() <= snapshot.getMax());
+  }
+
+  @Test
+  public void shouldMapEveryValueIntoItsBucketTest(){
+    long previous = -1;
+    for (int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; bucket++){
+      long highest = LatencyHistogram.highestValueIn(bucket);
+      assertTrue(highest > previous);
+      assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+      assertEquals(bucket, LatencyHistogram.bucketOf(previous + 1));
+      previous = highest;
+    }
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void shouldCountBookingsAndErrorsTest(){
+    InstrumentedHotelService service = new InstrumentedHotelService(new BookingEngine(3));
+    service.checkIn(1, "John");
+    service.checkIn(1, "Mary");
+    service.checkIn(4, "Mary");
+    service.checkInAny("Anna", AssignmentPolicy.LOWEST_NUMBERED);
+    service.checkOut(1);
+    service.checkOut(1);
+    service.checkOutAll(new int[]{2, 3}, BatchMode.BEST_EFFORT);
+
+    HotelMetrics metrics = service.metrics();
+    assertEquals(2, metrics.getCheckIns());
+    assertEquals(2, metrics.getCheckOuts());
+    assertEquals(1, metrics.errorCount(BookingError.OCCUPIED));
+    assertEquals(1, metrics.errorCount(BookingError.DOES_NOT_EXIST));
+    assertEquals(2, metrics.errorCount(BookingError.UNOCCUPIED));
+    assertEquals(3, metrics.getCheckInLatency().getCount());
+    assertEquals(1, metrics.getBatchLatency().getCount());
+    assertEquals(0, metrics.getOccupied());
+  }
+
+  @Test
+  public void shouldExposeMetricsOverJmxAndTextTest() throws Exception {
+    InstrumentedHotelService service = new InstrumentedHotelService(new BookingEngine(10));
+    service.checkIn(1, "John");
+    service.checkIn(1, "Mary");
+    ObjectName name = service.metrics().register();
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      assertEquals(1L, server.getAttribute(name, "CheckIns"));
+      assertEquals(1, server.getAttribute(name, "Occupied"));
+      CompositeData latency = (CompositeData) server.getAttribute(name, "CheckInLatency");
+      assertEquals(2L, latency.get("count"));
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    StringBuilder dump = new StringBuilder();
+    service.metrics().dump(dump);
+    assertTrue(dump.toString().contains("hotel_check_ins_total 1\n"), dump.toString());
+    assertTrue(dump.toString().contains("hotel_errors_total{error=\"OCCUPIED\"} 1\n"));
+    assertTrue(dump.toString().contains("hotel_operations_total{operation=\"CHECK_IN\"} 2\n"));
+    assertTrue(dump.toString().contains("hotel_latency_us{operation=\"CHECK_IN\",quantile=\"0.99\"} "));
+    Map<String, Long> errors = service.metrics().getErrors();
+    assertEquals(1L, errors.get("OCCUPIED"));
+  }
+
+  // striped recording must not lose counts when threads record at once
+  @Test
+  public void shouldNotLoseRecordsUnderContentionTest() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 8; t++){
+      futures.add(pool.submit(() -> {
+        for (int i = 0; i < 100_000; i++){
+          histogram.record(i);
+        }
+      }));
+    }
+    for (Future<?> future : futures){
+      future.get(30, TimeUnit.SECONDS);
+    }
+    pool.shutdown();
+    assertEquals(800_000, histogram.count());
+    assertEquals(800_000, histogram.snapshot().getCount());
+  }
+}
@@ -0,0 +1,323 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotelStoreTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  public void shouldStartEmptyHotelWhenNothingSavedTest() throws Exception {
+    assertFalse(HotelStore.exists(directory));
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      assertFalse(store.wasRestored());
+      assertEquals(20, store.engine().capacity());
+    }
+    assertTrue(HotelStore.exists(directory));
+  }
+
+  @Test
+  public void shouldRestoreBookingsFromJournalTest() throws Exception {
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      BookingEngine engine = store.engine();
+      engine.checkIn(1, "John");
+      engine.checkIn(2, "Mary");
+      engine.checkIn(20, "Zoë");
+      engine.checkOut(2);
+    }
+
+    try (HotelStore store = HotelStore.open(directory, 5)){
+      BookingEngine engine = store.engine();
+      assertTrue(store.wasRestored());
+      assertEquals(20, engine.capacity());
+      assertEquals("John", engine.guestAt(1));
+      assertNull(engine.guestAt(2));
+      assertEquals("Zoë", engine.guestAt(20));
+      assertEquals(2, engine.occupiedCount());
+      assertEquals(4, store.replayedRecords());
+    }
+  }
+
+  @Test
+  public void shouldRestoreFromSnapshotPlusNewerJournalTest() throws Exception {
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      BookingEngine engine = store.engine();
+      engine.checkIn(1, "John");
+      engine.checkIn(2, "Mary");
+      store.compact();
+      engine.checkOut(1);
+      engine.checkIn(3, "Anna");
+    }
+
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      BookingEngine engine = store.engine();
+      assertNull(engine.guestAt(1));
+      assertEquals("Mary", engine.guestAt(2));
+      assertEquals("Anna", engine.guestAt(3));
+      // only the two bookings made after the snapshot are replayed
+      assertEquals(2, store.replayedRecords());
+    }
+  }
+
+  @Test
+  public void shouldDropFilesCoveredBySnapshotTest() throws Exception {
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      store.engine().checkIn(1, "John");
+      store.compact();
+      store.engine().checkIn(2, "Mary");
+      store.compact();
+    }
+    long snapshots;
+    try (var files = Files.list(directory)){
+      snapshots = files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).count();
+    }
+    assertEquals(1, snapshots);
+    assertEquals(1, BookingJournal.generations(directory).size());
+  }
+
+  // an engine opened from a snapshot reads untouched capsules from its mapping until the end
+  @Test
+  public void shouldKeepSnapshotEngineReadsFromTest() throws Exception {
+    try (HotelStore store = HotelStore.open(directory, 1_000)){
+      for (int n = 1; n <= 1_000; n++){
+        store.engine().checkIn(n, "Guest-" + n);
+      }
+      store.compact();
+    }
+    long opened = HotelStore.latestSnapshot(directory);
+
+    try (HotelStore store = HotelStore.open(directory, 0)){
+      BookingEngine engine = store.engine();
+      engine.checkOut(1);
+      store.compact();
+      store.compact();
+      assertTrue(Files.exists(HotelStore.snapshotFor(directory, opened)));
+      assertEquals(2, snapshotCount());
+      // the writer copied the rest straight from the mapping, none of it is loaded
+      for (int index = 1; index < 1_000; index++){
+        assertNull(engine.storage.get(index));
+      }
+      assertEquals("Guest-500", engine.guestAt(500));
+    }
+
+    try (HotelStore store = HotelStore.open(directory, 0)){
+      assertNull(store.engine().guestAt(1));
+      assertEquals("Guest-1000", store.engine().guestAt(1_000));
+      assertEquals(999, store.engine().occupiedCount());
+      store.compact();
+      // the snapshot this engine maps stays next to the new one
+      assertFalse(Files.exists(HotelStore.snapshotFor(directory, opened)));
+      assertEquals(2, snapshotCount());
+    }
+  }
+
+  private long snapshotCount() throws Exception {
+    try (var files = Files.list(directory)){
+      return files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).count();
+    }
+  }
+
+  @Test
+  public void shouldIgnoreTornJournalTailTest() throws Exception {
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      store.engine().checkIn(1, "John");
+    }
+    // a record that claims 40 bytes of payload but was cut off by a crash
+    Path journal = BookingJournal.fileFor(directory, BookingJournal.generations(directory).get(0));
+    Files.write(journal, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      assertEquals("John", store.engine().guestAt(1));
+      assertEquals(1, store.replayedRecords());
+    }
+  }
+
+  // concurrent bookings must share fsyncs instead of paying one each
+  // replay reads 1 MB at a time, a longer record must not end it
+  @Test
+  public void shouldReplayGuestNameLongerThanReadBufferTest() throws Exception {
+    String longName = "Z".repeat(3 << 20);
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      BookingEngine engine = store.engine();
+      engine.checkIn(1, "John");
+      engine.checkIn(2, longName);
+      engine.checkIn(3, "Mary");
+    }
+
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      BookingEngine engine = store.engine();
+      assertEquals("John", engine.guestAt(1));
+      assertEquals(longName, engine.guestAt(2));
+      assertEquals("Mary", engine.guestAt(3));
+      assertEquals(3, store.replayedRecords());
+    }
+  }
+
+  @Test
+  public void shouldGroupCommitConcurrentBookingsTest() throws Exception {
+    int threads = 8;
+    int perThread = 200;
+    try (HotelStore store = HotelStore.open(directory, threads * perThread)){
+      BookingEngine engine = store.engine();
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++){
+        int first = t * perThread + 1;
+        futures.add(pool.submit(() -> {
+          for (int n = first; n < first + perThread; n++){
+            assertTrue(engine.checkIn(n, "Guest-" + n).isSuccess());
+          }
+        }));
+      }
+      for (Future<?> future : futures){
+        future.get(60, TimeUnit.SECONDS);
+      }
+      pool.shutdown();
+
+      BookingJournal journal = store.journal();
+      assertEquals(threads * perThread, journal.appendedCount());
+      assertTrue(journal.batchCount() < journal.appendedCount(),
+              journal.batchCount() + " fsyncs for " + journal.appendedCount() + " records");
+    }
+
+    try (HotelStore store = HotelStore.open(directory, 0)){
+      assertEquals(threads * perThread, store.engine().occupiedCount());
+    }
+  }
+
+  // a batch waits for the journal once, not once per booking
+  @Test
+  public void shouldJournalBatchWithOneFlushWaitTest() throws Exception {
+    List<String> group = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++){
+      group.add("Guest-" + i);
+    }
+    try (HotelStore store = HotelStore.open(directory, 2_000)){
+      // the flusher fsyncs on its own schedule while the batch appends, so count the waits
+      int[] waits = new int[1];
+      store.engine().addListener(new BookingListener() {
+        @Override
+        public void onCheckIn(int capsuleNumber, String guestName){
+        }
+
+        @Override
+        public void onCheckOut(int capsuleNumber, String guestName){
+        }
+
+        @Override
+        public void afterCommit(){
+          waits[0]++;
+        }
+      });
+      BatchResult<CheckInResult> results = store.engine().checkInAll(group,
+              AssignmentPolicy.LOWEST_NUMBERED, BatchMode.ALL_OR_NOTHING);
+      assertTrue(results.isSuccess());
+      assertEquals(1_000, store.journal().appendedCount());
+      assertEquals(1, waits[0]);
+    }
+
+    try (HotelStore store = HotelStore.open(directory, 0)){
+      assertEquals(1_000, store.engine().occupiedCount());
+      assertEquals("Guest-999", store.engine().guestAt(1_000));
+    }
+  }
+
+  // a rolled-back batch holds its capsules BUSY and journals nothing; the snapshot must not drop them
+  @Test
+  public void shouldKeepGuestsOfRolledBackBatchInSnapshotTest() throws Exception {
+    int guests = 1_000;
+    int[] capsules = new int[guests + 1];
+    try (HotelStore store = HotelStore.open(directory, guests + 1)){
+      BookingEngine engine = store.engine();
+      for (int n = 1; n <= guests; n++){
+        engine.checkIn(n, "Guest-" + n);
+        capsules[n - 1] = n;
+      }
+      capsules[guests] = guests + 1;      // free, so every batch rolls back
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+        Future<?> batches = executor.submit(() -> {
+          while (!Thread.currentThread().isInterrupted()){
+            assertEquals(0, engine.checkOutAll(capsules, BatchMode.ALL_OR_NOTHING).getSuccessCount());
+          }
+        });
+        for (int i = 0; i < 200; i++){
+          store.compact();
+          MappedSnapshot snapshot = MappedSnapshot.open(HotelStore.snapshotFor(directory, HotelStore.latestSnapshot(directory)));
+          assertEquals(guests, snapshot.guestCount(), "compaction " + i);
+        }
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(batches.isDone());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    try (HotelStore store = HotelStore.open(directory, 0)){
+      assertEquals(guests, store.engine().occupiedCount());
+      assertEquals("Guest-1", store.engine().guestAt(1));
+    }
+  }
+
+  @Test
+  public void shouldReplayResizesTest() throws Exception {
+    try (HotelStore store = HotelStore.open(directory, 20)){
+      BookingEngine engine = store.engine();
+      engine.checkIn(20, "John");
+      assertTrue(engine.resize(50_000).isSuccess());
+      engine.checkIn(40_000, "Mary");
+      store.compact();
+      engine.checkOut(40_000);
+      engine.checkIn(30, "Anna");
+      assertTrue(engine.resize(100).isSuccess());
+    }
+
+    try (HotelStore store = HotelStore.open(directory, 0)){
+      BookingEngine engine = store.engine();
+      assertEquals(100, engine.capacity());
+      assertEquals("John", engine.guestAt(20));
+      assertEquals("Anna", engine.guestAt(30));
+      assertEquals(2, engine.occupiedCount());
+      // the hotel keeps growing after a restart
+      assertTrue(engine.resize(200).isSuccess());
+      assertTrue(engine.checkIn(150, "Zoë").isSuccess());
+    }
+
+    try (HotelStore store = HotelStore.open(directory, 0)){
+      assertEquals(200, store.engine().capacity());
+      assertEquals("Zoë", store.engine().guestAt(150));
+    }
+  }
+
+  // a snapshot can hold a guest that a later journaled shrink dropped, replay empties the capsule
+  @Test
+  public void shouldDropGuestsPastReplayedShrinkTest() throws Exception {
+    try (HotelStore store = HotelStore.open(directory, 100)){
+      BookingEngine engine = store.engine();
+      engine.checkIn(80, "John");
+      long generation = store.journal().rotate();
+      engine.checkOut(80);
+      assertTrue(engine.resize(50).isSuccess());
+      // snapshot as of after the shrink, but journal replay starts before the check-out
+      HotelStore.writeSnapshot(engine, directory, generation);
+    }
+    try (HotelStore store = HotelStore.open(directory, 0)){
+      assertEquals(50, store.engine().capacity());
+      assertEquals(0, store.engine().occupiedCount());
+    }
+  }
+}
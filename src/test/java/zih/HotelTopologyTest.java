@@ -0,0 +1,164 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotelTopologyTest {
+
+  @Test
+  public void shouldLayFloorsAndPodsOverCapsulesTest(){
+    // 3 floors of 4 pods of 10 capsules
+    BookingEngine engine = new BookingEngine(120);
+    engine.checkIn(1, "John");
+    HotelTopology topology = HotelTopology.attach(engine, 3, 4, 10);
+
+    assertEquals(1, topology.floorOf(40));
+    assertEquals(2, topology.floorOf(41));
+    assertEquals('D', topology.podOf(40));
+    assertEquals('B', topology.podOf(51));
+    assertEquals(51, topology.firstCapsule(2, 'B'));
+    assertEquals(39, topology.freeOnFloor(1));
+    assertEquals(9, topology.freeInPod(1, 'A'));
+    assertThrows(IllegalArgumentException.class, () -> topology.freeInPod(1, 'E'));
+    assertThrows(IllegalArgumentException.class, () -> topology.freeOnFloor(4));
+
+    for (int n = 51; n <= 55; n++){
+      engine.checkIn(n, "Guest-" + n);
+    }
+    assertEquals(56, topology.freeCapsuleInPod(2, 'B'));
+    assertEquals(5, topology.freeInPod(2, 'B'));
+    assertEquals(3, topology.floorWithMostFree());
+    engine.checkOut(53);
+    assertEquals(53, topology.freeCapsuleInPod(2, 'B'));
+    assertEquals(1, topology.freeBetween(52, 54));
+    assertEquals(2, topology.freeBetween(52, 56));
+  }
+
+  @Test
+  public void shouldFindNearestFreeCapsuleTest(){
+    BookingEngine engine = new BookingEngine(30);
+    HotelTopology topology = HotelTopology.attach(engine, 1, 3, 10);
+    for (int n = 10; n <= 20; n++){
+      engine.checkIn(n, "Guest-" + n);
+    }
+    assertEquals(9, topology.nearestFree(14));
+    assertEquals(21, topology.nearestFree(16));
+    // equally close: the lower one
+    engine.checkOut(10);
+    engine.checkIn(9, "Guest-9");
+    assertEquals(5, topology.nearestFree(5));
+
+    CheckInResult booked = topology.checkInAt(15, "Mary");
+    assertEquals(10, booked.getCapsuleNumber());
+    assertEquals("Mary", engine.guestAt(10));
+  }
+
+  @Test
+  public void shouldCountMissingCapsulesAsOccupiedTest(){
+    // the layout has 40 capsules, the hotel 25
+    BookingEngine engine = new BookingEngine(25);
+    HotelTopology topology = HotelTopology.attach(engine, 2, 2, 10);
+    assertEquals(5, topology.freeOnFloor(2));
+    assertEquals(0, topology.freeInPod(2, 'B'));
+    assertEquals(0, topology.freeCapsuleInPod(2, 'B'));
+    assertEquals(25, topology.nearestFree(40));
+
+    assertTrue(engine.resize(35).isSuccess());
+    assertEquals(5, topology.freeInPod(2, 'B'));
+    assertTrue(engine.resize(10).isSuccess());
+    assertEquals(0, topology.freeOnFloor(2));
+    assertEquals(10, topology.freeOnFloor(1));
+    for (int n = 1; n <= 10; n++){
+      engine.checkIn(n, "Guest-" + n);
+    }
+    assertEquals(0, topology.nearestFree(20));
+    assertEquals(BookingError.NO_VACANCY, topology.checkInAt(1, "Zoë").getError());
+  }
+
+  // a capsule waiting for housekeeping cannot be booked, so it is not free either
+  @Test
+  public void shouldCountDirtyCapsulesAsOccupiedTest(){
+    BookingEngine engine = new BookingEngine(30);
+    engine.enableTurnover();
+    engine.checkIn(5, "Anna");
+    engine.checkOut(5);
+    HotelTopology topology = HotelTopology.attach(engine, 1, 3, 10);
+    assertEquals(9, topology.freeInPod(1, 'A'));
+    for (int n = 10; n <= 20; n++){
+      engine.checkIn(n, "Guest-" + n);
+    }
+    engine.checkOut(15);
+    assertTrue(engine.isDirty(15));
+    assertEquals(18, topology.freeOnFloor(1));
+    assertEquals(9, topology.nearestFree(14));
+    assertEquals(4, topology.nearestFree(5));
+    CheckInResult booked = topology.checkInAt(15, "Mary");
+    assertEquals(9, booked.getCapsuleNumber());
+
+    assertTrue(engine.finishCleaning(15));
+    assertEquals(18, topology.freeOnFloor(1));
+    assertEquals(15, topology.nearestFree(15));
+    assertEquals(15, topology.checkInAt(14, "John").getCapsuleNumber());
+    assertTrue(engine.finishCleaning(5));
+    assertEquals(5, topology.nearestFree(5));
+    assertFalse(engine.finishCleaning(5));
+    assertEquals(18, topology.freeOnFloor(1));
+  }
+
+  // random bookings, every count and search checked against a scan of the hotel
+  @Test
+  public void shouldMatchScanAfterRandomBookingsTest(){
+    int capacity = 5 * 7 * 13;
+    BookingEngine engine = new BookingEngine(capacity);
+    Random random = new Random(42);
+    for (int i = 0; i < 300; i++){
+      engine.checkIn(random.nextInt(capacity) + 1, "Early-" + i);
+    }
+    HotelTopology topology = HotelTopology.attach(engine, 5, 7, 13);
+    for (int round = 0; round < 2_000; round++){
+      int capsuleNumber = random.nextInt(capacity) + 1;
+      if (engine.guestAt(capsuleNumber) == null){
+        engine.checkIn(capsuleNumber, "Guest-" + round);
+      } else {
+        engine.checkOut(capsuleNumber);
+      }
+      if (round % 50 == 0){
+        for (int floor = 1; floor <= 5; floor++){
+          int first = (floor - 1) * 7 * 13 + 1;
+          assertEquals(freeBetween(engine, first, first + 7 * 13 - 1), topology.freeOnFloor(floor));
+          for (char pod = 'A'; pod <= 'G'; pod++){
+            int podFirst = topology.firstCapsule(floor, pod);
+            assertEquals(freeBetween(engine, podFirst, podFirst + 12), topology.freeInPod(floor, pod));
+          }
+        }
+        int from = random.nextInt(capacity) + 1;
+        assertEquals(nearestFree(engine, from), topology.nearestFree(from));
+      }
+    }
+  }
+
+  private static int freeBetween(HotelService hotel, int first, int last){
+    int free = 0;
+    for (int n = first; n <= last; n++){
+      if (hotel.guestAt(n) == null){
+        free++;
+      }
+    }
+    return free;
+  }
+
+  private static int nearestFree(HotelService hotel, int capsuleNumber){
+    for (int distance = 0; distance < hotel.capacity(); distance++){
+      if (capsuleNumber - distance >= 1 && hotel.guestAt(capsuleNumber - distance) == null){
+        return capsuleNumber - distance;
+      }
+      if (capsuleNumber + distance <= hotel.capacity() && hotel.guestAt(capsuleNumber + distance) == null){
+        return capsuleNumber + distance;
+      }
+    }
+    return 0;
+  }
+}
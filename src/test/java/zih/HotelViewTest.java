@@ -0,0 +1,126 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotelViewTest {
+
+  @Test
+  public void shouldKeepHotelAsItWasWhenOpenedTest(){
+    BookingEngine engine = new BookingEngine(200_000);
+    engine.checkIn(1, "John");
+    engine.checkIn(70_000, "Mary");
+    HotelView view = engine.openView();
+    engine.checkOut(1);
+    engine.checkIn(2, "Anna");
+    engine.checkOut(70_000);
+    engine.checkIn(70_000, "Zoë");
+    engine.checkIn(199_999, "Late");
+
+    assertEquals("John", view.guestAt(1));
+    assertNull(view.guestAt(2));
+    assertEquals("Mary", view.guestAt(70_000));
+    assertNull(view.guestAt(199_999));
+    assertEquals(1, view.nextOccupied(1));
+    assertEquals(70_000, view.nextOccupied(2));
+    assertEquals(0, view.nextOccupied(70_001));
+    assertEquals(2, view.occupiedCount());
+    // the live hotel moved on
+    assertEquals("Anna", engine.guestAt(2));
+    assertEquals("Zoë", engine.guestAt(70_000));
+    assertEquals(4, view.changedCount());
+    assertThrows(UnsupportedOperationException.class, () -> view.checkIn(3, "Nobody"));
+
+    // a closed view is no longer told about bookings
+    view.close();
+    engine.checkOut(2);
+    assertEquals(4, view.changedCount());
+  }
+
+  @Test
+  public void shouldKeepBatchesAndResizesOutOfOpenViewTest() throws Exception {
+    BookingEngine engine = new BookingEngine(100);
+    engine.checkIn(10, "John");
+    try (HotelView view = engine.openView()){
+      engine.checkInAll(List.of("A", "B", "C"), AssignmentPolicy.LOWEST_NUMBERED, BatchMode.ALL_OR_NOTHING);
+      engine.checkOutAll(new int[]{10}, BatchMode.BEST_EFFORT);
+      assertTrue(engine.resize(50).isSuccess());
+      assertTrue(engine.resize(20_000).isSuccess());
+      engine.checkIn(90, "Outside");
+
+      assertEquals(100, view.capacity());
+      assertEquals(1, view.occupiedCount());
+      StringWriter listing = new StringWriter();
+      GuestRangeRenderer.renderOccupied(view, 0, 100, listing);
+      assertEquals("Capsule: Guest\n10: John\n", listing.toString());
+      assertNull(view.guestAt(90));
+    }
+  }
+
+  // guests move capsule by capsule (new capsule first, then out of the old one):
+  // at every moment each is in one or two capsules, so every view must find each of them
+  @Test
+  public void shouldSeeOneMomentWhileGuestsMoveTest() throws Exception {
+    int guests = 64;
+    int capacity = 4_096;
+    BookingEngine engine = new BookingEngine(capacity);
+    for (int g = 0; g < guests; g++){
+      engine.checkIn(g + 1, "Guest-" + g);
+    }
+    AtomicBoolean running = new AtomicBoolean(true);
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    List<Future<?>> movers = new ArrayList<>();
+    for (int t = 0; t < 2; t++){
+      int first = t * guests / 2;
+      movers.add(pool.submit(() -> {
+        int[] at = new int[guests / 2];
+        for (int i = 0; i < at.length; i++){
+          at[i] = first + i + 1;
+        }
+        int round = 0;
+        while (running.get()){
+          for (int i = 0; i < at.length; i++){
+            int g = first + i;
+            // alternate between a high and a low capsule, so moves go both ways
+            int target = round % 2 == 0 ? capacity - g : g + 1;
+            assertTrue(engine.checkIn(target, "Guest-" + g).isSuccess());
+            assertTrue(engine.checkOut(at[i]).isSuccess());
+            at[i] = target;
+          }
+          round++;
+        }
+      }));
+    }
+    try {
+      for (int pass = 0; pass < 200; pass++){
+        try (HotelView view = engine.openView()){
+          Map<String, Integer> seen = new HashMap<>();
+          for (int capsuleNumber = view.nextOccupied(1); capsuleNumber != 0;
+               capsuleNumber = view.nextOccupied(capsuleNumber + 1)){
+            seen.merge(view.guestAt(capsuleNumber), 1, Integer::sum);
+          }
+          assertEquals(guests, seen.size(), "pass " + pass + " lost a guest: " + seen);
+          assertEquals(seen.values().stream().mapToInt(Integer::intValue).sum(), view.occupiedCount());
+        }
+      }
+    } finally {
+      running.set(false);
+      for (Future<?> mover : movers){
+        mover.get(30, TimeUnit.SECONDS);
+      }
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HousekeepingTest {
+
+  // notes the order of cleanings; the first one waits until the test opens the gate
+  private static final class GatedHousekeeper implements Housekeeper {
+    final List<Integer> cleaned = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch gate = new CountDownLatch(1);
+
+    @Override
+    public void clean(int capsuleNumber, int floor, int previousFloor) throws InterruptedException {
+      if (cleaned.isEmpty()){
+        started.countDown();
+        gate.await();
+      }
+      cleaned.add(capsuleNumber);
+    }
+  }
+
+  @Test
+  public void shouldCleanCheckedOutCapsulesTest() throws Exception {
+    BookingEngine engine = new BookingEngine(20);
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 64);
+         Housekeeping housekeeping = Housekeeping.start(engine, bus, 10, 2, (capsule, floor, previous) -> { })){
+      for (int n = 1; n <= 5; n++){
+        engine.checkIn(n, "Guest-" + n);
+      }
+      engine.checkOutAll(new int[]{1, 2, 3, 4, 5}, BatchMode.ALL_OR_NOTHING);
+      assertTrue(housekeeping.awaitIdle(10, TimeUnit.SECONDS));
+
+      assertEquals(0, engine.dirtyCount());
+      assertEquals(5, housekeeping.cleanedCount());
+      assertEquals(5, housekeeping.queueLatency().getCount());
+      assertEquals(0, housekeeping.pendingCount());
+      assertEquals(1, engine.checkInAny("John", AssignmentPolicy.LOWEST_NUMBERED).getCapsuleNumber());
+    }
+  }
+
+  @Test
+  public void shouldCleanNeediestFloorFirstTest() throws Exception {
+    // four floors of 10; floor 3 takes most check-ins and has one clean capsule left
+    BookingEngine engine = new BookingEngine(40);
+    GatedHousekeeper housekeeper = new GatedHousekeeper();
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 64);
+         Housekeeping housekeeping = Housekeeping.start(engine, bus, 10, 1, housekeeper)){
+      for (int n = 1; n <= 3; n++){
+        engine.checkIn(n, "Guest-" + n);
+      }
+      for (int n = 21; n <= 29; n++){
+        engine.checkIn(n, "Guest-" + n);
+      }
+      engine.checkOut(1);
+      assertTrue(housekeeper.started.await(10, TimeUnit.SECONDS));
+      engine.checkOut(2);
+      engine.checkOut(3);
+      engine.checkOut(21);
+      awaitPending(housekeeping, 3);
+      housekeeper.gate.countDown();
+
+      assertTrue(housekeeping.awaitIdle(10, TimeUnit.SECONDS));
+      assertEquals(List.of(1, 21, 2, 3), housekeeper.cleaned);
+      assertEquals(2, housekeeping.floorChangeCount());
+    }
+  }
+
+  @Test
+  public void shouldStayOnFloorUnlessAnotherNeedsMuchMoreTest() throws Exception {
+    BookingEngine engine = new BookingEngine(40);
+    GatedHousekeeper housekeeper = new GatedHousekeeper();
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 64);
+         Housekeeping housekeeping = Housekeeping.start(engine, bus, 10, 1, housekeeper)){
+      for (int n = 1; n <= 3; n++){
+        engine.checkIn(n, "Guest-" + n);
+      }
+      for (int n = 11; n <= 14; n++){
+        engine.checkIn(n, "Guest-" + n);
+      }
+      engine.checkOut(1);
+      assertTrue(housekeeper.started.await(10, TimeUnit.SECONDS));
+      // floor 2 needs it a little more and asked first, the worker is on floor 1
+      engine.checkOut(11);
+      engine.checkOut(2);
+      awaitPending(housekeeping, 2);
+      housekeeper.gate.countDown();
+
+      assertTrue(housekeeping.awaitIdle(10, TimeUnit.SECONDS));
+      assertEquals(List.of(1, 2, 11), housekeeper.cleaned);
+      assertEquals(1, housekeeping.floorChangeCount());
+    }
+  }
+
+  // a shrink leaves floor 3 two capsules, one dirty: it needs the worker more than floor 2 now
+  @Test
+  public void shouldReorderFloorsWhenHotelIsResizedTest() throws Exception {
+    BookingEngine engine = new BookingEngine(30);
+    GatedHousekeeper housekeeper = new GatedHousekeeper();
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 64);
+         Housekeeping housekeeping = Housekeeping.start(engine, bus, 10, 1, housekeeper)){
+      for (int n : new int[]{1, 11, 12, 21}){
+        engine.checkIn(n, "Guest-" + n);
+      }
+      engine.checkOut(1);
+      assertTrue(housekeeper.started.await(10, TimeUnit.SECONDS));
+      engine.checkOut(11);
+      engine.checkOut(12);
+      engine.checkOut(21);
+      awaitPending(housekeeping, 3);
+      assertTrue(engine.resize(22).isSuccess());
+      housekeeper.gate.countDown();
+
+      assertTrue(housekeeping.awaitIdle(10, TimeUnit.SECONDS));
+      assertEquals(List.of(1, 21, 11, 12), housekeeper.cleaned);
+    }
+  }
+
+  // a housekeeper that keeps failing one capsule is backed off, then that capsule is given up
+  @Test
+  public void shouldGiveUpCleaningThatKeepsFailingTest() throws Exception {
+    BookingEngine engine = new BookingEngine(20);
+    List<Long> attempts = Collections.synchronizedList(new ArrayList<>());
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 64);
+         Housekeeping housekeeping = Housekeeping.start(engine, bus, 10, 1, (capsule, floor, previous) -> {
+           if (capsule == 3){
+             attempts.add(System.nanoTime());
+             throw new IllegalStateException("handheld offline");
+           }
+         })){
+      for (int n = 1; n <= 4; n++){
+        engine.checkIn(n, "Guest-" + n);
+      }
+      engine.checkOutAll(new int[]{3, 4}, BatchMode.ALL_OR_NOTHING);
+      assertTrue(housekeeping.awaitIdle(30, TimeUnit.SECONDS));
+
+      assertEquals(Housekeeping.MAX_ATTEMPTS, attempts.size());
+      // at least 10 + 20 + ... + 640 ms of backoff between the attempts
+      assertTrue(attempts.get(attempts.size() - 1) - attempts.get(0) >= TimeUnit.MILLISECONDS.toNanos(1_270));
+      assertEquals(1, housekeeping.failedCount());
+      assertEquals(1, housekeeping.cleanedCount());
+      assertTrue(engine.isDirty(3));
+      assertFalse(engine.isDirty(4));
+      assertEquals(0, housekeeping.pendingCount());
+    }
+  }
+
+  // a wave of check-outs empties the hotel while guests keep asking for any capsule
+  @Test
+  public void shouldRefillHotelOnlyWithCleanCapsulesTest() throws Exception {
+    int capsules = 200;
+    BookingEngine engine = new BookingEngine(capsules);
+    for (int n = 1; n <= capsules; n++){
+      engine.checkIn(n, "Early-" + n);
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try (BookingEventBus bus = BookingEventBus.attach(engine, 256);
+         Housekeeping housekeeping = Housekeeping.start(engine, bus, 20, 4, (capsule, floor, previous) -> {
+           // a cleaned capsule must not have been booked meanwhile
+           assertTrue(engine.isDirty(capsule));
+         })){
+      int[] all = new int[capsules];
+      for (int n = 1; n <= capsules; n++){
+        all[n - 1] = n;
+      }
+      assertTrue(engine.checkOutAll(all, BatchMode.ALL_OR_NOTHING).isSuccess());
+      List<Future<?>> arrivals = new ArrayList<>();
+      for (int t = 0; t < 4; t++){
+        int thread = t;
+        arrivals.add(pool.submit(() -> {
+          for (int i = 0; i < capsules / 4; i++){
+            CheckInResult result;
+            do {
+              result = engine.checkInAny("Guest-" + thread + "-" + i, AssignmentPolicy.SPREAD_OUT);
+            } while (result.getError() == BookingError.NO_VACANCY);
+            assertTrue(result.isSuccess());
+          }
+        }));
+      }
+      for (Future<?> arrival : arrivals){
+        arrival.get(30, TimeUnit.SECONDS);
+      }
+      assertTrue(housekeeping.awaitIdle(10, TimeUnit.SECONDS));
+      assertEquals(capsules, engine.occupiedCount());
+      assertEquals(0, engine.dirtyCount());
+      assertEquals(capsules, housekeeping.cleanedCount());
+      assertEquals(capsules, housekeeping.queueLatency().getCount());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static void awaitPending(Housekeeping housekeeping, int pending) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (housekeeping.pendingCount() != pending){
+      assertTrue(System.nanoTime() < deadline, "still " + housekeeping.pendingCount() + " pending");
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadSimulatorTest {
+
+  @Test
+  public void shouldPlaySameBookingsForSameSeedTest(){
+    LoadSimulator simulator = new LoadSimulator();
+    SimulationScenario scenario = SimulationScenario.groupBursts(500).days(3).seed(7);
+    SimulationReport first = simulator.run(scenario);
+    SimulationReport second = simulator.run(scenario);
+
+    assertTrue(first.getCheckIns() > 0);
+    assertEquals(first.getCheckInAttempts(), second.getCheckInAttempts());
+    assertEquals(first.getCheckIns(), second.getCheckIns());
+    assertEquals(first.getCheckOuts(), second.getCheckOuts());
+    assertArrayEquals(first.occupancyCurve(), second.occupancyCurve());
+    assertEquals(3 * 24, first.occupancyCurve().length);
+    assertEquals(0, first.errorCount(BookingError.UNOCCUPIED));
+  }
+
+  @Test
+  public void shouldRefuseGuestsTheWayTheDeskDoesTest(){
+    // everyone asks for a capsule of their own, some past the end of the hotel
+    SimulationReport requested = new LoadSimulator().run(
+            SimulationScenario.steady(200).requestedShare(1).days(2));
+    assertTrue(requested.errorCount(BookingError.OCCUPIED) > 0);
+    assertTrue(requested.errorCount(BookingError.DOES_NOT_EXIST) > 0);
+    assertEquals(0, requested.errorCount(BookingError.NO_VACANCY));
+    assertEquals(requested.getCheckInAttempts() - requested.getCheckIns(),
+            requested.errorCount(BookingError.OCCUPIED) + requested.errorCount(BookingError.DOES_NOT_EXIST));
+    assertTrue(requested.getCheckOuts() <= requested.getCheckIns());
+    assertTrue(requested.getPeakOccupancy() <= 200);
+
+    // groups of 5 into 12 capsules: the third finds room for two
+    SimulationReport groups = new LoadSimulator().run(
+            new SimulationScenario("buses", 12).groupsPerDay(20).groupSize(5).meanNights(3).days(1));
+    assertTrue(groups.errorCount(BookingError.NO_VACANCY) > 0);
+    assertEquals(12, groups.getPeakOccupancy());
+    assertEquals(0, groups.getCheckInAttempts() % 5);
+  }
+
+  // gaps of a few dozen milliseconds, rounded to whole ones, would run about 1.4% fast
+  @Test
+  public void shouldArriveAtScenarioRateTest(){
+    SimulationReport report = new LoadSimulator().run(
+            new SimulationScenario("rush", 1).walkInsPerHour(100_000).requestedShare(0).days(1));
+    double expected = 100_000 * 24;
+    assertEquals(expected, report.getCheckInAttempts(), expected * 0.005);
+  }
+
+  @Test
+  public void shouldEmptyHotelInMorningWaveTest(){
+    SimulationReport report = new LoadSimulator().run(SimulationScenario.checkoutWave(1_000).days(2));
+    double[] curve = report.occupancyCurve();
+    // full before 10:00 on the second day, mostly empty two hours later
+    assertTrue(curve[24 + 9] > 950, "at 9:00 " + curve[24 + 9]);
+    assertTrue(curve[24 + 12] < 300, "at 12:00 " + curve[24 + 12]);
+    assertTrue(report.rejectionRate(BookingError.NO_VACANCY) > 0);
+    assertTrue(report.operationsPerSecond() > 0);
+  }
+
+  @Test
+  public void shouldMergeReplicationsRunSideBySideTest(){
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      LoadSimulator simulator = new LoadSimulator(pool, BookingEngine::new);
+      List<SimulationReport> reports = simulator.runAll(List.of(
+              SimulationScenario.steady(300).days(2).replications(3).seed(11),
+              SimulationScenario.checkoutWave(300).days(2).replications(2)));
+
+      assertEquals("steady", reports.get(0).getName());
+      assertEquals("check-out wave", reports.get(1).getName());
+      assertEquals(3, reports.get(0).getReplications());
+      long checkIns = 0;
+      double[] curve = new double[2 * 24];
+      for (long seed = 11; seed < 14; seed++){
+        SimulationReport single = simulator.run(SimulationScenario.steady(300).days(2).seed(seed));
+        checkIns += single.getCheckIns();
+        double[] singleCurve = single.occupancyCurve();
+        for (int i = 0; i < curve.length; i++){
+          curve[i] += singleCurve[i] / 3;
+        }
+      }
+      assertEquals(checkIns, reports.get(0).getCheckIns());
+      assertArrayEquals(curve, reports.get(0).occupancyCurve(), 1e-9);
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedSnapshotTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  public void shouldReadGuestsBackFromSnapshotTest() throws Exception {
+    BookingEngine engine = new BookingEngine(200);
+    engine.checkIn(1, "John");
+    engine.checkIn(64, "Mary");
+    engine.checkIn(65, "John");
+    engine.checkIn(200, "Zoë");
+
+    Path file = directory.resolve("hotel.dat");
+    MappedSnapshot.write(engine, file, 7);
+    MappedSnapshot snapshot = MappedSnapshot.open(file);
+
+    assertEquals(200, snapshot.capacity());
+    assertEquals(4, snapshot.guestCount());
+    assertEquals(7, snapshot.generation());
+    assertEquals("John", snapshot.guestAt(1));
+    assertEquals("Mary", snapshot.guestAt(64));
+    assertEquals("John", snapshot.guestAt(65));
+    assertEquals("Zoë", snapshot.guestAt(200));
+    assertNull(snapshot.guestAt(2));
+    assertNull(snapshot.guestAt(201));
+    assertTrue(snapshot.isOccupied(64));
+    assertFalse(snapshot.isOccupied(63));
+  }
+
+  @Test
+  public void shouldBookOnTopOfMappedSnapshotTest() throws Exception {
+    BookingEngine saved = new BookingEngine(100);
+    saved.checkIn(10, "John");
+    saved.checkIn(20, "Mary");
+    Path file = directory.resolve("hotel.dat");
+    MappedSnapshot.write(saved, file, 0);
+
+    BookingEngine engine = new BookingEngine(MappedSnapshot.open(file));
+    // counts come from the snapshot's occupancy bits, nothing has been loaded yet
+    assertEquals(2, engine.occupiedCount());
+    // capsule #10 is index 9
+    assertEquals(10, engine.occupancy.nextFree(9));
+
+    assertEquals(BookingError.OCCUPIED, engine.checkIn(10, "Anna").getError());
+    assertEquals("Mary", engine.checkOut(20).getGuestName());
+    assertEquals(BookingError.UNOCCUPIED, engine.checkOut(20).getError());
+    assertTrue(engine.checkIn(20, "Anna").isSuccess());
+    assertTrue(engine.checkIn(30, "Paul").isSuccess());
+
+    assertEquals("John", engine.guestAt(10));
+    assertEquals("Anna", engine.guestAt(20));
+    assertEquals("Paul", engine.guestAt(30));
+    assertNull(engine.guestAt(40));
+    assertEquals(3, engine.occupiedCount());
+  }
+
+  @Test
+  public void shouldSnapshotLazyEngineAgainTest() throws Exception {
+    BookingEngine saved = new BookingEngine(100);
+    saved.checkIn(5, "John");
+    Path first = directory.resolve("first.dat");
+    MappedSnapshot.write(saved, first, 0);
+
+    BookingEngine engine = new BookingEngine(MappedSnapshot.open(first));
+    engine.checkIn(6, "Mary");
+    Path second = directory.resolve("second.dat");
+    MappedSnapshot.write(engine, second, 1);
+
+    MappedSnapshot snapshot = MappedSnapshot.open(second);
+    assertEquals(2, snapshot.guestCount());
+    assertEquals("John", snapshot.guestAt(5));
+    assertEquals("Mary", snapshot.guestAt(6));
+  }
+}
@@ -0,0 +1,108 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OccupancyAnalyticsTest {
+
+  @Test
+  public void shouldCountCheckInsAndOccupiedTimeTest(){
+    AtomicLong clock = new AtomicLong(1_000);
+    BookingEngine engine = new BookingEngine(10);
+    engine.checkIn(1, "Early");
+    OccupancyAnalytics analytics = OccupancyAnalytics.attach(engine, clock::get);
+
+    clock.addAndGet(100);
+    engine.checkIn(2, "John");
+    clock.addAndGet(50);
+    engine.checkOut(2);
+    engine.checkIn(2, "Mary");
+    clock.addAndGet(50);
+
+    // the early guest counts from attach, without a check-in
+    assertEquals(0, analytics.checkIns(1));
+    assertEquals(200, analytics.occupiedNanos(1));
+    assertEquals(2, analytics.checkIns(2));
+    assertEquals(100, analytics.occupiedNanos(2));
+    assertEquals(2, analytics.totalCheckIns());
+    assertEquals(200, analytics.elapsedNanos());
+    assertThrows(IllegalArgumentException.class, () -> analytics.checkIns(11));
+
+    assertArrayEquals(new long[]{2, 0}, analytics.checkInsByBlock(5));
+    assertArrayEquals(new double[]{0.3, 0.0}, analytics.utilizationByBlock(5), 1e-9);
+    assertArrayEquals(new double[]{0.4, 0.0}, analytics.occupancyByBlock(5), 1e-9);
+    // 8 capsules without check-ins, one with 1 (the early one has none), one with 2-3
+    int[] histogram = analytics.turnoverHistogram();
+    assertEquals(9, histogram[0]);
+    assertEquals(0, histogram[1]);
+    assertEquals(1, histogram[2]);
+  }
+
+  @Test
+  public void shouldFindVacancyRunsTest(){
+    BookingEngine engine = new BookingEngine(20);
+    OccupancyAnalytics analytics = OccupancyAnalytics.attach(engine);
+    for (int n : new int[]{3, 4, 10, 20}){
+      engine.checkIn(n, "Guest-" + n);
+    }
+    // free: 1-2, 5-9, 11-19
+    OccupancyAnalytics.VacancyRuns runs = analytics.vacancyRuns();
+    assertEquals(3, runs.getCount());
+    assertEquals(9, runs.getLongest());
+    assertEquals(11, runs.getFirstCapsule());
+    int[] histogram = runs.getHistogram();
+    assertEquals(1, histogram[2]);
+    assertEquals(1, histogram[3]);
+    assertEquals(1, histogram[4]);
+
+    // a capsule waiting for housekeeping is not vacant
+    engine.enableTurnover();
+    engine.checkIn(15, "Guest-15");
+    engine.checkOut(15);
+    assertEquals(5, analytics.vacancyRuns().getLongest());
+    assertEquals(5, analytics.vacancyRuns().getFirstCapsule());
+  }
+
+  @Test
+  public void shouldFollowResizeTest(){
+    BookingEngine engine = new BookingEngine(100);
+    OccupancyAnalytics analytics = OccupancyAnalytics.attach(engine);
+    assertTrue(engine.resize(200_000).isSuccess());
+    engine.checkIn(150_000, "John");
+    engine.checkOut(150_000);
+    engine.checkIn(150_000, "Mary");
+    assertEquals(2, analytics.checkIns(150_000));
+    assertEquals(2, analytics.checkInsByBlock(100_000)[1]);
+    assertEquals(2, analytics.occupancyByBlock(100_000).length);
+
+    engine.checkOut(150_000);
+    assertTrue(engine.resize(50).isSuccess());
+    assertEquals(1, analytics.occupancyByBlock(100).length);
+    assertEquals(50, analytics.vacancyRuns().getLongest());
+    assertEquals(0, analytics.totalCheckIns());
+  }
+
+  // the parallel path over a hotel big enough to take it
+  @Test
+  public void shouldAggregateLargeHotelInParallelTest(){
+    int capacity = OccupancyAnalytics.PARALLEL_THRESHOLD + 1_000;
+    BookingEngine engine = new BookingEngine(capacity);
+    OccupancyAnalytics analytics = OccupancyAnalytics.attach(engine);
+    for (int n = 1; n <= capacity; n += 100){
+      engine.checkIn(n, "Guest-" + n);
+    }
+    long[] checkIns = analytics.checkInsByBlock(100);
+    assertEquals((capacity + 99) / 100, checkIns.length);
+    for (long count : checkIns){
+      assertEquals(1, count);
+    }
+    assertEquals(checkIns.length, analytics.totalCheckIns());
+    assertEquals(checkIns.length, analytics.turnoverHistogram()[1]);
+    assertEquals(capacity - checkIns.length, analytics.turnoverHistogram()[0]);
+    assertEquals(99, analytics.vacancyRuns().getLongest());
+    assertEquals(0.01, analytics.occupancyByBlock(100)[7], 1e-9);
+  }
+}
@@ -0,0 +1,223 @@
+package zih;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OccupancyIndexTest {
+  OccupancyIndex occupancy;
+
+  @BeforeEach
+  public void setUp(){
+    // 150 capsules spans three words, the last one partly used
+    occupancy = new OccupancyIndex(150);
+  }
+
+  @Test
+  public void shouldStartEmptyTest(){
+    assertTrue(occupancy.isEmpty());
+    assertEquals(0, occupancy.occupiedCount());
+    assertEquals(150, occupancy.freeCount());
+    assertEquals(0, occupancy.firstFree());
+    assertEquals(-1, occupancy.firstOccupied());
+  }
+
+  @Test
+  public void shouldTrackOccupiedCountTest(){
+    assertTrue(occupancy.occupy(3));
+    assertFalse(occupancy.occupy(3));
+    assertTrue(occupancy.occupy(100));
+    assertEquals(2, occupancy.occupiedCount());
+    assertFalse(occupancy.isEmpty());
+
+    assertTrue(occupancy.release(3));
+    assertFalse(occupancy.release(3));
+    assertEquals(1, occupancy.occupiedCount());
+    assertTrue(occupancy.isOccupied(100));
+    assertFalse(occupancy.isOccupied(3));
+  }
+
+  @Test
+  public void shouldFindNextFreeAcrossWordsTest(){
+    for (int i = 0; i < 130; i++){
+      occupancy.occupy(i);
+    }
+    assertEquals(130, occupancy.firstFree());
+    assertEquals(130, occupancy.nextFree(64));
+
+    occupancy.release(70);
+    assertEquals(70, occupancy.nextFree(0));
+    assertEquals(130, occupancy.nextFree(71));
+  }
+
+  @Test
+  public void shouldReturnMinusOneWhenFullTest(){
+    for (int i = 0; i < 150; i++){
+      occupancy.occupy(i);
+    }
+    assertTrue(occupancy.isFull());
+    // bits past the capacity in the last word must not be reported as free
+    assertEquals(-1, occupancy.firstFree());
+    assertEquals(-1, occupancy.nextFree(149));
+    assertEquals(-1, occupancy.nextFree(150));
+  }
+
+  @Test
+  public void shouldFindNextOccupiedTest(){
+    occupancy.occupy(5);
+    occupancy.occupy(140);
+    assertEquals(5, occupancy.firstOccupied());
+    assertEquals(140, occupancy.nextOccupied(6));
+    assertEquals(-1, occupancy.nextOccupied(141));
+  }
+
+  @Test
+  public void shouldCountOccupiedInRangeTest(){
+    occupancy.occupy(0);
+    occupancy.occupy(63);
+    occupancy.occupy(64);
+    occupancy.occupy(127);
+    occupancy.occupy(149);
+
+    assertEquals(5, occupancy.countOccupied(0, 150));
+    assertEquals(2, occupancy.countOccupied(63, 65));
+    assertEquals(1, occupancy.countOccupied(64, 127));
+    assertEquals(3, occupancy.countOccupied(64, 150));
+    assertEquals(0, occupancy.countOccupied(10, 10));
+    assertEquals(9, occupancy.countFree(0, 10));
+  }
+
+  @Test
+  public void shouldRejectIndexOutsideCapacityTest(){
+    assertThrows(IndexOutOfBoundsException.class, () -> occupancy.occupy(150));
+    assertThrows(IndexOutOfBoundsException.class, () -> occupancy.isOccupied(-1));
+    assertThrows(IndexOutOfBoundsException.class, () -> occupancy.countOccupied(0, 151));
+  }
+
+  // 300,000 capsules need three summary levels above the capsule bits
+  @Test
+  public void shouldFindFreeCapsuleThroughSummaryLevelsTest(){
+    int capacity = 300_000;
+    OccupancyIndex large = new OccupancyIndex(capacity);
+    for (int i = 0; i < capacity; i++){
+      large.occupy(i);
+    }
+    assertEquals(-1, large.firstFree());
+    assertEquals(-1, large.nextFreeWrapping(1234));
+
+    large.release(271_828);
+    assertEquals(271_828, large.firstFree());
+    assertEquals(271_828, large.nextFreeWrapping(280_000));
+    assertEquals(-1, large.nextFree(271_829));
+
+    // filling the word again must hide it from the summary once more
+    large.occupy(271_828);
+    large.release(5);
+    assertEquals(5, large.nextFree(0));
+    assertEquals(5, large.nextFreeWrapping(6));
+    assertEquals(-1, large.nextOccupied(capacity));
+  }
+
+  @Test
+  public void shouldWrapAroundWhenSearchingFreeTest(){
+    for (int i = 10; i < 150; i++){
+      occupancy.occupy(i);
+    }
+    assertEquals(-1, occupancy.nextFree(10));
+    assertEquals(0, occupancy.nextFreeWrapping(10));
+    assertEquals(3, occupancy.nextFreeWrapping(3));
+  }
+
+  // growing past a chunk keeps every bit that was there and adds free capsules
+  @Test
+  public void shouldGrowAcrossChunksTest(){
+    for (int i = 0; i < 150; i++){
+      occupancy.occupy(i);
+    }
+    occupancy.release(70);
+    assertEquals(-1, occupancy.nextFree(71));
+
+    occupancy.resize(200_000);
+    assertEquals(200_000, occupancy.capacity());
+    assertEquals(149, occupancy.occupiedCount());
+    assertTrue(occupancy.isOccupied(149));
+    assertFalse(occupancy.isOccupied(150));
+    assertEquals(70, occupancy.firstFree());
+    assertEquals(150, occupancy.nextFree(71));
+    assertEquals(-1, occupancy.nextOccupied(150));
+
+    for (int i = 150; i < 199_999; i++){
+      occupancy.occupy(i);
+    }
+    assertEquals(199_999, occupancy.nextFree(71));
+    assertTrue(occupancy.occupy(199_999));
+    assertEquals(-1, occupancy.nextFree(71));
+    assertEquals(70, occupancy.nextFreeWrapping(71));
+  }
+
+  @Test
+  public void shouldShrinkOnlyOverOccupiedCapsulesTest(){
+    occupancy.resize(100_000);
+    occupancy.occupy(5);
+    assertThrows(IllegalStateException.class, () -> occupancy.resize(120));
+    assertEquals(100_000, occupancy.capacity());
+
+    for (int i = 120; i < 100_000; i++){
+      occupancy.occupy(i);
+    }
+    occupancy.resize(120);
+    assertEquals(120, occupancy.capacity());
+    assertEquals(1, occupancy.occupiedCount());
+    assertEquals(-1, occupancy.nextOccupied(6));
+    assertThrows(IndexOutOfBoundsException.class, () -> occupancy.occupy(120));
+
+    // the dropped capsules come back free
+    occupancy.resize(130);
+    assertEquals(120, occupancy.nextFree(120));
+    assertEquals(0, occupancy.countOccupied(6, 130));
+    assertEquals(129, occupancy.nextFree(129));
+    assertEquals(-1, occupancy.nextFree(130));
+  }
+
+  // runs in words that are empty, full and mixed, checked against a scan of the bits
+  @Test
+  public void shouldFindFreeRunsTest(){
+    occupancy.resize(1_000);
+    Random random = new Random(3);
+    for (int i = 0; i < 1_000; i++){
+      // long stretches of both, so whole words of either come up
+      if ((i / 150) % 2 == 0 ? random.nextInt(10) == 0 : random.nextInt(10) != 0){
+        occupancy.occupy(i);
+      }
+    }
+    List<int[]> expected = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++){
+      if (!occupancy.isOccupied(i)){
+        int start = i;
+        while (i < 1_000 && !occupancy.isOccupied(i)){
+          i++;
+        }
+        expected.add(new int[]{start, i - start});
+      }
+    }
+    List<int[]> runs = new ArrayList<>();
+    occupancy.forEachFreeRun((fromIndex, length) -> runs.add(new int[]{fromIndex, length}));
+    assertEquals(expected.size(), runs.size());
+    for (int r = 0; r < runs.size(); r++){
+      assertArrayEquals(expected.get(r), runs.get(r));
+    }
+
+    // a free tail ends at the capacity, not at the end of its word
+    OccupancyIndex small = new OccupancyIndex(70);
+    small.occupy(0);
+    List<int[]> tail = new ArrayList<>();
+    small.forEachFreeRun((fromIndex, length) -> tail.add(new int[]{fromIndex, length}));
+    assertEquals(1, tail.size());
+    assertArrayEquals(new int[]{1, 69}, tail.get(0));
+  }
+}
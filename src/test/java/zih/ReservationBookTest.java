@@ -0,0 +1,131 @@
+package zih;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReservationBookTest {
+  static final LocalDate MAY_1 = LocalDate.of(2026, 5, 1);
+
+  static LocalDate may(int day){
+    return MAY_1.plusDays(day - 1);
+  }
+
+  @Test
+  public void shouldRefuseOverlappingStaysOnlyTest(){
+    ReservationBook book = new ReservationBook(10);
+    ReservationResult john = book.reserve(3, "John", may(1), may(5));
+    assertTrue(john.isSuccess());
+    assertEquals(4, john.getReservation().getNights());
+
+    assertEquals(BookingError.OCCUPIED, book.reserve(3, "Mary", may(4), may(6)).getError());
+    assertEquals(BookingError.OCCUPIED, book.reserve(3, "Mary", may(2), may(3)).getError());
+    assertEquals(BookingError.DOES_NOT_EXIST, book.reserve(11, "Mary", may(1), may(2)).getError());
+    // Mary arrives the day John leaves, and another guest had the nights before John
+    assertTrue(book.reserve(3, "Mary", may(5), may(7)).isSuccess());
+    assertTrue(book.reserve(3, "Anna", LocalDate.of(2026, 4, 28), may(1)).isSuccess());
+    assertThrows(IllegalArgumentException.class, () -> book.reserve(4, "Zoë", may(2), may(2)));
+
+    assertEquals(List.of("Anna", "John", "Mary"),
+            book.reservationsOf(3).stream().map(Reservation::getGuestName).toList());
+    assertEquals("John", book.reservationAt(3, may(4)).getGuestName());
+    assertEquals("Mary", book.reservationAt(3, may(5)).getGuestName());
+    assertNull(book.reservationAt(3, may(7)));
+    assertFalse(book.isFree(3, may(6), may(8)));
+    assertTrue(book.isFree(3, may(7), may(9)));
+    assertEquals(3, book.reservationCount());
+  }
+
+  @Test
+  public void shouldListFreeCapsulesForDateRangeTest(){
+    ReservationBook book = new ReservationBook(130);
+    for (int n = 1; n <= 70; n++){
+      book.reserve(n, "Guest-" + n, may(n % 2 == 0 ? 1 : 10), may(n % 2 == 0 ? 3 : 12));
+    }
+    // even capsules are taken from the 1st to the 3rd, odd ones from the 10th to the 12th
+    assertArrayEquals(new int[]{1, 3, 5}, book.freeCapsules(may(2), may(4), 3));
+    assertArrayEquals(new int[]{71, 72}, book.freeCapsules(may(1), may(12), 2));
+    assertEquals(60, book.freeCapsules(may(1), may(31), 1000).length);
+    assertEquals(130, book.countFree(may(20), may(21)));
+    assertEquals(95, book.countFree(may(2), may(3)));
+    assertEquals(0, book.freeCapsules(may(1), may(2), 0).length);
+
+    ReservationResult any = book.reserveAny("Zoë", may(1), may(12));
+    assertEquals(71, any.getCapsuleNumber());
+    assertEquals(59, book.countFree(may(1), may(12)));
+  }
+
+  @Test
+  public void shouldReportNoVacancyAndFreeCancelledNightsTest(){
+    ReservationBook book = new ReservationBook(2);
+    Reservation first = book.reserveAny("John", may(1), may(8)).getReservation();
+    book.reserveAny("Mary", may(5), may(6));
+    assertEquals(BookingError.NO_VACANCY, book.reserveAny("Anna", may(5), may(9)).getError());
+
+    assertTrue(book.cancel(first));
+    assertFalse(book.cancel(first));
+    assertEquals(1, book.reserveAny("Anna", may(5), may(9)).getCapsuleNumber());
+    assertArrayEquals(new int[]{2}, book.freeCapsules(may(6), may(9), 5));
+  }
+
+  @Test
+  public void shouldForgetPastStaysTest(){
+    ReservationBook book = new ReservationBook(5);
+    Reservation past = book.reserve(1, "John", may(1), may(3)).getReservation();
+    book.reserve(1, "Mary", may(3), may(10));
+    book.reserve(2, "Anna", may(9), may(12));
+
+    assertEquals(1, book.forgetBefore(may(5)));
+    assertEquals(2, book.reservationCount());
+    assertFalse(book.cancel(past));
+    assertEquals("Mary", book.reservationAt(1, may(6)).getGuestName());
+    assertTrue(book.cancel(new Reservation("Mary", 1, (int) may(3).toEpochDay(), (int) may(10).toEpochDay())));
+    assertTrue(book.isFree(1, may(5), may(12)));
+  }
+
+  // guests racing for the same week: each capsule goes to exactly one of them
+  @Test
+  public void shouldNeverReserveSameNightsTwiceTest() throws Exception {
+    int numberOfCapsules = 5_000;
+    int threads = 8;
+    ReservationBook book = new ReservationBook(numberOfCapsules);
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<List<Integer>>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++){
+      String guest = "Guest-" + t;
+      futures.add(pool.submit(() -> {
+        start.await();
+        List<Integer> reserved = new ArrayList<>();
+        ReservationResult result;
+        while ((result = book.reserveAny(guest, may(3), may(10))).isSuccess()){
+          reserved.add(result.getCapsuleNumber());
+        }
+        assertEquals(BookingError.NO_VACANCY, result.getError());
+        return reserved;
+      }));
+    }
+    start.countDown();
+    Set<Integer> capsules = new HashSet<>();
+    for (Future<List<Integer>> future : futures){
+      for (int capsuleNumber : future.get(60, TimeUnit.SECONDS)){
+        assertTrue(capsules.add(capsuleNumber), "capsule #" + capsuleNumber + " reserved twice");
+      }
+    }
+    pool.shutdown();
+    assertEquals(numberOfCapsules, capsules.size());
+    assertEquals(0, book.countFree(may(1), may(20)));
+    assertEquals(numberOfCapsules, book.countFree(may(10), may(20)));
+  }
+}
@@ -0,0 +1,425 @@
+package zih;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedHotelServiceTest {
+
+  // capsules 1-10 on the first engine, 11-15 on the second
+  private static ShardedHotelService twoShards(){
+    return new ShardedHotelService(List.of(new BookingEngine(10), new BookingEngine(5)));
+  }
+
+  @Test
+  public void shouldRouteToOwningShardTest(){
+    try (ShardedHotelService hotel = twoShards()){
+      assertEquals(15, hotel.capacity());
+      CheckInResult booked = hotel.checkIn(12, "John");
+      assertTrue(booked.isSuccess());
+      assertEquals(12, booked.getCapsuleNumber());
+      assertEquals("John", hotel.shard(1).guestAt(2));
+      assertEquals("John", hotel.guestAt(12));
+      assertEquals(BookingError.OCCUPIED, hotel.checkIn(12, "Mary").getError());
+      assertEquals(12, hotel.checkIn(12, "Mary").getCapsuleNumber());
+      assertEquals(BookingError.DOES_NOT_EXIST, hotel.checkIn(16, "Mary").getError());
+      assertEquals(BookingError.DOES_NOT_EXIST, hotel.checkOut(0).getError());
+
+      CheckOutResult checkedOut = hotel.checkOut(12);
+      assertEquals("John", checkedOut.getGuestName());
+      assertEquals(12, checkedOut.getCapsuleNumber());
+      assertTrue(hotel.isEmpty());
+    }
+  }
+
+  @Test
+  public void shouldStitchRangesAcrossShardsTest() throws Exception {
+    try (ShardedHotelService hotel = twoShards()){
+      hotel.checkIn(9, "Anna");
+      hotel.checkIn(11, "John");
+      hotel.checkIn(15, "Zoë");
+
+      assertArrayEquals(new String[]{null, "Anna", null, "John", null}, hotel.guestsInRange(7, 12));
+      assertEquals(9, hotel.nextOccupied(1));
+      assertEquals(11, hotel.nextOccupied(10));
+      assertEquals(15, hotel.nextOccupied(12));
+      assertEquals(0, hotel.nextOccupied(16));
+      assertEquals(3, hotel.occupiedCount());
+
+      StringBuilder view = new StringBuilder();
+      GuestRangeRenderer.render(hotel, 8, 11, view);
+      assertEquals("Capsule: Guest\n9: Anna\n10: [unoccupied]\n11: John\n", view.toString());
+      StringBuilder guests = new StringBuilder();
+      assertEquals(3, GuestRangeRenderer.renderOccupied(hotel, 0, 15, guests));
+      assertEquals("Capsule: Guest\n9: Anna\n11: John\n15: Zoë\n", guests.toString());
+    }
+  }
+
+  @Test
+  public void shouldFanOutCheckInAnyTest(){
+    try (ShardedHotelService hotel = twoShards()){
+      for (int n = 1; n <= 10; n++){
+        hotel.checkIn(n, "Guest-" + n);
+      }
+      // the first shard is full, so the lowest free capsule is on the second
+      assertEquals(11, hotel.checkInAny("John", AssignmentPolicy.LOWEST_NUMBERED).getCapsuleNumber());
+      hotel.checkOut(3);
+      assertEquals(3, hotel.checkInAny("Mary", AssignmentPolicy.LOWEST_NUMBERED).getCapsuleNumber());
+      // the emptiest shard takes the next guest
+      hotel.checkOut(4);
+      assertTrue(hotel.checkInAny("Anna", AssignmentPolicy.SPREAD_OUT).getCapsuleNumber() > 10);
+
+      while (hotel.occupiedCount() < hotel.capacity()){
+        assertTrue(hotel.checkInAny("Filler", AssignmentPolicy.ROUND_ROBIN).isSuccess());
+      }
+      CheckInResult full = hotel.checkInAny("Zoë", AssignmentPolicy.ROUND_ROBIN);
+      assertEquals(BookingError.NO_VACANCY, full.getError());
+    }
+  }
+
+  @Test
+  public void shouldUndoAllOrNothingBatchAcrossShardsTest(){
+    try (ShardedHotelService hotel = twoShards()){
+      hotel.checkIn(13, "Taken");
+      Map<Integer, String> bookings = new LinkedHashMap<>();
+      bookings.put(2, "John");
+      bookings.put(13, "Mary");
+      bookings.put(14, "Anna");
+      BatchResult<CheckInResult> refused = hotel.checkInAll(bookings, BatchMode.ALL_OR_NOTHING);
+      assertEquals(0, refused.getSuccessCount());
+      assertEquals(BookingError.ROLLED_BACK, refused.get(0).getError());
+      assertEquals(BookingError.OCCUPIED, refused.get(1).getError());
+      assertEquals(13, refused.get(1).getCapsuleNumber());
+      // the part the first shard had booked is undone
+      assertNull(hotel.guestAt(2));
+      assertEquals(1, hotel.occupiedCount());
+
+      BatchResult<CheckInResult> partly = hotel.checkInAll(bookings, BatchMode.BEST_EFFORT);
+      assertEquals(2, partly.getSuccessCount());
+      assertEquals("John", hotel.guestAt(2));
+      assertEquals("Anna", hotel.guestAt(14));
+
+      BatchResult<CheckOutResult> checkOuts = hotel.checkOutAll(new int[]{2, 15}, BatchMode.ALL_OR_NOTHING);
+      assertEquals(BookingError.ROLLED_BACK, checkOuts.get(0).getError());
+      assertEquals(BookingError.UNOCCUPIED, checkOuts.get(1).getError());
+      assertEquals("John", hotel.guestAt(2));
+      assertTrue(hotel.checkOutAll(new int[]{2, 14, 13}, BatchMode.ALL_OR_NOTHING).isSuccess());
+      assertTrue(hotel.isEmpty());
+    }
+  }
+
+  // another client books the capsule a rolled-back check-out freed, before the guest is put back
+  @Test
+  public void shouldReportCheckOutWhoseUndoFailedTest(){
+    BookingEngine first = new BookingEngine(10);
+    try (ShardedHotelService hotel = new ShardedHotelService(List.of(first, new BookingEngine(5)))){
+      hotel.checkIn(2, "John");
+      hotel.checkIn(3, "Mary");
+      first.addListener(new BookingListener() {
+        boolean intruded;
+
+        @Override
+        public void onCheckIn(int capsuleNumber, String guestName){
+        }
+
+        @Override
+        public void onCheckOut(int capsuleNumber, String guestName){
+        }
+
+        // outside the stripe, right after the first shard checked its part out
+        @Override
+        public void afterCommit(){
+          if (!intruded && first.guestAt(2) == null){
+            intruded = true;
+            first.checkIn(2, "Walk-in");
+          }
+        }
+      });
+
+      BatchResult<CheckOutResult> results = hotel.checkOutAll(new int[]{2, 3, 15}, BatchMode.ALL_OR_NOTHING);
+      assertEquals(1, results.getSuccessCount());
+      assertTrue(results.get(0).isSuccess());
+      assertEquals("John", results.get(0).getGuestName());
+      assertEquals(BookingError.ROLLED_BACK, results.get(1).getError());
+      assertEquals(BookingError.UNOCCUPIED, results.get(2).getError());
+      assertEquals("Walk-in", hotel.guestAt(2));
+      assertEquals("Mary", hotel.guestAt(3));
+    }
+  }
+
+  // another client checks out a guest of a rolled-back check-in before the undo
+  @Test
+  public void shouldReportCheckInWhoseUndoFailedTest(){
+    BookingEngine first = new BookingEngine(10);
+    try (ShardedHotelService hotel = new ShardedHotelService(List.of(first, new BookingEngine(5)))){
+      hotel.checkIn(13, "Taken");
+      first.addListener(new BookingListener() {
+        boolean left;
+
+        @Override
+        public void onCheckIn(int capsuleNumber, String guestName){
+        }
+
+        @Override
+        public void onCheckOut(int capsuleNumber, String guestName){
+        }
+
+        @Override
+        public void afterCommit(){
+          if (!left && first.guestAt(2) != null){
+            left = true;
+            first.checkOut(2);
+          }
+        }
+      });
+      Map<Integer, String> bookings = new LinkedHashMap<>();
+      bookings.put(2, "John");
+      bookings.put(3, "Mary");
+      bookings.put(13, "Anna");
+
+      BatchResult<CheckInResult> results = hotel.checkInAll(bookings, BatchMode.ALL_OR_NOTHING);
+      assertEquals(1, results.getSuccessCount());
+      assertTrue(results.get(0).isSuccess());
+      assertEquals(2, results.get(0).getCapsuleNumber());
+      assertEquals(BookingError.ROLLED_BACK, results.get(1).getError());
+      assertEquals(BookingError.OCCUPIED, results.get(2).getError());
+      assertNull(hotel.guestAt(3));
+    }
+  }
+
+  @Test
+  public void shouldDealGroupOutToShardsTest(){
+    try (ShardedHotelService hotel = twoShards()){
+      List<String> group = new ArrayList<>();
+      for (int i = 0; i < 12; i++){
+        group.add("Guest-" + i);
+      }
+      BatchResult<CheckInResult> results = hotel.checkInAll(group, AssignmentPolicy.LOWEST_NUMBERED, BatchMode.ALL_OR_NOTHING);
+      assertTrue(results.isSuccess());
+      for (int i = 0; i < 12; i++){
+        assertEquals(i + 1, results.get(i).getCapsuleNumber());
+        assertEquals("Guest-" + i, hotel.guestAt(i + 1));
+      }
+      // only three capsules are left, so none of the four is booked
+      BatchResult<CheckInResult> tooMany = hotel.checkInAll(List.of("A", "B", "C", "D"),
+              AssignmentPolicy.SPREAD_OUT, BatchMode.ALL_OR_NOTHING);
+      assertEquals(0, tooMany.getSuccessCount());
+      assertEquals(12, hotel.occupiedCount());
+      BatchResult<CheckInResult> someOf = hotel.checkInAll(List.of("A", "B", "C", "D"),
+              AssignmentPolicy.SPREAD_OUT, BatchMode.BEST_EFFORT);
+      assertEquals(3, someOf.getSuccessCount());
+      assertEquals(BookingError.NO_VACANCY, someOf.get(3).getError());
+    }
+  }
+
+  @Test
+  public void shouldResizeLastShardOnlyTest(){
+    try (ShardedHotelService hotel = twoShards()){
+      hotel.checkIn(14, "John");
+      assertTrue(hotel.resize(40).isSuccess());
+      assertEquals(40, hotel.capacity());
+      assertEquals(30, hotel.shard(1).capacity());
+      assertTrue(hotel.checkIn(40, "Mary").isSuccess());
+
+      ResizeResult occupied = hotel.resize(13);
+      assertEquals(BookingError.OCCUPIED, occupied.getError());
+      assertEquals(40, hotel.capacity());
+      assertEquals(BookingError.INVALID_INPUT, hotel.resize(10).getError());
+    }
+  }
+
+  // a shard that is down is the router's upstream failing, not the client's bad request
+  @Test
+  public void shouldAnswerUnavailableWhenShardIsDownTest() throws Exception {
+    BookingEngine first = new BookingEngine(10);
+    BookingEngine second = new BookingEngine(5);
+    HotelHttpServer firstServer = HotelHttpServer.start(first, new InetSocketAddress("localhost", 0));
+    HotelHttpServer secondServer = HotelHttpServer.start(second, new InetSocketAddress("localhost", 0));
+    ShardedHotelService hotel = new ShardedHotelService(List.of(
+            new RemoteHotelService(URI.create("http://localhost:" + firstServer.port() + "/")),
+            new RemoteHotelService(URI.create("http://localhost:" + secondServer.port() + "/"))));
+    HotelHttpServer router = HotelHttpServer.start(hotel, new InetSocketAddress("localhost", 0));
+    try {
+      HttpClient client = HttpClient.newHttpClient();
+      assertEquals(200, post(client, router, "/checkin?capsule=12&guest=John").statusCode());
+      secondServer.close();
+
+      HttpResponse<String> down = post(client, router, "/checkin?capsule=12&guest=Mary");
+      assertEquals(503, down.statusCode());
+      assertEquals("{\"error\":\"UNAVAILABLE\"}", down.body());
+      assertEquals(503, post(client, router, "/checkout?capsule=12").statusCode());
+      // the shard that is up still books
+      assertEquals(200, post(client, router, "/checkin?capsule=2&guest=Mary").statusCode());
+      assertEquals("Mary", first.guestAt(2));
+    } finally {
+      router.close();
+      hotel.close();
+      firstServer.close();
+      secondServer.close();
+    }
+  }
+
+  // an error that is no BookingError must not pass for the caller's bad input
+  @Test
+  public void shouldRefuseUnknownRemoteErrorTest() throws Exception {
+    HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    stub.createContext("/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      byte[] body = (path.equals("/stats") ? "{\"capacity\":10,\"occupied\":0,\"free\":10}"
+              : "{\"error\":\"METHOD_NOT_ALLOWED\",\"capsule\":1}").getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(path.equals("/stats") ? 200 : 405, body.length);
+      try (OutputStream out = exchange.getResponseBody()){
+        out.write(body);
+      }
+    });
+    stub.start();
+    try {
+      RemoteHotelService remote = new RemoteHotelService(URI.create("http://localhost:" + stub.getAddress().getPort() + "/"));
+      assertThrows(UncheckedIOException.class, () -> remote.checkIn(1, "John"));
+      assertThrows(UncheckedIOException.class, () -> remote.checkOut(1));
+      assertThrows(UncheckedIOException.class, () -> remote.resize(20));
+    } finally {
+      stub.stop(0);
+    }
+  }
+
+  // a shard refusing a whole request is the router's upstream failing, answered 502
+  @Test
+  public void shouldAnswerBadGatewayWhenShardRefusesTest() throws Exception {
+    HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    stub.createContext("/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      byte[] body = (path.equals("/stats") ? "{\"capacity\":10,\"occupied\":0,\"free\":10}"
+              : "{\"error\":\"INVALID_INPUT\",\"capsule\":0}").getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(path.equals("/stats") ? 200 : 400, body.length);
+      try (OutputStream out = exchange.getResponseBody()){
+        out.write(body);
+      }
+    });
+    stub.start();
+    RemoteHotelService remote = new RemoteHotelService(URI.create("http://localhost:" + stub.getAddress().getPort() + "/"));
+    ShardedHotelService hotel = new ShardedHotelService(List.of(new BookingEngine(5), remote));
+    HotelHttpServer router = HotelHttpServer.start(hotel, new InetSocketAddress("localhost", 0));
+    try {
+      assertThrows(UpstreamException.class, () -> remote.guestsInRange(0, 10));
+      HttpResponse<String> refused = HttpClient.newHttpClient().send(
+              HttpRequest.newBuilder(URI.create("http://localhost:" + router.port() + "/guests?start=0&end=15")).build(),
+              HttpResponse.BodyHandlers.ofString());
+      assertEquals(502, refused.statusCode());
+      assertEquals("{\"error\":\"BAD_GATEWAY\"}", refused.body());
+    } finally {
+      router.close();
+      hotel.close();
+      stub.stop(0);
+    }
+  }
+
+  private static HttpResponse<String> post(HttpClient client, HotelHttpServer server, String path) throws Exception {
+    HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path))
+            .POST(HttpRequest.BodyPublishers.noBody())
+            .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  // every shard is its own JVM serving HotelHttpServer on loopback
+  @Test
+  public void shouldServeShardsFromSeparateJvmsTest() throws Exception {
+    List<Process> processes = new ArrayList<>();
+    try {
+      List<String> urls = new ArrayList<>();
+      for (int capsules : new int[]{100, 50, 25}){
+        Process process = startShard(capsules);
+        processes.add(process);
+        urls.add(awaitUrl(process));
+      }
+      try (ShardedHotelService hotel = ShardedHotelService.connect(String.join(",", urls))){
+        assertEquals(3, hotel.shardCount());
+        assertEquals(175, hotel.capacity());
+
+        assertTrue(hotel.checkIn(100, "John").isSuccess());
+        assertTrue(hotel.checkIn(101, "Zoë \"Z\" Müller").isSuccess());
+        assertEquals("Zoë \"Z\" Müller", hotel.shard(1).guestAt(1));
+        assertEquals(BookingError.OCCUPIED, hotel.checkIn(101, "Mary").getError());
+        assertEquals(BookingError.DOES_NOT_EXIST, hotel.checkIn(176, "Mary").getError());
+
+        assertArrayEquals(new String[]{null, "John", "Zoë \"Z\" Müller", null}, hotel.guestsInRange(98, 102));
+        assertEquals(101, hotel.nextOccupied(101));
+        assertEquals(0, hotel.nextOccupied(102));
+
+        List<String> group = new ArrayList<>();
+        for (int i = 0; i < 60; i++){
+          group.add("Guest-" + i);
+        }
+        BatchResult<CheckInResult> results = hotel.checkInAll(group, AssignmentPolicy.SPREAD_OUT, BatchMode.BEST_EFFORT);
+        assertTrue(results.isSuccess());
+        assertEquals(62, hotel.occupiedCount());
+        for (CheckInResult result : results.getResults()){
+          assertEquals(result.getGuestName(), hotel.guestAt(result.getCapsuleNumber()));
+        }
+
+        int free = 175;
+        while (hotel.guestAt(free) != null){
+          free--;
+        }
+        Map<Integer, String> bookings = new LinkedHashMap<>();
+        bookings.put(free, "Anna");
+        bookings.put(100, "Clash");
+        assertEquals(BookingError.ROLLED_BACK, hotel.checkInAll(bookings, BatchMode.ALL_OR_NOTHING).get(0).getError());
+        assertNull(hotel.guestAt(free));
+
+        CheckOutResult checkedOut = hotel.checkOut(101);
+        assertEquals("Zoë \"Z\" Müller", checkedOut.getGuestName());
+        assertTrue(hotel.resize(200).isSuccess());
+        assertEquals(50, hotel.shard(2).capacity());
+        assertTrue(hotel.checkIn(200, "Last").isSuccess());
+      }
+    } finally {
+      for (Process process : processes){
+        process.destroy();
+        process.waitFor(10, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  private static Process startShard(int capsules) throws Exception {
+    String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "zih.HotelHttpServer",
+            "--port", "0", "--capsules", String.valueOf(capsules))
+            .redirectErrorStream(true)
+            .start();
+  }
+
+  // the URL from the line the shard prints once it is listening
+  private static String awaitUrl(Process process) throws Exception {
+    Pattern serving = Pattern.compile("Serving \\d+ capsules on (http://localhost:\\d+/)");
+    BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    for (String line = out.readLine(); line != null; line = out.readLine()){
+      Matcher matcher = serving.matcher(line);
+      if (matcher.find()){
+        return URI.create(matcher.group(1)).toString();
+      }
+    }
+    fail("shard exited with " + process.waitFor());
+    return null;
+  }
+}